@@ -0,0 +1,126 @@
+package com.janbabak.noqlbackend.authentication;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.janbabak.noqlbackend.config.AuthenticationCacheConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caches users authenticated by JWT tokens, so that the token is not verified and the user is not loaded from the
+ * database on every request. Tokens are stored as hashes and entries expire after the TTL or when the token expires,
+ * whichever comes first. Entries of a user must be invalidated when the user is updated or deleted.
+ */
+@Slf4j
+@Component
+public class AuthenticationCache {
+
+    private final AuthenticationCacheConfig config;
+    private final Cache<String, AuthenticatedUser> users;
+
+    /**
+     * Incremented by every invalidation, users loaded before the invalidation are not cached.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public AuthenticationCache(AuthenticationCacheConfig config) {
+        this.config = config;
+        this.users = Caffeine.newBuilder()
+                .expireAfter(new TokenExpiry(config.getTtl()))
+                .maximumSize(config.getMaxSize())
+                .build();
+    }
+
+    /**
+     * Get user authenticated by the token, authenticate it by the loader if it is not cached.
+     *
+     * @param token  JWT token
+     * @param loader verifies the token and loads its user, returns null if the token is not valid
+     * @return authenticated user or null if the token is not valid
+     */
+    public UserDetails get(String token, Function<String, AuthenticatedUser> loader) {
+        if (!config.getEnabled()) {
+            final AuthenticatedUser user = loader.apply(token);
+            return user != null ? user.userDetails() : null;
+        }
+
+        final String key = hash(token);
+        final AuthenticatedUser cachedUser = users.getIfPresent(key);
+        if (cachedUser != null) {
+            return cachedUser.userDetails();
+        }
+
+        final long invalidationsBeforeLoad = invalidations.get();
+        final AuthenticatedUser user = loader.apply(token);
+        if (user == null) {
+            return null;
+        }
+        // the user could be loaded before it was updated by a concurrent request
+        if (invalidations.get() == invalidationsBeforeLoad) {
+            users.put(key, user);
+        }
+        return user.userDetails();
+    }
+
+    /**
+     * Remove all cached tokens of the user. Must be called when the user is updated or deleted.
+     *
+     * @param username username (email) of the user before the change
+     */
+    public void invalidateUser(String username) {
+        invalidations.incrementAndGet();
+        users.asMap().values().removeIf(user -> user.userDetails().getUsername().equals(username));
+        log.debug("Cached authentication of user={} invalidated.", username);
+    }
+
+    private static String hash(String token) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * User authenticated by a valid token.
+     *
+     * @param userDetails    user, must not be modified
+     * @param tokenExpiresAt expiration of the token
+     */
+    public record AuthenticatedUser(UserDetails userDetails, Instant tokenExpiresAt) {
+    }
+
+    /**
+     * Entries expire after the TTL, or when the token expires if it is sooner.
+     */
+    private record TokenExpiry(Duration ttl) implements Expiry<String, AuthenticatedUser> {
+
+        @Override
+        public long expireAfterCreate(String key, AuthenticatedUser user, long currentTime) {
+            final Duration untilTokenExpires = Duration.between(Instant.now(), user.tokenExpiresAt());
+            return Math.max(0, Math.min(ttl.toNanos(), untilTokenExpires.toNanos()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, AuthenticatedUser user, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, user, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, AuthenticatedUser user, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.janbabak.noqlbackend.authentication;
 
+import com.janbabak.noqlbackend.authentication.AuthenticationCache.AuthenticatedUser;
 import com.janbabak.noqlbackend.service.JwtService;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -29,6 +31,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final UserDetailsService userDetailsService;
     private final JwtService jwtService;
+    private final AuthenticationCache authenticationCache;
 
     @Override
     protected void doFilterInternal(
@@ -45,17 +48,16 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         //authenticate
         final String jwtToken = authHeader.substring(7); // "Bearer " has 7 chars
-        final String userEmail;
-        try {
-            userEmail = jwtService.extractUsername(jwtToken);
-        } catch (ExpiredJwtException e) {
-            log.info("JWT token expired, message: {}", e.getMessage());
-            throw new AccessDeniedException("JWT token expired", e);
-        }
-        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            final UserDetails userDetails = userDetailsService.loadUserByUsername(userEmail);
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            final UserDetails userDetails;
+            try {
+                userDetails = authenticationCache.get(jwtToken, this::authenticate);
+            } catch (ExpiredJwtException e) {
+                log.info("JWT token expired, message: {}", e.getMessage());
+                throw new AccessDeniedException("JWT token expired", e);
+            }
 
-            if (jwtService.isTokenValid(jwtToken, userDetails)) {
+            if (userDetails != null) {
                 final UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -64,4 +66,24 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response); //request continues
     }
+
+    /**
+     * Verify the token (parsed only once) and load its user.
+     *
+     * @param jwtToken JWT token
+     * @return authenticated user or null if the token is not valid
+     * @throws ExpiredJwtException token is expired
+     */
+    private AuthenticatedUser authenticate(String jwtToken) {
+        final Claims claims = jwtService.extractAllClaims(jwtToken);
+        final String userEmail = claims.getSubject();
+        if (userEmail == null) {
+            return null;
+        }
+        final UserDetails userDetails = userDetailsService.loadUserByUsername(userEmail);
+        if (!jwtService.isTokenValid(claims, userDetails)) {
+            return null;
+        }
+        return new AuthenticatedUser(userDetails, claims.getExpiration().toInstant());
+    }
 }
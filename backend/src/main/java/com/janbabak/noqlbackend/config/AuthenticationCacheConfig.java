@@ -0,0 +1,33 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache of authenticated JWT tokens.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.authentication-cache")
+public class AuthenticationCacheConfig {
+
+    /**
+     * If false, every request verifies the token and loads the user from the database.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * How long the authenticated user is cached, at most until the token expires.
+     */
+    private Duration ttl = Duration.ofSeconds(30);
+
+    /**
+     * Maximum number of cached tokens.
+     */
+    private Long maxSize = 10_000L;
+}
@@ -0,0 +1,58 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of admission of chat requests (natural language queries processed by the LLM).
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.chat-admission")
+public class ChatAdmissionConfig {
+
+    /**
+     * If false, chat requests are not limited.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * Maximum number of chat requests processed concurrently.
+     */
+    private Integer maxConcurrent = 16;
+
+    /**
+     * Maximum number of chat requests of one user processed concurrently.
+     */
+    private Integer maxConcurrentPerUser = 2;
+
+    /**
+     * Maximum number of chat requests to one database processed concurrently.
+     */
+    private Integer maxConcurrentPerDatabase = 4;
+
+    /**
+     * Maximum number of waiting chat requests, if exceeded, the request is rejected.
+     */
+    private Integer queueCapacity = 100;
+
+    /**
+     * Maximum number of waiting chat requests of one user, if exceeded, the request is rejected.
+     */
+    private Integer maxQueuedPerUser = 4;
+
+    /**
+     * Maximum time a request waits for admission, then it is rejected.
+     */
+    private Duration maxWait = Duration.ofSeconds(30);
+
+    /**
+     * Retry-After of rejected requests used until durations of chat requests are measured.
+     */
+    private Duration defaultRetryAfter = Duration.ofSeconds(5);
+}
@@ -0,0 +1,43 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of connection pools to the user's databases. Each database has its own read-only and read-write pool.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.connection-pool")
+public class ConnectionPoolConfig {
+
+    /**
+     * Maximum number of connections in one pool (read-only and read-write pools are counted separately).
+     */
+    private Integer maxPoolSize = 5;
+
+    /**
+     * Maximum time to wait for a connection from the pool.
+     */
+    private Duration connectionTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Time after which an idle connection is closed (the pool shrinks to zero connections when not used).
+     */
+    private Duration connectionIdleTimeout = Duration.ofMinutes(2);
+
+    /**
+     * Time after which pools of a database that was not queried are closed and removed.
+     */
+    private Duration poolIdleTimeout = Duration.ofMinutes(15);
+
+    /**
+     * Maximum number of databases whose DAOs and pools are kept, pools of the least recently used databases are closed.
+     */
+    private Long maxDatabases = 1000L;
+}
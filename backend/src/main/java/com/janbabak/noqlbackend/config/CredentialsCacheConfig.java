@@ -0,0 +1,33 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache of decrypted credentials of the users' databases.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.credentials-cache")
+public class CredentialsCacheConfig {
+
+    /**
+     * If false, credentials are decrypted every time they are used.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * How long decrypted credentials are cached, then they are erased from memory.
+     */
+    private Duration ttl = Duration.ofMinutes(1);
+
+    /**
+     * Maximum number of cached credentials.
+     */
+    private Long maxSize = 1000L;
+}
@@ -0,0 +1,26 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration of exports of full query results.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.export")
+public class ExportConfig {
+
+    /**
+     * Number of rows fetched from the database at once, only one batch is kept in memory.
+     */
+    private Integer fetchSize = 1000;
+
+    /**
+     * Maximum number of exported rows, 0 means unlimited.
+     */
+    private Integer maxRows = 1_000_000;
+}
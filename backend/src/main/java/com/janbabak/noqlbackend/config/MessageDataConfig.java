@@ -0,0 +1,38 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of loading data of multiple messages, e.g. when a chat is opened.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.message-data")
+public class MessageDataConfig {
+
+    /**
+     * Number of threads loading data of messages, shared by all requests.
+     */
+    private Integer threads = 8;
+
+    /**
+     * Maximum number of waiting data loads, if exceeded, the data is loaded by the requesting thread.
+     */
+    private Integer queueCapacity = 100;
+
+    /**
+     * Maximum number of concurrently loaded messages of one chat.
+     */
+    private Integer maxConcurrencyPerChat = 4;
+
+    /**
+     * Maximum time of loading data of all messages of one request, data of messages not loaded in time is omitted.
+     */
+    private Duration loadTimeout = Duration.ofSeconds(30);
+}
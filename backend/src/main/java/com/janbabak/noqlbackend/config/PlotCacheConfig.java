@@ -0,0 +1,34 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache of generated plots.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.plot-cache")
+public class PlotCacheConfig {
+
+    /**
+     * If false, every plot is generated by Python.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * How long the generated plot is cached, because the data in the user's database can change.
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * Maximum size of all cached plots on disk.
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(256);
+}
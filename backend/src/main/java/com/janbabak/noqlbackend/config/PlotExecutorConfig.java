@@ -0,0 +1,26 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration of the executor generating plots.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.plot-executor")
+public class PlotExecutorConfig {
+
+    /**
+     * Maximum number of plots generated concurrently.
+     */
+    private Integer threads = 4;
+
+    /**
+     * Maximum number of plots waiting for generation, if exceeded, the plot is rejected.
+     */
+    private Integer queueCapacity = 20;
+}
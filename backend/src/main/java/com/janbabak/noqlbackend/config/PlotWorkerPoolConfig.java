@@ -0,0 +1,55 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the pool of long-lived Python processes generating plots.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.plot-worker-pool")
+public class PlotWorkerPoolConfig {
+
+    /**
+     * If false, every plot is generated by a new {@code docker exec} process.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * Number of worker processes started with the application, plots are generated by {@code docker exec} when all
+     * workers are busy.
+     */
+    private Integer size = 2;
+
+    /**
+     * Maximum duration of one plot script.
+     */
+    private Duration jobTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Maximum duration of the worker start (import of matplotlib, pandas...).
+     */
+    private Duration startupTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Worker is replaced by a new one after this number of plots.
+     */
+    private Integer maxJobsPerWorker = 50;
+
+    /**
+     * Worker is replaced by a new one when its memory (max resident set size) exceeds this value.
+     */
+    private DataSize maxWorkerMemory = DataSize.ofMegabytes(512);
+
+    /**
+     * How long plots are generated by {@code docker exec} after a worker could not be started.
+     */
+    private Duration retryStartAfter = Duration.ofMinutes(1);
+}
@@ -0,0 +1,33 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Default configuration of statements executed in the user's databases, it can be overridden for each database.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.query-execution")
+public class QueryExecutionConfig {
+
+    /**
+     * Number of rows fetched from the database at once.
+     */
+    private Integer fetchSize = 500;
+
+    /**
+     * Maximum number of rows of a result, the remaining rows are silently dropped, 0 means unlimited.
+     */
+    private Integer maxRows = 100_000;
+
+    /**
+     * Maximum duration of a query, 0 means unlimited.
+     */
+    private Duration queryTimeout = Duration.ofSeconds(60);
+}
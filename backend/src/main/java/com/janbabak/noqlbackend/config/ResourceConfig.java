@@ -1,9 +1,15 @@
 package com.janbabak.noqlbackend.config;
 
+import com.janbabak.noqlbackend.service.PlotService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.NonNull;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+
+import java.io.IOException;
 
 @Configuration
 @SuppressWarnings("unused")
@@ -18,6 +24,21 @@ public class ResourceConfig implements WebMvcConfigurer {
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         final String path = "file:" + workingDirectory + "/plotService/plots/";
         registry.addResourceHandler(IMAGES_STATIC_FOLDER + "**")
-                .addResourceLocations(path);
+                .addResourceLocations(path)
+                .resourceChain(false)
+                .addResolver(new PlotResourceResolver());
+    }
+
+    /**
+     * Plots are stored in a directory of their chat, but their URLs contain only the file name. Plots stored before
+     * are looked up directly in the plots directory.
+     */
+    private static class PlotResourceResolver extends PathResourceResolver {
+
+        @Override
+        protected Resource getResource(@NonNull String resourcePath, @NonNull Resource location) throws IOException {
+            final Resource resource = super.getResource(PlotService.createRelativePath(resourcePath), location);
+            return resource != null ? resource : super.getResource(resourcePath, location);
+        }
     }
 }
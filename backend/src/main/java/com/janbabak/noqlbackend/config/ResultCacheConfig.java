@@ -0,0 +1,39 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache of retrieved pages of query results.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.result-cache")
+public class ResultCacheConfig {
+
+    /**
+     * If false, every page is retrieved from the database.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * How long the retrieved page is cached.
+     */
+    private Duration ttl = Duration.ofMinutes(5);
+
+    /**
+     * Maximum estimated size of all cached pages.
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Maximum estimated size of one page, larger pages are not cached.
+     */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(2);
+}
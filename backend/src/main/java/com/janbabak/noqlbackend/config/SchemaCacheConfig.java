@@ -0,0 +1,33 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache of schemas of the users' databases.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.schema-cache")
+public class SchemaCacheConfig {
+
+    /**
+     * How long the cached schema is used without checking its fingerprint.
+     */
+    private Duration fingerprintCheckInterval = Duration.ofSeconds(10);
+
+    /**
+     * Schemas of databases that are not used for this time are removed from the cache.
+     */
+    private Duration idleTimeout = Duration.ofHours(1);
+
+    /**
+     * Maximum number of cached schemas.
+     */
+    private Long maxSize = 500L;
+}
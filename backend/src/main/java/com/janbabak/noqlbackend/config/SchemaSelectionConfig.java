@@ -0,0 +1,32 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration of selecting the part of the database schema that is sent to the LLM.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.schema-selection")
+public class SchemaSelectionConfig {
+
+    /**
+     * If false, the whole schema is always sent to the LLM.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * Maximum estimated number of tokens of the schema in the system prompt. Larger schemas are pruned to the tables
+     * relevant to the user's question.
+     */
+    private Integer tokenBudget = 8000;
+
+    /**
+     * Maximum number of tables returned to the LLM by one call of the tool that describes tables.
+     */
+    private Integer maxRequestedTables = 20;
+}
@@ -35,6 +35,7 @@ public class SecurityConfig {
     //paths, which require role ADMIN
     private final String[] adminPaths = {
             "/settings/**",
+            "/statistics/**",
     };
 
     @Bean
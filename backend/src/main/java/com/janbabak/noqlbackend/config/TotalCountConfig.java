@@ -0,0 +1,44 @@
+package com.janbabak.noqlbackend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the deferred computation of total count of rows of paginated queries.
+ */
+@Component
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.settings.total-count")
+public class TotalCountConfig {
+
+    /**
+     * Maximum time of computing the total count, after that the count query is cancelled and
+     * the count is considered unavailable.
+     */
+    private Duration timeout = Duration.ofSeconds(30);
+
+    /**
+     * Number of threads computing total counts in the background.
+     */
+    private Integer threads = 2;
+
+    /**
+     * Maximum number of waiting count computations, next requests don't get the total count.
+     */
+    private Integer queueCapacity = 100;
+
+    /**
+     * How long the computed total count is cached.
+     */
+    private Duration cacheTtl = Duration.ofMinutes(10);
+
+    /**
+     * Maximum number of cached total counts.
+     */
+    private Long cacheMaxSize = 1000L;
+}
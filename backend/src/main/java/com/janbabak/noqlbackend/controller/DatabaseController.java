@@ -1,9 +1,11 @@
 package com.janbabak.noqlbackend.controller;
 
 
+import com.janbabak.noqlbackend.dao.QueryRegistry.RunningQueryInfo;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.error.exception.EntityNotFoundException;
+import com.janbabak.noqlbackend.error.exception.TooManyRequestsException;
 import com.janbabak.noqlbackend.model.chat.ChatHistoryItem;
 import com.janbabak.noqlbackend.model.database.*;
 import com.janbabak.noqlbackend.model.entity.Database;
@@ -16,10 +18,15 @@ import com.janbabak.noqlbackend.validation.ValidationSequence;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.apache.coyote.BadRequestException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.security.access.AccessDeniedException;
 
 import java.util.List;
@@ -122,6 +129,7 @@ public class DatabaseController {
      * @throws EntityNotFoundException     database not found
      * @throws AccessDeniedException       if user is not admin or owner of the database.
      * @throws BadRequestException         invalid request (model id...)
+     * @throws TooManyRequestsException    too many concurrent chat requests
      */
     @PostMapping("/{databaseId}/chat/{chatId}/query")
     @ResponseStatus(HttpStatus.OK)
@@ -130,10 +138,39 @@ public class DatabaseController {
             @PathVariable UUID chatId,
             @RequestParam(required = false) Integer pageSize,
             @RequestBody @Valid QueryRequest queryRequest
-    ) throws DatabaseConnectionException, DatabaseExecutionException, EntityNotFoundException, BadRequestException {
+    ) throws DatabaseConnectionException, DatabaseExecutionException, EntityNotFoundException, BadRequestException,
+            TooManyRequestsException {
         return queryService.queryChat(databaseId, chatId, queryRequest, pageSize);
     }
 
+    /**
+     * Query chat like {@link #queryChat(UUID, UUID, Integer, QueryRequest)}, but stream the description, generated
+     * query, data, plot url and the persisted message as server-sent events as soon as they are available.
+     *
+     * @param databaseId   database identifier
+     * @param chatId       chat identifier
+     * @param pageSize     number of items in one page
+     * @param queryRequest query
+     * @return emitter of events described by {@link ChatStreamEventType}
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  retrieving database schema failure
+     * @throws EntityNotFoundException     database or chat not found
+     * @throws AccessDeniedException       if user is not admin or owner of the database.
+     * @throws BadRequestException         invalid request (model id...)
+     * @throws TooManyRequestsException    too many concurrent chat requests
+     */
+    @PostMapping(path = "/{databaseId}/chat/{chatId}/query/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public SseEmitter queryChatStream(
+            @PathVariable UUID databaseId,
+            @PathVariable UUID chatId,
+            @RequestParam(required = false) Integer pageSize,
+            @RequestBody @Valid QueryRequest queryRequest
+    ) throws DatabaseConnectionException, DatabaseExecutionException, EntityNotFoundException, BadRequestException,
+            TooManyRequestsException {
+        return queryService.queryChatStream(databaseId, chatId, queryRequest, pageSize);
+    }
+
     /**
      * Query the user's database using database query language, result is automatically paginated.
      *
@@ -155,6 +192,95 @@ public class DatabaseController {
         return queryService.executeQueryLanguageSelectQuery(databaseId, query, page, pageSize);
     }
 
+    /**
+     * Execute query language query and stream the result, rows are written as they are read from the database,
+     * so pages up to {@code PAGINATION_MAX_STREAMING_PAGE_SIZE} rows can be requested.
+     *
+     * @param databaseId database identifier
+     * @param query      database query in corresponding database query language
+     * @param page       page number (first pages is 0)
+     * @param pageSize   number of items in one page
+     * @return query result
+     * @throws EntityNotFoundException queried database not found.
+     * @throws AccessDeniedException   if user is not admin or owner of the database.
+     */
+    @PostMapping(
+            path = "/{databaseId}/query/queryLanguage",
+            consumes = MediaType.TEXT_PLAIN_VALUE,
+            params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamQueryLanguageQuery(
+            @PathVariable UUID databaseId,
+            @RequestBody String query,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer pageSize) throws EntityNotFoundException {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(queryService.streamQueryLanguageSelectQuery(databaseId, query, page, pageSize));
+    }
+
+    /**
+     * Export full result of query language query. Rows are read by a database cursor and written as they are
+     * fetched.
+     *
+     * @param databaseId database identifier
+     * @param query      database query in corresponding database query language
+     * @param format     format of the file, CSV or NDJSON
+     * @param gzip       whether the file is compressed by gzip
+     * @return exported file
+     * @throws EntityNotFoundException     queried database not found.
+     * @throws DatabaseConnectionException cannot connect to the database
+     * @throws DatabaseExecutionException  query execution failed
+     * @throws AccessDeniedException       if user is not admin or owner of the database.
+     */
+    @PostMapping(
+            path = "/{databaseId}/query/queryLanguage/export",
+            consumes = MediaType.TEXT_PLAIN_VALUE,
+            produces = MediaType.ALL_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportQueryLanguageQuery(
+            @PathVariable UUID databaseId,
+            @RequestBody String query,
+            @RequestParam(defaultValue = "CSV") ExportFormat format,
+            @RequestParam(defaultValue = "false") Boolean gzip)
+            throws EntityNotFoundException, DatabaseConnectionException, DatabaseExecutionException {
+
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType(gzip))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(format.getFileName(gzip))
+                        .build()
+                        .toString())
+                .body(queryService.exportQueryLanguageSelectQuery(databaseId, query, format, gzip));
+    }
+
+    /**
+     * Get queries running in the user's database.
+     *
+     * @param databaseId database identifier
+     * @return running queries, the oldest first
+     * @throws EntityNotFoundException database of specific id not found
+     * @throws AccessDeniedException   if user is not admin or owner of the database.
+     */
+    @GetMapping("/{databaseId}/query/running")
+    @ResponseStatus(HttpStatus.OK)
+    public List<RunningQueryInfo> getRunningQueries(@PathVariable UUID databaseId) throws EntityNotFoundException {
+        return queryService.getRunningQueries(databaseId);
+    }
+
+    /**
+     * Cancel query running in the user's database.
+     *
+     * @param databaseId database identifier
+     * @param queryId    running query identifier
+     * @throws EntityNotFoundException database of specific id not found or the query is not running
+     * @throws AccessDeniedException   if user is not admin or owner of the database.
+     */
+    @DeleteMapping("/{databaseId}/query/running/{queryId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void cancelQuery(@PathVariable UUID databaseId, @PathVariable UUID queryId)
+            throws EntityNotFoundException {
+        queryService.cancelQuery(databaseId, queryId);
+    }
+
     /**
      * Get database structure by database id
      *
@@ -172,6 +298,23 @@ public class DatabaseController {
         return databaseService.getDatabaseStructureByDatabaseId(databaseId);
     }
 
+    /**
+     * Retrieve database structure by database id again, even if it is cached.
+     *
+     * @param databaseId database identifier
+     * @return database structure
+     * @throws DatabaseConnectionException connection to the database failed
+     * @throws DatabaseExecutionException  syntax error, ...
+     * @throws EntityNotFoundException     database of specific id not found
+     * @throws AccessDeniedException       if user is not admin or owner of the database.
+     */
+    @PostMapping("/{databaseId}/structure/refresh")
+    @ResponseStatus(HttpStatus.OK)
+    public DatabaseStructureDto refreshDatabaseStructure(@PathVariable UUID databaseId)
+            throws DatabaseConnectionException, DatabaseExecutionException, EntityNotFoundException {
+        return databaseService.refreshDatabaseStructureByDatabaseId(databaseId);
+    }
+
     /**
      * Get generated create script by database id
      *
@@ -1,11 +1,20 @@
 package com.janbabak.noqlbackend.controller;
 
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.error.exception.EntityNotFoundException;
+import com.janbabak.noqlbackend.model.query.ExportFormat;
 import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.model.query.TotalCountResponse;
 import com.janbabak.noqlbackend.service.chat.ChatQueryWithResponseService;
 import lombok.RequiredArgsConstructor;
+import org.apache.coyote.BadRequestException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.UUID;
 
@@ -27,16 +36,90 @@ public class MessageController {
      * @param messageId message identifier
      * @param page      page number (starting from 0)
      * @param pageSize  number of rows on one page
+     * @param cursor    cursor of the next page returned in the previous page (keyset pagination), page is ignored
      * @return data of the message
      * @throws EntityNotFoundException                                   when the message is not found
+     * @throws BadRequestException                                       when the cursor is not valid
      * @throws org.springframework.security.access.AccessDeniedException when user is not admin or owner of the message
      */
     @GetMapping("/{messageId}/data")
     public RetrievedData loadMessageData(
                                              @PathVariable UUID messageId,
                                              @RequestParam(required = false) Integer page,
-                                             @RequestParam(required = false) Integer pageSize)
-            throws EntityNotFoundException {
-        return chatQueryWithResponseService.getDataByMessageId(messageId, page, pageSize);
+                                             @RequestParam(required = false) Integer pageSize,
+                                             @RequestParam(required = false) String cursor)
+            throws EntityNotFoundException, BadRequestException {
+        return chatQueryWithResponseService.getDataByMessageId(messageId, page, pageSize, cursor);
+    }
+
+    /**
+     * Stream data of specified message, rows are written as they are read from the database, so pages up to
+     * {@code PAGINATION_MAX_STREAMING_PAGE_SIZE} rows can be loaded. Keyset pagination is not supported.
+     *
+     * @param messageId message identifier
+     * @param page      page number (starting from 0)
+     * @param pageSize  number of rows on one page
+     * @return data of the message
+     * @throws EntityNotFoundException                                   when the message is not found
+     * @throws BadRequestException                                       when the page or page size is not valid
+     * @throws DatabaseConnectionException                               cannot connect to the database
+     * @throws DatabaseExecutionException                                query execution failed
+     * @throws org.springframework.security.access.AccessDeniedException when user is not admin or owner of the message
+     */
+    @GetMapping(path = "/{messageId}/data", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamMessageData(
+            @PathVariable UUID messageId,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer pageSize)
+            throws EntityNotFoundException, BadRequestException, DatabaseConnectionException,
+            DatabaseExecutionException {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(chatQueryWithResponseService.streamDataByMessageId(messageId, page, pageSize));
+    }
+
+    /**
+     * Export full result of the query of specified message. Rows are read by a database cursor and written as they
+     * are fetched.
+     *
+     * @param messageId message identifier
+     * @param format    format of the file, CSV or NDJSON
+     * @param gzip      whether the file is compressed by gzip
+     * @return exported file
+     * @throws EntityNotFoundException                                   when the message is not found
+     * @throws BadRequestException                                       when the message has no data
+     * @throws DatabaseConnectionException                               cannot connect to the database
+     * @throws DatabaseExecutionException                                query execution failed
+     * @throws org.springframework.security.access.AccessDeniedException when user is not admin or owner of the message
+     */
+    @GetMapping(path = "/{messageId}/export", produces = MediaType.ALL_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportMessageData(
+            @PathVariable UUID messageId,
+            @RequestParam(defaultValue = "CSV") ExportFormat format,
+            @RequestParam(defaultValue = "false") Boolean gzip)
+            throws EntityNotFoundException, BadRequestException, DatabaseConnectionException,
+            DatabaseExecutionException {
+
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType(gzip))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(format.getFileName(gzip))
+                        .build()
+                        .toString())
+                .body(chatQueryWithResponseService.exportDataByMessageId(messageId, format, gzip));
+    }
+
+    /**
+     * Load total count of rows of the data of specified message. The count is computed in the background,
+     * so the data can be returned before the count is known.
+     *
+     * @param messageId message identifier
+     * @return total count and the state of its computation
+     * @throws EntityNotFoundException                                   when the message is not found
+     * @throws org.springframework.security.access.AccessDeniedException when user is not admin or owner of the message
+     */
+    @GetMapping("/{messageId}/data/totalCount")
+    public TotalCountResponse loadMessageDataTotalCount(@PathVariable UUID messageId) throws EntityNotFoundException {
+        return chatQueryWithResponseService.getTotalCountByMessageId(messageId);
     }
 }
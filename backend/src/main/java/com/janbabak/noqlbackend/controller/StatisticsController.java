@@ -0,0 +1,92 @@
+package com.janbabak.noqlbackend.controller;
+
+import com.janbabak.noqlbackend.dao.ConnectionPoolManager;
+import com.janbabak.noqlbackend.dao.ConnectionPoolManager.ConnectionPoolStatistics;
+import com.janbabak.noqlbackend.dao.QueryMetrics;
+import com.janbabak.noqlbackend.dao.QueryMetrics.QueryStatistics;
+import com.janbabak.noqlbackend.service.PlotService;
+import com.janbabak.noqlbackend.service.PlotService.PlotStatistics;
+import com.janbabak.noqlbackend.service.chat.ChatAdmissionService;
+import com.janbabak.noqlbackend.service.chat.ChatAdmissionService.ChatAdmissionStatistics;
+import com.janbabak.noqlbackend.service.query.ResultCacheService;
+import com.janbabak.noqlbackend.service.query.ResultCacheService.ResultCacheStatistics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Runtime statistics resource (admin only)
+ */
+@RestController
+@RequestMapping(value = "/statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+@RequiredArgsConstructor
+@SuppressWarnings("unused")
+public class StatisticsController {
+
+    private final ConnectionPoolManager connectionPoolManager;
+    private final ResultCacheService resultCacheService;
+    private final PlotService plotService;
+    private final QueryMetrics queryMetrics;
+    private final ChatAdmissionService chatAdmissionService;
+
+    /**
+     * Get statistics of connection pools to the user's databases.
+     *
+     * @return statistics of opened pools
+     */
+    @GetMapping("/connectionPools")
+    @ResponseStatus(HttpStatus.OK)
+    public List<ConnectionPoolStatistics> getConnectionPoolStatistics() {
+        return connectionPoolManager.getStatistics();
+    }
+
+    /**
+     * Get statistics of the cache of query results.
+     *
+     * @return hit and miss counts and the size of the cache
+     */
+    @GetMapping("/resultCache")
+    @ResponseStatus(HttpStatus.OK)
+    public ResultCacheStatistics getResultCacheStatistics() {
+        return resultCacheService.getStatistics();
+    }
+
+    /**
+     * Get statistics of plot generation.
+     *
+     * @return numbers of generated, failed and rejected plots, queue wait and execution times
+     */
+    @GetMapping("/plots")
+    @ResponseStatus(HttpStatus.OK)
+    public PlotStatistics getPlotStatistics() {
+        return plotService.getStatistics();
+    }
+
+    /**
+     * Get statistics of the queries executed in the user's databases.
+     *
+     * @return numbers of fetched rows and read bytes
+     */
+    @GetMapping("/queries")
+    @ResponseStatus(HttpStatus.OK)
+    public QueryStatistics getQueryStatistics() {
+        return queryMetrics.getStatistics();
+    }
+
+    /**
+     * Get statistics of admission of chat requests.
+     *
+     * @return numbers of admitted and rejected requests, queue depth and wait times
+     */
+    @GetMapping("/chatAdmission")
+    @ResponseStatus(HttpStatus.OK)
+    public ChatAdmissionStatistics getChatAdmissionStatistics() {
+        return chatAdmissionService.getStatistics();
+    }
+}
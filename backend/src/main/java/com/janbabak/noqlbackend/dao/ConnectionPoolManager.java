@@ -0,0 +1,286 @@
+package com.janbabak.noqlbackend.dao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.janbabak.noqlbackend.config.ConnectionPoolConfig;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.service.database.DatabaseCredentialsEncryptionService;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps pooled connections to the user's databases, so that each query does not have to open a new connection
+ * (TCP + TLS handshake + authentication).<br />
+ * Pools are keyed by the database identifier, each database has a separate read-only and read-write pool.
+ * Pools of databases that are not used are closed after {@link ConnectionPoolConfig#getPoolIdleTimeout()}.
+ * Pools are rebuilt when connection parameters or credentials of the database change.
+ */
+@Slf4j
+@Component
+public class ConnectionPoolManager {
+
+    private final ConnectionPoolConfig config;
+    private final DatabaseCredentialsEncryptionService encryptionService;
+    private final Cache<UUID, DatabasePools> pools;
+
+    public ConnectionPoolManager(ConnectionPoolConfig config, DatabaseCredentialsEncryptionService encryptionService) {
+        this.config = config;
+        this.encryptionService = encryptionService;
+        this.pools = Caffeine.newBuilder()
+                .expireAfterAccess(config.getPoolIdleTimeout())
+                .scheduler(Scheduler.systemScheduler()) // close idle pools even if the cache is not accessed
+                .<UUID, DatabasePools>removalListener((databaseId, databasePools, cause) -> {
+                    log.info("Close connection pools of database id={}, cause={}.", databaseId, cause);
+                    if (databasePools != null) {
+                        databasePools.close();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Borrow connection from the pool of the database. Connection must be closed to be returned to the pool.<br />
+     * Database that has not been persisted yet (doesn't have an id) gets a new not-pooled connection.
+     *
+     * @param database      database metadata
+     * @param connectionUrl connection URL for the specific database engine
+     * @param readOnly      if true, the connection is read-only (and auto-commit is disabled)
+     * @return connection
+     * @throws SQLException cannot establish connection with the database
+     */
+    public Connection getConnection(Database database, String connectionUrl, boolean readOnly) throws SQLException {
+        if (database.getId() == null) {
+            return getUnpooledConnection(database, connectionUrl, readOnly);
+        }
+
+        final DatabasePools databasePools = getPools(database, connectionUrl);
+        return readOnly
+                ? databasePools.readOnlyPool().borrow()
+                : databasePools.readWritePool().borrow();
+    }
+
+    /**
+     * Open new connection bypassing the pools. Used for testing connection with new credentials.
+     *
+     * @param database      database metadata
+     * @param connectionUrl connection URL for the specific database engine
+     * @param readOnly      if true, the connection is read-only (and auto-commit is disabled)
+     * @return connection
+     * @throws SQLException cannot establish connection with the database
+     */
+    public Connection getUnpooledConnection(Database database, String connectionUrl, boolean readOnly)
+            throws SQLException {
+
+        final Connection connection = DriverManager.getConnection(
+                connectionUrl,
+                database.getUserName(),
+                encryptionService.decryptCredentials(database.getPassword()));
+        try {
+            connection.setReadOnly(readOnly);
+            connection.setAutoCommit(!readOnly);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * Close and remove pools of the database. New pools are created on the next request.
+     *
+     * @param databaseId database identifier
+     */
+    public void evict(UUID databaseId) {
+        if (databaseId != null) {
+            pools.invalidate(databaseId);
+        }
+    }
+
+    /**
+     * Get statistics of all opened pools.
+     *
+     * @return list of statistics, one item per pool
+     */
+    public List<ConnectionPoolStatistics> getStatistics() {
+        final List<ConnectionPoolStatistics> statistics = new ArrayList<>();
+        pools.asMap().forEach((databaseId, databasePools) -> {
+            statistics.add(databasePools.readOnlyPool().getStatistics(databaseId, true));
+            statistics.add(databasePools.readWritePool().getStatistics(databaseId, false));
+        });
+        return statistics;
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        pools.invalidateAll();
+        pools.cleanUp();
+    }
+
+    /**
+     * Get pools of the database, create them if they don't exist or if the connection parameters changed.
+     */
+    private DatabasePools getPools(Database database, String connectionUrl) throws SQLException {
+        final String fingerprint = createFingerprint(database, connectionUrl);
+        try {
+            DatabasePools databasePools = pools.get(database.getId(),
+                    databaseId -> createPools(database, connectionUrl, fingerprint));
+
+            if (!databasePools.fingerprint().equals(fingerprint)) {
+                // connection parameters changed, removal listener closes the outdated pools
+                pools.asMap().remove(database.getId(), databasePools);
+                databasePools = pools.get(database.getId(),
+                        databaseId -> createPools(database, connectionUrl, fingerprint));
+            }
+            return databasePools;
+        } catch (RuntimeException e) {
+            throw new SQLException("Cannot create connection pool: " + e.getMessage(), e);
+        }
+    }
+
+    private DatabasePools createPools(Database database, String connectionUrl, String fingerprint) {
+        log.info("Create connection pools of database id={}.", database.getId());
+
+        final String password = encryptionService.decryptCredentials(database.getPassword());
+        return new DatabasePools(
+                fingerprint,
+                new ConnectionPool(createDataSource(database, connectionUrl, password, true)),
+                new ConnectionPool(createDataSource(database, connectionUrl, password, false)));
+    }
+
+    private HikariDataSource createDataSource(Database database,
+                                              String connectionUrl,
+                                              String password,
+                                              boolean readOnly) {
+        final HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("noql-" + database.getId() + (readOnly ? "-read-only" : "-read-write"));
+        hikariConfig.setJdbcUrl(connectionUrl);
+        hikariConfig.setUsername(database.getUserName());
+        hikariConfig.setPassword(password);
+        hikariConfig.setReadOnly(readOnly);
+        hikariConfig.setAutoCommit(!readOnly);
+        hikariConfig.setMaximumPoolSize(config.getMaxPoolSize());
+        hikariConfig.setMinimumIdle(0); // idle pools don't hold any connection to the user's database
+        hikariConfig.setIdleTimeout(config.getConnectionIdleTimeout().toMillis());
+        hikariConfig.setConnectionTimeout(config.getConnectionTimeout().toMillis());
+        hikariConfig.setInitializationFailTimeout(-1); // don't connect when the pool is created
+
+        return new HikariDataSource(hikariConfig);
+    }
+
+    /**
+     * Pools are rebuilt when any of the connection parameters changes.
+     */
+    private String createFingerprint(Database database, String connectionUrl) {
+        return String.join("|",
+                String.valueOf(database.getEngine()),
+                connectionUrl,
+                database.getUserName(),
+                database.getPassword());
+    }
+
+    /**
+     * Read-only and read-write pool of one database.
+     *
+     * @param fingerprint   connection parameters the pools were created with
+     * @param readOnlyPool  pool of read-only connections
+     * @param readWritePool pool of read-write connections
+     */
+    private record DatabasePools(String fingerprint, ConnectionPool readOnlyPool, ConnectionPool readWritePool) {
+
+        void close() {
+            readOnlyPool.close();
+            readWritePool.close();
+        }
+    }
+
+    /**
+     * Connection pool with borrow statistics.
+     */
+    private static class ConnectionPool {
+        private final HikariDataSource dataSource;
+        private final LongAdder borrowCount = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+
+        ConnectionPool(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        Connection borrow() throws SQLException {
+            final long start = System.nanoTime();
+            final Connection connection = dataSource.getConnection();
+            final long waitNanos = System.nanoTime() - start;
+
+            borrowCount.increment();
+            totalWaitNanos.add(waitNanos);
+            maxWaitNanos.accumulate(waitNanos);
+
+            return connection;
+        }
+
+        void close() {
+            dataSource.close();
+        }
+
+        ConnectionPoolStatistics getStatistics(UUID databaseId, boolean readOnly) {
+            final HikariPoolMXBean poolBean = dataSource.getHikariPoolMXBean();
+            final long borrows = borrowCount.sum();
+
+            return new ConnectionPoolStatistics(
+                    databaseId,
+                    readOnly,
+                    poolBean != null ? poolBean.getTotalConnections() : 0,
+                    poolBean != null ? poolBean.getActiveConnections() : 0,
+                    poolBean != null ? poolBean.getIdleConnections() : 0,
+                    poolBean != null ? poolBean.getThreadsAwaitingConnection() : 0,
+                    borrows,
+                    borrows > 0 ? nanosToMillis(totalWaitNanos.sum()) / borrows : 0,
+                    nanosToMillis(maxWaitNanos.get()));
+        }
+
+        private static double nanosToMillis(long nanos) {
+            return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * Statistics of one connection pool.
+     *
+     * @param databaseId                database identifier
+     * @param readOnly                  true if the pool contains read-only connections
+     * @param totalConnections          number of opened connections
+     * @param activeConnections         number of borrowed connections
+     * @param idleConnections           number of connections waiting in the pool
+     * @param threadsAwaitingConnection number of threads waiting for a connection
+     * @param borrowCount               number of borrowed connections since the pool was created
+     * @param averageWaitMillis         average time spent waiting for a connection
+     * @param maxWaitMillis             maximum time spent waiting for a connection
+     */
+    public record ConnectionPoolStatistics(
+            UUID databaseId,
+            Boolean readOnly,
+            Integer totalConnections,
+            Integer activeConnections,
+            Integer idleConnections,
+            Integer threadsAwaitingConnection,
+            Long borrowCount,
+            Double averageWaitMillis,
+            Double maxWaitMillis
+    ) {
+    }
+}
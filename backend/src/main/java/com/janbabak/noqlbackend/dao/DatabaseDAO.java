@@ -1,35 +1,36 @@
 package com.janbabak.noqlbackend.dao;
 
+import com.janbabak.noqlbackend.config.QueryExecutionConfig;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.model.entity.Database;
-import com.janbabak.noqlbackend.service.database.DatabaseCredentialsEncryptionService;
-import lombok.Data;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Service;
 
 import java.sql.*;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Database data access object.<br />
- * Used to query user's databases.
+ * Used to query user's databases. One instance handles one database, its state is immutable and each query borrows
+ * its own connection, so the instance can be shared by concurrent requests.
+ * Instances are created by the {@link com.janbabak.noqlbackend.service.database.DatabaseServiceFactory}.
  */
 @Slf4j
-@Data
-@Service
-@Scope("prototype") // because we need a new instance for each database (metadata is stored in the instance)
 @RequiredArgsConstructor
 public abstract class DatabaseDAO {
 
-    private final DatabaseCredentialsEncryptionService encryptionService;
-
+    @Getter
     @Accessors(fluent = true)
-    protected Database databaseMetadata = null;
+    protected final Database databaseMetadata;
 
-    protected Connection connection = null;
+    private final ConnectionPoolManager connectionPoolManager;
+    private final QueryExecutionConfig queryExecutionConfig;
+    private final QueryMetrics queryMetrics;
+    private final QueryRegistry queryRegistry;
 
     /**
      * Retrieve database schemas, tables columns and primary keys.
@@ -51,7 +52,31 @@ public abstract class DatabaseDAO {
     public abstract ResultSetWrapper getForeignKeys() throws DatabaseConnectionException, DatabaseExecutionException;
 
     /**
-     * Query the database.
+     * Retrieve fingerprint of the database schema - cheap checksum of tables, columns and constraints that changes
+     * when the schema changes.
+     *
+     * @return query result with one row and the fingerprint column
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    public abstract ResultSetWrapper getSchemaFingerprint()
+            throws DatabaseConnectionException, DatabaseExecutionException;
+
+    /**
+     * Retrieve version of the data - cheap token that changes when rows of any table are inserted, updated or
+     * deleted. Engines without such token return null, results computed from their data can't be cached.
+     *
+     * @return query result with one row and the data_version column, null if the engine doesn't provide it
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    public ResultSetWrapper getDataVersion() throws DatabaseConnectionException, DatabaseExecutionException {
+        return null;
+    }
+
+    /**
+     * Query the database. The statement is forward-only and read-only, its fetch size, maximum number of rows and
+     * timeout are taken from the database or from the default configuration.
      *
      * @param query query string
      * @return query result
@@ -59,71 +84,140 @@ public abstract class DatabaseDAO {
      * @throws DatabaseExecutionException  query execution failed (syntax error)
      */
     public ResultSetWrapper query(String query) throws DatabaseConnectionException, DatabaseExecutionException {
-        connect(true);
+        final Connection connection = connect(true);
 
         try {
             log.info("Execute read-only query={}.", query);
-            final Statement statement = connection.createStatement();
-            final ResultSet resultSet = statement.executeQuery(query);
-            return new ResultSetWrapper(resultSet, () -> {
-                try {
-                    disconnect();
-                    statement.close();
-                    resultSet.close();
-                } catch (SQLException e) {
-                    log.error("Error while closing statement and result set - message={}.", e.getMessage());
-                }
-            });
+            final Statement statement =
+                    connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            configureStatement(statement);
+            return execute(statement, connection, query, () -> statement.executeQuery(query));
         } catch (SQLException e) {
+            disconnect(connection); // otherwise the connection would never be returned to the pool
             throw new DatabaseExecutionException(e.getMessage(), e);
         }
     }
 
     /**
-     * Update the database. Not read-only connection.
+     * Query the database using prepared statement.
+     *
+     * @param query      query string with {@code ?} placeholders
+     * @param parameters values of the placeholders (strings, numbers, ...)
+     * @return query result
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    public ResultSetWrapper query(String query, List<Object> parameters)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        final Connection connection = connect(true);
+
+        try {
+            log.info("Execute read-only query={}, parameters={}.", query, parameters);
+            final PreparedStatement statement =
+                    connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            configureStatement(statement);
+            for (int i = 0; i < parameters.size(); i++) {
+                setParameter(statement, i + 1, parameters.get(i));
+            }
+            return execute(statement, connection, query, statement::executeQuery);
+        } catch (SQLException e) {
+            disconnect(connection); // otherwise the connection would never be returned to the pool
+            throw new DatabaseExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Query system catalogs of the database (schema, foreign keys, fingerprint). Maximum number of rows and timeout
+     * of the database are meant for queries of the users and would truncate the schema, so the statement has no row
+     * limit and the default timeout of the configuration.
      *
      * @param query query string
+     * @return query result
      * @throws DatabaseConnectionException cannot establish connection with the database
      * @throws DatabaseExecutionException  query execution failed (syntax error)
      */
-    /* default */ void updateDatabase(String query) throws DatabaseConnectionException, DatabaseExecutionException {
+    protected ResultSetWrapper queryMetadata(String query)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        final Connection connection = connect(true);
+
         try {
-            connect(false);
-            log.info("Execute query={}.", query);
-            final Statement statement = connection.createStatement();
-            statement.executeUpdate(query);
-            statement.close();
+            log.debug("Execute read-only metadata query={}.", query);
+            final Statement statement =
+                    connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            setFetchSize(statement, queryExecutionConfig.getFetchSize());
+            statement.setQueryTimeout((int) queryExecutionConfig.getQueryTimeout().toSeconds());
+            return execute(statement, connection, query, () -> statement.executeQuery(query));
         } catch (SQLException e) {
+            disconnect(connection); // otherwise the connection would never be returned to the pool
             throw new DatabaseExecutionException(e.getMessage(), e);
-        } finally {
-            disconnect();
         }
     }
 
     /**
-     * Test connection to database.
+     * Query the database and read the result by a cursor. Read-only connections don't auto-commit, so the rows are
+     * fetched in batches of the fetch size instead of being loaded at once. Timeout of the database and of its owner
+     * applies as to the other queries.
      *
+     * @param query     query string
+     * @param fetchSize number of rows fetched from the database at once
+     * @param maxRows   maximum number of rows of the result, 0 means unlimited
+     * @return query result, forward-only
      * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
      */
-    public void testConnection() throws DatabaseConnectionException {
-        connect(true);
+    public ResultSetWrapper queryWithCursor(String query, int fetchSize, int maxRows)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        final Connection connection = connect(true);
 
-        if (connection == null) {
-            throw new DatabaseConnectionException();
+        try {
+            log.info("Execute read-only query with cursor={}.", query);
+            final Statement statement =
+                    connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            setFetchSize(statement, fetchSize);
+            statement.setMaxRows(maxRows);
+            statement.setQueryTimeout(getQueryTimeoutSeconds());
+            return execute(statement, connection, query, () -> statement.executeQuery(query));
+        } catch (SQLException e) {
+            disconnect(connection); // otherwise the connection would never be returned to the pool
+            throw new DatabaseExecutionException(e.getMessage(), e);
         }
     }
 
     /**
-     * Close connection to the database.
+     * Update the database. Not read-only connection.
+     *
+     * @param query query string
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
      */
-    public void disconnect() {
-        if (this.connection == null) {
-            return;
+    /* default */ void updateDatabase(String query) throws DatabaseConnectionException, DatabaseExecutionException {
+        final Connection connection = connect(false);
+        try (Statement statement = connection.createStatement()) {
+            log.info("Execute query={}.", query);
+            statement.executeUpdate(query);
+        } catch (SQLException e) {
+            throw new DatabaseExecutionException(e.getMessage(), e);
+        } finally {
+            disconnect(connection);
         }
-        try {
-            this.connection.close();
+    }
+
+    /**
+     * Test connection to database.
+     *
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     */
+    public void testConnection() throws DatabaseConnectionException {
+        // bypass the pool to verify that new connection can be established with the current credentials
+        try (Connection ignored =
+                     connectionPoolManager.getUnpooledConnection(databaseMetadata, createConnectionUrl(), true)) {
+            log.debug("Connection to database id={} established.", databaseMetadata.getId());
         } catch (SQLException e) {
-            log.error("Error while disconnecting from database - message={}.", e.getMessage());
+            log.error("Error while connecting to database - message={}.", e.getMessage());
+            throw new DatabaseConnectionException(e.getMessage(), e);
         }
     }
 
@@ -135,22 +229,143 @@ public abstract class DatabaseDAO {
     protected abstract String createConnectionUrl();
 
     /**
-     * Connect to the database.
+     * Borrow connection from the pool of the database.
      *
      * @param readOnly if true, the connection is read-only
+     * @return connection, must be returned by {@link #disconnect(Connection)}
      * @throws DatabaseConnectionException cannot establish connection with the database
      */
-    protected void connect(Boolean readOnly) throws DatabaseConnectionException {
+    protected Connection connect(Boolean readOnly) throws DatabaseConnectionException {
         try {
-            connection = DriverManager.getConnection(
-                    createConnectionUrl(),
-                    databaseMetadata.getUserName(),
-                    encryptionService.decryptCredentials(databaseMetadata.getPassword()));
-            connection.setReadOnly(readOnly);
-            connection.setAutoCommit(!readOnly);
+            return connectionPoolManager.getConnection(databaseMetadata, createConnectionUrl(), readOnly);
         } catch (SQLException e) {
             log.error("Error while connecting to database - message={}.", e.getMessage());
             throw new DatabaseConnectionException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Set value of the prepared statement parameter. Numbers are bound with their type, so they are compared with
+     * the column exactly (e.g. decimal column of MySQL compared with a string is converted to double).
+     *
+     * @param statement prepared statement
+     * @param index     parameter index (starting from 1)
+     * @param value     value of the parameter
+     * @throws SQLException cannot set the parameter
+     */
+    protected void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
+        statement.setObject(index, value);
+    }
+
+    /**
+     * Set fetch size, maximum number of rows and timeout of the statement. Values of the database override the
+     * default configuration, timeout of the database owner limits the timeout further.
+     *
+     * @param statement statement
+     * @throws SQLException cannot configure the statement
+     */
+    private void configureStatement(Statement statement) throws SQLException {
+        setFetchSize(statement, Objects.requireNonNullElse(
+                databaseMetadata.getFetchSize(), queryExecutionConfig.getFetchSize()));
+        statement.setMaxRows(Objects.requireNonNullElse(
+                databaseMetadata.getMaxRows(), queryExecutionConfig.getMaxRows()));
+        statement.setQueryTimeout(getQueryTimeoutSeconds());
+    }
+
+    /**
+     * @return timeout of queries in seconds, 0 means unlimited
+     */
+    private int getQueryTimeoutSeconds() {
+        final int timeout = databaseMetadata.getQueryTimeoutSeconds() != null
+                ? databaseMetadata.getQueryTimeoutSeconds()
+                : (int) queryExecutionConfig.getQueryTimeout().toSeconds();
+        final Integer userTimeout = databaseMetadata.getUser() != null
+                ? databaseMetadata.getUser().getQueryTimeoutSeconds()
+                : null;
+
+        if (userTimeout != null && (timeout == 0 || userTimeout < timeout)) {
+            return userTimeout;
+        }
+        return timeout;
+    }
+
+    /**
+     * Execute the statement registered in the {@link QueryRegistry}, so it can be cancelled while it runs.
+     *
+     * @param statement  statement
+     * @param connection connection of the statement
+     * @param query      query string
+     * @param execution  execution of the statement
+     * @return query result
+     * @throws SQLException query execution failed
+     */
+    private ResultSetWrapper execute(Statement statement, Connection connection, String query, Execution execution)
+            throws SQLException {
+
+        final QueryRegistry.RunningQuery runningQuery = queryRegistry.register(statement, databaseMetadata, query);
+        try {
+            return wrapResultSet(execution.execute(), statement, connection, runningQuery);
+        } catch (SQLException e) {
+            queryRegistry.unregister(runningQuery);
+            throw e;
+        }
+    }
+
+    /**
+     * Set number of rows fetched from the database at once.
+     *
+     * @param statement statement
+     * @param fetchSize number of rows
+     * @throws SQLException cannot set the fetch size
+     */
+    protected void setFetchSize(Statement statement, int fetchSize) throws SQLException {
+        statement.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Wrap result set, so that the statement and connection are closed together with the result set. Read rows and
+     * bytes are recorded to the query metrics and the statement is removed from the registry when the result set is
+     * closed.
+     */
+    private ResultSetWrapper wrapResultSet(
+            ResultSet resultSet,
+            Statement statement,
+            Connection connection,
+            QueryRegistry.RunningQuery runningQuery) {
+
+        final MeteredResultSet meteredResultSet = new MeteredResultSet(resultSet);
+        return new ResultSetWrapper(meteredResultSet.getProxy(), () -> {
+            queryRegistry.unregister(runningQuery);
+            meteredResultSet.recordTo(queryMetrics);
+            try {
+                resultSet.close();
+                statement.close();
+            } catch (SQLException e) {
+                log.error("Error while closing statement and result set - message={}.", e.getMessage());
+            } finally {
+                disconnect(connection); // return the connection to the pool after its statement is closed
+            }
+        });
+    }
+
+    /**
+     * Execution of a statement.
+     */
+    @FunctionalInterface
+    private interface Execution {
+        ResultSet execute() throws SQLException;
+    }
+
+    /**
+     * Close connection to the database (pooled connection is returned to the pool).
+     *
+     * @param connection connection to close
+     */
+    protected void disconnect(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.error("Error while disconnecting from database - message={}.", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package com.janbabak.noqlbackend.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+
+/**
+ * Counts rows and estimates bytes read from a result set. The result set is wrapped by a proxy, so the callers
+ * use it as usual.
+ */
+/* default */ class MeteredResultSet implements InvocationHandler {
+
+    private final ResultSet resultSet;
+    private long rows = 0;
+    private long bytes = 0;
+    private boolean recorded = false;
+
+    /* default */ MeteredResultSet(ResultSet resultSet) {
+        this.resultSet = resultSet;
+    }
+
+    /**
+     * @return result set that counts the read rows and values
+     */
+    /* default */ ResultSet getProxy() {
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, this);
+    }
+
+    /**
+     * Record the counted rows and bytes, only the first call is recorded.
+     *
+     * @param metrics metrics of queries
+     */
+    /* default */ void recordTo(QueryMetrics metrics) {
+        if (recorded) {
+            return;
+        }
+        recorded = true;
+        metrics.record(rows, bytes);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        final Object result;
+        try {
+            result = method.invoke(resultSet, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        switch (method.getName()) {
+            case "next" -> {
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                }
+            }
+            case "getString", "getNString" -> bytes += result != null ? ((String) result).length() : 0;
+            case "getBytes" -> bytes += result != null ? ((byte[]) result).length : 0;
+            case "getLong", "getDouble", "getTimestamp", "getDate", "getTime" -> bytes += 8;
+            case "getInt", "getFloat" -> bytes += 4;
+            case "getShort" -> bytes += 2;
+            case "getBoolean", "getByte" -> bytes += 1;
+            default -> {
+            }
+        }
+        return result;
+    }
+}
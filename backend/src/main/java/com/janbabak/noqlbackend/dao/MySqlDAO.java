@@ -1,14 +1,18 @@
 package com.janbabak.noqlbackend.dao;
 
+import com.janbabak.noqlbackend.config.QueryExecutionConfig;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
-import com.janbabak.noqlbackend.service.database.DatabaseCredentialsEncryptionService;
-import org.springframework.stereotype.Service;
+import com.janbabak.noqlbackend.model.entity.Database;
 
-@Service
 public class MySqlDAO extends DatabaseDAO {
-    public MySqlDAO(DatabaseCredentialsEncryptionService encryptionService) {
-        super(encryptionService);
+    public MySqlDAO(
+            Database databaseMetadata,
+            ConnectionPoolManager connectionPoolManager,
+            QueryExecutionConfig queryExecutionConfig,
+            QueryMetrics queryMetrics,
+            QueryRegistry queryRegistry) {
+        super(databaseMetadata, connectionPoolManager, queryExecutionConfig, queryMetrics, queryRegistry);
     }
 
     /**
@@ -56,7 +60,7 @@ public class MySqlDAO extends DatabaseDAO {
                     c.ORDINAL_POSITION;
                 """;
 
-        return query(select);
+        return queryMetadata(select);
     }
 
     /**
@@ -103,17 +107,52 @@ public class MySqlDAO extends DatabaseDAO {
                         
                 """;
 
-        return query(select);
+        return queryMetadata(select);
     }
 
     /**
-     * Create connection URL for specific database engine.
+     * Retrieve fingerprint of the database schema - number and checksum of columns and key columns.<br />
+     * Returned columns:<br />
+     * <ul>
+     *     <li>fingerprint e.g. 86-184467440737:15-60324771</li>
+     * </ul>
+     *
+     * @return query result
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    @Override
+    @SuppressWarnings("all") // IDE can't see the columns
+    public ResultSetWrapper getSchemaFingerprint() throws DatabaseConnectionException, DatabaseExecutionException {
+        // language=SQL
+        String select = """
+                SELECT CONCAT_WS(':',
+                    (SELECT
+                        CONCAT(COUNT(*), '-', COALESCE(SUM(CRC32(CONCAT_WS(',',
+                            TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, DATA_TYPE, COLUMN_KEY))), 0))
+                     FROM information_schema.COLUMNS
+                     WHERE TABLE_SCHEMA NOT IN ('information_schema', 'mysql', 'performance_schema', 'sys')),
+                    (SELECT
+                        CONCAT(COUNT(*), '-', COALESCE(SUM(CRC32(CONCAT_WS(',',
+                            TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, CONSTRAINT_NAME,
+                            REFERENCED_TABLE_SCHEMA, REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME))), 0))
+                     FROM information_schema.KEY_COLUMN_USAGE
+                     WHERE TABLE_SCHEMA NOT IN ('information_schema', 'mysql', 'performance_schema', 'sys'))
+                ) AS fingerprint;
+                """;
+
+        return queryMetadata(select);
+    }
+
+    /**
+     * Create connection URL for specific database engine. MySQL driver loads the whole result unless the cursor
+     * fetch is enabled, with it, rows are fetched in batches of the fetch size.
      *
      * @return connection URL
      */
     @Override
     protected String createConnectionUrl() {
-        return "jdbc:mysql://%s:%d/%s"
+        return "jdbc:mysql://%s:%d/%s?useCursorFetch=true"
                 .formatted(databaseMetadata.getHost(), databaseMetadata.getPort(), databaseMetadata.getDatabase());
     }
 }
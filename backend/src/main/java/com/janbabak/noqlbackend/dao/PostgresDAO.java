@@ -1,15 +1,23 @@
 package com.janbabak.noqlbackend.dao;
 
+import com.janbabak.noqlbackend.config.QueryExecutionConfig;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
-import com.janbabak.noqlbackend.service.database.DatabaseCredentialsEncryptionService;
-import org.springframework.stereotype.Service;
+import com.janbabak.noqlbackend.model.entity.Database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
 
-@Service
 public class PostgresDAO extends DatabaseDAO {
 
-    public PostgresDAO(DatabaseCredentialsEncryptionService encryptionService) {
-        super(encryptionService);
+    public PostgresDAO(
+            Database databaseMetadata,
+            ConnectionPoolManager connectionPoolManager,
+            QueryExecutionConfig queryExecutionConfig,
+            QueryMetrics queryMetrics,
+            QueryRegistry queryRegistry) {
+        super(databaseMetadata, connectionPoolManager, queryExecutionConfig, queryMetrics, queryRegistry);
     }
 
     /**
@@ -55,7 +63,7 @@ public class PostgresDAO extends DatabaseDAO {
                     ordinal_position;
                 """;
 
-        return query(select);
+        return queryMetadata(select);
     }
 
     /**
@@ -84,7 +92,78 @@ public class PostgresDAO extends DatabaseDAO {
                 ORDER  BY conrelid::regclass::text, contype DESC;
                 """;
 
-        return query(select);
+        return queryMetadata(select);
+    }
+
+    /**
+     * Retrieve fingerprint of the database schema. Rows of the system catalogs get a new transaction id (xmin)
+     * when they are changed by DDL statements, so the number of rows and the sum of their transaction ids
+     * changes when a table, column or constraint is created, altered or dropped.<br />
+     * Returned columns:<br />
+     * <ul>
+     *     <li>fingerprint e.g. 12-48310:86-241455:15-60324</li>
+     * </ul>
+     *
+     * @return query result
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    @Override
+    @SuppressWarnings("all") // IDE can't see the columns
+    public ResultSetWrapper getSchemaFingerprint() throws DatabaseConnectionException, DatabaseExecutionException {
+        // language=SQL
+        String select = """
+                SELECT concat_ws(':',
+                                 (SELECT count(*) || '-' || coalesce(sum(class.xmin::text::bigint), 0)
+                                  FROM pg_class AS class
+                                           JOIN pg_namespace AS namespace ON namespace.oid = class.relnamespace
+                                  WHERE class.relkind IN ('r', 'p')
+                                    AND namespace.nspname NOT LIKE 'pg_%'
+                                    AND namespace.nspname != 'information_schema'),
+                                 (SELECT count(*) || '-' || coalesce(sum(attribute.xmin::text::bigint), 0)
+                                  FROM pg_attribute AS attribute
+                                           JOIN pg_class AS class ON class.oid = attribute.attrelid
+                                           JOIN pg_namespace AS namespace ON namespace.oid = class.relnamespace
+                                  WHERE class.relkind IN ('r', 'p')
+                                    AND attribute.attnum > 0
+                                    AND namespace.nspname NOT LIKE 'pg_%'
+                                    AND namespace.nspname != 'information_schema'),
+                                 (SELECT count(*) || '-' || coalesce(sum(xmin::text::bigint), 0)
+                                  FROM pg_constraint
+                                  WHERE contype IN ('p', 'f'))) AS fingerprint;
+                """;
+
+        return queryMetadata(select);
+    }
+
+    /**
+     * Retrieve version of the data from the cumulative statistics of the tables - numbers of inserted, updated and
+     * deleted rows. Statistics are reported by other sessions with a delay of about a second, and they are not
+     * collected when {@code track_counts} is off, in that case null is returned.<br />
+     * Returned columns:<br />
+     * <ul>
+     *     <li>data_version e.g. 0b5c4c1bd3a2b0f0d46ba3e29c2d8f1e</li>
+     * </ul>
+     *
+     * @return query result
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    @Override
+    @SuppressWarnings("all") // IDE can't see the columns
+    public ResultSetWrapper getDataVersion() throws DatabaseConnectionException, DatabaseExecutionException {
+        // language=SQL
+        String select = """
+                SELECT CASE
+                           WHEN current_setting('track_counts') = 'on'
+                               THEN md5(string_agg(
+                                   concat_ws('-', relid, n_tup_ins, n_tup_upd, n_tup_del, n_live_tup),
+                                   ':' ORDER BY relid))
+                           END AS data_version
+                FROM pg_stat_user_tables;
+                """;
+
+        return queryMetadata(select);
     }
 
     /**
@@ -97,4 +176,14 @@ public class PostgresDAO extends DatabaseDAO {
         return "jdbc:postgresql://%s:%d/%s"
                 .formatted(databaseMetadata.getHost(), databaseMetadata.getPort(), databaseMetadata.getDatabase());
     }
+
+    /**
+     * Set value of the prepared statement parameter as untyped literal, so that Postgres infers its type from the
+     * compared column (string parameter compared with integer column would fail otherwise, and numeric parameter
+     * compared with integer column would not use the index). Text of numbers is exact, so no precision is lost.
+     */
+    @Override
+    protected void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
+        statement.setObject(index, value != null ? value.toString() : null, Types.OTHER);
+    }
 }
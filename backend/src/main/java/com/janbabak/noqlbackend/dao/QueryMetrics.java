@@ -0,0 +1,69 @@
+package com.janbabak.noqlbackend.dao;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Numbers of rows and bytes read from the user's databases. Bytes are estimated from the values read by the
+ * application (length of strings, size of primitive types), the size of the network traffic isn't known.
+ */
+@Component
+public class QueryMetrics {
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder rowsFetched = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final AtomicLong maxRowsPerQuery = new AtomicLong();
+    private final AtomicLong maxBytesPerQuery = new AtomicLong();
+
+    /**
+     * Record closed result.
+     *
+     * @param rows  number of fetched rows
+     * @param bytes estimated number of read bytes
+     */
+    public void record(long rows, long bytes) {
+        queries.increment();
+        rowsFetched.add(rows);
+        bytesRead.add(bytes);
+        maxRowsPerQuery.accumulateAndGet(rows, Math::max);
+        maxBytesPerQuery.accumulateAndGet(bytes, Math::max);
+    }
+
+    public QueryStatistics getStatistics() {
+        final long queryCount = queries.sum();
+        final long rows = rowsFetched.sum();
+        final long bytes = bytesRead.sum();
+        return new QueryStatistics(
+                queryCount,
+                rows,
+                bytes,
+                queryCount == 0 ? 0.0 : (double) rows / queryCount,
+                queryCount == 0 ? 0.0 : (double) bytes / queryCount,
+                maxRowsPerQuery.get(),
+                maxBytesPerQuery.get());
+    }
+
+    /**
+     * Statistics of the queries executed in the user's databases.
+     *
+     * @param queries              number of read results
+     * @param rowsFetched          total number of fetched rows
+     * @param bytesRead            total estimated number of read bytes
+     * @param averageRowsPerQuery  average number of rows of one result
+     * @param averageBytesPerQuery average number of bytes of one result
+     * @param maxRowsPerQuery      maximum number of rows of one result
+     * @param maxBytesPerQuery     maximum number of bytes of one result
+     */
+    public record QueryStatistics(
+            Long queries,
+            Long rowsFetched,
+            Long bytesRead,
+            Double averageRowsPerQuery,
+            Double averageBytesPerQuery,
+            Long maxRowsPerQuery,
+            Long maxBytesPerQuery) {
+    }
+}
@@ -0,0 +1,196 @@
+package com.janbabak.noqlbackend.dao;
+
+import com.janbabak.noqlbackend.model.entity.Database;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of statements running in the user's databases. Each statement is registered before it is executed and
+ * removed when its result is closed, so it can be cancelled by {@link Statement#cancel()} (the drivers send cancel
+ * request of PostgreSQL or {@code KILL QUERY} of MySQL) when the client doesn't wait for it anymore.<br />
+ * Statements can be grouped by a scope (e.g. one LLM conversation turn) bound to the executing thread by
+ * {@link #openScope(UUID)}, so all statements of the scope can be cancelled at once.
+ */
+@Slf4j
+@Component
+public class QueryRegistry {
+
+    private static final int MAX_DISPLAYED_QUERY_LENGTH = 1000;
+
+    private final Map<UUID, RunningQuery> runningQueries = new ConcurrentHashMap<>();
+    private final ThreadLocal<UUID> currentScope = new ThreadLocal<>();
+
+    /**
+     * Register statement before its execution.
+     *
+     * @param statement statement to register
+     * @param database  queried database
+     * @param query     query string
+     * @return registration, must be passed to {@link #unregister(RunningQuery)} when the result is closed
+     */
+    public RunningQuery register(Statement statement, Database database, String query) {
+        final RunningQuery runningQuery = new RunningQuery(
+                UUID.randomUUID(),
+                database.getId(),
+                database.getUser() != null ? database.getUser().getId() : null,
+                currentScope.get(),
+                query,
+                Instant.now(),
+                statement);
+        runningQueries.put(runningQuery.id(), runningQuery);
+        return runningQuery;
+    }
+
+    /**
+     * Remove finished statement.
+     *
+     * @param runningQuery registration
+     */
+    public void unregister(RunningQuery runningQuery) {
+        runningQueries.remove(runningQuery.id());
+    }
+
+    /**
+     * Cancel running statement of the database.
+     *
+     * @param databaseId database identifier
+     * @param queryId    identifier of the running query
+     * @return true if the query was running and has been cancelled
+     */
+    public boolean cancel(UUID databaseId, UUID queryId) {
+        final RunningQuery runningQuery = runningQueries.get(queryId);
+        if (runningQuery == null || !Objects.equals(runningQuery.databaseId(), databaseId)) {
+            return false;
+        }
+        return cancel(runningQuery);
+    }
+
+    /**
+     * Cancel all running statements of the scope.
+     *
+     * @param scope scope identifier
+     * @return number of cancelled statements
+     */
+    public int cancelScope(UUID scope) {
+        if (scope == null) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (final RunningQuery runningQuery : runningQueries.values()) {
+            if (scope.equals(runningQuery.scope()) && cancel(runningQuery)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Get statements running in the database.
+     *
+     * @param databaseId database identifier
+     * @return running queries ordered by their start, the oldest first
+     */
+    public List<RunningQueryInfo> getRunningQueries(UUID databaseId) {
+        final Instant now = Instant.now();
+        return runningQueries.values().stream()
+                .filter(runningQuery -> Objects.equals(runningQuery.databaseId(), databaseId))
+                .sorted(Comparator.comparing(RunningQuery::startedAt))
+                .map(runningQuery -> new RunningQueryInfo(
+                        runningQuery.id(),
+                        runningQuery.userId(),
+                        abbreviate(runningQuery.query()),
+                        runningQuery.startedAt(),
+                        Duration.between(runningQuery.startedAt(), now).toMillis()))
+                .toList();
+    }
+
+    /**
+     * Bind scope to the current thread, statements registered by the thread belong to the scope until the returned
+     * object is closed.
+     *
+     * @param scope scope identifier
+     * @return closeable that restores the previous scope of the thread
+     */
+    public Scope openScope(UUID scope) {
+        final UUID previousScope = currentScope.get();
+        currentScope.set(scope);
+        return () -> {
+            if (previousScope == null) {
+                currentScope.remove();
+            } else {
+                currentScope.set(previousScope);
+            }
+        };
+    }
+
+    private boolean cancel(RunningQuery runningQuery) {
+        try {
+            log.info("Cancel query id={}, database_id={}.", runningQuery.id(), runningQuery.databaseId());
+            runningQuery.statement().cancel();
+            return true;
+        } catch (SQLException e) {
+            // the statement may have finished in the meantime
+            log.warn("Cannot cancel query id={} - message={}.", runningQuery.id(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static String abbreviate(String query) {
+        return query.length() <= MAX_DISPLAYED_QUERY_LENGTH
+                ? query
+                : query.substring(0, MAX_DISPLAYED_QUERY_LENGTH) + "...";
+    }
+
+    /**
+     * Scope bound to the thread.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Registered statement.
+     *
+     * @param id         identifier of the query
+     * @param databaseId queried database
+     * @param userId     owner of the database
+     * @param scope      scope of the executing thread or null
+     * @param query      query string
+     * @param startedAt  time of the registration
+     * @param statement  executed statement
+     */
+    public record RunningQuery(
+            UUID id,
+            UUID databaseId,
+            UUID userId,
+            UUID scope,
+            String query,
+            Instant startedAt,
+            Statement statement) {
+    }
+
+    /**
+     * Information about running query.
+     *
+     * @param id             identifier of the query, used to cancel it
+     * @param userId         owner of the database
+     * @param query          query string, long queries are abbreviated
+     * @param startedAt      start of the execution
+     * @param durationMillis duration of the execution so far
+     */
+    public record RunningQueryInfo(
+            UUID id,
+            UUID userId,
+            String query,
+            Instant startedAt,
+            Long durationMillis) {
+    }
+}
@@ -1,6 +1,9 @@
 package com.janbabak.noqlbackend.dao;
 
+import lombok.extern.slf4j.Slf4j;
+
 import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
  * Used because in some cases ResultSet object needs to be returned without closing the connection with database.
@@ -10,11 +13,24 @@ import java.sql.ResultSet;
  * @param resultSet       ResultSet from the query
  * @param closeConnection Should close are resources including the resultSet, connection, statement, ...
  */
+@Slf4j
 public record ResultSetWrapper(
         ResultSet resultSet,
         Runnable closeConnection
 ) implements AutoCloseable {
 
+    /**
+     * Cancel the statement of the result set, e.g. when the client stopped reading the result. The result set must
+     * still be closed.
+     */
+    public void cancel() {
+        try {
+            resultSet.getStatement().cancel();
+        } catch (SQLException e) {
+            log.warn("Cannot cancel statement - message={}.", e.getMessage());
+        }
+    }
+
     @Override
     public void close() {
         closeConnection.run();
@@ -3,6 +3,8 @@ package com.janbabak.noqlbackend.dao.repository;
 import com.janbabak.noqlbackend.model.entity.Chat;
 import com.janbabak.noqlbackend.model.entity.Database;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -20,4 +22,20 @@ public interface ChatRepository extends JpaRepository<Chat, UUID> {
      * @return list of chats associated with specified database.
      */
     List<Chat> findAllByDatabaseOrderByModificationDateDesc(Database database);
+
+    /**
+     * Find identifiers of all chats associated with a database.
+     * @param databaseId database identifier
+     * @return list of chat identifiers
+     */
+    @Query("SELECT c.id FROM Chat c WHERE c.database.id = :databaseId")
+    List<UUID> findAllIdsByDatabaseId(@Param("databaseId") UUID databaseId);
+
+    /**
+     * Find identifiers of all chats associated with databases of a user.
+     * @param userId user identifier
+     * @return list of chat identifiers
+     */
+    @Query("SELECT c.id FROM Chat c WHERE c.database.user.id = :userId")
+    List<UUID> findAllIdsByUserId(@Param("userId") UUID userId);
 }
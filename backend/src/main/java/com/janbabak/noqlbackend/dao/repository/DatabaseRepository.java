@@ -22,4 +22,12 @@ public interface DatabaseRepository extends JpaRepository<Database, UUID> {
      */
     @Query("SELECT d FROM Database d WHERE d.user.id = :userId")
     List<Database> findAllByUserId(@Param("userId") UUID userId);
+
+    /**
+     * Find identifiers of all databases owned by user.
+     * @param userId user identifier
+     * @return list of database identifiers
+     */
+    @Query("SELECT d.id FROM Database d WHERE d.user.id = :userId")
+    List<UUID> findAllIdsByUserId(@Param("userId") UUID userId);
 }
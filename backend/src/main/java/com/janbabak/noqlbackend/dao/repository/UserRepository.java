@@ -2,7 +2,11 @@ package com.janbabak.noqlbackend.dao.repository;
 
 import com.janbabak.noqlbackend.model.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -10,4 +14,25 @@ import java.util.UUID;
 @Repository
 public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByEmail(String email);
+
+    /**
+     * Decrement query limit of the user if it is positive. The condition is evaluated by the database, so concurrent
+     * decrements are not lost.
+     * @param userId user identifier
+     * @return number of updated users - 1 if the limit was decremented, 0 if it is exhausted or user doesn't exist
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.queryLimit = u.queryLimit - 1 WHERE u.id = :userId AND u.queryLimit > 0")
+    int decrementQueryLimitIfPositive(@Param("userId") UUID userId);
+
+    /**
+     * Increment query limit of the user.
+     * @param userId user identifier
+     * @return number of updated users
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.queryLimit = u.queryLimit + 1 WHERE u.id = :userId")
+    int incrementQueryLimit(@Param("userId") UUID userId);
 }
@@ -30,7 +30,8 @@ public class EntityNotFoundException extends Exception {
         CHAT("Chat"),
         CUSTOM_MODEL("Custom Model"),
         USER("User"),
-        MESSAGE("Message");
+        MESSAGE("Message"),
+        QUERY("Query");
 
         public final String label;
 
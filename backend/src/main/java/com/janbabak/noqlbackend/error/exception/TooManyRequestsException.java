@@ -0,0 +1,22 @@
+package com.janbabak.noqlbackend.error.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Request rejected because of too many concurrent requests, the client should retry later.
+ */
+@Getter
+public class TooManyRequestsException extends Exception {
+
+    /**
+     * Estimated time after which the request may be admitted.
+     */
+    private final Duration retryAfter;
+
+    public TooManyRequestsException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
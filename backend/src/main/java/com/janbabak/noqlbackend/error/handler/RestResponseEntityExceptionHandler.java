@@ -1,7 +1,9 @@
 package com.janbabak.noqlbackend.error.handler;
 
 import com.janbabak.noqlbackend.error.exception.*;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -63,6 +65,21 @@ public class RestResponseEntityExceptionHandler {
         return errors;
     }
 
+    /**
+     * Too many requests - 429 <br />
+     * The request was rejected by admission control, Retry-After header contains number of seconds after which the
+     * client should retry it.
+     *
+     * @param e exception
+     * @return error message with the Retry-After header
+     */
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<String> handleTooManyRequestsException(TooManyRequestsException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(e.getMessage());
+    }
+
     /**
      * Internal server error - 500 <br />
      * The issue is on our side (SQL syntax error, ...) or LLM model side.
@@ -1,5 +1,7 @@
 package com.janbabak.noqlbackend.model;
 
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.query.TotalCountMode;
 import jakarta.annotation.PostConstruct;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,9 +17,18 @@ public class Settings {
     @Value("${app.settings.pagination.maxPageSize}")
     public Integer maxPageSize;
 
+    @Value("${app.settings.pagination.maxStreamingPageSize:1000}")
+    public Integer maxStreamingPageSize;
+
     @Value("${app.settings.pagination.defaultPageSize}")
     public Integer defaultPageSize;
 
+    @Value("${app.settings.pagination.totalCountModePostgres:WINDOW_FUNCTION}")
+    public TotalCountMode totalCountModePostgres;
+
+    @Value("${app.settings.pagination.totalCountModeMysql:SEPARATE_QUERY}")
+    public TotalCountMode totalCountModeMysql;
+
     @Value("${app.settings.plotServiceContainerName}")
     public String plotServiceContainerName;
 
@@ -35,7 +46,18 @@ public class Settings {
         return instance.maxPageSize;
     }
 
+    public static Integer getMaxStreamingPageSizeStatic() {
+        return instance.maxStreamingPageSize;
+    }
+
     public static Integer getDefaultPageSizeStatic() {
         return instance.defaultPageSize;
     }
+
+    public static TotalCountMode getTotalCountModeStatic(DatabaseEngine engine) {
+        return switch (engine) {
+            case POSTGRES -> instance.totalCountModePostgres;
+            case MYSQL -> instance.totalCountModeMysql;
+        };
+    }
 }
@@ -2,6 +2,7 @@ package com.janbabak.noqlbackend.model.database;
 
 import com.janbabak.noqlbackend.validation.FirstValidationGroup;
 import com.janbabak.noqlbackend.validation.SecondValidationGroup;
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -51,6 +52,27 @@ public class CreateDatabaseRequest {
     @NotNull(groups = FirstValidationGroup.class)
     private DatabaseEngine engine;
 
+    /**
+     * Number of rows fetched from the database at once, if null, the default configuration is used.
+     */
+    @Nullable
+    @Min(value = 1, groups = SecondValidationGroup.class)
+    private Integer fetchSize;
+
+    /**
+     * Maximum number of rows of a result, if null, the default configuration is used.
+     */
+    @Nullable
+    @Min(value = 1, groups = SecondValidationGroup.class)
+    private Integer maxRows;
+
+    /**
+     * Maximum duration of a query in seconds, if null, the default configuration is used.
+     */
+    @Nullable
+    @Min(value = 1, groups = SecondValidationGroup.class)
+    private Integer queryTimeoutSeconds;
+
     @NotNull(groups = FirstValidationGroup.class)
     private UUID userId;
 
@@ -46,4 +46,25 @@ public class UpdateDatabaseRequest {
 
     @Nullable
     private DatabaseEngine engine;
+
+    /**
+     * Number of rows fetched from the database at once.
+     */
+    @Nullable
+    @Min(1)
+    private Integer fetchSize;
+
+    /**
+     * Maximum number of rows of a result.
+     */
+    @Nullable
+    @Min(1)
+    private Integer maxRows;
+
+    /**
+     * Maximum duration of a query in seconds.
+     */
+    @Nullable
+    @Min(1)
+    private Integer queryTimeoutSeconds;
 }
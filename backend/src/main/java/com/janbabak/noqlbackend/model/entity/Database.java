@@ -1,12 +1,14 @@
 package com.janbabak.noqlbackend.model.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.janbabak.noqlbackend.model.database.DatabaseEngine;
 import com.janbabak.noqlbackend.validation.FirstValidationGroup;
 import com.janbabak.noqlbackend.validation.SecondValidationGroup;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
+import jakarta.annotation.Nullable;
 import lombok.*;
 import org.hibernate.validator.constraints.Length;
 
@@ -62,6 +64,30 @@ public class Database {
     @NotNull(groups = FirstValidationGroup.class)
     private DatabaseEngine engine;
 
+    /**
+     * Number of rows fetched from the database at once, if null, the default configuration is used.
+     */
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Min(value = 1, groups = SecondValidationGroup.class)
+    private Integer fetchSize;
+
+    /**
+     * Maximum number of rows of a result, if null, the default configuration is used.
+     */
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Min(value = 1, groups = SecondValidationGroup.class)
+    private Integer maxRows;
+
+    /**
+     * Maximum duration of a query in seconds, if null, the default configuration is used.
+     */
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Min(value = 1, groups = SecondValidationGroup.class)
+    private Integer queryTimeoutSeconds;
+
     @JsonIgnore // to avoid infinite recursion or the creation of a DTO object
     @OneToMany(
             mappedBy = "database",
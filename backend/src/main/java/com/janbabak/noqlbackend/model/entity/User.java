@@ -1,6 +1,7 @@
 package com.janbabak.noqlbackend.model.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.janbabak.noqlbackend.model.Role;
 import com.janbabak.noqlbackend.model.user.RegisterRequest;
 import jakarta.persistence.*;
@@ -47,6 +48,13 @@ public class User implements UserDetails {
 
     private Integer queryLimit;
 
+    /**
+     * Maximum duration of queries in the user's databases in seconds, it limits timeouts of the databases.
+     * If null, only timeouts of the databases apply.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer queryTimeoutSeconds;
+
     @JsonIgnore
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Database> databases;
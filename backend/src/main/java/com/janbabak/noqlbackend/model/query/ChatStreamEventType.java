@@ -0,0 +1,43 @@
+package com.janbabak.noqlbackend.model.query;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Types (names) of server-sent events emitted by the streaming chat query.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ChatStreamEventType {
+    /**
+     * Next part of the description generated by the LLM, data: {@code {"token": "..."}}.
+     */
+    TOKEN("token"),
+
+    /**
+     * Database query generated by the LLM, emitted before the data, data: {@code {"dbQuery": "..."}}.
+     */
+    QUERY("query"),
+
+    /**
+     * First page of data retrieved by the generated query, data: {@link RetrievedData}.
+     */
+    DATA("data"),
+
+    /**
+     * Plot was generated, data: {@code {"plotUrl": "..."}}.
+     */
+    PLOT("plot"),
+
+    /**
+     * Final persisted message, the last event of a successful stream, data: {@link ChatResponse}.
+     */
+    MESSAGE("message"),
+
+    /**
+     * Request failed, the last event of an unsuccessful stream, data: {@link ChatResponse} with error message.
+     */
+    ERROR("error");
+
+    private final String eventName;
+}
@@ -0,0 +1,344 @@
+package com.janbabak.noqlbackend.model.query;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Rows of the query result stored by columns. Integer columns are stored in {@code long} arrays, boolean columns in
+ * bit sets and other columns as indexes to a dictionary of distinct values, nulls are stored in a bit set of each
+ * column. Cells are converted to strings only when they are
+ * read or serialized, so a page doesn't hold a string object per cell.<br />
+ * It is a read-only list of rows, rendered values are equal to {@link ResultSet#getString(int)} of the cells
+ * (strings are trimmed).
+ */
+@JsonSerialize(using = ColumnarRows.Serializer.class)
+public class ColumnarRows extends AbstractList<List<String>> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long OBJECT_OVERHEAD_BYTES = 16;
+
+    private final List<String> columnNames;
+    private final int[] columnTypes;
+    private final Column[] columns;
+    private int rowCount = 0;
+
+    private ColumnarRows(List<String> columnNames, int[] columnTypes, Column[] columns) {
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.columns = columns;
+    }
+
+    /**
+     * Create empty rows with columns of the types of the result set columns.
+     *
+     * @param resultSet   result of the query
+     * @param columnCount number of columns to read
+     * @return empty rows, filled by {@link #addRow(ResultSet)}
+     * @throws SQLException when the result set is not valid
+     */
+    public static ColumnarRows create(ResultSet resultSet, int columnCount) throws SQLException {
+        final ResultSetMetaData rsmd = resultSet.getMetaData();
+        final List<String> columnNames = new ArrayList<>(columnCount);
+        final int[] columnTypes = new int[columnCount];
+        final Column[] columns = new Column[columnCount];
+
+        for (int i = 1; i <= columnCount; i++) {
+            columnNames.add(rsmd.getColumnName(i));
+            columnTypes[i - 1] = rsmd.getColumnType(i);
+            columns[i - 1] = createColumn(rsmd, i);
+        }
+        return new ColumnarRows(Collections.unmodifiableList(columnNames), columnTypes, columns);
+    }
+
+    /**
+     * Read current row of the result set.
+     *
+     * @param resultSet result set positioned on the row
+     * @throws SQLException when the result set is not valid
+     */
+    public void addRow(ResultSet resultSet) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].read(resultSet, i + 1, rowCount);
+        }
+        rowCount++;
+    }
+
+    /**
+     * Release memory reserved for the next rows and indexes of the dictionaries, should be called after the last row
+     * is added.
+     *
+     * @return this
+     */
+    public ColumnarRows trimToSize() {
+        for (final Column column : columns) {
+            column.trimToSize(rowCount);
+        }
+        return this;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Get SQL type of the column.
+     *
+     * @param column column index
+     * @return type from {@link Types}
+     */
+    public int getColumnType(int column) {
+        return columnTypes[column];
+    }
+
+    /**
+     * Get cell rendered as string.
+     *
+     * @param row    row index
+     * @param column column index
+     * @return value or null
+     */
+    public String getValue(int row, int column) {
+        Objects.checkIndex(row, rowCount);
+        return columns[column].getValue(row);
+    }
+
+    /**
+     * Estimate number of bytes occupied by the rows.
+     */
+    public long estimateSize() {
+        long size = OBJECT_OVERHEAD_BYTES;
+        for (final Column column : columns) {
+            size += column.estimateSize();
+        }
+        return size;
+    }
+
+    @Override
+    public List<String> get(int index) {
+        Objects.checkIndex(index, rowCount);
+        return new Row(index);
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    private static Column createColumn(ResultSetMetaData rsmd, int index) throws SQLException {
+        return switch (rsmd.getColumnType(index)) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> new LongColumn();
+            // unsigned bigint may overflow long
+            case Types.BIGINT -> rsmd.isSigned(index) ? new LongColumn() : new StringColumn();
+            // floating point numbers keep the text of the driver (e.g. 1e+15 of PostgreSQL) like the streamed result,
+            // Double.toString renders them differently (1.0E15)
+            case Types.REAL, Types.FLOAT, Types.DOUBLE -> new StringColumn();
+            case Types.BOOLEAN -> new BooleanColumn();
+            case Types.BIT -> rsmd.getPrecision(index) <= 1 ? new BooleanColumn() : new StringColumn();
+            default -> new StringColumn();
+        };
+    }
+
+    /**
+     * View of one row.
+     */
+    private final class Row extends AbstractList<String> implements RandomAccess {
+        private final int index;
+
+        private Row(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String get(int column) {
+            return columns[column].getValue(index);
+        }
+
+        @Override
+        public int size() {
+            return columns.length;
+        }
+    }
+
+    /**
+     * Column of values, rows are added in order.
+     */
+    private abstract static class Column {
+        protected final BitSet nulls = new BitSet();
+
+        abstract void read(ResultSet resultSet, int columnIndex, int row) throws SQLException;
+
+        abstract String getValue(int row);
+
+        /**
+         * Release memory reserved for the next rows.
+         */
+        abstract void trimToSize(int rowCount);
+
+        abstract long estimateSize();
+
+        protected static int newCapacity(int capacity) {
+            return Math.max(INITIAL_CAPACITY, capacity * 2);
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        private long[] values = new long[0];
+
+        @Override
+        void read(ResultSet resultSet, int columnIndex, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, newCapacity(values.length));
+            }
+            values[row] = resultSet.getLong(columnIndex);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        String getValue(int row) {
+            return nulls.get(row) ? null : Long.toString(values[row]);
+        }
+
+        @Override
+        void trimToSize(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+        }
+
+        @Override
+        long estimateSize() {
+            return OBJECT_OVERHEAD_BYTES + 8L * values.length;
+        }
+    }
+
+    /**
+     * Drivers render booleans differently (e.g. {@code t} or {@code 1}), so the text of true and false is read from
+     * the first such cell.
+     */
+    private static final class BooleanColumn extends Column {
+        private final BitSet values = new BitSet();
+        private String trueText;
+        private String falseText;
+
+        @Override
+        void read(ResultSet resultSet, int columnIndex, int row) throws SQLException {
+            final boolean value = resultSet.getBoolean(columnIndex);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+                return;
+            }
+            if (value) {
+                values.set(row);
+                if (trueText == null) {
+                    trueText = resultSet.getString(columnIndex).trim();
+                }
+            } else if (falseText == null) {
+                falseText = resultSet.getString(columnIndex).trim();
+            }
+        }
+
+        @Override
+        String getValue(int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            return values.get(row) ? trueText : falseText;
+        }
+
+        @Override
+        void trimToSize(int rowCount) {
+            // bit sets are sized by the set bits
+        }
+
+        @Override
+        long estimateSize() {
+            return OBJECT_OVERHEAD_BYTES * 2 + values.size() / 8;
+        }
+    }
+
+    /**
+     * Dictionary encoded strings, repeated values are stored once.
+     */
+    private static final class StringColumn extends Column {
+        private final ArrayList<String> dictionary = new ArrayList<>();
+        private Map<String, Integer> dictionaryIndexes = null;
+        private int[] codes = new int[0];
+
+        @Override
+        void read(ResultSet resultSet, int columnIndex, int row) throws SQLException {
+            if (row == codes.length) {
+                codes = Arrays.copyOf(codes, newCapacity(codes.length));
+            }
+            final String value = resultSet.getString(columnIndex);
+            if (value == null) {
+                nulls.set(row);
+                return;
+            }
+            if (dictionaryIndexes == null) {
+                dictionaryIndexes = new HashMap<>();
+                for (int i = 0; i < dictionary.size(); i++) {
+                    dictionaryIndexes.put(dictionary.get(i), i);
+                }
+            }
+            codes[row] = dictionaryIndexes.computeIfAbsent(value.trim(), key -> {
+                dictionary.add(key);
+                return dictionary.size() - 1;
+            });
+        }
+
+        @Override
+        String getValue(int row) {
+            return nulls.get(row) ? null : dictionary.get(codes[row]);
+        }
+
+        @Override
+        void trimToSize(int rowCount) {
+            codes = Arrays.copyOf(codes, rowCount);
+            dictionary.trimToSize();
+            dictionaryIndexes = null; // only needed while rows are added
+        }
+
+        @Override
+        long estimateSize() {
+            long size = OBJECT_OVERHEAD_BYTES + 4L * codes.length;
+            for (final String value : dictionary) {
+                size += OBJECT_OVERHEAD_BYTES + 2L * value.length();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Writes rows as arrays of strings directly from the columns.
+     */
+    public static class Serializer extends StdSerializer<ColumnarRows> {
+
+        public Serializer() {
+            super(ColumnarRows.class);
+        }
+
+        @Override
+        public void serialize(ColumnarRows rows, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+
+            generator.writeStartArray(rows, rows.rowCount);
+            for (int row = 0; row < rows.rowCount; row++) {
+                generator.writeStartArray(null, rows.columns.length);
+                for (final Column column : rows.columns) {
+                    generator.writeString(column.getValue(row));
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.janbabak.noqlbackend.model.query;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+
+/**
+ * Format of the exported query result.
+ */
+@RequiredArgsConstructor
+public enum ExportFormat {
+    /**
+     * Comma separated values with a header row (RFC 4180).
+     */
+    CSV("csv", new MediaType("text", "csv")),
+
+    /**
+     * One JSON object per line, keys are the column names.
+     */
+    NDJSON("ndjson", new MediaType("application", "x-ndjson"));
+
+    private static final MediaType GZIP_MEDIA_TYPE = new MediaType("application", "gzip");
+
+    private final String extension;
+    private final MediaType mediaType;
+
+    /**
+     * @param gzip whether the file is compressed
+     * @return name of the exported file
+     */
+    public String getFileName(boolean gzip) {
+        return "export." + extension + (gzip ? ".gz" : "");
+    }
+
+    /**
+     * @param gzip whether the file is compressed
+     * @return media type of the exported file
+     */
+    public MediaType getMediaType(boolean gzip) {
+        return gzip ? GZIP_MEDIA_TYPE : mediaType;
+    }
+}
@@ -1,11 +1,10 @@
 package com.janbabak.noqlbackend.model.query;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 
 @Builder
@@ -14,11 +13,23 @@ public record RetrievedData(
         List<List<String>> rows,
         Integer page,
         Integer pageSize,
-        Long totalCount
+        Long totalCount,
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String nextCursor // continuation token of the keyset pagination, null if not supported or on the last page
 ) {
 
+    public RetrievedData(
+            List<String> columnNames,
+            List<List<String>> rows,
+            Integer page,
+            Integer pageSize,
+            Long totalCount) {
+
+        this(columnNames, rows, page, pageSize, totalCount, null);
+    }
+
     /**
-     * Create ChatResponseData from ResultSet
+     * Create ChatResponseData from ResultSet, rows are stored by columns in their types.
      *
      * @param resultSet  result of the query
      * @param page       page number (starting from 0)
@@ -27,24 +38,69 @@ public record RetrievedData(
      * @throws SQLException when the result set is not valid
      */
     public RetrievedData(ResultSet resultSet, Integer page, Integer pageSize, Long totalCount) throws SQLException {
+        this(readResultSet(resultSet, resultSet.getMetaData().getColumnCount()).rows(), page, pageSize, totalCount);
+    }
 
-        this(new ArrayList<>(), new ArrayList<>(), page, pageSize, totalCount);
+    private RetrievedData(ColumnarRows rows, Integer page, Integer pageSize, Long totalCount) {
+        this(rows.getColumnNames(), rows, page, pageSize, totalCount);
+    }
 
-        final ResultSetMetaData rsmd = resultSet.getMetaData();
+    /**
+     * Create copy of the data with the continuation token of the keyset pagination.
+     *
+     * @param nextCursor continuation token
+     * @return data with the token
+     */
+    public RetrievedData withNextCursor(String nextCursor) {
+        return new RetrievedData(columnNames, rows, page, pageSize, totalCount, nextCursor);
+    }
 
-        // columns
-        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-            columnNames.add(rsmd.getColumnName(i));
-        }
+    /**
+     * Create ChatResponseData from ResultSet whose last column contains the total count of rows
+     * (computed by the {@code COUNT(*) OVER ()} window function). The total count column is not included in the data.
+     *
+     * @param resultSet result of the query, last column contains the total count
+     * @param page      page number (starting from 0)
+     * @param pageSize  number of rows on one page
+     * @return retrieved data, total count is null if the result set is empty
+     * @throws SQLException when the result set is not valid
+     */
+    public static RetrievedData fromResultSetWithTotalCount(ResultSet resultSet, Integer page, Integer pageSize)
+            throws SQLException {
+
+        final int totalCountColumnIndex = resultSet.getMetaData().getColumnCount();
+        final ResultSetContent content = readResultSet(resultSet, totalCountColumnIndex - 1);
+
+        return new RetrievedData(content.rows(), page, pageSize, content.totalCount());
+    }
+
+    /**
+     * Read column names and rows from the result set.
+     *
+     * @param resultSet   result of the query
+     * @param columnCount number of columns to read, if the result set contains one more column, it is the total count
+     * @return rows and value of the total count column from the first row, null if there is no such column or no row
+     * @throws SQLException when the result set is not valid
+     */
+    private static ResultSetContent readResultSet(ResultSet resultSet, int columnCount) throws SQLException {
+        final boolean hasTotalCountColumn = resultSet.getMetaData().getColumnCount() > columnCount;
+        final ColumnarRows rows = ColumnarRows.create(resultSet, columnCount);
+        Long totalCount = null;
 
-        // rows
         while (resultSet.next()) {
-            final List<String> row = new ArrayList<>();
-            for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-                final String value = resultSet.getString(i);
-                row.add(value != null ? value.trim() : null);
+            rows.addRow(resultSet);
+
+            if (hasTotalCountColumn && totalCount == null) {
+                totalCount = resultSet.getLong(columnCount + 1);
             }
-            rows.add(row);
         }
+        return new ResultSetContent(rows.trimToSize(), totalCount);
+    }
+
+    /**
+     * @param rows       rows of the result
+     * @param totalCount value of the total count column
+     */
+    private record ResultSetContent(ColumnarRows rows, Long totalCount) {
     }
 }
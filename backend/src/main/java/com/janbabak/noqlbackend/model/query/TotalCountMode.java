@@ -0,0 +1,22 @@
+package com.janbabak.noqlbackend.model.query;
+
+/**
+ * How the total count of rows of a paginated query is retrieved.
+ */
+public enum TotalCountMode {
+    /**
+     * Page and total count are retrieved in a single statement using {@code COUNT(*) OVER ()}.
+     */
+    WINDOW_FUNCTION,
+
+    /**
+     * Page is retrieved by one statement and total count by another {@code SELECT COUNT(*)} statement.
+     */
+    SEPARATE_QUERY,
+
+    /**
+     * Page is returned without waiting for the total count, which is computed in the background and cached.
+     * Total count is null until it is computed and can be loaded by a separate request.
+     */
+    DEFERRED
+}
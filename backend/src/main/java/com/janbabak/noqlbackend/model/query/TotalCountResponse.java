@@ -0,0 +1,31 @@
+package com.janbabak.noqlbackend.model.query;
+
+/**
+ * Total count of rows of a query computed in the background.
+ *
+ * @param totalCount total count of rows, null if it is not computed
+ * @param status     state of the computation
+ */
+public record TotalCountResponse(Long totalCount, Status status) {
+
+    public static TotalCountResponse unavailable() {
+        return new TotalCountResponse(null, Status.UNAVAILABLE);
+    }
+
+    public enum Status {
+        /**
+         * Total count is computed.
+         */
+        COMPUTED,
+
+        /**
+         * Total count is being computed, ask again later.
+         */
+        PENDING,
+
+        /**
+         * Total count cannot be computed (query failed, timeout, too many computations).
+         */
+        UNAVAILABLE
+    }
+}
@@ -31,5 +31,9 @@ public record UpdateUserRequest(
 
         @Nullable
         @Min(0)
-        Integer queryLimit) {
+        Integer queryLimit,
+
+        @Nullable
+        @Min(1)
+        Integer queryTimeoutSeconds) {
 }
@@ -1,6 +1,7 @@
 package com.janbabak.noqlbackend.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 
@@ -9,6 +10,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
@@ -28,6 +30,20 @@ public class JwtService {
     @Value("${app.security.jwt.refreshTokenExpiration}")
     private long refreshExpiration;
 
+    private SecretKey signInKey;
+    private JwtParser parser;
+
+    /**
+     * Decode the key and build the parser once, they are thread-safe.
+     */
+    @PostConstruct
+    public void init() {
+        signInKey = new SecretKeySpec(Decoders.BASE64.decode(secretKey), "HmacSHA256");
+        parser = Jwts.parser()
+                .verifyWith(signInKey)
+                .build();
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -60,33 +76,36 @@ public class JwtService {
                 .subject(userDetails.getUsername())
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration * 1000)) // * 1000 to convert to millis
-                .signWith(getSignInKey())
+                .signWith(signInKey)
                 .compact();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return username.equals(userDetails.getUsername()) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return isTokenValid(extractAllClaims(token), userDetails);
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    /**
+     * Check already verified claims, so the token is not parsed again.
+     *
+     * @param claims      claims of the token returned by {@link #extractAllClaims(String)}
+     * @param userDetails user the token should belong to
+     * @return true if the token belongs to the user and is not expired
+     */
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return userDetails.getUsername().equals(claims.getSubject()) && !claims.getExpiration().before(new Date());
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSignInKey())
-                .build()
+    /**
+     * Verify signature of the token and return its claims.
+     *
+     * @param token JWT token
+     * @return claims
+     * @throws io.jsonwebtoken.ExpiredJwtException token is expired
+     * @throws io.jsonwebtoken.JwtException        token is not valid
+     */
+    public Claims extractAllClaims(String token) {
+        return parser
                 .parseSignedClaims(token)
                 .getPayload();
     }
-
-    private SecretKey getSignInKey() {
-        final byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return new SecretKeySpec(keyBytes, "HmacSHA256");
-    }
 }
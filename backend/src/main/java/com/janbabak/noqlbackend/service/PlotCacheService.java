@@ -0,0 +1,198 @@
+package com.janbabak.noqlbackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.janbabak.noqlbackend.config.PlotCacheConfig;
+import com.janbabak.noqlbackend.model.entity.Database;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of generated plots on disk. Plot is identified by the hash of the script without
+ * credentials and the data version of the database, so when the LLM generates the same script again, the cached
+ * image is linked to the new file name instead of executing Python. Plots are evicted when their total size exceeds
+ * the limit and after the time to live, because the data in the user's database can change.
+ */
+@Slf4j
+@Service
+public class PlotCacheService {
+
+    private static final String CACHE_DIRECTORY_NAME = "plotService/cache";
+    private static final String PLOT_IMAGE_FILE_EXTENSION = ".png";
+
+    private final PlotCacheConfig config;
+    private final Path cacheDirectory;
+    private final Cache<PlotCacheKey, Path> plots;
+
+    public PlotCacheService(PlotCacheConfig config, @Value("${app.config.workingDirectory}") String appWorkingDirectory) {
+        this.config = config;
+        this.cacheDirectory = Path.of(appWorkingDirectory, CACHE_DIRECTORY_NAME);
+        this.plots = Caffeine.newBuilder()
+                .expireAfterWrite(config.getTtl())
+                .maximumWeight(config.getMaxSize().toBytes())
+                .weigher((PlotCacheKey key, Path plot) -> (int) Math.min(Integer.MAX_VALUE, fileSize(plot)))
+                .removalListener((PlotCacheKey key, Path plot, RemovalCause cause) -> deleteQuietly(plot))
+                .recordStats()
+                .build();
+        createCacheDirectory();
+    }
+
+    /**
+     * @return true if plots are cached
+     */
+    public boolean isEnabled() {
+        return config.getEnabled();
+    }
+
+    /**
+     * Create key of the plot.
+     *
+     * @param script      plot script with placeholders instead of credentials
+     * @param database    database the script reads data from
+     * @param dataVersion token that changes when the data of the database changes, may be null
+     * @return key of the plot or null if the database is not persisted
+     */
+    public PlotCacheKey createKey(String script, Database database, String dataVersion) {
+        if (!config.getEnabled() || database.getId() == null) {
+            return null;
+        }
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(script.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (dataVersion != null) {
+                digest.update(dataVersion.getBytes(StandardCharsets.UTF_8));
+            }
+            return new PlotCacheKey(database.getId(), HexFormat.of().formatHex(digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Link or copy the cached plot to the target file.
+     *
+     * @param key    key of the plot, may be null
+     * @param target path of the new plot
+     * @return true if the plot was cached and linked to the target
+     */
+    public boolean copyTo(PlotCacheKey key, Path target) {
+        if (key == null) {
+            return false;
+        }
+        final Path cachedPlot = plots.getIfPresent(key);
+        if (cachedPlot == null) {
+            return false;
+        }
+        try {
+            link(cachedPlot, target);
+            log.debug("Plot {} served from cache.", target.getFileName());
+            return true;
+        } catch (IOException e) {
+            log.warn("Cannot copy cached plot: {}", e.getMessage());
+            plots.invalidate(key);
+            return false;
+        }
+    }
+
+    /**
+     * Cache generated plot.
+     *
+     * @param key  key of the plot, may be null
+     * @param plot path of the generated plot
+     */
+    public void put(PlotCacheKey key, Path plot) {
+        if (key == null || !Files.exists(plot)) {
+            return;
+        }
+        final Path cachedPlot = cacheDirectory.resolve(UUID.randomUUID() + PLOT_IMAGE_FILE_EXTENSION);
+        try {
+            link(plot, cachedPlot);
+            plots.put(key, cachedPlot);
+        } catch (IOException e) {
+            log.warn("Cannot cache plot: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drop cached plots of the database, the removal listener deletes their image files from the cache directory.
+     * Plots already linked to messages are kept.
+     *
+     * @param databaseId database identifier
+     */
+    public void evict(UUID databaseId) {
+        plots.asMap().keySet().removeIf(key -> key.databaseId().equals(databaseId));
+    }
+
+    /**
+     * Get number of plots served from the cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHitCount() {
+        return plots.stats().hitCount();
+    }
+
+    /**
+     * Hard link is preferred, because it doesn't copy the image and the cached plot survives the deletion of
+     * the chat. If the file system doesn't support hard links, the file is copied.
+     */
+    private static void link(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Plots cached before the restart are not indexed, so they are deleted.
+     */
+    private void createCacheDirectory() {
+        try {
+            Files.createDirectories(cacheDirectory);
+            try (Stream<Path> files = Files.list(cacheDirectory)) {
+                files.forEach(PlotCacheService::deleteQuietly);
+            }
+        } catch (IOException e) {
+            log.error("Cannot create plot cache directory: {}", e.getMessage());
+        }
+    }
+
+    private static long fileSize(Path plot) {
+        try {
+            return Files.size(plot);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path plot) {
+        try {
+            Files.deleteIfExists(plot);
+        } catch (IOException e) {
+            log.error("Delete cached plot failed, path={}, message={}", plot, e.getMessage());
+        }
+    }
+
+    /**
+     * @param databaseId database identifier
+     * @param hash       hash of the script and the data version
+     */
+    public record PlotCacheKey(UUID databaseId, String hash) {
+    }
+}
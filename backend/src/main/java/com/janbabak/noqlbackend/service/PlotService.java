@@ -1,19 +1,37 @@
 package com.janbabak.noqlbackend.service;
 
+import com.janbabak.noqlbackend.config.PlotExecutorConfig;
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.error.exception.PlotScriptExecutionException;
 import com.janbabak.noqlbackend.model.Settings;
 import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.service.PlotCacheService.PlotCacheKey;
 import com.janbabak.noqlbackend.service.database.DatabaseCredentialsEncryptionService;
+import com.janbabak.noqlbackend.service.database.DatabaseServiceFactory;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService;
 import com.janbabak.noqlbackend.service.query.QueryService;
+import com.janbabak.noqlbackend.service.utils.ProcessRunner;
+import com.janbabak.noqlbackend.service.utils.ProcessRunner.ProcessResult;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Stream;
 
 /**
@@ -24,41 +42,61 @@ import java.util.stream.Stream;
 public class PlotService {
 
     private static final String PLOT_IMAGE_FILE_EXTENSION = ".png";
+    private static final String FILE_NAME_SEPARATOR = "--";
     private static final String PLOTS_DIRECTORY = "plots";
-    private static final String PLOT_SCRIPT_NAME = "plot.py";
     private static final Long GENERATE_PLOT_TIMEOUT_SECONDS = 10L;
+    private static final Duration PROCESS_TIMEOUT_GRACE_PERIOD = Duration.ofSeconds(5); // docker exec startup
+    private static final int MAX_PROCESS_OUTPUT_BYTES = 64 * 1024;
     private static final String WORKING_DIRECTORY_NAME = "plotService";
     public static final String PLOT_DIRECTORY_DOCKER_PATH = "./plotService/plots";
     public static Path PLOTS_DIR_PATH;
-    @SuppressWarnings("FieldCanBeLocal")
-    private static Path SCRIPT_PATH;
     private static final Path PLOTS_DIR_URL_PATH = Path.of("/static/images");
     @SuppressWarnings("FieldCanBeLocal")
     private static File workingDirectory;
     @SuppressWarnings("FieldCanBeLocal")
     private static File plotsDirectory;
-    private static File script;
     private final Settings settings;
     private final DatabaseCredentialsEncryptionService encryptionService;
+    private final PlotWorkerPool plotWorkerPool;
+    private final PlotCacheService plotCacheService;
+    private final SchemaCacheService schemaCacheService;
+    private final DatabaseServiceFactory databaseServiceFactory;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService cleanupExecutor;
+    private final PlotMetrics metrics = new PlotMetrics();
 
     /**
-     * Create working directory and plot script
+     * Create working directory and executor of plots
      *
-     * @param settings            application settings
-     * @param encryptionService   service for encrypting/decrypting database credentials
-     * @param appWorkingDirectory path to the working directory (when running the app from the IDE default value from
-     *                            the application.yaml is used, when running using the
-     *                            {@code ./backend/gradlew -p backend bootRun} command, the value from build.gradle is
-     *                            used)
+     * @param settings               application settings
+     * @param encryptionService      service for encrypting/decrypting database credentials
+     * @param plotWorkerPool         pool of long-lived Python processes generating plots
+     * @param executorConfig         configuration of the executor generating plots
+     * @param plotCacheService       cache of generated plots
+     * @param schemaCacheService     cache of database schemas, its fingerprint identifies version of the schema
+     * @param databaseServiceFactory factory of services retrieving version of the data
+     * @param appWorkingDirectory    path to the working directory (when running the app from the IDE default value
+     *                               from the application.yaml is used, when running using the
+     *                               {@code ./backend/gradlew -p backend bootRun} command, the value from build.gradle
+     *                               is used)
      */
     public PlotService(Settings settings,
                 DatabaseCredentialsEncryptionService encryptionService,
+                PlotWorkerPool plotWorkerPool,
+                PlotExecutorConfig executorConfig,
+                PlotCacheService plotCacheService,
+                SchemaCacheService schemaCacheService,
+                DatabaseServiceFactory databaseServiceFactory,
                 @Value("${app.config.workingDirectory}") String appWorkingDirectory) {
 
         log.debug("Plot service working directory is: {}", appWorkingDirectory);
 
         this.settings = settings;
         this.encryptionService = encryptionService;
+        this.plotWorkerPool = plotWorkerPool;
+        this.plotCacheService = plotCacheService;
+        this.schemaCacheService = schemaCacheService;
+        this.databaseServiceFactory = databaseServiceFactory;
 
         // create working and plot directories
         workingDirectory = Path.of(appWorkingDirectory + "/" + WORKING_DIRECTORY_NAME).toFile();
@@ -71,71 +109,183 @@ public class PlotService {
             logAndThrowRuntimeError("Cannot create plot directory in plot service");
         }
 
-        // create script
-        SCRIPT_PATH = Path.of(workingDirectory.getPath() + "/" + PLOT_SCRIPT_NAME);
-        script = SCRIPT_PATH.toFile();
-        try {
-            if (!script.exists() && !script.createNewFile()) {
-                logAndThrowRuntimeError("Cannot create plot script");
-            }
-        } catch (IOException e) {
-            logAndThrowRuntimeError("Cannot create plot script: " + e.getMessage());
-        }
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("plot-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(
+                executorConfig.getThreads(),
+                executorConfig.getThreads(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(executorConfig.getQueueCapacity()),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()); // when the queue is full, the plot is rejected
+
+        final CustomizableThreadFactory cleanupThreadFactory = new CustomizableThreadFactory("plot-cleanup-");
+        cleanupThreadFactory.setDaemon(true);
+        this.cleanupExecutor = Executors.newSingleThreadExecutor(cleanupThreadFactory);
+        cleanupExecutor.submit(PlotService::moveUnshardedPlots);
     }
 
     /**
-     * Generate plot
+     * Generate plot. If the same script was executed recently on the same version of the database, the cached plot is
+     * used. Plots are generated concurrently by a bounded executor, when too many plots are waiting,
+     * the plot is rejected.
      *
      * @param scriptContent content of python file responsible for plot generation (code)
      * @param database      database object - use its real credentials instead of placeholders
      * @param fileName      name of the file to save plot
-     * @throws PlotScriptExecutionException script returned not successful return code or failed
+     * @throws PlotScriptExecutionException script returned not successful return code, failed or was rejected
      */
     public void generatePlot(String scriptContent, Database database, String fileName)
             throws PlotScriptExecutionException {
 
+        final PlotCacheKey cacheKey = createCacheKey(scriptContent, database);
+        final String relativePath = createRelativePath(fileName);
+        final Path plotPath = PLOTS_DIR_PATH.resolve(relativePath);
         try {
-            createPlotScript(replaceCredentialsInScript(scriptContent, database, fileName));
-            log.debug("Starting process: docker exec {} python ./{}/{}",
-                    settings.getPlotServiceContainerName(), WORKING_DIRECTORY_NAME, PLOT_SCRIPT_NAME);
-            final ProcessBuilder processBuilder = new ProcessBuilder(
-                    "sh", "-c", "docker exec %s python ./%s/%s".formatted(
-                            settings.getPlotServiceContainerName(), WORKING_DIRECTORY_NAME, PLOT_SCRIPT_NAME));
-
-            final Process process = processBuilder.start();
-
-            // read output and return it if failure
-            final BufferedReader outputReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            final BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            final StringBuilder output = new StringBuilder();
-            final StringBuilder error = new StringBuilder();
-            String line;
-            while ((line = outputReader.readLine()) != null) {
-                output.append(line);
-            }
-            outputReader.close();
+            Files.createDirectories(plotPath.getParent());
+        } catch (IOException e) {
+            throw new PlotScriptExecutionException("Cannot create plot directory: " + e.getMessage(), e);
+        }
+        if (plotCacheService.copyTo(cacheKey, plotPath)) {
+            return;
+        }
 
-            while ((line = errorReader.readLine()) != null) {
-                error.append(line);
-            }
-            errorReader.close();
-
-            try {
-                process.waitFor(GENERATE_PLOT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                final int exitCode = process.exitValue();
-                process.destroy();
-                if (exitCode != 0) { // fail
-                    log.error("Plot scrip execution failed. exit code: {}, output: '{}', error: '{}'",
-                            exitCode, output, error);
-                    throw new PlotScriptExecutionException(error.toString());
+        final String script = replaceCredentialsInScript(scriptContent, database, relativePath);
+        final long submittedAt = System.nanoTime();
+
+        final Future<Void> result;
+        try {
+            result = executor.submit(() -> {
+                final long startedAt = System.nanoTime();
+                metrics.recordQueueWait(startedAt - submittedAt);
+                try {
+                    generatePlot(script);
+                    return null;
+                } finally {
+                    metrics.recordExecution(System.nanoTime() - startedAt);
                 }
-            } catch (InterruptedException e) {
-                log.error("Plot script execution failed. output: '{}', error: '{}', exception: '{}'",
-                        output, error, e.getMessage());
-                throw new PlotScriptExecutionException(output.toString(), e);
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.rejected.increment();
+            log.warn("Plot rejected, too many plots are being generated.");
+            throw new PlotScriptExecutionException("Too many plots are being generated, try it again later.");
+        }
+
+        try {
+            result.get();
+            metrics.succeeded.increment();
+            plotCacheService.put(cacheKey, plotPath);
+        } catch (ExecutionException e) {
+            metrics.failed.increment();
+            if (e.getCause() instanceof PlotScriptExecutionException plotException) {
+                throw plotException;
+            }
+            throw new PlotScriptExecutionException(e.getCause().getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            metrics.failed.increment();
+            throw new PlotScriptExecutionException("Plot generation was interrupted", e);
+        }
+    }
+
+    /**
+     * Get statistics of plot generation.
+     *
+     * @return statistics
+     */
+    public PlotStatistics getStatistics() {
+        return metrics.toStatistics(executor, plotCacheService.getHitCount());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        cleanupExecutor.shutdown();
+    }
+
+    /**
+     * Create key of the plot cache from the script with placeholders, the schema fingerprint and the data version
+     * of the database. Plots of databases without data version are not cached, because changed rows would not be
+     * detected.
+     *
+     * @return key or null if the plot can't be cached
+     */
+    private PlotCacheKey createCacheKey(String scriptContent, Database database) {
+        if (!plotCacheService.isEnabled() || database.getId() == null) {
+            return null;
+        }
+        try {
+            final String fingerprint = schemaCacheService.getSchema(database).fingerprint();
+            final String dataVersion = databaseServiceFactory.getDatabaseService(database).retrieveDataVersion();
+            if (fingerprint == null || dataVersion == null) {
+                log.debug("Plot is not cached, version of the database is not available.");
+                return null;
             }
+            return plotCacheService.createKey(scriptContent, database, fingerprint + ":" + dataVersion);
+        } catch (DatabaseConnectionException | DatabaseExecutionException e) {
+            log.debug("Plot is not cached, version of the database is not available: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Generate plot. Script is executed by a warm worker of the {@link PlotWorkerPool}, if no worker is available,
+     * it is executed by a new {@code docker exec} process.
+     *
+     * @param script script with real credentials
+     * @throws PlotScriptExecutionException script returned not successful return code or failed
+     */
+    private void generatePlot(String script) throws PlotScriptExecutionException {
+        final PlotWorkerPool.PlotJobResult result = plotWorkerPool.execute(script);
+        if (result == null) {
+            generatePlotByDockerExec(script);
+            return;
+        }
+        if (!result.success()) {
+            log.error("Plot script execution failed. output: '{}', error: '{}'", result.output(), result.error());
+            throw new PlotScriptExecutionException(result.error());
+        }
+    }
+
+    /**
+     * Generate plot by executing the script in a new {@code docker exec} process. Script is passed over stdin,
+     * so concurrent plots don't share any script file. The script is killed inside the container and the
+     * {@code docker exec} process is killed by the backend when the timeout elapses.
+     *
+     * @param script script with real credentials
+     * @throws PlotScriptExecutionException script returned not successful return code, failed or timed out
+     */
+    private void generatePlotByDockerExec(String script) throws PlotScriptExecutionException {
+        final List<String> command = List.of(
+                "docker", "exec", "-i", settings.getPlotServiceContainerName(),
+                "timeout", "-s", "KILL", String.valueOf(GENERATE_PLOT_TIMEOUT_SECONDS), "python", "-");
+        log.debug("Starting process: {}", String.join(" ", command));
+
+        final ProcessResult result;
+        try {
+            result = ProcessRunner.run(command,
+                    script.getBytes(StandardCharsets.UTF_8),
+                    Duration.ofSeconds(GENERATE_PLOT_TIMEOUT_SECONDS).plus(PROCESS_TIMEOUT_GRACE_PERIOD),
+                    MAX_PROCESS_OUTPUT_BYTES);
         } catch (IOException e) {
             throw new PlotScriptExecutionException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PlotScriptExecutionException("Plot generation was interrupted", e);
+        }
+
+        log.debug("Plot process finished in {} ms, exit code: {}, output: {} B, error: {} B",
+                result.wallTimeMillis(), result.exitCode(), result.outputBytes(), result.errorBytes());
+
+        if (result.timedOut()) {
+            throw new PlotScriptExecutionException("Plot script execution timed out");
+        }
+        if (!result.isSuccess()) {
+            log.error("Plot script execution failed. exit code: {}, output: '{}', error: '{}'",
+                    result.exitCode(), result.output(), result.error());
+            throw new PlotScriptExecutionException(result.error());
         }
     }
 
@@ -147,7 +297,22 @@ public class PlotService {
      * @return name of the file
      */
     public static String createFileName(UUID chatId, UUID messageId) {
-        return chatId + "--" + messageId + PLOT_IMAGE_FILE_EXTENSION;
+        return chatId + FILE_NAME_SEPARATOR + messageId + PLOT_IMAGE_FILE_EXTENSION;
+    }
+
+    /**
+     * Create path of the file relative to the plots directory. Plots are stored in a directory per chat, so plots of
+     * a chat can be deleted without listing plots of all chats.
+     *
+     * @param fileName name of the file created by {@link #createFileName(UUID, UUID)}
+     * @return path in format {@code chatId/fileName} or the file name if it doesn't start with the chat id
+     */
+    public static String createRelativePath(String fileName) {
+        final int separatorIndex = fileName.indexOf(FILE_NAME_SEPARATOR);
+        if (separatorIndex <= 0 || fileName.contains("/")) {
+            return fileName;
+        }
+        return fileName.substring(0, separatorIndex) + "/" + fileName;
     }
 
     /**
@@ -192,19 +357,67 @@ public class PlotService {
     }
 
     /**
-     * Delete plots associated with a chat. This means all plots with names that start with chatId.
+     * Delete plots of the chat, only the directory of the chat is traversed.
+     *
+     * @param chatId chat identifier
+     */
+    public void deletePlotsOfChat(UUID chatId) {
+        deleteDirectory(PLOTS_DIR_PATH.resolve(chatId.toString()));
+    }
+
+    /**
+     * Delete plots of many chats in the background, e.g. when a database or a user is deleted.
      *
-     * @param prefix common prefix of all plots to delete.
+     * @param chatIds identifiers of the chats
      */
-    public void deletePlots(String prefix) {
+    public void deletePlotsOfChatsAsync(Collection<UUID> chatIds) {
+        if (chatIds.isEmpty()) {
+            return;
+        }
+        final List<UUID> chatIdsCopy = List.copyOf(chatIds);
+        cleanupExecutor.submit(() -> {
+            log.info("Deleting plots of {} chats.", chatIdsCopy.size());
+            chatIdsCopy.forEach(this::deletePlotsOfChat);
+        });
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.error("Delete plot failed, path={}, message={}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.error("Failed to list files in directory, message={}", e.getMessage());
+        }
+    }
+
+    /**
+     * Move plots stored in the plots directory before they were stored per chat. Their URLs keep working, because
+     * the resource handler tries both locations.
+     */
+    private static void moveUnshardedPlots() {
         try (Stream<Path> filesStream = Files.list(PLOTS_DIR_PATH)) {
             filesStream
-                    .filter(path -> path.getFileName().toString().startsWith(prefix))
+                    .filter(Files::isRegularFile)
                     .forEach(path -> {
+                        final String fileName = path.getFileName().toString();
+                        final String relativePath = createRelativePath(fileName);
+                        if (relativePath.equals(fileName)) {
+                            return;
+                        }
                         try {
-                            Files.deleteIfExists(path);
+                            final Path target = PLOTS_DIR_PATH.resolve(relativePath);
+                            Files.createDirectories(target.getParent());
+                            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
                         } catch (IOException e) {
-                            log.error("Delete plot failed, path={}, message={}", path, e.getMessage());
+                            log.error("Move plot failed, path={}, message={}", path, e.getMessage());
                         }
                     });
         } catch (IOException e) {
@@ -212,20 +425,81 @@ public class PlotService {
         }
     }
 
+    private void logAndThrowRuntimeError(String errorMessage) {
+        log.error(errorMessage);
+        throw new RuntimeException(errorMessage);
+    }
+
     /**
-     * Override content of script
+     * Statistics of plot generation.
      *
-     * @param scriptContent script content (code)
-     * @throws IOException cannot write into the file
+     * @param succeeded          number of successfully generated plots
+     * @param failed             number of failed plots
+     * @param rejected           number of plots rejected because the queue was full
+     * @param cacheHits          number of plots served from the cache
+     * @param active             number of plots being generated
+     * @param queued             number of plots waiting for generation
+     * @param avgQueueWaitMillis average time spent in the queue
+     * @param maxQueueWaitMillis maximum time spent in the queue
+     * @param avgExecutionMillis average duration of the generation
+     * @param maxExecutionMillis maximum duration of the generation
      */
-    private void createPlotScript(String scriptContent) throws IOException {
-        final FileWriter writer = new FileWriter(script, false);
-        writer.write(scriptContent);
-        writer.close();
+    public record PlotStatistics(
+            Long succeeded,
+            Long failed,
+            Long rejected,
+            Long cacheHits,
+            Integer active,
+            Integer queued,
+            Double avgQueueWaitMillis,
+            Double maxQueueWaitMillis,
+            Double avgExecutionMillis,
+            Double maxExecutionMillis) {
     }
 
-    private void logAndThrowRuntimeError(String errorMessage) {
-        log.error(errorMessage);
-        throw new RuntimeException(errorMessage);
+    private static class PlotMetrics {
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder queueWaitCount = new LongAdder();
+        private final LongAdder queueWaitNanos = new LongAdder();
+        private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+        private final LongAdder executionCount = new LongAdder();
+        private final LongAdder executionNanos = new LongAdder();
+        private final AtomicLong maxExecutionNanos = new AtomicLong();
+
+        private void recordQueueWait(long nanos) {
+            queueWaitCount.increment();
+            queueWaitNanos.add(nanos);
+            maxQueueWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private void recordExecution(long nanos) {
+            executionCount.increment();
+            executionNanos.add(nanos);
+            maxExecutionNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private PlotStatistics toStatistics(ThreadPoolExecutor executor, long cacheHits) {
+            return new PlotStatistics(
+                    succeeded.sum(),
+                    failed.sum(),
+                    rejected.sum(),
+                    cacheHits,
+                    executor.getActiveCount(),
+                    executor.getQueue().size(),
+                    average(queueWaitNanos.sum(), queueWaitCount.sum()),
+                    toMillis(maxQueueWaitNanos.get()),
+                    average(executionNanos.sum(), executionCount.sum()),
+                    toMillis(maxExecutionNanos.get()));
+        }
+
+        private static Double average(long nanos, long count) {
+            return count == 0 ? 0.0 : toMillis(nanos) / count;
+        }
+
+        private static Double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
     }
-}
\ No newline at end of file
+}
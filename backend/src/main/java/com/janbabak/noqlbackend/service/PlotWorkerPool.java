@@ -0,0 +1,366 @@
+package com.janbabak.noqlbackend.service;
+
+import com.janbabak.noqlbackend.config.PlotWorkerPoolConfig;
+import com.janbabak.noqlbackend.model.Settings;
+import com.janbabak.noqlbackend.service.utils.JsonUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of long-lived Python processes in the plot service container. Workers import matplotlib and other libraries
+ * once, when they start, and then execute plot scripts received over stdin, so plots don't pay for the
+ * {@code docker exec}, interpreter startup and imports. Workers are started in the background with the application
+ * and replaced, again in the background, after the configured number of plots, when their memory grows over the
+ * limit or when they die. A plot never waits for a worker to start or to become idle.<br />
+ * Each script is executed by a child forked from the worker, so scripts of different users don't share any module
+ * state (scripts contain credentials of the databases). When a worker doesn't respond, its process group is killed
+ * inside the container, killing only the {@code docker exec} client would leave it running.<br />
+ * When no worker is idle, a worker can't be started or dies, {@link #execute(String)} returns null and the caller
+ * falls back to {@code docker exec} of the script.
+ */
+@Slf4j
+@Service
+public class PlotWorkerPool {
+
+    private static final String WORKER_SCRIPT_NAME = "plot_worker.py";
+    private static final String WORKER_SCRIPT_RESOURCE = "plotService/" + WORKER_SCRIPT_NAME;
+    private static final String WORKING_DIRECTORY_NAME = "plotService";
+    private static final Duration TIMEOUT_GRACE_PERIOD = Duration.ofSeconds(2);
+
+    private final PlotWorkerPoolConfig config;
+    private final Settings settings;
+    private final String workingDirectory;
+    private final BlockingQueue<PlotWorker> idleWorkers = new LinkedBlockingQueue<>();
+    private final AtomicInteger workers = new AtomicInteger(0); // starting, idle and busy workers
+    private final ExecutorService starters;
+    private final ExecutorService readers;
+    private volatile Instant unavailableUntil = Instant.MIN;
+    private volatile boolean workerScriptCreated = false;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param config              pool configuration
+     * @param settings            application settings
+     * @param appWorkingDirectory path to the working directory shared with the plot service container
+     */
+    public PlotWorkerPool(PlotWorkerPoolConfig config,
+                          Settings settings,
+                          @Value("${app.config.workingDirectory}") String appWorkingDirectory) {
+        this.config = config;
+        this.settings = settings;
+        this.workingDirectory = appWorkingDirectory + "/" + WORKING_DIRECTORY_NAME;
+        this.starters = Executors.newFixedThreadPool(config.getSize());
+        this.readers = Executors.newFixedThreadPool(config.getSize()); // at most one read per worker
+    }
+
+    /**
+     * Start the workers in the background, so the first plots don't wait for the imports.
+     */
+    @PostConstruct
+    public void start() {
+        startWorkers();
+    }
+
+    /**
+     * Execute plot script by one of the idle workers.
+     *
+     * @param script plot script with real credentials
+     * @return result of the script or null when no worker is idle and the script must be executed
+     * by {@code docker exec}
+     */
+    public PlotJobResult execute(String script) {
+        if (!config.getEnabled()) {
+            return null;
+        }
+        PlotWorker worker = idleWorkers.poll();
+        while (worker != null && !worker.process.isAlive()) {
+            log.warn("Plot worker died, replacing it.");
+            replace(worker, false);
+            worker = idleWorkers.poll();
+        }
+        if (worker == null) {
+            log.debug("No plot worker is idle, falling back to docker exec.");
+            startWorkers(); // workers that could not be started before
+            return null;
+        }
+        return execute(worker, script);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown = true;
+        starters.shutdownNow();
+        PlotWorker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            worker.destroy();
+        }
+        readers.shutdownNow();
+    }
+
+    private PlotJobResult execute(PlotWorker worker, String script) {
+        try {
+            final PlotJobResult result = worker.execute(script);
+            if (worker.jobs >= config.getMaxJobsPerWorker()
+                    || result.maxRssKb() * 1024 > config.getMaxWorkerMemory().toBytes()) {
+                log.debug("Recycling plot worker after {} jobs, max RSS {} kB.", worker.jobs, result.maxRssKb());
+                replace(worker, false);
+            } else {
+                idleWorkers.add(worker);
+            }
+            return result;
+        } catch (TimeoutException e) {
+            log.error("Plot worker did not respond in time, killing it.");
+            replace(worker, true);
+            return new PlotJobResult(false, "", "Plot script execution timed out", 0L);
+        } catch (IOException | ExecutionException e) {
+            log.error("Plot worker failed, falling back to docker exec: {}", e.getMessage());
+            replace(worker, true);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            replace(worker, true);
+            return null;
+        }
+    }
+
+    /**
+     * Destroy the worker and start a new one in the background.
+     *
+     * @param worker worker to destroy
+     * @param kill   if true, the worker doesn't respond and its process group is killed
+     */
+    private void replace(PlotWorker worker, boolean kill) {
+        if (kill) {
+            worker.kill();
+        } else {
+            worker.destroy();
+        }
+        workers.decrementAndGet();
+        startWorkers();
+    }
+
+    /**
+     * Start workers in the background until there are {@code size} of them. No worker is started until
+     * {@code retryStartAfter} elapses after a worker could not be started.
+     */
+    private void startWorkers() {
+        if (!config.getEnabled() || shutdown || Instant.now().isBefore(unavailableUntil)) {
+            return;
+        }
+        int count;
+        while ((count = workers.get()) < config.getSize()) {
+            if (workers.compareAndSet(count, count + 1)) {
+                try {
+                    starters.execute(this::startWorker);
+                } catch (RejectedExecutionException e) {
+                    workers.decrementAndGet(); // the pool was shut down
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start new worker, wait until it imports the libraries and make it idle. If it can't be started, no worker
+     * is started until {@code retryStartAfter} elapses.
+     */
+    private void startWorker() {
+        log.info("Starting plot worker in container {}.", settings.getPlotServiceContainerName());
+        PlotWorker worker = null;
+        try {
+            createWorkerScript();
+            final Process process = new ProcessBuilder(createWorkerCommand())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+
+            worker = new PlotWorker(process);
+            worker.readReady(config.getStartupTimeout());
+            idleWorkers.add(worker);
+            if (shutdown && idleWorkers.remove(worker)) {
+                worker.destroy(); // started during the shutdown
+            }
+        } catch (IOException | TimeoutException | ExecutionException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("Cannot start plot worker, falling back to docker exec: {}", e.getMessage());
+            if (worker != null) {
+                worker.kill();
+            }
+            unavailableUntil = Instant.now().plus(config.getRetryStartAfter());
+            workers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return command starting the worker inside the plot service container, the job timeout is its argument
+     */
+    /* default */ List<String> createWorkerCommand() {
+        return List.of(
+                "docker", "exec", "-i", settings.getPlotServiceContainerName(),
+                "python", "./%s/%s".formatted(WORKING_DIRECTORY_NAME, WORKER_SCRIPT_NAME),
+                String.valueOf(config.getJobTimeout().toSeconds()));
+    }
+
+    /**
+     * @return path to the worker script in the directory shared with the plot service container
+     */
+    /* default */ Path getWorkerScriptPath() {
+        return Path.of(workingDirectory, WORKER_SCRIPT_NAME);
+    }
+
+    /**
+     * Copy the worker script into the directory shared with the plot service container.
+     */
+    private void createWorkerScript() throws IOException {
+        if (workerScriptCreated) {
+            return;
+        }
+        try (InputStream source = new ClassPathResource(WORKER_SCRIPT_RESOURCE).getInputStream()) {
+            Files.copy(source, getWorkerScriptPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        workerScriptCreated = true;
+    }
+
+    /**
+     * Result of the plot script.
+     *
+     * @param success  true if the script finished successfully
+     * @param output   standard output of the script
+     * @param error    standard error output of the script or the exception
+     * @param maxRssKb maximum resident set size of the worker in kB
+     */
+    public record PlotJobResult(Boolean success, String output, String error, Long maxRssKb) {
+    }
+
+    /**
+     * First message of the worker.
+     *
+     * @param pid process group of the worker and its jobs inside the container
+     */
+    private record WorkerReady(Long pid) {
+    }
+
+    /**
+     * Python process communicating over stdin and stdout, messages are framed as
+     * {@code <number of bytes>\n<payload>}.
+     */
+    private final class PlotWorker {
+        private final Process process;
+        private final OutputStream input;
+        private final InputStream output;
+        private Long pid = null;
+        private int jobs = 0;
+
+        private PlotWorker(Process process) {
+            this.process = process;
+            this.input = process.getOutputStream();
+            this.output = process.getInputStream();
+        }
+
+        private PlotJobResult execute(String script)
+                throws IOException, TimeoutException, ExecutionException, InterruptedException {
+
+            final byte[] payload = script.getBytes(StandardCharsets.UTF_8);
+            input.write((payload.length + "\n").getBytes(StandardCharsets.US_ASCII));
+            input.write(payload);
+            input.flush();
+            jobs++;
+            return readResult(config.getJobTimeout().plus(TIMEOUT_GRACE_PERIOD));
+        }
+
+        private void readReady(Duration timeout) throws TimeoutException, ExecutionException, InterruptedException {
+            pid = readMessage(timeout, WorkerReady.class).pid();
+        }
+
+        private PlotJobResult readResult(Duration timeout)
+                throws TimeoutException, ExecutionException, InterruptedException {
+
+            return readMessage(timeout, PlotJobResult.class);
+        }
+
+        private <T> T readMessage(Duration timeout, Class<T> type)
+                throws TimeoutException, ExecutionException, InterruptedException {
+
+            final Future<T> message = readers.submit(() -> JsonUtils.createFromJson(readFrame(), type));
+            try {
+                return message.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | InterruptedException e) {
+                message.cancel(true);
+                throw e;
+            }
+        }
+
+        private String readFrame() throws IOException {
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            int character;
+            while ((character = output.read()) != '\n') {
+                if (character == -1) {
+                    throw new EOFException("Plot worker closed its output");
+                }
+                header.write(character);
+            }
+            final int length = Integer.parseInt(header.toString(StandardCharsets.US_ASCII).trim());
+            final byte[] payload = output.readNBytes(length);
+            if (payload.length < length) {
+                throw new EOFException("Plot worker closed its output");
+            }
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        private void destroy() {
+            try {
+                input.close(); // worker exits at the end of its input
+            } catch (IOException e) {
+                log.debug("Cannot close input of plot worker: {}", e.getMessage());
+            }
+            process.destroyForcibly();
+        }
+
+        /**
+         * Destroy worker that doesn't respond. Its process group (the worker and the running script) is killed
+         * inside the container, because destroying the {@code docker exec} client doesn't stop it.
+         */
+        private void kill() {
+            destroy();
+            if (pid == null) {
+                return;
+            }
+            try {
+                final Process killProcess = new ProcessBuilder(
+                        "docker", "exec", settings.getPlotServiceContainerName(),
+                        "kill", "-9", "--", "-" + pid)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                if (!killProcess.waitFor(TIMEOUT_GRACE_PERIOD.toMillis(), TimeUnit.MILLISECONDS)) {
+                    killProcess.destroyForcibly();
+                    log.warn("Cannot kill plot worker pid={} in time.", pid);
+                }
+            } catch (IOException e) {
+                log.warn("Cannot kill plot worker pid={}: {}", pid, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.janbabak.noqlbackend.service.chat;
+
+import com.janbabak.noqlbackend.config.ChatAdmissionConfig;
+import com.janbabak.noqlbackend.error.exception.TooManyRequestsException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control of chat requests. Number of concurrently processed requests is limited globally, per user and
+ * per database. Requests that can't be processed immediately wait in a bounded queue, waiting requests of different
+ * users are admitted in round-robin order, so a user sending many requests delays mostly their own requests.<br />
+ * When the queue or the user's part of it is full, or the request waits too long, it is rejected by
+ * {@link TooManyRequestsException} with estimated time after which it should be retried.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatAdmissionService {
+
+    private final ChatAdmissionConfig config;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // users with waiting requests in round-robin order, requests of each user in FIFO order
+    private final LinkedHashMap<UUID, ArrayDeque<Ticket>> waiting = new LinkedHashMap<>();
+    private final Map<UUID, Integer> runningPerUser = new HashMap<>();
+    private final Map<UUID, Integer> runningPerDatabase = new HashMap<>();
+    private int running = 0;
+    private int queued = 0;
+    private final AdmissionMetrics metrics = new AdmissionMetrics();
+
+    /**
+     * Wait until the request can be processed.
+     *
+     * @param userId     owner of the queried database
+     * @param databaseId queried database
+     * @return permit, must be closed when the request is processed
+     * @throws TooManyRequestsException the queue is full or the request waited too long
+     */
+    public Permit acquire(UUID userId, UUID databaseId) throws TooManyRequestsException {
+        if (!config.getEnabled()) {
+            return new Permit(userId, databaseId, false);
+        }
+
+        final Ticket ticket;
+        lock.lock();
+        try {
+            if (waiting.isEmpty() && canRun(userId, databaseId)) {
+                metrics.recordQueueWait(0);
+                return admit(userId, databaseId);
+            }
+            final ArrayDeque<Ticket> userQueue = waiting.get(userId);
+            final int queuedOfUser = userQueue != null ? userQueue.size() : 0;
+            if (queued >= config.getQueueCapacity() || queuedOfUser >= config.getMaxQueuedPerUser()) {
+                metrics.rejected.increment();
+                log.warn("Chat request rejected, queue is full, user_id={}.", userId);
+                throw new TooManyRequestsException("Too many chat requests, try it later.", estimateRetryAfter());
+            }
+            ticket = new Ticket(userId, databaseId, System.nanoTime());
+            waiting.computeIfAbsent(userId, key -> new ArrayDeque<>()).add(ticket);
+            queued++;
+            dispatch(); // the new request may not be blocked by the limits blocking the other requests
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            return ticket.admission.get(config.getMaxWait().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return abandon(ticket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return abandon(ticket);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Admission failed", e); // admission is never completed exceptionally
+        }
+    }
+
+    public ChatAdmissionStatistics getStatistics() {
+        lock.lock();
+        try {
+            return metrics.toStatistics(running, queued);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove request that waited too long from the queue, unless it has been admitted in the meantime.
+     */
+    private Permit abandon(Ticket ticket) throws TooManyRequestsException {
+        lock.lock();
+        try {
+            final ArrayDeque<Ticket> userQueue = waiting.get(ticket.userId);
+            if (userQueue != null && userQueue.remove(ticket)) {
+                queued--;
+                if (userQueue.isEmpty()) {
+                    waiting.remove(ticket.userId);
+                }
+                metrics.timedOut.increment();
+                log.warn("Chat request rejected, waited too long, user_id={}.", ticket.userId);
+                throw new TooManyRequestsException("Too many chat requests, try it later.", estimateRetryAfter());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ticket.admission.join();
+    }
+
+    /**
+     * Admit waiting requests while the limits allow it. Each pass admits at most one request of each user, users
+     * whose request was admitted are moved to the end of the order.<br />
+     * Must be called with the lock held.
+     */
+    private void dispatch() {
+        boolean admitted = true;
+        while (admitted && !waiting.isEmpty()) {
+            admitted = false;
+            for (final UUID userId : List.copyOf(waiting.keySet())) {
+                final ArrayDeque<Ticket> userQueue = waiting.get(userId);
+                final Ticket head = userQueue.peek();
+                if (head == null || !canRun(head.userId, head.databaseId)) {
+                    continue;
+                }
+                userQueue.poll();
+                queued--;
+                waiting.remove(userId);
+                if (!userQueue.isEmpty()) {
+                    waiting.put(userId, userQueue);
+                }
+                metrics.recordQueueWait(System.nanoTime() - head.enqueuedAt);
+                head.admission.complete(admit(head.userId, head.databaseId));
+                admitted = true;
+            }
+        }
+    }
+
+    private boolean canRun(UUID userId, UUID databaseId) {
+        return running < config.getMaxConcurrent()
+                && runningPerUser.getOrDefault(userId, 0) < config.getMaxConcurrentPerUser()
+                && runningPerDatabase.getOrDefault(databaseId, 0) < config.getMaxConcurrentPerDatabase();
+    }
+
+    private Permit admit(UUID userId, UUID databaseId) {
+        running++;
+        runningPerUser.merge(userId, 1, Integer::sum);
+        runningPerDatabase.merge(databaseId, 1, Integer::sum);
+        metrics.admitted.increment();
+        return new Permit(userId, databaseId, true);
+    }
+
+    private void release(Permit permit) {
+        lock.lock();
+        try {
+            running--;
+            runningPerUser.computeIfPresent(permit.userId, (key, count) -> count > 1 ? count - 1 : null);
+            runningPerDatabase.computeIfPresent(permit.databaseId, (key, count) -> count > 1 ? count - 1 : null);
+            metrics.recordExecution(System.nanoTime() - permit.admittedAt);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimate when the queue is processed from the average duration of the requests. Must be called with the lock
+     * held.
+     */
+    private Duration estimateRetryAfter() {
+        final long executions = metrics.executionCount.sum();
+        if (executions == 0) {
+            return config.getDefaultRetryAfter();
+        }
+        final double averageNanos = (double) metrics.executionNanos.sum() / executions;
+        final double rounds = (double) queued / config.getMaxConcurrent() + 1;
+        return Duration.ofSeconds(Math.max(1, (long) Math.ceil(averageNanos * rounds / 1_000_000_000)));
+    }
+
+    /**
+     * Admitted request, releases its place when closed. Closing it more times has no effect.
+     */
+    public final class Permit implements AutoCloseable {
+        private final UUID userId;
+        private final UUID databaseId;
+        private final boolean counted; // false if admission control is disabled
+        private final long admittedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(UUID userId, UUID databaseId, boolean counted) {
+            this.userId = userId;
+            this.databaseId = databaseId;
+            this.counted = counted;
+        }
+
+        @Override
+        public void close() {
+            if (counted && released.compareAndSet(false, true)) {
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * Waiting request.
+     */
+    private static final class Ticket {
+        private final UUID userId;
+        private final UUID databaseId;
+        private final long enqueuedAt;
+        private final CompletableFuture<Permit> admission = new CompletableFuture<>();
+
+        private Ticket(UUID userId, UUID databaseId, long enqueuedAt) {
+            this.userId = userId;
+            this.databaseId = databaseId;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Statistics of admission of chat requests.
+     *
+     * @param admitted           number of admitted requests
+     * @param rejected           number of requests rejected because the queue was full
+     * @param timedOut           number of requests rejected because they waited too long
+     * @param running            number of requests being processed
+     * @param queued             number of waiting requests
+     * @param avgQueueWaitMillis average time spent in the queue
+     * @param maxQueueWaitMillis maximum time spent in the queue
+     * @param avgExecutionMillis average duration of the processing
+     * @param maxExecutionMillis maximum duration of the processing
+     */
+    public record ChatAdmissionStatistics(
+            Long admitted,
+            Long rejected,
+            Long timedOut,
+            Integer running,
+            Integer queued,
+            Double avgQueueWaitMillis,
+            Double maxQueueWaitMillis,
+            Double avgExecutionMillis,
+            Double maxExecutionMillis) {
+    }
+
+    private static class AdmissionMetrics {
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAdder queueWaitCount = new LongAdder();
+        private final LongAdder queueWaitNanos = new LongAdder();
+        private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+        private final LongAdder executionCount = new LongAdder();
+        private final LongAdder executionNanos = new LongAdder();
+        private final AtomicLong maxExecutionNanos = new AtomicLong();
+
+        private void recordQueueWait(long nanos) {
+            queueWaitCount.increment();
+            queueWaitNanos.add(nanos);
+            maxQueueWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private void recordExecution(long nanos) {
+            executionCount.increment();
+            executionNanos.add(nanos);
+            maxExecutionNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private ChatAdmissionStatistics toStatistics(int running, int queued) {
+            return new ChatAdmissionStatistics(
+                    admitted.sum(),
+                    rejected.sum(),
+                    timedOut.sum(),
+                    running,
+                    queued,
+                    average(queueWaitNanos.sum(), queueWaitCount.sum()),
+                    toMillis(maxQueueWaitNanos.get()),
+                    average(executionNanos.sum(), executionCount.sum()),
+                    toMillis(maxExecutionNanos.get()));
+        }
+
+        private static Double average(long nanos, long count) {
+            return count == 0 ? 0.0 : toMillis(nanos) / count;
+        }
+
+        private static Double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
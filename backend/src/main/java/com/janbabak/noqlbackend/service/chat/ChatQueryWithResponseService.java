@@ -2,17 +2,25 @@ package com.janbabak.noqlbackend.service.chat;
 
 import com.janbabak.noqlbackend.dao.repository.ChatRepository;
 import com.janbabak.noqlbackend.dao.repository.ChatQueryWithResponseRepository;
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.error.exception.EntityNotFoundException;
 import com.janbabak.noqlbackend.model.entity.Chat;
 import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
+import com.janbabak.noqlbackend.model.query.ExportFormat;
 import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.model.query.TotalCountResponse;
 import com.janbabak.noqlbackend.service.database.MessageDataDAO;
 import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService;
+import com.janbabak.noqlbackend.service.query.ExportService;
+import com.janbabak.noqlbackend.service.query.StreamedQueryResult;
 import com.janbabak.noqlbackend.service.user.AuthenticationService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.BadRequestException;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.sql.Timestamp;
 import java.time.Instant;
@@ -31,6 +39,7 @@ public class ChatQueryWithResponseService {
     private final ChatQueryWithResponseRepository chatQueryWithResponseRepository;
     private final ChatRepository chatRepository;
     private final MessageDataDAO messageDataDAO;
+    private final ExportService exportService;
 
     public ChatQueryWithResponse findById(UUID messageId) throws EntityNotFoundException {
         log.info("Get message by id={}.", messageId);
@@ -58,18 +67,94 @@ public class ChatQueryWithResponseService {
      * @param messageId identifier of the message to load
      * @param page      page number (first pages has is 0)
      * @param pageSize  number of items per page
+     * @param cursor    cursor of the next page returned by the previous request, null for offset pagination
      * @return query response
      * @throws EntityNotFoundException database or chat not found
+     * @throws BadRequestException     cursor is not valid
      */
-    public RetrievedData getDataByMessageId(UUID messageId, Integer page, Integer pageSize)
-            throws EntityNotFoundException {
+    public RetrievedData getDataByMessageId(UUID messageId, Integer page, Integer pageSize, String cursor)
+            throws EntityNotFoundException, BadRequestException {
 
         final ChatQueryWithResponse message = chatQueryWithResponseRepository.findById(messageId)
                 .orElseThrow(() -> new EntityNotFoundException(MESSAGE, messageId));
 
         authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(message.getChat().getDatabase().getUserId());
 
-        return messageDataDAO.retrieveDataFromMessage(message, message.getChat().getDatabase(), page, pageSize);
+        return messageDataDAO.retrieveDataFromMessage(
+                message, message.getChat().getDatabase(), page, pageSize, cursor);
+    }
+
+    /**
+     * Stream data of the message, rows are written as they are read from the database, so larger pages can be
+     * requested. Keyset pagination is not supported.
+     *
+     * @param messageId identifier of the message
+     * @param page      page number (first pages has is 0)
+     * @param pageSize  number of items per page
+     * @return response body, empty if the message has no data
+     * @throws EntityNotFoundException     message not found
+     * @throws BadRequestException         page or page size is not valid
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed
+     */
+    public StreamingResponseBody streamDataByMessageId(UUID messageId, Integer page, Integer pageSize)
+            throws EntityNotFoundException, BadRequestException, DatabaseConnectionException,
+            DatabaseExecutionException {
+
+        final ChatQueryWithResponse message = chatQueryWithResponseRepository.findById(messageId)
+                .orElseThrow(() -> new EntityNotFoundException(MESSAGE, messageId));
+
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(message.getChat().getDatabase().getUserId());
+
+        final StreamedQueryResult result =
+                messageDataDAO.streamDataFromMessage(message, message.getChat().getDatabase(), page, pageSize);
+
+        return result != null ? result.toResponseBody() : outputStream -> {
+        };
+    }
+
+    /**
+     * Export full result of the message query.
+     *
+     * @param messageId identifier of the message
+     * @param format    format of the exported file
+     * @param gzip      whether the file is compressed
+     * @return response body that writes the exported file
+     * @throws EntityNotFoundException     message not found
+     * @throws BadRequestException         message has no successfully executed query
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed
+     */
+    public StreamingResponseBody exportDataByMessageId(UUID messageId, ExportFormat format, boolean gzip)
+            throws EntityNotFoundException, BadRequestException, DatabaseConnectionException,
+            DatabaseExecutionException {
+
+        final ChatQueryWithResponse message = chatQueryWithResponseRepository.findById(messageId)
+                .orElseThrow(() -> new EntityNotFoundException(MESSAGE, messageId));
+
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(message.getChat().getDatabase().getUserId());
+
+        if (!message.dbQuerySuccessfullyExecuted()) {
+            throw new BadRequestException("Message has no data to export.");
+        }
+        return exportService.export(message.getDbQuery(), message.getChat().getDatabase(), format, gzip);
+    }
+
+    /**
+     * Load total count of rows of the message query. The count is computed in the background, so the first request
+     * usually returns the {@link TotalCountResponse.Status#PENDING} status.
+     *
+     * @param messageId identifier of the message
+     * @return total count with the state of its computation
+     * @throws EntityNotFoundException message not found
+     */
+    public TotalCountResponse getTotalCountByMessageId(UUID messageId) throws EntityNotFoundException {
+        final ChatQueryWithResponse message = chatQueryWithResponseRepository.findById(messageId)
+                .orElseThrow(() -> new EntityNotFoundException(MESSAGE, messageId));
+
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(message.getChat().getDatabase().getUserId());
+
+        return messageDataDAO.retrieveTotalCountFromMessage(message, message.getChat().getDatabase());
     }
 
     /**
@@ -92,6 +177,7 @@ public class ChatQueryWithResponseService {
         message.setTimestamp(timestamp);
 
         message.getChat().setModificationDate(timestamp);
+        chatRepository.save(message.getChat()); // chat is detached when the message is updated by a streamed query
 
         return chatQueryWithResponseRepository.save(message);
     }
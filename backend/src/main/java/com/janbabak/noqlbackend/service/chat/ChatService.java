@@ -23,6 +23,7 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static com.janbabak.noqlbackend.error.exception.EntityNotFoundException.Entity.CHAT;
 import static com.janbabak.noqlbackend.error.exception.EntityNotFoundException.Entity.DATABASE;
@@ -60,24 +61,26 @@ public class ChatService {
 
         authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(chat.getDatabase().getUser().getId());
 
+        final List<ChatQueryWithResponse> messages = chat.getMessages();
+
+        // data of messages is loaded concurrently, the list is in the order of messages
+        final List<RetrievedData> data = includeData
+                ? messageDataDAO.retrieveDataFromMessages(messages, chat.getDatabase(), 0, pageSize)
+                : null;
+
         return ChatDto.builder()
                 .id(chat.getId())
                 .name(chat.getName())
                 .modificationDate(chat.getModificationDate())
                 .databaseId(chat.getDatabase().getId())
-                .messages(chat.getMessages()
-                        .stream()
-                        .map(message -> {
+                .messages(IntStream.range(0, messages.size())
+                        .mapToObj(i -> {
+                            final ChatQueryWithResponse message = messages.get(i);
                             final String plotFileUrl = message.plotGenerated()
                                     ? PlotService.createFileUrl(chat.getId(), message.getId())
                                     : null;
 
-                            final RetrievedData data = includeData
-                                    ? messageDataDAO.retrieveDataFromMessage(
-                                            message, chat.getDatabase(), 0, pageSize)
-                                    : null;
-
-                            return new ChatResponse(data, message, plotFileUrl);
+                            return new ChatResponse(data != null ? data.get(i) : null, message, plotFileUrl);
                         })
                         .toList())
                 .build();
@@ -191,7 +194,7 @@ public class ChatService {
         if (chat.isPresent()) {
             authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(chat.get().getDatabase().getUser().getId());
             chatRepository.deleteById(chatId);
-            plotService.deletePlots(chatId.toString());
+            plotService.deletePlotsOfChat(chatId);
         }
     }
 }
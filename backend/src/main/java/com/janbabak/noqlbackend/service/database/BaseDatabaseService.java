@@ -2,32 +2,21 @@ package com.janbabak.noqlbackend.service.database;
 
 import com.janbabak.noqlbackend.dao.DatabaseDAO;
 import com.janbabak.noqlbackend.dao.ResultSetWrapper;
-import com.janbabak.noqlbackend.dao.repository.DatabaseRepository;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.model.database.DatabaseStructure;
-import com.janbabak.noqlbackend.model.entity.Database;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
+
+import java.util.List;
 
 /**
  * This service handles operations with database using the {@link DatabaseDAO } with standard Connection as a DAO.
  * Different database engines are handled by different implementations.
+ * One instance handles one database, instances are created by the {@link DatabaseServiceFactory}.
  */
-@Service
 @RequiredArgsConstructor
 public abstract class BaseDatabaseService {
-    protected DatabaseDAO databaseDAO; // initialized by the descendant class
-
-    @SuppressWarnings("all")
-    @Autowired
-    protected DatabaseRepository databaseRepository;
-
-    public BaseDatabaseService setDatabaseDaoMetadata(Database database) {
-        databaseDAO.databaseMetadata(database);
-        return this;
-    }
+    protected final DatabaseDAO databaseDAO;
 
     /**
      * Execute SQL or some other query (depends on the underling database engine)
@@ -41,6 +30,35 @@ public abstract class BaseDatabaseService {
         return databaseDAO.query(query);
     }
 
+    /**
+     * Execute SQL or some other query with parameters (depends on the underling database engine)
+     *
+     * @param query      query string with {@code ?} placeholders
+     * @param parameters values of the placeholders
+     * @return result set
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException query execution failed (syntax error)
+     */
+    public ResultSetWrapper executeQuery(String query, List<Object> parameters)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+        return databaseDAO.query(query, parameters);
+    }
+
+    /**
+     * Execute query and read the result by a cursor, so it is not loaded into memory at once.
+     *
+     * @param query     query string
+     * @param fetchSize number of rows fetched from the database at once
+     * @param maxRows   maximum number of rows, 0 means unlimited
+     * @return result set, forward-only
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException query execution failed (syntax error)
+     */
+    public ResultSetWrapper executeStreamingQuery(String query, int fetchSize, int maxRows)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+        return databaseDAO.queryWithCursor(query, fetchSize, maxRows);
+    }
+
     /**
      * Retrieves database schema (structure of tables, columns, etc...)
      *
@@ -49,4 +67,22 @@ public abstract class BaseDatabaseService {
      * @throws DatabaseExecutionException query execution failed (syntax error)
      */
     abstract public DatabaseStructure retrieveSchema() throws DatabaseConnectionException, DatabaseExecutionException;
+
+    /**
+     * Retrieves fingerprint of the database schema that changes when the schema changes.
+     *
+     * @return fingerprint
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException query execution failed (syntax error)
+     */
+    abstract public String retrieveSchemaFingerprint() throws DatabaseConnectionException, DatabaseExecutionException;
+
+    /**
+     * Retrieves version of the data that changes when rows of the database change.
+     *
+     * @return data version, null if the database doesn't provide it
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException query execution failed (syntax error)
+     */
+    abstract public String retrieveDataVersion() throws DatabaseConnectionException, DatabaseExecutionException;
 }
@@ -1,5 +1,9 @@
 package com.janbabak.noqlbackend.service.database;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.janbabak.noqlbackend.config.CredentialsCacheConfig;
 import com.janbabak.noqlbackend.service.utils.EncryptionUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -7,21 +11,47 @@ import org.springframework.stereotype.Service;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 /**
  * Service responsible for encryption and decryption of database credentials.
- * The encryption key comes from environment variable {@code DATA_ENCRYPTION_KEY}.
+ * The encryption key comes from environment variable {@code DATA_ENCRYPTION_KEY}, it is decoded once.<br />
+ * Decrypted credentials are cached for a short time, so that they are not decrypted every time a connection is
+ * created. Cached credentials are erased from memory when they are evicted.
  */
 @Slf4j
 @Service
 public class DatabaseCredentialsEncryptionService {
 
-    @Value("${app.security.dataEncryptionKey}")
-    private String encryptionKey;
+    private final CredentialsCacheConfig config;
+    private final SecretKey encryptionKey;
+
+    /**
+     * Decrypted credentials by the encrypted credentials, encryption uses random IV, so changed credentials have
+     * a different key and the old entry just expires.
+     */
+    private final Cache<String, DecryptedCredentials> decryptedCredentials;
+
+    public DatabaseCredentialsEncryptionService(
+            CredentialsCacheConfig config,
+            @Value("${app.security.dataEncryptionKey}") String encryptionKey) {
+
+        this.config = config;
+        this.encryptionKey = EncryptionUtil.getKeyFromBase64(encryptionKey);
+        this.decryptedCredentials = Caffeine.newBuilder()
+                .expireAfterWrite(config.getTtl())
+                .maximumSize(config.getMaxSize())
+                .scheduler(Scheduler.systemScheduler()) // erase expired credentials even if the cache is not accessed
+                .<String, DecryptedCredentials>removalListener((encryptedCredentials, credentials, cause) -> {
+                    if (credentials != null) {
+                        credentials.erase();
+                    }
+                })
+                .build();
+    }
 
     /**
      * Encrypts the credentials using the data encryption key.
@@ -32,8 +62,8 @@ public class DatabaseCredentialsEncryptionService {
     public String encryptCredentials(String credentials) {
         try {
             return EncryptionUtil.encrypt(credentials, encryptionKey);
-        } catch (InvalidAlgorithmParameterException | NoSuchPaddingException | IllegalBlockSizeException |
-                 NoSuchAlgorithmException | BadPaddingException | InvalidKeyException e) {
+        } catch (InvalidAlgorithmParameterException | IllegalBlockSizeException |
+                 BadPaddingException | InvalidKeyException e) {
             log.error("Error while encrypting credentials: {}", e.getMessage());
         }
         return null;
@@ -46,12 +76,52 @@ public class DatabaseCredentialsEncryptionService {
      * @return decrypted credentials
      */
     public String decryptCredentials(String encryptedCredentials) {
+        if (config.getEnabled()) {
+            final DecryptedCredentials cachedCredentials = decryptedCredentials.getIfPresent(encryptedCredentials);
+            // credentials evicted concurrently are already erased
+            final String credentials = cachedCredentials != null ? cachedCredentials.asString() : null;
+            if (credentials != null) {
+                return credentials;
+            }
+        }
+
         try {
-            return EncryptionUtil.decrypt(encryptedCredentials, encryptionKey);
-        } catch (InvalidAlgorithmParameterException | NoSuchPaddingException | IllegalBlockSizeException |
-                 NoSuchAlgorithmException | BadPaddingException | InvalidKeyException e) {
+            final byte[] credentials = EncryptionUtil.decryptToBytes(encryptedCredentials, encryptionKey);
+            final String result = new String(credentials);
+            if (config.getEnabled()) {
+                decryptedCredentials.put(encryptedCredentials, new DecryptedCredentials(credentials));
+            } else {
+                Arrays.fill(credentials, (byte) 0);
+            }
+            return result;
+        } catch (InvalidAlgorithmParameterException | IllegalBlockSizeException |
+                 BadPaddingException | InvalidKeyException e) {
             log.error("Error while decrypting credentials: {}", e.getMessage());
         }
         return null;
     }
+
+    /**
+     * Decrypted credentials that can be erased from memory.
+     */
+    private static final class DecryptedCredentials {
+        private final byte[] plainText;
+        private boolean erased = false;
+
+        private DecryptedCredentials(byte[] plainText) {
+            this.plainText = plainText;
+        }
+
+        /**
+         * @return credentials or null if they were erased
+         */
+        synchronized String asString() {
+            return erased ? null : new String(plainText);
+        }
+
+        synchronized void erase() {
+            Arrays.fill(plainText, (byte) 0);
+            erased = true;
+        }
+    }
 }
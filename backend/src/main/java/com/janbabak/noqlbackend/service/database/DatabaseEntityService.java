@@ -11,6 +11,10 @@ import com.janbabak.noqlbackend.model.database.*;
 import com.janbabak.noqlbackend.model.entity.Chat;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.entity.User;
+import com.janbabak.noqlbackend.service.PlotCacheService;
+import com.janbabak.noqlbackend.service.PlotService;
+import com.janbabak.noqlbackend.service.query.ResultCacheService;
+import com.janbabak.noqlbackend.service.query.TotalCountService;
 import com.janbabak.noqlbackend.service.user.AuthenticationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -40,6 +44,11 @@ public class DatabaseEntityService {
     private final AuthenticationService authenticationService;
     private final DatabaseCredentialsEncryptionService encryptionService;
     private final DatabaseServiceFactory databaseServiceFactory;
+    private final TotalCountService totalCountService;
+    private final ResultCacheService resultCacheService;
+    private final SchemaCacheService schemaCacheService;
+    private final PlotCacheService plotCacheService;
+    private final PlotService plotService;
 
     /**
      * Find database by id.
@@ -112,6 +121,9 @@ public class DatabaseEntityService {
                 .userName(request.getUserName())
                 .password(encryptionService.encryptCredentials(request.getPassword()))
                 .engine(request.getEngine())
+                .fetchSize(request.getFetchSize())
+                .maxRows(request.getMaxRows())
+                .queryTimeoutSeconds(request.getQueryTimeoutSeconds())
                 .user(user)
                 .build();
 
@@ -173,10 +185,23 @@ public class DatabaseEntityService {
         if (data.getEngine() != null) {
             database.setEngine(data.getEngine());
         }
+        if (data.getFetchSize() != null) {
+            database.setFetchSize(data.getFetchSize());
+        }
+        if (data.getMaxRows() != null) {
+            database.setMaxRows(data.getMaxRows());
+        }
+        if (data.getQueryTimeoutSeconds() != null) {
+            database.setQueryTimeoutSeconds(data.getQueryTimeoutSeconds());
+        }
 
         testConnection(database);
 
-        return databaseRepository.save(database);
+        final Database updatedDatabase = databaseRepository.save(database);
+
+        evict(databaseId);
+
+        return updatedDatabase;
     }
 
     /**
@@ -192,10 +217,27 @@ public class DatabaseEntityService {
 
         if (database.isPresent()) {
             authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.get().getUserId());
+            final List<UUID> chatIds = chatRepository.findAllIdsByDatabaseId(databaseId);
             databaseRepository.deleteById(databaseId);
+            plotService.deletePlotsOfChatsAsync(chatIds);
+            evict(databaseId);
         }
     }
 
+    /**
+     * Close connection pools of the database and drop everything cached for it (services, results, total counts,
+     * schema and plots). Called after the database is updated or deleted, including deletion of its owner.
+     *
+     * @param databaseId database identifier
+     */
+    public void evict(UUID databaseId) {
+        databaseServiceFactory.evict(databaseId);
+        totalCountService.evict(databaseId);
+        resultCacheService.evict(databaseId);
+        schemaCacheService.evict(databaseId);
+        plotCacheService.evict(databaseId);
+    }
+
     /**
      * Get database structure by database id
      *
@@ -213,7 +255,28 @@ public class DatabaseEntityService {
 
         authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
 
-        return databaseServiceFactory.getDatabaseService(database).retrieveSchema().toDto();
+        return schemaCacheService.getSchema(database).structure().toDto();
+    }
+
+    /**
+     * Retrieve database structure by database id again, even if it is cached. Used when the schema changed, but
+     * the change was not detected.
+     *
+     * @param databaseId database identifier
+     * @return database structure
+     * @throws EntityNotFoundException                                   database of specific id not found
+     * @throws DatabaseConnectionException                               connection to the database failed
+     * @throws DatabaseExecutionException                                syntax error, ...
+     * @throws org.springframework.security.access.AccessDeniedException if user is not admin or owner of the database.
+     */
+    public DatabaseStructureDto refreshDatabaseStructureByDatabaseId(UUID databaseId)
+            throws EntityNotFoundException, DatabaseConnectionException, DatabaseExecutionException {
+
+        final Database database = findById(databaseId);
+
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
+
+        return schemaCacheService.refreshSchema(database).structure().toDto();
     }
 
     /**
@@ -233,7 +296,7 @@ public class DatabaseEntityService {
 
         authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
 
-        return databaseServiceFactory.getDatabaseService(database).retrieveSchema().generateCreateScript();
+        return schemaCacheService.getSchema(database).createScript();
     }
 
     /**
@@ -1,21 +1,65 @@
 package com.janbabak.noqlbackend.service.database;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.janbabak.noqlbackend.config.ConnectionPoolConfig;
+import com.janbabak.noqlbackend.config.QueryExecutionConfig;
+import com.janbabak.noqlbackend.dao.ConnectionPoolManager;
 import com.janbabak.noqlbackend.dao.DatabaseDAO;
 import com.janbabak.noqlbackend.dao.MySqlDAO;
 import com.janbabak.noqlbackend.dao.PostgresDAO;
+import com.janbabak.noqlbackend.dao.QueryMetrics;
+import com.janbabak.noqlbackend.dao.QueryRegistry;
 import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.entity.User;
 import jakarta.validation.constraints.NotNull;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Creates DAOs and database services of the user's databases.<br />
+ * Each database gets its own immutable DAO and service (handle), so concurrent requests to different databases don't
+ * share any mutable state. Handles are cached by the database id and recreated when the connection parameters change.
+ * Handles of databases that are not used are dropped together with their connection pools, after
+ * {@link ConnectionPoolConfig#getPoolIdleTimeout()} or when there are more than
+ * {@link ConnectionPoolConfig#getMaxDatabases()} databases.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class DatabaseServiceFactory {
 
-    private final PostgresDAO postgresDAO;
-    private final MySqlDAO mySqlDAO;
-    private final PostgresService postgresService;
-    private final MySqlService mySqlService;
+    private final ConnectionPoolManager connectionPoolManager;
+    private final QueryExecutionConfig queryExecutionConfig;
+    private final QueryMetrics queryMetrics;
+    private final QueryRegistry queryRegistry;
+    private final Cache<UUID, DatabaseHandle> handles;
+
+    public DatabaseServiceFactory(
+            ConnectionPoolManager connectionPoolManager,
+            ConnectionPoolConfig connectionPoolConfig,
+            QueryExecutionConfig queryExecutionConfig,
+            QueryMetrics queryMetrics,
+            QueryRegistry queryRegistry) {
+
+        this.connectionPoolManager = connectionPoolManager;
+        this.queryExecutionConfig = queryExecutionConfig;
+        this.queryMetrics = queryMetrics;
+        this.queryRegistry = queryRegistry;
+        this.handles = Caffeine.newBuilder()
+                .maximumSize(connectionPoolConfig.getMaxDatabases())
+                .expireAfterAccess(connectionPoolConfig.getPoolIdleTimeout())
+                .scheduler(Scheduler.systemScheduler())
+                // called synchronously, so that pools of a handle created right after are not closed
+                .<UUID, DatabaseHandle>evictionListener((databaseId, handle, cause) -> {
+                    log.info("Drop handle of database id={}, cause={}.", databaseId, cause);
+                    connectionPoolManager.evict(databaseId);
+                })
+                .build();
+    }
 
     /**
      * Get database service based on the database engine.
@@ -24,10 +68,7 @@ public class DatabaseServiceFactory {
      * @return correct database service
      */
     public @NotNull BaseDatabaseService getDatabaseService(@NotNull Database database) {
-        return switch (database.getEngine()) {
-            case POSTGRES -> postgresService.setDatabaseDaoMetadata(database);
-            case MYSQL -> mySqlService.setDatabaseDaoMetadata(database);
-        };
+        return getHandle(database).databaseService();
     }
 
     /**
@@ -37,9 +78,111 @@ public class DatabaseServiceFactory {
      * @return correct DAO
      */
     public @NotNull DatabaseDAO getDatabaseDAO(@NotNull Database database) {
+        return getHandle(database).databaseDAO();
+    }
+
+    /**
+     * Drop the DAO and service of the database and close its read-only and read-write connection pools, so that
+     * no connection opened with the old host or credentials is reused. The next request creates them again.
+     *
+     * @param databaseId database identifier
+     */
+    public void evict(UUID databaseId) {
+        if (databaseId == null) {
+            return;
+        }
+        handles.invalidate(databaseId);
+        connectionPoolManager.evict(databaseId); // pools hold connections opened with the old connection parameters
+    }
+
+    /**
+     * Get cached handle of the database or create a new one. Database that has not been persisted yet (doesn't have
+     * an id) gets a new handle that is not cached.
+     */
+    private DatabaseHandle getHandle(Database database) {
+        if (database.getId() == null) {
+            return createHandle(database);
+        }
+        return handles.asMap().compute(database.getId(), (databaseId, handle) ->
+                handle != null && handle.isFor(database) ? handle : createHandle(database));
+    }
+
+    private DatabaseHandle createHandle(Database database) {
+        // copy of the metadata, so that modifications of the entity don't affect queries running in other threads
+        final Database metadata = copyConnectionMetadata(database);
+
         return switch (database.getEngine()) {
-            case POSTGRES -> postgresDAO.databaseMetadata(database);
-            case MYSQL -> mySqlDAO.databaseMetadata(database);
+            case POSTGRES -> {
+                final PostgresDAO postgresDAO = new PostgresDAO(
+                        metadata, connectionPoolManager, queryExecutionConfig, queryMetrics, queryRegistry);
+                yield new DatabaseHandle(postgresDAO, new PostgresService(postgresDAO));
+            }
+            case MYSQL -> {
+                final MySqlDAO mySqlDAO = new MySqlDAO(
+                        metadata, connectionPoolManager, queryExecutionConfig, queryMetrics, queryRegistry);
+                yield new DatabaseHandle(mySqlDAO, new MySqlService(mySqlDAO));
+            }
         };
     }
+
+    private static Database copyConnectionMetadata(Database database) {
+        return Database.builder()
+                .id(database.getId())
+                .name(database.getName())
+                .host(database.getHost())
+                .port(database.getPort())
+                .database(database.getDatabase())
+                .userName(database.getUserName())
+                .password(database.getPassword())
+                .engine(database.getEngine())
+                .fetchSize(database.getFetchSize())
+                .maxRows(database.getMaxRows())
+                .queryTimeoutSeconds(database.getQueryTimeoutSeconds())
+                .user(copyUserLimits(database.getUser()))
+                .build();
+    }
+
+    /**
+     * Copy only the limits of the user used by the DAO, so that the cached handle doesn't keep the JPA entity (and
+     * its loaded databases and models) in memory.
+     */
+    private static User copyUserLimits(User user) {
+        if (user == null) {
+            return null;
+        }
+        return User.builder()
+                .id(user.getId())
+                .queryTimeoutSeconds(user.getQueryTimeoutSeconds())
+                .build();
+    }
+
+    /**
+     * DAO and service of one database.
+     *
+     * @param databaseDAO     DAO
+     * @param databaseService service using the DAO
+     */
+    private record DatabaseHandle(DatabaseDAO databaseDAO, BaseDatabaseService databaseService) {
+
+        /**
+         * @return true if the handle was created with the same connection and query parameters as the database has
+         */
+        boolean isFor(Database database) {
+            final Database metadata = databaseDAO.databaseMetadata();
+            return metadata.getEngine() == database.getEngine()
+                    && Objects.equals(metadata.getHost(), database.getHost())
+                    && Objects.equals(metadata.getPort(), database.getPort())
+                    && Objects.equals(metadata.getDatabase(), database.getDatabase())
+                    && Objects.equals(metadata.getUserName(), database.getUserName())
+                    && Objects.equals(metadata.getPassword(), database.getPassword())
+                    && Objects.equals(metadata.getFetchSize(), database.getFetchSize())
+                    && Objects.equals(metadata.getMaxRows(), database.getMaxRows())
+                    && Objects.equals(metadata.getQueryTimeoutSeconds(), database.getQueryTimeoutSeconds())
+                    && Objects.equals(getUserQueryTimeout(metadata), getUserQueryTimeout(database));
+        }
+
+        private static Integer getUserQueryTimeout(Database database) {
+            return database.getUser() != null ? database.getUser().getQueryTimeoutSeconds() : null;
+        }
+    }
 }
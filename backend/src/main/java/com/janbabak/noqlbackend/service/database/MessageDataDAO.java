@@ -1,28 +1,54 @@
 package com.janbabak.noqlbackend.service.database;
 
-import com.janbabak.noqlbackend.dao.ResultSetWrapper;
+import com.janbabak.noqlbackend.config.MessageDataConfig;
+import com.janbabak.noqlbackend.dao.QueryRegistry;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.query.RetrievedData;
-import com.janbabak.noqlbackend.service.query.QueryUtils;
-import lombok.RequiredArgsConstructor;
+import com.janbabak.noqlbackend.model.query.TotalCountResponse;
+import com.janbabak.noqlbackend.service.query.QueryExecutionService;
+import com.janbabak.noqlbackend.service.query.StreamedQueryResult;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.coyote.BadRequestException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 import java.sql.SQLException;
-
-import static com.janbabak.noqlbackend.service.query.QueryUtils.getTotalCount;
-import static com.janbabak.noqlbackend.service.query.QueryUtils.constructPaginatedSqlQuery;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MessageDataDAO {
 
-    private final DatabaseServiceFactory databaseServiceFactory;
+    private final QueryExecutionService queryExecutionService;
+    private final MessageDataConfig config;
+    private final QueryRegistry queryRegistry;
+    private final ThreadPoolExecutor executor;
+
+    public MessageDataDAO(QueryExecutionService queryExecutionService,
+                          MessageDataConfig config,
+                          QueryRegistry queryRegistry) {
+        this.queryExecutionService = queryExecutionService;
+        this.config = config;
+        this.queryRegistry = queryRegistry;
+
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("message-data-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(
+                config.getThreads(),
+                config.getThreads(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(config.getQueueCapacity()),
+                threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy()); // when the pool is saturated, load in the request thread
+    }
 
     /**
      * Retrieve data from the message.
@@ -43,20 +69,190 @@ public class MessageDataDAO {
             return null;
         }
 
-        final BaseDatabaseService databaseService = databaseServiceFactory.getDatabaseService(database);
-        final QueryUtils.PaginatedQuery paginatedQuery;
         try {
-            paginatedQuery = constructPaginatedSqlQuery(message.getDbQuery(), page, pageSize, database);
+            return queryExecutionService.executeQuery(message.getDbQuery(), database, page, pageSize, true);
         } catch (BadRequestException e) {
             log.error("Failed to set pagination in SQL query: {}", e.getMessage());
             return null;
+        } catch (DatabaseExecutionException | SQLException | DatabaseConnectionException e) {
+            log.error("Failed to retrieve data from message {}: {}", message.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieve data from multiple messages concurrently. At most {@link MessageDataConfig#getMaxConcurrencyPerChat()}
+     * messages are loaded at the same time, so that one chat does not exhaust the connections to the database.
+     * Loading is bounded by {@link MessageDataConfig#getLoadTimeout()}, a slow message doesn't block the response.
+     * Queries of the loads share one scope of the {@link QueryRegistry}, they are cancelled when the timeout elapses,
+     * so abandoned queries don't keep running in the database.
+     *
+     * @param messages messages
+     * @param database database of the messages
+     * @param page     page number (starting by 0)
+     * @param pageSize number of items per page
+     * @return retrieved data in the order of the messages, items are null if the data cannot be retrieved or was
+     * not loaded in time
+     */
+    public List<RetrievedData> retrieveDataFromMessages(
+            List<ChatQueryWithResponse> messages,
+            Database database,
+            Integer page,
+            Integer pageSize) {
+
+        final long deadline = System.nanoTime() + config.getLoadTimeout().toNanos();
+        final UUID scope = UUID.randomUUID();
+        final Semaphore permits = new Semaphore(config.getMaxConcurrencyPerChat());
+        final List<CompletableFuture<RetrievedData>> data = new ArrayList<>(messages.size());
+
+        for (final ChatQueryWithResponse message : messages) {
+            if (!message.dbQuerySuccessfullyExecuted()) {
+                data.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            if (!tryAcquire(permits, deadline)) {
+                log.warn("Data of message {} not loaded, timeout elapsed.", message.getId());
+                data.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            final CompletableFuture<RetrievedData> load;
+            try {
+                load = loadAsync(message, database, page, pageSize, scope, deadline);
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            // the permit is held until the query finishes, not only until the timeout elapses
+            load.whenComplete((result, exception) -> permits.release());
+            data.add(load.copy()
+                    .orTimeout(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)
+                    .exceptionally(exception -> {
+                        log.warn("Data of message {} not loaded: {}", message.getId(), exception.toString());
+                        if (exception instanceof TimeoutException) {
+                            queryRegistry.cancelScope(scope);
+                        }
+                        return null;
+                    }));
+        }
+
+        return data.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Load data of the message by the executor.
+     *
+     * @param scope    scope of the query in the {@link QueryRegistry}
+     * @param deadline {@link System#nanoTime()} after which the load is not started
+     * @return future completed by the data, null if the data cannot be retrieved
+     */
+    /* default */ CompletableFuture<RetrievedData> loadAsync(
+            ChatQueryWithResponse message,
+            Database database,
+            Integer page,
+            Integer pageSize,
+            UUID scope,
+            long deadline) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (System.nanoTime() - deadline >= 0) {
+                return null; // waited in the queue, the data would not be used
+            }
+            try (QueryRegistry.Scope ignored = queryRegistry.openScope(scope)) {
+                return retrieveDataFromMessage(message, database, page, pageSize);
+            }
+        }, executor);
+    }
+
+    /**
+     * @return true if the permit was acquired before the deadline
+     */
+    private static boolean tryAcquire(Semaphore permits, long deadline) {
+        try {
+            return permits.tryAcquire(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Retrieve data from the message with keyset pagination if the query supports it.
+     *
+     * @param message  message
+     * @param database database
+     * @param page     page number (starting by 0), ignored if the cursor is set
+     * @param pageSize number of items per page
+     * @param cursor   cursor of the page returned by the previous request, null for the first page
+     * @return retrieved data with the cursor of the next page
+     * @throws BadRequestException the cursor is not valid
+     */
+    public RetrievedData retrieveDataFromMessage(
+            ChatQueryWithResponse message,
+            Database database,
+            Integer page,
+            Integer pageSize,
+            String cursor) throws BadRequestException {
+
+        if (!message.dbQuerySuccessfullyExecuted()) {
+            return null;
         }
-        try (ResultSetWrapper result = databaseService.executeQuery(paginatedQuery.query())) {
-            final Long totalCount = getTotalCount(message.getDbQuery(), database, databaseService);
-            return new RetrievedData(result.resultSet(), paginatedQuery.page(), paginatedQuery.pageSize(), totalCount);
-        } catch (DatabaseExecutionException | SQLException | DatabaseConnectionException | BadRequestException e) {
+
+        try {
+            return queryExecutionService.executeQuery(message.getDbQuery(), database, page, pageSize, cursor);
+        } catch (BadRequestException e) {
+            if (cursor != null) {
+                throw e;
+            }
+            log.error("Failed to set pagination in SQL query: {}", e.getMessage());
+            return null;
+        } catch (DatabaseExecutionException | SQLException | DatabaseConnectionException e) {
             log.error("Failed to retrieve data from message {}: {}", message.getId(), e.getMessage());
             return null;
         }
     }
+
+    /**
+     * Execute query of the message and return the page without reading its rows, so it can be streamed.
+     *
+     * @param message  message
+     * @param database database
+     * @param page     page number (starting by 0)
+     * @param pageSize number of items per page
+     * @return executed query that must be closed, null if the message has no successfully executed query
+     * @throws BadRequestException         page or page size is not valid
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed
+     */
+    public StreamedQueryResult streamDataFromMessage(
+            ChatQueryWithResponse message,
+            Database database,
+            Integer page,
+            Integer pageSize) throws BadRequestException, DatabaseConnectionException, DatabaseExecutionException {
+
+        if (!message.dbQuerySuccessfullyExecuted()) {
+            return null;
+        }
+
+        // failure is thrown before the response is committed, so the client gets the error status, not an empty body
+        return queryExecutionService.streamQuery(message.getDbQuery(), database, page, pageSize);
+    }
+
+    /**
+     * Retrieve total count of rows of the message query without waiting for its computation.
+     *
+     * @param message  message
+     * @param database database
+     * @return total count with the state of its computation
+     */
+    public TotalCountResponse retrieveTotalCountFromMessage(ChatQueryWithResponse message, Database database) {
+        if (!message.dbQuerySuccessfullyExecuted()) {
+            return TotalCountResponse.unavailable();
+        }
+        return queryExecutionService.getTotalCount(message.getDbQuery(), database);
+    }
 }
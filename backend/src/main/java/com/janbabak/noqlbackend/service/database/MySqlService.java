@@ -9,19 +9,14 @@ import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Schema;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Table;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Column;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.ForeignKey;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Service;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-@Service
-@Scope("prototype")
 public class MySqlService extends SqlDatabaseService {
 
     public MySqlService(MySqlDAO mySqlDAO) {
-        super();
-        databaseDAO = mySqlDAO;
+        super(mySqlDAO);
     }
 
     @Override
@@ -10,21 +10,16 @@ import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Table;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Column;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.ForeignKey;
 import org.antlr.v4.runtime.misc.Pair;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Service;
 
 import java.sql.*;
 
 /**
  * Retrieves Postgres database information.
  */
-@Service
-@Scope("prototype")
 public class PostgresService extends SqlDatabaseService {
 
     public PostgresService(PostgresDAO postgresDAO) {
-        super();
-        databaseDAO = postgresDAO;
+        super(postgresDAO);
     }
 
     /**
@@ -0,0 +1,192 @@
+package com.janbabak.noqlbackend.service.database;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.janbabak.noqlbackend.config.SchemaCacheConfig;
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
+import com.janbabak.noqlbackend.model.database.DatabaseStructure;
+import com.janbabak.noqlbackend.model.entity.Database;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Caches schemas of the users' databases together with the generated create scripts, so that they are not
+ * retrieved from the system catalogs on every chat query. The cached schema is verified by a cheap fingerprint
+ * of the schema (at most once per fingerprint check interval) and retrieved again when the fingerprint changes.<br />
+ * Only one request of the database retrieves or verifies the schema, concurrent requests wait for its result.
+ */
+@Slf4j
+@Service
+public class SchemaCacheService {
+
+    private final DatabaseServiceFactory databaseServiceFactory;
+    private final SchemaCacheConfig config;
+    private final AsyncCache<UUID, CachedSchema> schemas;
+
+    public SchemaCacheService(DatabaseServiceFactory databaseServiceFactory, SchemaCacheConfig config) {
+        this.databaseServiceFactory = databaseServiceFactory;
+        this.config = config;
+        this.schemas = Caffeine.newBuilder()
+                .expireAfterAccess(config.getIdleTimeout())
+                .maximumSize(config.getMaxSize())
+                .buildAsync();
+    }
+
+    /**
+     * Get schema of the database, retrieve it if it is not cached or if it has changed.
+     *
+     * @param database database
+     * @return schema with the create script
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    public CachedSchema getSchema(Database database) throws DatabaseConnectionException, DatabaseExecutionException {
+        if (database.getId() == null) {
+            return retrieveSchema(database, null);
+        }
+
+        while (true) {
+            // the load is completed by this thread if it becomes the cached value
+            final CompletableFuture<CachedSchema> load = new CompletableFuture<>();
+            final CompletableFuture<CachedSchema> current = schemas.get(database.getId(), (databaseId, executor) -> load);
+            if (current == load) {
+                return load(database, null, load);
+            }
+
+            final CachedSchema cachedSchema = await(current);
+            if (Instant.now().isBefore(cachedSchema.verifiedAt().plus(config.getFingerprintCheckInterval()))) {
+                return cachedSchema;
+            }
+            // stale schema is verified by the request that replaces it, the others wait for the result
+            if (schemas.asMap().replace(database.getId(), current, load)) {
+                return load(database, cachedSchema, load);
+            }
+        }
+    }
+
+    /**
+     * Retrieve schema of the database even if it is cached.
+     *
+     * @param database database
+     * @return schema with the create script
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    public CachedSchema refreshSchema(Database database)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+        if (database.getId() != null) {
+            schemas.synchronous().invalidate(database.getId());
+        }
+        return getSchema(database);
+    }
+
+    /**
+     * Drop cached structure and create script of the database, the fingerprint is not checked for the next request,
+     * the schema is retrieved from the system catalogs (e.g. after the connection points to another database).
+     *
+     * @param databaseId database identifier
+     */
+    public void evict(UUID databaseId) {
+        schemas.synchronous().invalidate(databaseId);
+    }
+
+    /**
+     * Verify the cached schema by its fingerprint or retrieve the schema and complete the load by the result.
+     *
+     * @param cachedSchema stale schema, null if the schema is not cached
+     * @param load         cached future of the schema, removed from the cache when the schema cannot be retrieved
+     */
+    private CachedSchema load(Database database, CachedSchema cachedSchema, CompletableFuture<CachedSchema> load)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        try {
+            final CachedSchema schema = verifyOrRetrieveSchema(database, cachedSchema);
+            load.complete(schema);
+            return schema;
+        } catch (DatabaseConnectionException | DatabaseExecutionException | RuntimeException e) {
+            schemas.asMap().remove(database.getId(), load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private CachedSchema verifyOrRetrieveSchema(Database database, CachedSchema cachedSchema)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        final String fingerprint = retrieveFingerprint(database);
+        if (cachedSchema != null && fingerprint != null && fingerprint.equals(cachedSchema.fingerprint())) {
+            return cachedSchema.verified(Instant.now());
+        }
+
+        log.info("Retrieve schema of database id={}.", database.getId());
+        return retrieveSchema(database, fingerprint);
+    }
+
+    /**
+     * Wait for the schema loaded by another request and rethrow its failure.
+     */
+    private static CachedSchema await(CompletableFuture<CachedSchema> schema)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        try {
+            return schema.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DatabaseConnectionException connectionException) {
+                throw connectionException;
+            }
+            if (e.getCause() instanceof DatabaseExecutionException executionException) {
+                throw executionException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieve fingerprint of the schema, if it cannot be retrieved (e.g. missing privileges to the system
+     * catalogs), the schema is retrieved every time.
+     */
+    private String retrieveFingerprint(Database database) throws DatabaseConnectionException {
+        try {
+            return databaseServiceFactory.getDatabaseService(database).retrieveSchemaFingerprint();
+        } catch (DatabaseExecutionException e) {
+            log.warn("Cannot retrieve schema fingerprint of database id={} - message={}.",
+                    database.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private CachedSchema retrieveSchema(Database database, String fingerprint)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        final DatabaseStructure structure = databaseServiceFactory.getDatabaseService(database).retrieveSchema();
+        return new CachedSchema(structure, structure.generateCreateScript(), fingerprint, Instant.now());
+    }
+
+    /**
+     * Cached schema, must not be modified.
+     *
+     * @param structure    database structure
+     * @param createScript create script generated from the structure
+     * @param fingerprint  fingerprint of the schema, null if not available
+     * @param verifiedAt   when the fingerprint was checked for the last time
+     */
+    public record CachedSchema(
+            DatabaseStructure structure,
+            String createScript,
+            String fingerprint,
+            Instant verifiedAt) {
+
+        CachedSchema verified(Instant verifiedAt) {
+            return new CachedSchema(structure, createScript, fingerprint, verifiedAt);
+        }
+    }
+}
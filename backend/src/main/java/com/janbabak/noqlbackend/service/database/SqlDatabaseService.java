@@ -1,5 +1,6 @@
 package com.janbabak.noqlbackend.service.database;
 
+import com.janbabak.noqlbackend.dao.DatabaseDAO;
 import com.janbabak.noqlbackend.dao.ResultSetWrapper;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
@@ -14,6 +15,12 @@ public abstract class SqlDatabaseService extends BaseDatabaseService {
     protected static final String COLUMN_NAME_COLUMN_NAME = "column_name";
     protected static final String DATA_TYPE_COLUMN_NAME = "data_type";
     protected static final String PRIMARY_KEY_COLUMN_NAME = "primary_key";
+    protected static final String FINGERPRINT_COLUMN_NAME = "fingerprint";
+    protected static final String DATA_VERSION_COLUMN_NAME = "data_version";
+
+    protected SqlDatabaseService(DatabaseDAO databaseDAO) {
+        super(databaseDAO);
+    }
 
     /**
      * Retrieves information about database schema - schemas, tables, columns, primary and foreign keys, ...
@@ -32,6 +39,41 @@ public abstract class SqlDatabaseService extends BaseDatabaseService {
         return dbStructure;
     }
 
+    /**
+     * Retrieves fingerprint of the database schema computed from the system catalogs.
+     *
+     * @return fingerprint, null if the database returns no rows
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    @Override
+    public String retrieveSchemaFingerprint() throws DatabaseConnectionException, DatabaseExecutionException {
+        try (ResultSetWrapper result = databaseDAO.getSchemaFingerprint()) {
+            return result.resultSet().next() ? result.resultSet().getString(FINGERPRINT_COLUMN_NAME) : null;
+        } catch (SQLException e) {
+            throw new DatabaseExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves version of the data computed from the statistics of the tables.
+     *
+     * @return data version, null if the database doesn't provide it
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    @Override
+    public String retrieveDataVersion() throws DatabaseConnectionException, DatabaseExecutionException {
+        try (ResultSetWrapper result = databaseDAO.getDataVersion()) {
+            if (result == null) {
+                return null;
+            }
+            return result.resultSet().next() ? result.resultSet().getString(DATA_VERSION_COLUMN_NAME) : null;
+        } catch (SQLException e) {
+            throw new DatabaseExecutionException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Retrieves database information about schemas, tables and columns, primary keys, (omits relations)
      *
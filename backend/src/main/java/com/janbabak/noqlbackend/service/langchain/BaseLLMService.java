@@ -6,14 +6,20 @@ import com.janbabak.noqlbackend.config.llm.OpenAiConfig;
 import dev.langchain4j.http.client.HttpClientBuilder;
 import dev.langchain4j.http.client.spring.restclient.SpringRestClientBuilderFactory;
 import dev.langchain4j.model.anthropic.AnthropicChatModel;
+import dev.langchain4j.model.anthropic.AnthropicStreamingChatModel;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.time.Duration.ofSeconds;
 
@@ -37,26 +43,65 @@ public class BaseLLMService {
     private final HttpClientBuilder httpClientBuilder = new SpringRestClientBuilderFactory().create();
 
     /**
-     * Get ChatModel instance based on the provided model ID.
+     * Built models are immutable and thread-safe, so they are reused across requests together with their HTTP
+     * clients and keep-alive connections to the provider.
+     */
+    private final Map<String, ChatModel> models = new ConcurrentHashMap<>();
+    private final Map<String, StreamingChatModel> streamingModels = new ConcurrentHashMap<>();
+
+    /**
+     * Get ChatModel instance based on the provided model ID. The model is built on the first request and cached.
      *
      * @param modelId the identifier of the model
      * @return ChatModel instance
      * @throws BadRequestException if the model ID is unsupported
      */
     protected ChatModel getModel(String modelId) throws BadRequestException {
+        final ChatModel cachedModel = models.get(modelId);
+        if (cachedModel != null) {
+            return cachedModel;
+        }
+        if (openAiConfig.getSupportedModels().contains(modelId)) {
+            return models.computeIfAbsent(modelId, this::buildOpenAiModel);
+        }
+        if (anthropicConfig.getSupportedModels().contains(modelId)) {
+            return models.computeIfAbsent(modelId, this::buildAnthropicModel);
+        }
+        if (geminiConfig.getSupportedModels().contains(modelId)) {
+            return models.computeIfAbsent(modelId, this::buildGoogleGeminiModel);
+        }
+        throw unsupportedModel(modelId);
+    }
+
+    /**
+     * Get StreamingChatModel instance based on the provided model ID. The model is built on the first request
+     * and cached.
+     *
+     * @param modelId the identifier of the model
+     * @return StreamingChatModel instance
+     * @throws BadRequestException if the model ID is unsupported
+     */
+    protected StreamingChatModel getStreamingModel(String modelId) throws BadRequestException {
+        final StreamingChatModel cachedModel = streamingModels.get(modelId);
+        if (cachedModel != null) {
+            return cachedModel;
+        }
         if (openAiConfig.getSupportedModels().contains(modelId)) {
-            return buildOpenAiModel(modelId);
+            return streamingModels.computeIfAbsent(modelId, this::buildOpenAiStreamingModel);
         }
         if (anthropicConfig.getSupportedModels().contains(modelId)) {
-            return buildAnthropicModel(modelId);
+            return streamingModels.computeIfAbsent(modelId, this::buildAnthropicStreamingModel);
         }
         if (geminiConfig.getSupportedModels().contains(modelId)) {
-            return buildGoogleGeminiModel(modelId);
+            return streamingModels.computeIfAbsent(modelId, this::buildGoogleGeminiStreamingModel);
         }
+        throw unsupportedModel(modelId);
+    }
 
+    private BadRequestException unsupportedModel(String modelId) {
         final String errorMsg = "Unsupported model ID: " + modelId;
         log.error(errorMsg);
-        throw new BadRequestException(errorMsg);
+        return new BadRequestException(errorMsg);
     }
 
     private OpenAiChatModel buildOpenAiModel(String modelId) {
@@ -94,4 +139,38 @@ public class BaseLLMService {
                 .httpClientBuilder(httpClientBuilder)
                 .build();
     }
+
+    private OpenAiStreamingChatModel buildOpenAiStreamingModel(String modelId) {
+        return OpenAiStreamingChatModel.builder()
+                .apiKey(openAiConfig.getApiKey())
+                .modelName(modelId)
+                .timeout(TIMEOUT)
+                .maxCompletionTokens(MAX_TOKENS)
+                .logRequests(true)
+                .logResponses(true)
+                .httpClientBuilder(httpClientBuilder)
+                .build();
+    }
+
+    private GoogleAiGeminiStreamingChatModel buildGoogleGeminiStreamingModel(String modelId) {
+        return GoogleAiGeminiStreamingChatModel.builder()
+                .modelName(modelId)
+                .apiKey(geminiConfig.getApiKey())
+                .timeout(TIMEOUT)
+                .maxOutputTokens(MAX_TOKENS)
+                .httpClientBuilder(httpClientBuilder)
+                .build();
+    }
+
+    private AnthropicStreamingChatModel buildAnthropicStreamingModel(String modelId) {
+        return AnthropicStreamingChatModel.builder()
+                .apiKey(anthropicConfig.getApiKey())
+                .modelName(modelId)
+                .timeout(TIMEOUT)
+                .maxTokens(MAX_TOKENS)
+                .logRequests(true)
+                .logResponses(true)
+                .httpClientBuilder(httpClientBuilder)
+                .build();
+    }
 }
@@ -1,12 +1,15 @@
 package com.janbabak.noqlbackend.service.langchain;
 
+import com.janbabak.noqlbackend.dao.QueryRegistry;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.error.exception.PlotScriptExecutionException;
+import com.janbabak.noqlbackend.model.database.DatabaseStructure;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.query.RetrievedData;
 import com.janbabak.noqlbackend.service.PlotService;
 import com.janbabak.noqlbackend.service.query.QueryExecutionService;
+import com.janbabak.noqlbackend.service.query.SchemaSelectionService;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
 import lombok.*;
@@ -15,6 +18,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.coyote.BadRequestException;
 
 import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
 import java.util.function.Consumer;
 
 @Slf4j
@@ -22,26 +27,38 @@ public class QueryDatabaseAssistantTools {
 
     private final QueryExecutionService queryService;
     private final PlotService plotService;
+    private final SchemaSelectionService schemaSelectionService;
+    private final QueryRegistry queryRegistry;
     private final Database database;
+    private final DatabaseStructure databaseStructure;
     private final int page;
     private final int pageSize;
     private final String plotFileName;
+    private final UUID queryScope;
 
     @Getter
     private QueryDatabaseToolResult toolResult;
 
     public QueryDatabaseAssistantTools(Database database,
+                                       DatabaseStructure databaseStructure,
                                        String plotFileName,
                                        int page,
                                        int pageSize,
+                                       UUID queryScope,
                                        QueryExecutionService queryService,
-                                       PlotService plotService) {
+                                       PlotService plotService,
+                                       SchemaSelectionService schemaSelectionService,
+                                       QueryRegistry queryRegistry) {
         this.database = database;
+        this.databaseStructure = databaseStructure;
         this.plotFileName = plotFileName;
         this.page = page;
         this.pageSize = pageSize;
+        this.queryScope = queryScope;
         this.queryService = queryService;
         this.plotService = plotService;
+        this.schemaSelectionService = schemaSelectionService;
+        this.queryRegistry = queryRegistry;
         this.toolResult = new QueryDatabaseToolResult();
     }
 
@@ -57,8 +74,8 @@ public class QueryDatabaseAssistantTools {
     public ToolExecutionResult executeQuery(@P("Database query in valid database query language") String query)  {
         log.info("Execute query tool called");
         toolResult.setDbQuery(query);
-        try {
-            final RetrievedData retrievedData = queryService.executeQuery(query, database, page, pageSize);
+        try (QueryRegistry.Scope ignored = queryRegistry.openScope(queryScope)) {
+            final RetrievedData retrievedData = queryService.executeQuery(query, database, page, pageSize, false);
             toolResult
                     .setRetrievedData(retrievedData)
                     .setDbQueryExecutedSuccessSuccessfully(true)
@@ -96,6 +113,25 @@ public class QueryDatabaseAssistantTools {
         return new ToolExecutionResult(true, null, "Plot successfully generated");
     }
 
+    /**
+     * Method is called by the LLM to get structure of tables that were omitted from the system prompt,
+     * because the database schema is too large.
+     *
+     * @param tables comma separated names of tables
+     * @return tool execution result - create script of the tables
+     */
+    @SuppressWarnings("unused")
+    @Tool("Get structure of database tables that are not described in the system message")
+    public ToolExecutionResult describeTables(
+            @P("Comma separated names of tables in format schema.table") String tables) {
+        log.info("Describe tables tool called: {}", tables);
+        if (databaseStructure == null || tables == null || tables.isBlank()) {
+            return ToolExecutionResult.failure("Structure of the tables is not available");
+        }
+        return ToolExecutionResult.success(
+                schemaSelectionService.describeTables(databaseStructure, List.of(tables.split(","))));
+    }
+
     private ToolExecutionResult handleError(String context, Exception exception, Consumer<String> errorSetter) {
         final String errorMessage = context + ": " + exception.getMessage();
         log.error(errorMessage);
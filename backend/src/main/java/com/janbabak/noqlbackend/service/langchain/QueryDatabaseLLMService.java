@@ -1,45 +1,58 @@
 package com.janbabak.noqlbackend.service.langchain;
 
+import com.janbabak.noqlbackend.dao.QueryRegistry;
+import com.janbabak.noqlbackend.model.database.DatabaseStructure;
 import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.service.PlotService;
 import com.janbabak.noqlbackend.service.query.QueryExecutionService;
+import com.janbabak.noqlbackend.service.query.SchemaSelectionService;
+import dev.langchain4j.agent.tool.Tool;
 import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.agent.tool.ToolSpecifications;
 import dev.langchain4j.data.message.AiMessage;
 import com.janbabak.noqlbackend.service.langchain.QueryDatabaseAssistantTools.QueryDatabaseToolResult;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.tool.DefaultToolExecutor;
+import dev.langchain4j.service.tool.ToolExecutor;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.coyote.BadRequestException;
 import org.springframework.stereotype.Service;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class QueryDatabaseLLMService extends BaseLLMService {
 
+    /**
+     * Specifications of the tools are computed once, only the executors bound to the request-scoped
+     * {@link QueryDatabaseAssistantTools} instance are created per request.
+     */
+    private static final Map<ToolSpecification, Method> TOOL_METHODS = createToolMethods();
+
     private final QueryExecutionService queryService;
     private final PlotService plotService;
+    private final SchemaSelectionService schemaSelectionService;
+    private final QueryRegistry queryRegistry;
 
     public LLMServiceResult executeUserRequest(LLMServiceRequest request) throws BadRequestException {
 
-        final int page = 0;
-        final QueryDatabaseAssistantTools assistantTools = new QueryDatabaseAssistantTools(
-                request.database,
-                request.plotFileName,
-                page,
-                request.pageSize,
-                queryService,
-                plotService);
+        final QueryDatabaseAssistantTools assistantTools = createAssistantTools(request);
 
         final Assistant assistant = buildAssistant(request.modelId, assistantTools);
         final List<ChatMessage> messages = buildMessages(request);
@@ -53,6 +66,71 @@ public class QueryDatabaseLLMService extends BaseLLMService {
         return new LLMServiceResult(response, toolResult);
     }
 
+    /**
+     * Execute user request using streaming chat model. Method returns immediately and the handler is notified from
+     * the thread of the HTTP client as tokens are generated and tools are executed.
+     *
+     * @param request request
+     * @param handler handler of the streamed events
+     * @throws BadRequestException invalid model id
+     */
+    public void executeUserRequestStreaming(LLMServiceRequest request, LLMStreamingHandler handler)
+            throws BadRequestException {
+
+        final QueryDatabaseAssistantTools assistantTools = createAssistantTools(request);
+        final StreamingAssistant assistant = buildStreamingAssistant(request.modelId, assistantTools);
+
+        assistant.chat(buildMessages(request))
+                .onPartialResponse(handler::onPartialResponse)
+                .onToolExecuted(toolExecution -> {
+                    switch (toolExecution.request().name()) {
+                        case "executeQuery" -> handler.onQueryExecuted(assistantTools.getToolResult());
+                        case "generatePlot" -> handler.onPlotGenerated(assistantTools.getToolResult());
+                        default -> { // other tools are not interesting for the client
+                        }
+                    }
+                })
+                .onCompleteResponse(response -> {
+                    final String text = response.aiMessage().text();
+                    log.info("LLM response: {}", text);
+                    log.info("LLM tool result: {}", assistantTools.getToolResult());
+                    handler.onComplete(new LLMServiceResult(text, assistantTools.getToolResult()));
+                })
+                .onError(handler::onError)
+                .start();
+    }
+
+    /**
+     * Handler of events produced by {@link #executeUserRequestStreaming(LLMServiceRequest, LLMStreamingHandler)}.
+     */
+    public interface LLMStreamingHandler {
+
+        /**
+         * @param token next part of the LLM response
+         */
+        void onPartialResponse(String token);
+
+        /**
+         * @param toolResult tool result with the executed query and retrieved data or error
+         */
+        void onQueryExecuted(QueryDatabaseToolResult toolResult);
+
+        /**
+         * @param toolResult tool result with the plot script and information whether the plot was generated
+         */
+        void onPlotGenerated(QueryDatabaseToolResult toolResult);
+
+        /**
+         * @param result complete LLM response and tool result
+         */
+        void onComplete(LLMServiceResult result);
+
+        /**
+         * @param error error of the model or tool execution
+         */
+        void onError(Throwable error);
+    }
+
     public record LLMServiceResult(
             String llmResponse, // response from LLM, comment about the execution
             QueryDatabaseToolResult toolResult // real result of the tool execution
@@ -64,10 +142,12 @@ public class QueryDatabaseLLMService extends BaseLLMService {
             String userQuery,
             String systemQuery,
             Database database,
+            DatabaseStructure databaseStructure, // whole structure, system query may contain only part of it
             String plotFileName,
             String modelId,
             int pageSize,
-            List<ChatQueryWithResponse> chatHistory
+            List<ChatQueryWithResponse> chatHistory,
+            UUID queryScope // scope of the executed queries in the QueryRegistry, they can be cancelled together
     ) {
     }
 
@@ -77,10 +157,52 @@ public class QueryDatabaseLLMService extends BaseLLMService {
 
         return AiServices.builder(Assistant.class)
                 .chatModel(getModel(modelId))
-                .tools(assistantTools)
+                .tools(createToolExecutors(assistantTools))
                 .build();
     }
 
+    // package private for testing
+    /* default */ StreamingAssistant buildStreamingAssistant(String modelId, QueryDatabaseAssistantTools assistantTools)
+            throws BadRequestException {
+
+        return AiServices.builder(StreamingAssistant.class)
+                .streamingChatModel(getStreamingModel(modelId))
+                .tools(createToolExecutors(assistantTools))
+                .build();
+    }
+
+    private QueryDatabaseAssistantTools createAssistantTools(LLMServiceRequest request) {
+        final int page = 0;
+        return new QueryDatabaseAssistantTools(
+                request.database,
+                request.databaseStructure,
+                request.plotFileName,
+                page,
+                request.pageSize,
+                request.queryScope,
+                queryService,
+                plotService,
+                schemaSelectionService,
+                queryRegistry);
+    }
+
+    private static Map<ToolSpecification, ToolExecutor> createToolExecutors(QueryDatabaseAssistantTools assistantTools) {
+        final Map<ToolSpecification, ToolExecutor> tools = new LinkedHashMap<>();
+        TOOL_METHODS.forEach((specification, method) ->
+                tools.put(specification, new DefaultToolExecutor(assistantTools, method)));
+        return tools;
+    }
+
+    private static Map<ToolSpecification, Method> createToolMethods() {
+        final Map<ToolSpecification, Method> toolMethods = new LinkedHashMap<>();
+        for (final Method method : QueryDatabaseAssistantTools.class.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(Tool.class)) {
+                toolMethods.put(ToolSpecifications.toolSpecificationFrom(method), method);
+            }
+        }
+        return Collections.unmodifiableMap(toolMethods);
+    }
+
     /**
      * Build chat messages including system message, chat history and user query.
      */
@@ -0,0 +1,12 @@
+package com.janbabak.noqlbackend.service.langchain;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.service.TokenStream;
+
+import java.util.List;
+
+@FunctionalInterface
+interface StreamingAssistant {
+
+    TokenStream chat(List<ChatMessage> messages);
+}
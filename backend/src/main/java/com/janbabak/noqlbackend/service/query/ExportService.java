@@ -0,0 +1,161 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.janbabak.noqlbackend.config.ExportConfig;
+import com.janbabak.noqlbackend.dao.ResultSetWrapper;
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.ExportFormat;
+import com.janbabak.noqlbackend.service.database.DatabaseServiceFactory;
+import com.janbabak.noqlbackend.service.utils.JsonUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+import static com.janbabak.noqlbackend.service.query.QueryUtils.trimAndRemoveTrailingSemicolon;
+
+/**
+ * Exports full results of queries. Rows are read by a database cursor and written to the response as they are
+ * fetched, so at most one fetch batch is kept in memory.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+
+    private static final String CSV_LINE_SEPARATOR = "\r\n";
+
+    private final DatabaseServiceFactory databaseServiceFactory;
+    private final ExportConfig config;
+
+    /**
+     * Execute the query and return response body that writes its result. The query is executed before the method
+     * returns, so its errors are thrown.
+     *
+     * @param query    select query
+     * @param database database to query
+     * @param format   format of the exported file
+     * @param gzip     whether the file is compressed
+     * @return response body that writes the exported file
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    public StreamingResponseBody export(String query, Database database, ExportFormat format, boolean gzip)
+            throws DatabaseConnectionException, DatabaseExecutionException {
+
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Query cannot be null or blank");
+        }
+        log.info("Export query={}, database_id={}, format={}.", query, database.getId(), format);
+
+        final ResultSetWrapper result = databaseServiceFactory.getDatabaseService(database).executeStreamingQuery(
+                trimAndRemoveTrailingSemicolon(query), config.getFetchSize(), config.getMaxRows());
+
+        return outputStream -> {
+            try (result; OutputStream target = gzip ? new GZIPOutputStream(outputStream) : outputStream) {
+                try {
+                    write(result.resultSet(), format, target);
+                } catch (IOException e) {
+                    // client disconnected, the query is cancelled instead of reading the remaining rows
+                    result.cancel();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                log.error("Export failed - message={}.", e.getMessage());
+                throw new IOException("Cannot read the result: " + e.getMessage(), e);
+            }
+        };
+    }
+
+    /**
+     * Write all rows of the result set.
+     *
+     * @param resultSet result of the query
+     * @param format    format of the output
+     * @param target    output stream, it is flushed but not closed
+     * @throws IOException  cannot write the output
+     * @throws SQLException cannot read the result
+     */
+    /* default */ static void write(ResultSet resultSet, ExportFormat format, OutputStream target)
+            throws IOException, SQLException {
+
+        switch (format) {
+            case CSV -> writeCsv(resultSet, target);
+            case NDJSON -> writeNdjson(resultSet, target);
+        }
+    }
+
+    private static void writeCsv(ResultSet resultSet, OutputStream target) throws IOException, SQLException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8));
+        final ResultSetMetaData rsmd = resultSet.getMetaData();
+        final int columnCount = rsmd.getColumnCount();
+
+        for (int i = 1; i <= columnCount; i++) {
+            if (i > 1) {
+                writer.write(',');
+            }
+            writeCsvValue(writer, rsmd.getColumnName(i));
+        }
+        writer.write(CSV_LINE_SEPARATOR);
+
+        while (resultSet.next()) {
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                final String value = resultSet.getString(i);
+                if (value != null) {
+                    writeCsvValue(writer, value.trim());
+                }
+            }
+            writer.write(CSV_LINE_SEPARATOR);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Values containing separators, quotes or line breaks are quoted and their quotes are doubled.
+     */
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1
+                && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void writeNdjson(ResultSet resultSet, OutputStream target) throws IOException, SQLException {
+        final ResultSetMetaData rsmd = resultSet.getMetaData();
+        final int columnCount = rsmd.getColumnCount();
+        final String[] columnNames = new String[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            columnNames[i - 1] = rsmd.getColumnName(i);
+        }
+
+        final JsonGenerator generator = JsonUtils.createGenerator(target);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null); // rows are separated by line breaks
+        while (resultSet.next()) {
+            generator.writeStartObject();
+            for (int i = 1; i <= columnCount; i++) {
+                final String value = resultSet.getString(i);
+                generator.writeStringField(columnNames[i - 1], value != null ? value.trim() : null);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        generator.close(); // flushes the buffered rows
+    }
+}
@@ -0,0 +1,358 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.ColumnarRows;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.BadRequestException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.janbabak.noqlbackend.service.query.QueryUtils.trimAndRemoveTrailingSemicolon;
+import static com.janbabak.noqlbackend.service.utils.JsonUtils.createFromJson;
+import static com.janbabak.noqlbackend.service.utils.JsonUtils.toJson;
+
+/**
+ * Keyset (seek) pagination of SQL select queries.<br />
+ * Supported are single-table queries ordered by the primary key of the table, e.g.
+ * {@code SELECT * FROM eshop_user WHERE age > 18 ORDER BY id}. Instead of skipping {@code page * pageSize} rows
+ * using {@code OFFSET}, the next page is retrieved by {@code WHERE (id) > (last id)}, which can use the index
+ * of the primary key. Position of the last row is passed to the client in an opaque continuation token (cursor).
+ */
+@Slf4j
+@UtilityClass
+public class KeysetPagination {
+
+    private static final Pattern UNSUPPORTED_CLAUSES = Pattern.compile(
+            "\\b(JOIN|GROUP\\s+BY|HAVING|UNION|INTERSECT|EXCEPT|DISTINCT|LIMIT|OFFSET|FETCH|OVER)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SELECT_KEYWORD = Pattern.compile("\\bSELECT\\b", Pattern.CASE_INSENSITIVE);
+
+    // SELECT <columns> FROM <table> [[AS] alias] [WHERE <condition>] ORDER BY <columns>
+    private static final Pattern SINGLE_TABLE_QUERY = Pattern.compile(
+            "^SELECT\\s+.+?\\s+FROM\\s+((?:[\\w\"`]+\\.)?[\\w\"`]+)" +
+                    "(?:\\s+(?:AS\\s+)?(?!WHERE\\b|ORDER\\b)\\w+)?" +
+                    "(?:\\s+WHERE\\s+.+?)?" +
+                    "\\s+ORDER\\s+BY\\s+(.+)$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern ORDER_BY_ITEM = Pattern.compile(
+            "^((?:[\\w\"`]+\\.)?[\\w\"`]+)(?:\\s+(ASC|DESC))?$",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY_CLAUSE = Pattern.compile(
+            "\\s+ORDER\\s+BY\\s+[^()]+$",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Query that can be paginated by the keyset pagination.
+     *
+     * @param baseQuery  query without the {@code ORDER BY} clause
+     * @param schemaName schema of the queried table, null if not specified in the query
+     * @param tableName  queried table
+     * @param keyColumns columns of the {@code ORDER BY} clause
+     * @param descending true if the rows are sorted in descending order
+     */
+    public record KeysetQuery(
+            String baseQuery,
+            String schemaName,
+            String tableName,
+            List<String> keyColumns,
+            Boolean descending) {
+
+        /**
+         * @return identifier of the query used to check that the cursor belongs to the query
+         */
+        public String hash() {
+            return Integer.toHexString(Objects.hash(baseQuery, keyColumns, descending));
+        }
+    }
+
+    /**
+     * Position of the last row of the page.
+     *
+     * @param queryHash  identifier of the query the cursor belongs to
+     * @param page       number of the next page
+     * @param totalCount total count of rows if it is known
+     * @param keyValues  values of the key columns of the last row
+     * @param keyTypes   SQL types ({@link Types}) of the key columns, numeric keys are bound as numbers, so they are
+     *                   compared exactly, null if the types are not known
+     */
+    public record KeysetCursor(
+            String queryHash,
+            Integer page,
+            Long totalCount,
+            List<String> keyValues,
+            List<Integer> keyTypes) {
+    }
+
+    /**
+     * Query with the seek predicate.
+     *
+     * @param query      query with {@code ?} placeholders
+     * @param parameters values of the placeholders typed by the key columns
+     * @param page       page number
+     * @param pageSize   page size
+     */
+    public record KeysetPaginatedQuery(String query, List<Object> parameters, Integer page, Integer pageSize) {
+    }
+
+    /**
+     * Parse the query and check that it can be paginated by the keyset pagination. The check is syntactical only,
+     * use {@link #isOrderedByPrimaryKey} to verify that the order is deterministic.
+     *
+     * @param query    select query
+     * @param database database the query belongs to
+     * @return parsed query or null if the query is not supported
+     */
+    public static KeysetQuery parseKeysetQuery(String query, Database database) {
+        if (query == null) {
+            return null;
+        }
+        final String trimmedQuery = trimAndRemoveTrailingSemicolon(query);
+
+        if (UNSUPPORTED_CLAUSES.matcher(trimmedQuery).find()
+                || SELECT_KEYWORD.matcher(trimmedQuery).results().count() != 1) {
+            return null; // joins, aggregations, sub-queries, ...
+        }
+
+        final Matcher queryMatcher = SINGLE_TABLE_QUERY.matcher(trimmedQuery);
+        final Matcher orderByMatcher = ORDER_BY_CLAUSE.matcher(trimmedQuery);
+        if (!queryMatcher.matches() || !orderByMatcher.find()) {
+            return null;
+        }
+
+        final List<String> keyColumns = new ArrayList<>();
+        Boolean descending = null;
+        for (final String item : queryMatcher.group(2).split(",")) {
+            final Matcher itemMatcher = ORDER_BY_ITEM.matcher(item.trim());
+            if (!itemMatcher.matches()) {
+                return null; // expressions, NULLS FIRST, ...
+            }
+            final boolean itemDescending = "DESC".equalsIgnoreCase(itemMatcher.group(2));
+            if (descending != null && descending != itemDescending) {
+                return null; // mixed order cannot be expressed by a single row comparison
+            }
+            descending = itemDescending;
+            keyColumns.add(normalizeIdentifier(lastPart(itemMatcher.group(1)), database.getEngine()));
+        }
+
+        final String table = queryMatcher.group(1);
+        final int dotIndex = table.indexOf('.');
+        final String schemaName = dotIndex == -1
+                ? null
+                : normalizeIdentifier(table.substring(0, dotIndex), database.getEngine());
+
+        return new KeysetQuery(
+                trimmedQuery.substring(0, orderByMatcher.start()),
+                schemaName,
+                normalizeIdentifier(lastPart(table), database.getEngine()),
+                keyColumns,
+                descending);
+    }
+
+    /**
+     * Check that the query is ordered by the primary key of the queried table, so the order of rows is deterministic.
+     *
+     * @param keysetQuery       parsed query
+     * @param databaseStructure structure of the database
+     * @return true if the {@code ORDER BY} columns are exactly the primary key columns
+     */
+    public static boolean isOrderedByPrimaryKey(KeysetQuery keysetQuery, SqlDatabaseStructure databaseStructure) {
+        final List<SqlDatabaseStructure.Table> tables = databaseStructure.schemas().values().stream()
+                .filter(schema -> keysetQuery.schemaName() == null
+                        || schema.name().equalsIgnoreCase(keysetQuery.schemaName()))
+                .map(schema -> findTable(schema, keysetQuery.tableName()))
+                .filter(Objects::nonNull)
+                .toList();
+
+        if (tables.size() != 1) {
+            return false; // table not found or ambiguous
+        }
+
+        final List<String> primaryKeys = tables.get(0).getPrimaryKeys();
+        return !primaryKeys.isEmpty()
+                && primaryKeys.size() == keysetQuery.keyColumns().size()
+                && primaryKeys.stream().allMatch(primaryKey -> keysetQuery.keyColumns().stream()
+                .anyMatch(primaryKey::equalsIgnoreCase));
+    }
+
+    /**
+     * Construct query that retrieves the page after the cursor.
+     *
+     * @param keysetQuery parsed query
+     * @param cursor      position of the last row of the previous page
+     * @param pageSize    number of items in one page, if null default value is used
+     * @param database    database object
+     * @return query with the seek predicate
+     * @throws BadRequestException pageSize value is greater than maximum allowed value or the cursor contains
+     *                             invalid number
+     */
+    public static KeysetPaginatedQuery constructKeysetSqlQuery(
+            KeysetQuery keysetQuery,
+            KeysetCursor cursor,
+            Integer pageSize,
+            Database database) throws BadRequestException {
+
+        final int resultPageSize = QueryUtils.getPageSize(pageSize);
+
+        final List<String> quotedKeys = keysetQuery.keyColumns().stream()
+                .map(column -> quoteIdentifier(column, database.getEngine()))
+                .toList();
+        final String placeholders = String.join(", ", quotedKeys.stream().map(key -> "?").toList());
+        final String direction = keysetQuery.descending() ? " DESC" : "";
+
+        final String resultQuery = switch (database.getEngine()) {
+            case POSTGRES, MYSQL -> "SELECT * FROM (%s) AS query WHERE (%s) %s (%s) ORDER BY %s LIMIT %d;".formatted(
+                    keysetQuery.baseQuery(),
+                    String.join(", ", quotedKeys),
+                    keysetQuery.descending() ? "<" : ">",
+                    placeholders,
+                    String.join(", ", quotedKeys.stream().map(key -> key + direction).toList()),
+                    resultPageSize);
+        };
+
+        final List<Object> parameters = new ArrayList<>(cursor.keyValues().size());
+        for (int i = 0; i < cursor.keyValues().size(); i++) {
+            final Integer keyType = cursor.keyTypes() != null ? cursor.keyTypes().get(i) : null;
+            parameters.add(toParameter(cursor.keyValues().get(i), keyType));
+        }
+
+        return new KeysetPaginatedQuery(resultQuery, parameters, cursor.page(), resultPageSize);
+    }
+
+    /**
+     * Create cursor pointing after the last row of the page.
+     *
+     * @param keysetQuery parsed query
+     * @param data        retrieved page
+     * @return encoded cursor or null if there is no next page or key columns are not part of the result
+     */
+    public static String createCursor(KeysetQuery keysetQuery, RetrievedData data) {
+        if (data.rows().isEmpty() || data.rows().size() < data.pageSize()) {
+            return null; // last page
+        }
+
+        final List<String> lastRow = data.rows().get(data.rows().size() - 1);
+        final List<String> keyValues = new ArrayList<>();
+        // types are known only when the rows were read from the result set
+        final List<Integer> keyTypes = data.rows() instanceof ColumnarRows ? new ArrayList<>() : null;
+        for (final String keyColumn : keysetQuery.keyColumns()) {
+            int columnIndex = -1;
+            for (int i = 0; i < data.columnNames().size(); i++) {
+                if (data.columnNames().get(i).equalsIgnoreCase(keyColumn)) {
+                    columnIndex = i;
+                    break;
+                }
+            }
+            if (columnIndex == -1 || lastRow.get(columnIndex) == null) {
+                return null; // key column not selected or renamed
+            }
+            keyValues.add(lastRow.get(columnIndex));
+            if (keyTypes != null) {
+                keyTypes.add(((ColumnarRows) data.rows()).getColumnType(columnIndex));
+            }
+        }
+
+        final KeysetCursor cursor =
+                new KeysetCursor(keysetQuery.hash(), data.page() + 1, data.totalCount(), keyValues, keyTypes);
+        try {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(toJson(cursor).getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            log.error("Cannot create keyset cursor - message={}.", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decode cursor and check that it belongs to the query.
+     *
+     * @param cursor      encoded cursor
+     * @param keysetQuery parsed query
+     * @return decoded cursor
+     * @throws BadRequestException cursor is not valid or belongs to another query
+     */
+    public static KeysetCursor decodeCursor(String cursor, KeysetQuery keysetQuery) throws BadRequestException {
+        final KeysetCursor decodedCursor;
+        try {
+            decodedCursor = createFromJson(
+                    new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), KeysetCursor.class);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor.");
+        }
+
+        if (!keysetQuery.hash().equals(decodedCursor.queryHash())
+                || decodedCursor.keyValues() == null
+                || decodedCursor.keyValues().size() != keysetQuery.keyColumns().size()
+                || (decodedCursor.keyTypes() != null && decodedCursor.keyTypes().size() != keysetQuery.keyColumns().size())
+                || decodedCursor.page() == null
+                || decodedCursor.page() < 0) {
+            throw new BadRequestException("Cursor does not belong to the query.");
+        }
+        return decodedCursor;
+    }
+
+    /**
+     * Convert value of the key column to the parameter of the seek predicate. Integers are bound as long (or as
+     * decimal when they don't fit, e.g. unsigned bigint), decimals as {@link BigDecimal}, other values as strings.
+     */
+    private static Object toParameter(String value, Integer sqlType) throws BadRequestException {
+        if (sqlType == null) {
+            return value;
+        }
+        try {
+            return switch (sqlType) {
+                case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> {
+                    final BigDecimal number = new BigDecimal(value);
+                    yield number.bitLength() < Long.SIZE ? (Object) number.longValueExact() : number;
+                }
+                case Types.NUMERIC, Types.DECIMAL -> new BigDecimal(value);
+                default -> value;
+            };
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new BadRequestException("Invalid cursor.");
+        }
+    }
+
+    private static SqlDatabaseStructure.Table findTable(SqlDatabaseStructure.Schema schema, String tableName) {
+        return schema.tables().values().stream()
+                .filter(table -> table.name().equalsIgnoreCase(tableName))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String lastPart(String identifier) {
+        return identifier.substring(identifier.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Strip quotes, unquoted identifiers are lower-cased by Postgres.
+     */
+    private static String normalizeIdentifier(String identifier, DatabaseEngine engine) {
+        if (identifier.length() > 1 && (identifier.startsWith("\"") || identifier.startsWith("`"))) {
+            return identifier.substring(1, identifier.length() - 1);
+        }
+        return engine == DatabaseEngine.POSTGRES ? identifier.toLowerCase() : identifier;
+    }
+
+    private static String quoteIdentifier(String identifier, DatabaseEngine engine) {
+        return switch (engine) {
+            case POSTGRES -> "\"" + identifier.replace("\"", "\"\"") + "\"";
+            case MYSQL -> "`" + identifier.replace("`", "``") + "`";
+        };
+    }
+}
@@ -3,19 +3,29 @@ package com.janbabak.noqlbackend.service.query;
 import com.janbabak.noqlbackend.dao.ResultSetWrapper;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
+import com.janbabak.noqlbackend.model.Settings;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.model.query.TotalCountMode;
+import com.janbabak.noqlbackend.model.query.TotalCountResponse;
 import com.janbabak.noqlbackend.service.database.BaseDatabaseService;
 import com.janbabak.noqlbackend.service.database.DatabaseServiceFactory;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService;
+import com.janbabak.noqlbackend.service.query.KeysetPagination.KeysetCursor;
+import com.janbabak.noqlbackend.service.query.KeysetPagination.KeysetPaginatedQuery;
+import com.janbabak.noqlbackend.service.query.KeysetPagination.KeysetQuery;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.coyote.BadRequestException;
 import org.springframework.stereotype.Service;
 
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
-import static com.janbabak.noqlbackend.service.query.QueryUtils.getTotalCount;
+import static com.janbabak.noqlbackend.service.query.KeysetPagination.*;
 import static com.janbabak.noqlbackend.service.query.QueryUtils.constructPaginatedSqlQuery;
+import static com.janbabak.noqlbackend.service.query.QueryUtils.retrievePaginatedData;
 
 @Slf4j
 @Service
@@ -23,19 +33,193 @@ import static com.janbabak.noqlbackend.service.query.QueryUtils.constructPaginat
 public class QueryExecutionService {
 
     private final DatabaseServiceFactory databaseServiceFactory;
+    private final TotalCountService totalCountService;
+    private final ResultCacheService resultCacheService;
+    private final SchemaCacheService schemaCacheService;
 
-
-    public RetrievedData executeQuery(String query, Database database, int page, int pageSize)
+    /**
+     * Execute select query with pagination. Pages of message data are cached by the {@link ResultCacheService}, so
+     * that replayed messages don't query the database again. Queries of the console and of the LLM must see current
+     * data, so they bypass the cache.<br />
+     * In the {@link TotalCountMode#DEFERRED} mode, the page is returned without waiting for the total count - it is
+     * null until it is computed in the background, then it can be retrieved by {@link #getTotalCount}.
+     *
+     * @param query    select query
+     * @param database database to query
+     * @param page     page number (first page has index 0), if null, default value is 0
+     * @param pageSize number of items in one page, if null default value is used
+     * @param useCache if true, the page is returned from the cache and retrieved pages are cached
+     * @return retrieved data
+     * @throws BadRequestException         page or page size is not valid
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     * @throws SQLException                cannot read the result
+     */
+    public RetrievedData executeQuery(
+            String query,
+            Database database,
+            Integer page,
+            Integer pageSize,
+            boolean useCache)
             throws BadRequestException, DatabaseConnectionException, DatabaseExecutionException, SQLException {
 
         validateQuery(query);
 
-        final QueryUtils.PaginatedQuery paginatedQuery = constructPaginatedSqlQuery(query, page, pageSize, database);
+        final int resultPage = QueryUtils.getPage(page);
+        final int resultPageSize = QueryUtils.getPageSize(pageSize);
+
+        if (!useCache) {
+            return retrieveData(query, database, resultPage, resultPageSize);
+        }
+
+        final RetrievedData cachedData = resultCacheService.get(database, query, resultPage, resultPageSize);
+        if (cachedData != null) {
+            return cachedData;
+        }
+
+        final RetrievedData data = retrieveData(query, database, resultPage, resultPageSize);
+
+        // pages without the total count are not cached, so that the count is returned once it is computed
+        if (data.totalCount() != null) {
+            resultCacheService.put(database, query, resultPage, resultPageSize, data);
+        }
+        return data;
+    }
+
+    private RetrievedData retrieveData(String query, Database database, int page, int pageSize)
+            throws BadRequestException, DatabaseConnectionException, DatabaseExecutionException, SQLException {
+
         final BaseDatabaseService databaseService = databaseServiceFactory.getDatabaseService(database);
 
+        if (Settings.getTotalCountModeStatic(database.getEngine()) != TotalCountMode.DEFERRED) {
+            return retrievePaginatedData(query, page, pageSize, database, databaseService);
+        }
+
+        final QueryUtils.PaginatedQuery paginatedQuery = constructPaginatedSqlQuery(query, page, pageSize, database);
+
+        // start counting before the page is retrieved, so that cheap counts are ready together with the page
+        final CompletableFuture<Long> totalCount =
+                totalCountService.getTotalCountAsync(query, database, databaseService);
+
         try (ResultSetWrapper result = databaseService.executeQuery(paginatedQuery.query())) {
-            final Long totalCount = getTotalCount(query, database, databaseService);
-            return new RetrievedData(result.resultSet(), paginatedQuery.page(), paginatedQuery.pageSize(), totalCount);
+            return new RetrievedData(
+                    result.resultSet(),
+                    paginatedQuery.page(),
+                    paginatedQuery.pageSize(),
+                    totalCount.exceptionally(e -> null).getNow(null));
+        }
+    }
+
+    /**
+     * Execute select query with pagination. If the query is ordered by the primary key of a single table, keyset
+     * pagination is used - the result contains a cursor of the next page, and the next page is retrieved by a seek
+     * predicate instead of {@code OFFSET}, so deep pages don't have to skip all the previous rows. It is used for
+     * message data, pages retrieved by offset are cached.
+     *
+     * @param query    select query
+     * @param database database to query
+     * @param page     page number (first page has index 0), if null, default value is 0, ignored if cursor is set
+     * @param pageSize number of items in one page, if null default value is used
+     * @param cursor   cursor of the page returned by the previous request, null for offset pagination
+     * @return retrieved data with the cursor of the next page if keyset pagination is supported
+     * @throws BadRequestException         page, page size or cursor is not valid
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     * @throws SQLException                cannot read the result
+     */
+    public RetrievedData executeQuery(String query, Database database, Integer page, Integer pageSize, String cursor)
+            throws BadRequestException, DatabaseConnectionException, DatabaseExecutionException, SQLException {
+
+        final KeysetQuery keysetQuery = parseKeysetQuery(query, database);
+
+        if (cursor == null) {
+            final RetrievedData data = executeQuery(query, database, page, pageSize, true);
+            return keysetQuery != null && isOrderedByPrimaryKey(keysetQuery, database)
+                    ? data.withNextCursor(createCursor(keysetQuery, data))
+                    : data;
+        }
+
+        if (keysetQuery == null) {
+            throw new BadRequestException("Cursor pagination is not supported for this query.");
+        }
+
+        final KeysetCursor decodedCursor = decodeCursor(cursor, keysetQuery);
+        final KeysetPaginatedQuery paginatedQuery =
+                constructKeysetSqlQuery(keysetQuery, decodedCursor, pageSize, database);
+        final BaseDatabaseService databaseService = databaseServiceFactory.getDatabaseService(database);
+
+        try (ResultSetWrapper result =
+                     databaseService.executeQuery(paginatedQuery.query(), paginatedQuery.parameters())) {
+
+            final RetrievedData data = new RetrievedData(
+                    result.resultSet(),
+                    paginatedQuery.page(),
+                    paginatedQuery.pageSize(),
+                    decodedCursor.totalCount());
+            return data.withNextCursor(createCursor(keysetQuery, data));
+        }
+    }
+
+    /**
+     * Execute select query with pagination and return the page without reading its rows. Rows are written as JSON
+     * when they are read from the result set, so the page is not kept in memory and pages up to
+     * {@code PAGINATION_MAX_STREAMING_PAGE_SIZE} rows can be requested. Total count is computed by the
+     * {@link TotalCountService} while the rows are written. Streamed pages are not cached.
+     *
+     * @param query    select query
+     * @param database database to query
+     * @param page     page number (first page has index 0), if null, default value is 0
+     * @param pageSize number of items in one page, if null default value is used
+     * @return executed query, must be closed
+     * @throws BadRequestException         page or page size is not valid
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     */
+    public StreamedQueryResult streamQuery(String query, Database database, Integer page, Integer pageSize)
+            throws BadRequestException, DatabaseConnectionException, DatabaseExecutionException {
+
+        validateQuery(query);
+
+        final QueryUtils.PaginatedQuery paginatedQuery = constructPaginatedSqlQuery(
+                query, page, pageSize, Settings.getMaxStreamingPageSizeStatic(), database);
+        final BaseDatabaseService databaseService = databaseServiceFactory.getDatabaseService(database);
+
+        final ResultSetWrapper result = databaseService.executeQuery(paginatedQuery.query());
+        final CompletableFuture<Long> totalCount =
+                totalCountService.getTotalCountAsync(query, database, databaseService);
+
+        return new StreamedQueryResult(
+                result,
+                paginatedQuery.page(),
+                paginatedQuery.pageSize(),
+                totalCount,
+                Settings.getTotalCountModeStatic(database.getEngine()) != TotalCountMode.DEFERRED);
+    }
+
+    /**
+     * Get total count of rows of the select query without waiting for its computation.
+     *
+     * @param query    select query
+     * @param database database to query
+     * @return total count with the state of its computation
+     */
+    public TotalCountResponse getTotalCount(String query, Database database) {
+        validateQuery(query);
+
+        return totalCountService.getTotalCount(query, database, databaseServiceFactory.getDatabaseService(database));
+    }
+
+    /**
+     * Check that the rows are sorted by the primary key, so the keyset pagination returns all of them.
+     */
+    private boolean isOrderedByPrimaryKey(KeysetQuery keysetQuery, Database database) {
+        try {
+            return schemaCacheService.getSchema(database).structure()
+                    instanceof SqlDatabaseStructure databaseStructure
+                    && KeysetPagination.isOrderedByPrimaryKey(keysetQuery, databaseStructure);
+        } catch (DatabaseConnectionException | DatabaseExecutionException e) {
+            log.warn("Cannot retrieve schema for keyset pagination - message={}.", e.getMessage());
+            return false;
         }
     }
 
@@ -1,25 +1,40 @@
 package com.janbabak.noqlbackend.service.query;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.janbabak.noqlbackend.dao.QueryRegistry;
+import com.janbabak.noqlbackend.dao.QueryRegistry.RunningQueryInfo;
 import com.janbabak.noqlbackend.error.exception.*;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
 import com.janbabak.noqlbackend.model.query.*;
 import com.janbabak.noqlbackend.service.PlotService;
+import com.janbabak.noqlbackend.service.chat.ChatAdmissionService;
 import com.janbabak.noqlbackend.service.chat.ChatQueryWithResponseService;
 import com.janbabak.noqlbackend.service.chat.ChatService;
 import com.janbabak.noqlbackend.service.database.DatabaseEntityService;
-import com.janbabak.noqlbackend.service.database.DatabaseServiceFactory;
 import com.janbabak.noqlbackend.service.database.MessageDataDAO;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService.CachedSchema;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseAssistantTools.QueryDatabaseToolResult;
 import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService.LLMServiceRequest;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService.LLMServiceResult;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService.LLMStreamingHandler;
 import com.janbabak.noqlbackend.service.user.AuthenticationService;
 import com.janbabak.noqlbackend.service.user.UserService;
+import com.janbabak.noqlbackend.service.utils.JsonUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.coyote.BadRequestException;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Service
@@ -35,6 +50,10 @@ public class QueryService {
      * if host = {@code localhost} then it is replaced by this value, works on mac OS, not sure about other systems
      */
     public final static String DOCKER_LOCALHOST = "host.docker.internal";
+    /**
+     * Maximum duration of the streamed chat query, LLM may be called several times because of tool calls.
+     */
+    private static final Duration STREAM_TIMEOUT = Duration.ofMinutes(3);
 
     private final ChatService chatService;
     private final UserService userService;
@@ -43,8 +62,12 @@ public class QueryService {
     private final QueryExecutionService queryExecutionService;
     private final AuthenticationService authenticationService;
     private final QueryDatabaseLLMService llmService;
-    private final DatabaseServiceFactory databaseServiceFactory;
+    private final SchemaCacheService schemaCacheService;
+    private final SchemaSelectionService schemaSelectionService;
     private final MessageDataDAO messageDataDAO;
+    private final ExportService exportService;
+    private final QueryRegistry queryRegistry;
+    private final ChatAdmissionService chatAdmissionService;
 
     /**
      * Create system query that commands the LLM with instructions. Use placeholders for connection to the database
@@ -121,13 +144,82 @@ public class QueryService {
         authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
 
         try {
-            final RetrievedData data = queryExecutionService.executeQuery(query, database, page, pageSize);
+            // console must show current data, so the result cache is not used
+            final RetrievedData data = queryExecutionService.executeQuery(query, database, page, pageSize, false);
             return new ConsoleResponse(data, query, null);
         } catch (BadRequestException | DatabaseConnectionException | DatabaseExecutionException | SQLException e) {
             return ConsoleResponse.failedResponse(e.getMessage());
         }
     }
 
+    /**
+     * Execute query language query and stream its result in the format of {@link ConsoleResponse}, rows are written
+     * as they are read from the database, so larger pages can be requested.
+     *
+     * @param databaseId identifier of the database
+     * @param query      query in the query language of the database
+     * @param page       page number (first page is 0)
+     * @param pageSize   number of items in one page
+     * @return response body
+     * @throws EntityNotFoundException                                   database not found
+     * @throws org.springframework.security.access.AccessDeniedException user is not admin or owner of the database
+     */
+    public StreamingResponseBody streamQueryLanguageSelectQuery(
+            UUID databaseId,
+            String query,
+            Integer page,
+            Integer pageSize) throws EntityNotFoundException {
+
+        log.info("Stream query language query: query={}, database_id={}.", query, databaseId);
+
+        final Database database = databaseEntityService.findById(databaseId);
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
+
+        final StreamedQueryResult result;
+        try {
+            result = queryExecutionService.streamQuery(query, database, page, pageSize);
+        } catch (BadRequestException | DatabaseConnectionException | DatabaseExecutionException e) {
+            final ConsoleResponse response = ConsoleResponse.failedResponse(e.getMessage());
+            return outputStream -> JsonUtils.objectMapper.writeValue(outputStream, response);
+        }
+
+        return outputStream -> {
+            try (result; JsonGenerator generator = JsonUtils.createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeFieldName("data");
+                result.write(generator);
+                generator.writeStringField("dbQuery", query);
+                generator.writeNullField("error");
+                generator.writeEndObject();
+            }
+        };
+    }
+
+    /**
+     * Export full result of query language query.
+     *
+     * @param databaseId identifier of the database
+     * @param query      query in the query language of the database
+     * @param format     format of the exported file
+     * @param gzip       whether the file is compressed
+     * @return response body that writes the exported file
+     * @throws EntityNotFoundException                                   database not found
+     * @throws DatabaseConnectionException                               cannot establish connection with the database
+     * @throws DatabaseExecutionException                                query execution failed
+     * @throws org.springframework.security.access.AccessDeniedException user is not admin or owner of the database
+     */
+    public StreamingResponseBody exportQueryLanguageSelectQuery(
+            UUID databaseId,
+            String query,
+            ExportFormat format,
+            boolean gzip) throws EntityNotFoundException, DatabaseConnectionException, DatabaseExecutionException {
+
+        final Database database = databaseEntityService.findById(databaseId);
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
+
+        return exportService.export(query, database, format, gzip);
+    }
+
     /**
      * Load result of response of last message from chat. Used when user opens an old chat.
      *
@@ -160,9 +252,11 @@ public class QueryService {
      * @throws DatabaseConnectionException cannot establish connection with the database
      * @throws DatabaseExecutionException  retrieving database schema failure
      * @throws BadRequestException         invalid model id
+     * @throws TooManyRequestsException    too many concurrent chat requests of the user, database or all users
      */
     public ChatResponse queryChat(UUID databaseId, UUID chatId, QueryRequest queryRequest, Integer pageSize)
-            throws EntityNotFoundException, DatabaseConnectionException, DatabaseExecutionException, BadRequestException {
+            throws EntityNotFoundException, DatabaseConnectionException, DatabaseExecutionException,
+            BadRequestException, TooManyRequestsException {
 
         log.info("Execute chat, database_id={}", databaseId);
 
@@ -172,40 +266,279 @@ public class QueryService {
 
         chatService.findById(chatId, 0, false); // check if chat exists
 
-        if (userService.decrementQueryLimit(database.getUserId()) <= 0) {
-            log.info("Query limit exceeded");
-            return ChatResponse.failedResponse(
-                    "Query limit exceeded",
-                    null,
-                    queryRequest.getQuery());
+        // wait for admission before the query limit is decremented, rejected request doesn't consume it
+        try (ChatAdmissionService.Permit ignored = chatAdmissionService.acquire(database.getUserId(), databaseId)) {
+            if (!userService.decrementQueryLimit(database.getUserId())) {
+                log.info("Query limit exceeded");
+                return ChatResponse.failedResponse(
+                        "Query limit exceeded",
+                        null,
+                        queryRequest.getQuery());
+            }
+
+            final List<ChatQueryWithResponse> chatHistory = chatQueryWithResponseService.getMessagesFromChat(chatId);
+            ChatQueryWithResponse chatQueryWithResponse = chatService.addEmptyMessageToChat(chatId);
+            final String plotFileName = PlotService.createFileName(chatId, chatQueryWithResponse.getId());
+
+            final LLMServiceResult response;
+            try {
+                final LLMServiceRequest llmServiceRequest =
+                        createLLMServiceRequest(database, queryRequest, chatHistory, plotFileName, pageSize,
+                                chatQueryWithResponse.getId());
+
+                response = llmService.executeUserRequest(llmServiceRequest);
+            } catch (Exception e) {
+                userService.refundQueryLimit(database.getUserId()); // the query was not answered
+                throw e;
+            }
+
+            chatQueryWithResponse = chatQueryWithResponseService.updateEmptyMessage(
+                    chatQueryWithResponse, queryRequest.getQuery(), response);
+
+            final String plotUrl = chatQueryWithResponse.getPlotScript() != null
+                    ? PlotService.createFileUrl(plotFileName)
+                    : null;
+
+            return new ChatResponse(response.toolResult().getRetrievedData(), chatQueryWithResponse, plotUrl);
         }
+    }
+
+    /**
+     * Query chat with natural language query like {@link #queryChat(UUID, UUID, QueryRequest, Integer)}, but stream
+     * the result as server-sent events as soon as they are available. Events are described by
+     * {@link ChatStreamEventType}, the stream ends by {@link ChatStreamEventType#MESSAGE} event with the persisted
+     * message or by {@link ChatStreamEventType#ERROR} event.
+     *
+     * @param databaseId   database id
+     * @param chatId       chat id
+     * @param queryRequest query
+     * @param pageSize     number of items per page
+     * @return emitter of the events
+     * @throws EntityNotFoundException     queried database not found.
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  retrieving database schema failure
+     * @throws BadRequestException         invalid model id
+     * @throws TooManyRequestsException    too many concurrent chat requests of the user, database or all users
+     */
+    public SseEmitter queryChatStream(UUID databaseId, UUID chatId, QueryRequest queryRequest, Integer pageSize)
+            throws EntityNotFoundException, DatabaseConnectionException, DatabaseExecutionException,
+            BadRequestException, TooManyRequestsException {
+
+        log.info("Execute streaming chat, database_id={}", databaseId);
 
-        final List<ChatQueryWithResponse> chatHistory = chatQueryWithResponseService.getMessagesFromChat(chatId);
-        ChatQueryWithResponse chatQueryWithResponse = chatService.addEmptyMessageToChat(chatId);
-        final String plotFileName = PlotService.createFileName(chatId, chatQueryWithResponse.getId());
+        final Database database = databaseEntityService.findById(databaseId);
 
-        final String createScript = databaseServiceFactory.getDatabaseService(database)
-                .retrieveSchema().generateCreateScript();
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
 
-        final QueryDatabaseLLMService.LLMServiceRequest llmServiceRequest =
-                new QueryDatabaseLLMService.LLMServiceRequest(
-                        queryRequest.getQuery(),
-                        createSystemQuery(createScript, database),
-                        database,
-                        plotFileName,
-                        queryRequest.getModel(),
-                        pageSize,
-                        chatHistory);
+        chatService.findById(chatId, 0, false); // check if chat exists
 
-        final QueryDatabaseLLMService.LLMServiceResult response = llmService.executeUserRequest(llmServiceRequest);
+        // the permit is held until the LLM finishes, not until the emitter is returned
+        final ChatAdmissionService.Permit permit = chatAdmissionService.acquire(database.getUserId(), databaseId);
+        final SseEmitter emitter = createEmitter();
 
-        chatQueryWithResponse = chatQueryWithResponseService.updateEmptyMessage(
-                chatQueryWithResponse, queryRequest.getQuery(), response);
+        // the permit is held until the LLM turn ends (even if the client disconnects), so the concurrency limits
+        // hold; the turn is either answered and persisted, or failed and refunded, never both
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        // set when the client disconnects or the stream times out, no more events are sent
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+        boolean queryLimitDecremented = false;
+        try {
+            if (!userService.decrementQueryLimit(database.getUserId())) {
+                log.info("Query limit exceeded");
+                permit.close();
+                sendEvent(emitter, ChatStreamEventType.ERROR,
+                        ChatResponse.failedResponse("Query limit exceeded", null, queryRequest.getQuery()));
+                emitter.complete();
+                return emitter;
+            }
+            queryLimitDecremented = true;
 
-        final String plotUrl = chatQueryWithResponse.getPlotScript() != null
-                ? PlotService.createFileUrl(plotFileName)
-                : null;
+            final List<ChatQueryWithResponse> chatHistory = chatQueryWithResponseService.getMessagesFromChat(chatId);
+            final ChatQueryWithResponse chatQueryWithResponse = chatService.addEmptyMessageToChat(chatId);
+            final String plotFileName = PlotService.createFileName(chatId, chatQueryWithResponse.getId());
 
-        return new ChatResponse(response.toolResult().getRetrievedData(), chatQueryWithResponse, plotUrl);
+            final LLMServiceRequest llmServiceRequest =
+                    createLLMServiceRequest(database, queryRequest, chatHistory, plotFileName, pageSize,
+                            chatQueryWithResponse.getId());
+
+            // running queries of the turn are cancelled, the permit and the query limit are settled when the LLM
+            // finishes the turn
+            final Runnable abort = () -> {
+                if (!finished.get() && aborted.compareAndSet(false, true)) {
+                    log.info("Streaming chat aborted, chat_id={}", chatId);
+                    queryRegistry.cancelScope(chatQueryWithResponse.getId());
+                }
+            };
+            emitter.onTimeout(abort);
+            emitter.onError(error -> abort.run());
+            emitter.onCompletion(abort);
+
+            llmService.executeUserRequestStreaming(llmServiceRequest, new LLMStreamingHandler() {
+                @Override
+                public void onPartialResponse(String token) {
+                    send(ChatStreamEventType.TOKEN, Map.of("token", token));
+                }
+
+                @Override
+                public void onQueryExecuted(QueryDatabaseToolResult toolResult) {
+                    send(ChatStreamEventType.QUERY,
+                            Map.of("dbQuery", Objects.requireNonNullElse(toolResult.getDbQuery(), "")));
+                    if (toolResult.getRetrievedData() != null) {
+                        send(ChatStreamEventType.DATA, toolResult.getRetrievedData());
+                    }
+                }
+
+                @Override
+                public void onPlotGenerated(QueryDatabaseToolResult toolResult) {
+                    if (Boolean.TRUE.equals(toolResult.getPlotGeneratedSuccessfully())) {
+                        send(ChatStreamEventType.PLOT, Map.of("plotUrl", PlotService.createFileUrl(plotFileName)));
+                    }
+                }
+
+                @Override
+                public void onComplete(LLMServiceResult result) {
+                    if (!finished.compareAndSet(false, true)) {
+                        return;
+                    }
+                    final ChatQueryWithResponse message;
+                    try {
+                        // the query was answered, the message is persisted even if the client has disconnected
+                        message = chatQueryWithResponseService.updateEmptyMessage(
+                                chatQueryWithResponse, queryRequest.getQuery(), result);
+                    } catch (RuntimeException e) {
+                        fail(e); // the answer is lost, so the query is refunded
+                        return;
+                    }
+                    permit.close();
+
+                    final String plotUrl = message.getPlotScript() != null
+                            ? PlotService.createFileUrl(plotFileName)
+                            : null;
+
+                    send(ChatStreamEventType.MESSAGE,
+                            new ChatResponse(result.toolResult().getRetrievedData(), message, plotUrl));
+                    complete();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    if (finished.compareAndSet(false, true)) {
+                        fail(error);
+                    }
+                }
+
+                private void fail(Throwable error) {
+                    permit.close();
+                    userService.refundQueryLimit(database.getUserId()); // the query was not answered
+                    log.error("Streaming chat failed, chat_id={}: {}", chatId, error.getMessage());
+                    send(ChatStreamEventType.ERROR,
+                            ChatResponse.failedResponse(error.getMessage(), null, queryRequest.getQuery()));
+                    complete();
+                }
+
+                private void send(ChatStreamEventType type, Object data) {
+                    if (!aborted.get()) {
+                        sendEvent(emitter, type, data);
+                    }
+                }
+
+                private void complete() {
+                    if (!aborted.get()) {
+                        emitter.complete();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            if (finished.compareAndSet(false, true)) {
+                permit.close();
+                if (queryLimitDecremented) {
+                    userService.refundQueryLimit(database.getUserId());
+                }
+            }
+            throw e;
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Get queries running in the database.
+     *
+     * @param databaseId identifier of the database
+     * @return running queries, the oldest first
+     * @throws EntityNotFoundException                                   database not found
+     * @throws org.springframework.security.access.AccessDeniedException user is not admin or owner of the database
+     */
+    public List<RunningQueryInfo> getRunningQueries(UUID databaseId) throws EntityNotFoundException {
+        final Database database = databaseEntityService.findById(databaseId);
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
+
+        return queryRegistry.getRunningQueries(databaseId);
+    }
+
+    /**
+     * Cancel query running in the database.
+     *
+     * @param databaseId identifier of the database
+     * @param queryId    identifier of the running query
+     * @throws EntityNotFoundException                                   database not found or query is not running
+     * @throws org.springframework.security.access.AccessDeniedException user is not admin or owner of the database
+     */
+    public void cancelQuery(UUID databaseId, UUID queryId) throws EntityNotFoundException {
+        log.info("Cancel query id={}, database_id={}.", queryId, databaseId);
+
+        final Database database = databaseEntityService.findById(databaseId);
+        authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(database.getUserId());
+
+        if (!queryRegistry.cancel(databaseId, queryId)) {
+            throw new EntityNotFoundException(EntityNotFoundException.Entity.QUERY, queryId);
+        }
+    }
+
+    /**
+     * Create request for the LLM with the system query containing the structure of the database relevant to the
+     * query.
+     */
+    private LLMServiceRequest createLLMServiceRequest(
+            Database database,
+            QueryRequest queryRequest,
+            List<ChatQueryWithResponse> chatHistory,
+            String plotFileName,
+            Integer pageSize,
+            UUID queryScope
+    ) throws DatabaseConnectionException, DatabaseExecutionException {
+
+        final CachedSchema schema = schemaCacheService.getSchema(database);
+        final String createScript =
+                schemaSelectionService.selectRelevantSchema(schema, queryRequest.getQuery(), chatHistory);
+
+        return new LLMServiceRequest(
+                queryRequest.getQuery(),
+                createSystemQuery(createScript, database),
+                database,
+                schema.structure(),
+                plotFileName,
+                queryRequest.getModel(),
+                pageSize,
+                chatHistory,
+                queryScope);
+    }
+
+    /**
+     * Create emitter of the streamed chat query.
+     */
+    /* default */ SseEmitter createEmitter() {
+        return new SseEmitter(STREAM_TIMEOUT.toMillis());
+    }
+
+    /**
+     * Send event to the client. Failure is only logged, because the client may have closed the connection.
+     */
+    private static void sendEvent(SseEmitter emitter, ChatStreamEventType type, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(type.getEventName()).data(data));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Cannot send {} event: {}", type.getEventName(), e.getMessage());
+        }
     }
 }
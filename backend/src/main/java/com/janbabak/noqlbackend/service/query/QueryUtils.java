@@ -5,17 +5,44 @@ import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.model.Settings;
 import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.model.query.TotalCountMode;
 import com.janbabak.noqlbackend.service.database.BaseDatabaseService;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.coyote.BadRequestException;
 
 import java.sql.SQLException;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 @Slf4j
 @UtilityClass
 public class QueryUtils {
 
+    /**
+     * Name of the column that contains the total count of rows computed by the window function.
+     */
+    public static final String TOTAL_COUNT_COLUMN_NAME = "noql_total_count";
+
+    /**
+     * SQL states of errors caused by the window function - feature not supported and windowing error of PostgreSQL.
+     */
+    private static final Set<String> WINDOW_FUNCTION_UNSUPPORTED_SQL_STATES = Set.of("0A000", "42P20");
+
+    /**
+     * MySQL older than 8.0 reports {@code OVER ()} as a syntax error (SQL state 42000).
+     */
+    private static final int MYSQL_PARSE_ERROR_CODE = 1064;
+
+    /**
+     * Syntax error located at the window function of the query wrapper, not in the user's query. MySQL 5.7 parses
+     * {@code OVER} as an alias of {@code COUNT(*)}, so the error is near {@code () AS noql_total_count}, other
+     * versions and MariaDB report it near {@code OVER (}.
+     */
+    private static final Pattern MYSQL_WINDOW_FUNCTION_SYNTAX_ERROR = Pattern.compile(
+            "\\bOVER\\s*\\(|near '\\(\\) AS " + TOTAL_COUNT_COLUMN_NAME, Pattern.CASE_INSENSITIVE);
+
     public record PaginatedQuery(String query, Integer page, Integer pageSize) {
     }
 
@@ -37,20 +64,30 @@ public class QueryUtils {
             Integer pageSize,
             Database database) throws BadRequestException {
 
-        // defaults
-        final int resultPage = page != null ? page : 0;
-        if (resultPage < 0) {
-            final String error = "Page number cannot be negative, page=" + page;
-            log.error(error);
-            throw new BadRequestException(error);
-        }
+        return constructPaginatedSqlQuery(query, page, pageSize, Settings.getMaxPageSizeStatic(), database);
+    }
 
-        final int resultPageSize = pageSize != null ? pageSize : Settings.getDefaultPageSizeStatic();
-        if (resultPageSize > Settings.getMaxPageSizeStatic()) {
-            final String error = "Page size is greater than maximum allowed value=" + Settings.getMaxPageSizeStatic();
-            log.error(error);
-            throw new BadRequestException(error);
-        }
+    /**
+     * Construct SQL query using {@code LIMIT} and {@code OFFSET}.
+     *
+     * @param query       database language query
+     * @param page        number of page (first page has index 0), if null, default value is 0
+     * @param pageSize    number of items in one page, if null default value is defined by
+     *                    {@code PAGINATION_DEFAULT_PAGE_SIZE} env
+     * @param maxPageSize maximum allowed page size
+     * @param database    database object
+     * @return database language query with pagination, page number and page size
+     * @throws BadRequestException pageSize value is greater than maximum allowed value
+     */
+    public static PaginatedQuery constructPaginatedSqlQuery(
+            String query,
+            Integer page,
+            Integer pageSize,
+            int maxPageSize,
+            Database database) throws BadRequestException {
+
+        final int resultPage = getPage(page);
+        final int resultPageSize = getPageSize(pageSize, maxPageSize);
 
         final String resultQuery = switch (database.getEngine()) {
             case POSTGRES, MYSQL -> "SELECT * FROM (%s) AS query LIMIT %d OFFSET %d;".formatted(
@@ -60,6 +97,123 @@ public class QueryUtils {
         return new PaginatedQuery(resultQuery, resultPage, resultPageSize);
     }
 
+    /**
+     * Construct SQL query using {@code LIMIT} and {@code OFFSET} that also returns the total count of rows
+     * in the last column named {@link #TOTAL_COUNT_COLUMN_NAME} (window function {@code COUNT(*) OVER ()}).
+     * Supported by Postgres and MySQL 8.
+     *
+     * @param query    database language query
+     * @param page     number of page (first page has index 0), if null, default value is 0
+     * @param pageSize number of items in one page,<br />
+     *                 if null default value is defined by {@code PAGINATION_DEFAULT_PAGE_SIZE} env,<br />
+     *                 max allowed size is defined by {@code PAGINATION_MAX_PAGE_SIZE} env
+     * @param database database object
+     * @return database language query with pagination and total count, page number and page size
+     * @throws BadRequestException pageSize value is greater than maximum allowed value
+     */
+    public static PaginatedQuery constructPaginatedSqlQueryWithTotalCount(
+            String query,
+            Integer page,
+            Integer pageSize,
+            Database database) throws BadRequestException {
+
+        final int resultPage = getPage(page);
+        final int resultPageSize = getPageSize(pageSize);
+
+        final String resultQuery = switch (database.getEngine()) {
+            case POSTGRES, MYSQL -> "SELECT query.*, COUNT(*) OVER () AS %s FROM (%s) AS query LIMIT %d OFFSET %d;"
+                    .formatted(
+                            TOTAL_COUNT_COLUMN_NAME,
+                            trimAndRemoveTrailingSemicolon(query),
+                            resultPageSize,
+                            resultPage * resultPageSize);
+        };
+
+        return new PaginatedQuery(resultQuery, resultPage, resultPageSize);
+    }
+
+    /**
+     * Retrieve one page of the query result together with the total count of rows.<br />
+     * Total count mode is chosen by the engine of the database. In the {@link TotalCountMode#WINDOW_FUNCTION} mode,
+     * page and total count are retrieved by a single statement. If the database doesn't support the window function
+     * or the page is empty (total count is not part of the result), the total count is retrieved by a separate
+     * statement. Other failures (e.g. timeout) are thrown, so the query is not executed again.
+     *
+     * @param query           database language query
+     * @param page            number of page (first page has index 0), if null, default value is 0
+     * @param pageSize        number of items in one page, if null default value is used
+     * @param database        database to query
+     * @param databaseService service that can handle the query
+     * @return retrieved data
+     * @throws BadRequestException         pageSize value is greater than maximum allowed value
+     * @throws DatabaseConnectionException cannot establish connection with the database
+     * @throws DatabaseExecutionException  query execution failed (syntax error)
+     * @throws SQLException                cannot read the result
+     */
+    public static RetrievedData retrievePaginatedData(
+            String query,
+            Integer page,
+            Integer pageSize,
+            Database database,
+            BaseDatabaseService databaseService)
+            throws BadRequestException, DatabaseConnectionException, DatabaseExecutionException, SQLException {
+
+        if (Settings.getTotalCountModeStatic(database.getEngine()) == TotalCountMode.WINDOW_FUNCTION) {
+            final PaginatedQuery paginatedQuery =
+                    constructPaginatedSqlQueryWithTotalCount(query, page, pageSize, database);
+
+            RetrievedData data = null;
+            try (ResultSetWrapper result = databaseService.executeQuery(paginatedQuery.query())) {
+                data = RetrievedData.fromResultSetWithTotalCount(
+                        result.resultSet(), paginatedQuery.page(), paginatedQuery.pageSize());
+            } catch (DatabaseExecutionException e) {
+                if (!isWindowFunctionUnsupported(e)) {
+                    throw e;
+                }
+                log.warn("Cannot retrieve total count by window function, use separate query - message={}.",
+                        e.getMessage());
+            }
+
+            if (data != null && data.totalCount() != null) {
+                return data;
+            }
+            if (data != null) {
+                // empty first page means no rows, otherwise the page is after the last one and count is unknown
+                final Long totalCount = paginatedQuery.page() == 0
+                        ? 0L
+                        : getTotalCount(query, database, databaseService);
+                return new RetrievedData(
+                        data.columnNames(), data.rows(), data.page(), data.pageSize(), totalCount);
+            }
+        }
+
+        final PaginatedQuery paginatedQuery = constructPaginatedSqlQuery(query, page, pageSize, database);
+        try (ResultSetWrapper result = databaseService.executeQuery(paginatedQuery.query())) {
+            final Long totalCount = getTotalCount(query, database, databaseService);
+            return new RetrievedData(result.resultSet(), paginatedQuery.page(), paginatedQuery.pageSize(), totalCount);
+        }
+    }
+
+    /**
+     * Check whether the query failed because the database doesn't support the window function, then the query can
+     * be executed again without it.
+     *
+     * @param e failure of the query with the window function
+     * @return true if the failure is caused by the window function
+     */
+    /* default */ static boolean isWindowFunctionUnsupported(DatabaseExecutionException e) {
+        if (!(e.getCause() instanceof SQLException sqlException)) {
+            return false;
+        }
+        if (WINDOW_FUNCTION_UNSUPPORTED_SQL_STATES.contains(sqlException.getSQLState())) {
+            return true;
+        }
+        // other syntax errors are in the user's query, it would fail again
+        return sqlException.getErrorCode() == MYSQL_PARSE_ERROR_CODE
+                && sqlException.getMessage() != null
+                && MYSQL_WINDOW_FUNCTION_SYNTAX_ERROR.matcher(sqlException.getMessage()).find();
+    }
+
     public static String trimAndRemoveTrailingSemicolon(String query) {
         final String trimmedQuery = query.trim();
 
@@ -74,6 +228,30 @@ public class QueryUtils {
     }
 
 
+    /* default */ static int getPage(Integer page) throws BadRequestException {
+        final int resultPage = page != null ? page : 0;
+        if (resultPage < 0) {
+            final String error = "Page number cannot be negative, page=" + page;
+            log.error(error);
+            throw new BadRequestException(error);
+        }
+        return resultPage;
+    }
+
+    /* default */ static int getPageSize(Integer pageSize) throws BadRequestException {
+        return getPageSize(pageSize, Settings.getMaxPageSizeStatic());
+    }
+
+    private static int getPageSize(Integer pageSize, int maxPageSize) throws BadRequestException {
+        final int resultPageSize = pageSize != null ? pageSize : Settings.getDefaultPageSizeStatic();
+        if (resultPageSize > maxPageSize) {
+            final String error = "Page size is greater than maximum allowed value=" + maxPageSize;
+            log.error(error);
+            throw new BadRequestException(error);
+        }
+        return resultPageSize;
+    }
+
     /**
      * Get total number of rows that SQL select query returns.
      *
@@ -0,0 +1,166 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.janbabak.noqlbackend.config.ResultCacheConfig;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.ColumnarRows;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.janbabak.noqlbackend.service.query.QueryUtils.trimAndRemoveTrailingSemicolon;
+
+/**
+ * Caches retrieved pages of query results, so that reopening a chat or paging back and forth does not execute
+ * the same queries in the user's database again. Pages are evicted by the W-TinyLFU policy when their estimated size
+ * exceeds the limit, and after the time to live, because the data in the user's database can change.
+ */
+@Slf4j
+@Service
+public class ResultCacheService {
+
+    private static final int OBJECT_OVERHEAD_BYTES = 40;
+
+    private final ResultCacheConfig config;
+    private final Cache<ResultCacheKey, RetrievedData> pages;
+
+    public ResultCacheService(ResultCacheConfig config) {
+        this.config = config;
+        this.pages = Caffeine.newBuilder()
+                .expireAfterWrite(config.getTtl())
+                .maximumWeight(config.getMaxSize().toBytes())
+                .weigher((ResultCacheKey key, RetrievedData data) ->
+                        (int) Math.min(Integer.MAX_VALUE, estimateSize(key, data)))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get cached page.
+     *
+     * @param database database the query belongs to
+     * @param query    select query without pagination
+     * @param page     page number
+     * @param pageSize page size
+     * @return cached page or null if it is not cached
+     */
+    public RetrievedData get(Database database, String query, int page, int pageSize) {
+        if (!isCacheable(database)) {
+            return null;
+        }
+        return pages.getIfPresent(new ResultCacheKey(database.getId(), normalizeQuery(query), page, pageSize));
+    }
+
+    /**
+     * Cache retrieved page. Pages larger than the maximum entry size are not cached.
+     *
+     * @param database database the query belongs to
+     * @param query    select query without pagination
+     * @param page     page number
+     * @param pageSize page size
+     * @param data     retrieved page
+     */
+    public void put(Database database, String query, int page, int pageSize, RetrievedData data) {
+        if (!isCacheable(database) || data == null) {
+            return;
+        }
+        final ResultCacheKey key = new ResultCacheKey(database.getId(), normalizeQuery(query), page, pageSize);
+        if (estimateSize(key, data) > config.getMaxEntrySize().toBytes()) {
+            log.debug("Page of query={} is too large to be cached.", query);
+            return;
+        }
+        pages.put(key, data);
+    }
+
+    /**
+     * Drop cached pages of all queries of the database and release the memory of their rows.
+     *
+     * @param databaseId database identifier
+     */
+    public void evict(UUID databaseId) {
+        pages.asMap().keySet().removeIf(key -> key.databaseId().equals(databaseId));
+    }
+
+    /**
+     * Get statistics of the cache.
+     *
+     * @return hit and miss counts and the size of the cache
+     */
+    public ResultCacheStatistics getStatistics() {
+        final CacheStats stats = pages.stats();
+        return new ResultCacheStatistics(
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount(),
+                pages.estimatedSize(),
+                pages.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+    }
+
+    private boolean isCacheable(Database database) {
+        return config.getEnabled() && database.getId() != null;
+    }
+
+    /**
+     * Queries that differ only in surrounding whitespace or trailing semicolon return the same data.
+     */
+    private static String normalizeQuery(String query) {
+        return trimAndRemoveTrailingSemicolon(query);
+    }
+
+    /**
+     * Estimate number of bytes occupied by the page (strings are stored in UTF-16).
+     */
+    private static long estimateSize(ResultCacheKey key, RetrievedData data) {
+        long size = OBJECT_OVERHEAD_BYTES + 2L * key.query().length();
+        size += estimateSize(data.columnNames());
+        if (data.rows() instanceof ColumnarRows columnarRows) {
+            return size + columnarRows.estimateSize();
+        }
+        for (final List<String> row : data.rows()) {
+            size += estimateSize(row);
+        }
+        return size;
+    }
+
+    private static long estimateSize(List<String> values) {
+        long size = OBJECT_OVERHEAD_BYTES;
+        for (final String value : values) {
+            size += OBJECT_OVERHEAD_BYTES + (value != null ? 2L * value.length() : 0);
+        }
+        return size;
+    }
+
+    /**
+     * @param databaseId database identifier
+     * @param query      normalized query
+     * @param page       page number
+     * @param pageSize   page size
+     */
+    private record ResultCacheKey(UUID databaseId, String query, Integer page, Integer pageSize) {
+    }
+
+    /**
+     * Statistics of the result cache.
+     *
+     * @param hitCount      number of pages returned from the cache
+     * @param missCount     number of pages retrieved from the database
+     * @param hitRate       ratio of hits to all requests
+     * @param evictionCount number of pages evicted because of the size limit
+     * @param entryCount    number of cached pages
+     * @param sizeBytes     estimated size of all cached pages
+     */
+    public record ResultCacheStatistics(
+            Long hitCount,
+            Long missCount,
+            Double hitRate,
+            Long evictionCount,
+            Long entryCount,
+            Long sizeBytes) {
+    }
+}
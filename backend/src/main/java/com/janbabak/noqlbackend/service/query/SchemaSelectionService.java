@@ -0,0 +1,304 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.config.SchemaSelectionConfig;
+import com.janbabak.noqlbackend.model.database.DatabaseStructure;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Column;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Schema;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Table;
+import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService.CachedSchema;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the part of the database schema that is sent to the LLM. Schemas of large databases don't fit into
+ * the token budget, so only tables relevant to the user's question are described: tables whose names or columns
+ * contain words of the question (or of the previous questions and queries of the chat), tables related to them
+ * by foreign keys and then the most referenced tables. Names of the other tables are listed, so that the LLM can
+ * request their structure by the {@code describeTables} tool.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SchemaSelectionService {
+
+    private static final int CHARACTERS_PER_TOKEN = 4;
+    private static final double TABLES_BUDGET_RATIO = 0.8; // rest of the budget is for the list of omitted tables
+    private static final int TABLE_NAME_WORD_SCORE = 3;
+    private static final int COLUMN_NAME_WORD_SCORE = 1;
+    private static final int MAX_COLUMN_SCORE = 3;
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+|(?<=\\p{Ll})(?=\\p{Lu})");
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "the", "of", "in", "on", "at", "for", "to", "and", "or", "by", "with", "from", "all", "show",
+            "me", "list", "get", "what", "which", "who", "how", "many", "much", "is", "are", "was", "were", "do",
+            "does", "id", "select", "where", "as", "join", "limit");
+
+    private final SchemaSelectionConfig config;
+
+    /**
+     * Create script of the part of the schema relevant to the user's question.
+     *
+     * @param schema      cached schema of the database
+     * @param userQuery   user's question in natural language
+     * @param chatHistory previous messages of the chat
+     * @return create script that fits into the token budget, or the whole script if it fits or cannot be pruned
+     */
+    public String selectRelevantSchema(CachedSchema schema, String userQuery, List<ChatQueryWithResponse> chatHistory) {
+        if (!config.getEnabled()
+                || estimateTokens(schema.createScript()) <= config.getTokenBudget()
+                || !(schema.structure() instanceof SqlDatabaseStructure structure)) {
+            return schema.createScript();
+        }
+
+        final Set<String> words = new HashSet<>(extractWords(userQuery));
+        for (final ChatQueryWithResponse message : chatHistory) {
+            words.addAll(extractWords(message.getNlQuery()));
+            words.addAll(extractWords(message.getDbQuery()));
+        }
+
+        final Map<TableReference, Table> tables = new LinkedHashMap<>();
+        structure.schemas().values().forEach(schemaItem -> schemaItem.tables().values()
+                .forEach(table -> tables.put(new TableReference(schemaItem.name(), table.name()), table)));
+
+        final List<TableReference> candidates = orderCandidates(tables, words);
+        final long budget = (long) config.getTokenBudget() * CHARACTERS_PER_TOKEN;
+        final long tablesBudget = (long) (budget * TABLES_BUDGET_RATIO);
+
+        final SqlDatabaseStructure selectedStructure = new SqlDatabaseStructure();
+        final List<TableReference> omittedTables = new ArrayList<>();
+        long selectedSize = 0;
+
+        for (final TableReference candidate : candidates) {
+            final Table table = tables.get(candidate);
+            final long tableSize = selectedStructure.schemas().containsKey(candidate.schema())
+                    ? createScript(candidate, table).length() - createSchemaScript(candidate.schema()).length()
+                    : createScript(candidate, table).length();
+            if (selectedSize + tableSize <= tablesBudget) {
+                selectedStructure.schemas()
+                        .computeIfAbsent(candidate.schema(), Schema::new)
+                        .tables()
+                        .put(table.name(), table);
+                selectedSize += tableSize;
+            } else {
+                omittedTables.add(candidate);
+            }
+        }
+
+        log.info("Schema pruned to {} of {} tables.", tables.size() - omittedTables.size(), tables.size());
+
+        final String script = selectedStructure.generateCreateScript();
+        return script + createOmittedTablesNote(omittedTables, budget - script.length());
+    }
+
+    /**
+     * Create script of the requested tables. Used by the LLM to get structure of the tables omitted from the prompt.
+     *
+     * @param structure  structure of the database
+     * @param tableNames names of tables in format {@code schema.table} or {@code table}
+     * @return create script of the found tables and names of the tables that were not found
+     */
+    public String describeTables(DatabaseStructure structure, List<String> tableNames) {
+        if (!(structure instanceof SqlDatabaseStructure sqlStructure)) {
+            return structure != null ? structure.generateCreateScript() : "";
+        }
+
+        final SqlDatabaseStructure selectedStructure = new SqlDatabaseStructure();
+        final List<String> notFoundTables = new ArrayList<>();
+
+        for (final String tableName : tableNames.stream().limit(config.getMaxRequestedTables()).toList()) {
+            final String name = stripQuotes(tableName.trim());
+            final int dotIndex = name.lastIndexOf('.');
+            final String schemaName = dotIndex == -1 ? null : stripQuotes(name.substring(0, dotIndex));
+            final String table = stripQuotes(name.substring(dotIndex + 1));
+
+            final Optional<Schema> schema = sqlStructure.schemas().values().stream()
+                    .filter(schemaItem -> schemaName == null || schemaItem.name().equalsIgnoreCase(schemaName))
+                    .filter(schemaItem -> findTable(schemaItem, table) != null)
+                    .findFirst();
+
+            if (schema.isPresent()) {
+                final Table foundTable = findTable(schema.get(), table);
+                selectedStructure.schemas()
+                        .computeIfAbsent(schema.get().name(), Schema::new)
+                        .tables()
+                        .put(foundTable.name(), foundTable);
+            } else {
+                notFoundTables.add(tableName.trim());
+            }
+        }
+
+        final String script = selectedStructure.generateCreateScript();
+        return notFoundTables.isEmpty()
+                ? script
+                : script + "\n\n-- Tables not found: " + String.join(", ", notFoundTables);
+    }
+
+    /**
+     * Order tables by their relevance: tables matching words of the question, their foreign key neighbours
+     * and then the rest of the tables sorted by the number of references.
+     */
+    private static List<TableReference> orderCandidates(Map<TableReference, Table> tables, Set<String> words) {
+        final Map<TableReference, Set<TableReference>> neighbours = new HashMap<>();
+        tables.forEach((reference, table) -> table.columns().values().stream()
+                .map(Column::getForeignKey)
+                .filter(Objects::nonNull)
+                .map(foreignKey -> new TableReference(
+                        stripQuotes(foreignKey.referencedSchema()), stripQuotes(foreignKey.referencedTable())))
+                .filter(tables::containsKey)
+                .forEach(referencedTable -> {
+                    neighbours.computeIfAbsent(reference, key -> new LinkedHashSet<>()).add(referencedTable);
+                    neighbours.computeIfAbsent(referencedTable, key -> new LinkedHashSet<>()).add(reference);
+                }));
+
+        final Map<TableReference, Integer> scores = new HashMap<>();
+        tables.forEach((reference, table) -> scores.put(reference, score(table, words)));
+
+        final Comparator<TableReference> byScore = Comparator
+                .comparing((TableReference reference) -> scores.get(reference))
+                .reversed()
+                .thenComparing(TableReference::toString);
+
+        final Comparator<TableReference> byReferences = Comparator
+                .comparing((TableReference reference) -> neighbours.getOrDefault(reference, Set.of()).size())
+                .reversed()
+                .thenComparing(TableReference::toString);
+
+        final Set<TableReference> candidates = new LinkedHashSet<>();
+        final List<TableReference> relevantTables = tables.keySet().stream()
+                .filter(reference -> scores.get(reference) > 0)
+                .sorted(byScore)
+                .toList();
+
+        candidates.addAll(relevantTables);
+        relevantTables.forEach(reference -> candidates.addAll(neighbours.getOrDefault(reference, Set.of())));
+        tables.keySet().stream().sorted(byReferences).forEach(candidates::add);
+
+        return new ArrayList<>(candidates);
+    }
+
+    private static int score(Table table, Set<String> words) {
+        int score = 0;
+        for (final String word : extractWords(table.name())) {
+            if (words.contains(word)) {
+                score += TABLE_NAME_WORD_SCORE;
+            }
+        }
+
+        final Set<String> matchedColumnWords = new HashSet<>();
+        for (final String columnName : table.columns().keySet()) {
+            for (final String word : extractWords(columnName)) {
+                if (words.contains(word)) {
+                    matchedColumnWords.add(word);
+                }
+            }
+        }
+        return score + Math.min(matchedColumnWords.size(), MAX_COLUMN_SCORE) * COLUMN_NAME_WORD_SCORE;
+    }
+
+    /**
+     * Split text or identifier into normalized words, e.g. {@code OrderItems} into {@code order} and {@code item}.
+     */
+    /* default */ static Set<String> extractWords(String text) {
+        final Set<String> words = new HashSet<>();
+        if (text == null) {
+            return words;
+        }
+        for (final String word : WORD_SEPARATOR.split(text)) {
+            final String normalizedWord = normalizeWord(word.toLowerCase(Locale.ROOT));
+            if (!normalizedWord.isEmpty() && !STOP_WORDS.contains(normalizedWord)) {
+                words.add(normalizedWord);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Remove plural suffix, so that "users" matches the "user" table.
+     */
+    private static String normalizeWord(String word) {
+        if (word.length() > 4 && word.endsWith("ies")) {
+            return word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.length() > 4 && (word.endsWith("sses") || word.endsWith("xes") || word.endsWith("ches")
+                || word.endsWith("shes"))) {
+            return word.substring(0, word.length() - 2);
+        }
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    /**
+     * List omitted tables, the list is truncated when it exceeds the budget.
+     */
+    private static String createOmittedTablesNote(List<TableReference> omittedTables, long listBudget) {
+        if (omittedTables.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder tableList = new StringBuilder();
+        int listedTables = 0;
+        for (final TableReference table : omittedTables) {
+            if (tableList.length() + table.toString().length() > listBudget && listedTables > 0) {
+                break;
+            }
+            tableList.append(listedTables > 0 ? ", " : "").append(table);
+            listedTables++;
+        }
+        if (listedTables < omittedTables.size()) {
+            tableList.append(" and ").append(omittedTables.size() - listedTables).append(" more");
+        }
+
+        return "\n\n-- The structure contains only tables relevant to the request. To get structure of other tables,"
+                + " call the 'describeTables' function. Other tables:\n-- " + tableList;
+    }
+
+    private static long estimateTokens(String text) {
+        return text.length() / CHARACTERS_PER_TOKEN;
+    }
+
+    /**
+     * Create script of the schema as generated by {@link SqlDatabaseStructure#generateCreateScript()}.
+     */
+    private static String createSchemaScript(String schema) {
+        return "CREATE SCHEMA IF NOT EXISTS \"" + schema + "\";";
+    }
+
+    private static String createScript(TableReference reference, Table table) {
+        final SqlDatabaseStructure structure = new SqlDatabaseStructure();
+        structure.schemas().computeIfAbsent(reference.schema(), Schema::new).tables().put(table.name(), table);
+        return structure.generateCreateScript();
+    }
+
+    private static Table findTable(Schema schema, String tableName) {
+        final Table table = schema.tables().get(tableName);
+        if (table != null) {
+            return table;
+        }
+        return schema.tables().values().stream()
+                .filter(tableItem -> tableItem.name().equalsIgnoreCase(tableName))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String stripQuotes(String identifier) {
+        return identifier != null && identifier.length() > 1 && identifier.startsWith("\"") && identifier.endsWith("\"")
+                ? identifier.substring(1, identifier.length() - 1)
+                : identifier;
+    }
+
+    private record TableReference(String schema, String table) {
+        @Override
+        public String toString() {
+            return schema + "." + table;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.janbabak.noqlbackend.dao.ResultSetWrapper;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.service.utils.JsonUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page of an executed query that is written as JSON in the format of {@link RetrievedData} directly from the result
+ * set, so the rows are not kept in memory. The result set is closed by {@link #close()}.<br />
+ * Query timeout of the statement limits only the execution, rows are read while they are written to the client, so
+ * the timeout limits also the reading of the rows, otherwise a slow client could hold the connection indefinitely.
+ */
+@Slf4j
+public class StreamedQueryResult implements AutoCloseable {
+
+    private final ResultSetWrapper result;
+    private final int page;
+    private final int pageSize;
+    private final CompletableFuture<Long> totalCount;
+    private final boolean waitForTotalCount;
+
+    /**
+     * @param result            result of the paginated query
+     * @param page              page number
+     * @param pageSize          page size
+     * @param totalCount        total count computed in the background
+     * @param waitForTotalCount if false, total count is null unless it is computed when the rows are written
+     */
+    public StreamedQueryResult(
+            ResultSetWrapper result,
+            int page,
+            int pageSize,
+            CompletableFuture<Long> totalCount,
+            boolean waitForTotalCount) {
+
+        this.result = result;
+        this.page = page;
+        this.pageSize = pageSize;
+        this.totalCount = totalCount.exceptionally(e -> null);
+        this.waitForTotalCount = waitForTotalCount;
+    }
+
+    /**
+     * Write the page as JSON object. When the output can't be written, the query is cancelled.
+     *
+     * @param generator JSON generator
+     * @throws IOException when the output or the result set can't be read
+     */
+    public void write(JsonGenerator generator) throws IOException {
+        try {
+            final ResultSet resultSet = result.resultSet();
+            final ResultSetMetaData rsmd = resultSet.getMetaData();
+            final int columnCount = rsmd.getColumnCount();
+            final Statement statement = resultSet.getStatement();
+            final int timeoutSeconds = statement != null ? statement.getQueryTimeout() : 0;
+            final long startedAt = System.nanoTime();
+
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("columnNames");
+            for (int i = 1; i <= columnCount; i++) {
+                generator.writeString(rsmd.getColumnName(i));
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart("rows");
+            while (resultSet.next()) {
+                if (timeoutSeconds > 0 && System.nanoTime() - startedAt > TimeUnit.SECONDS.toNanos(timeoutSeconds)) {
+                    result.cancel();
+                    throw new SQLTimeoutException("Reading of the result exceeded the query timeout");
+                }
+                generator.writeStartArray(null, columnCount);
+                for (int i = 1; i <= columnCount; i++) {
+                    final String value = resultSet.getString(i);
+                    generator.writeString(value != null ? value.trim() : null);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+
+            generator.writeNumberField("page", page);
+            generator.writeNumberField("pageSize", pageSize);
+            generator.writeFieldName("totalCount");
+            final Long count = waitForTotalCount ? totalCount.join() : totalCount.getNow(null);
+            if (count != null) {
+                generator.writeNumber(count);
+            } else {
+                generator.writeNull();
+            }
+            generator.writeEndObject();
+        } catch (SQLException e) {
+            log.error("Cannot read streamed result - message={}.", e.getMessage());
+            throw new IOException("Cannot read the result: " + e.getMessage(), e);
+        } catch (IOException e) {
+            // client disconnected, remaining rows would be read by the database for nothing
+            result.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Create response body that writes the page and closes the result set.
+     *
+     * @return response body
+     */
+    public StreamingResponseBody toResponseBody() {
+        return outputStream -> {
+            try (JsonGenerator generator = JsonUtils.createGenerator(outputStream)) {
+                write(generator);
+            } finally {
+                close();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        result.close();
+    }
+}
@@ -0,0 +1,157 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.janbabak.noqlbackend.config.TotalCountConfig;
+import com.janbabak.noqlbackend.dao.QueryRegistry;
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.TotalCountResponse;
+import com.janbabak.noqlbackend.service.database.BaseDatabaseService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.BadRequestException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static com.janbabak.noqlbackend.service.query.QueryUtils.getTotalCount;
+import static com.janbabak.noqlbackend.service.query.QueryUtils.trimAndRemoveTrailingSemicolon;
+
+/**
+ * Computes total count of rows of paginated queries in the background, so that the first page does not have to wait
+ * for counting all rows. Computed counts are cached per database and query.<br />
+ * Count that exceeds the timeout is cancelled in the database, so it doesn't occupy the thread and the connection.
+ */
+@Slf4j
+@Service
+public class TotalCountService {
+
+    private final TotalCountConfig config;
+    private final QueryRegistry queryRegistry;
+    private final ThreadPoolExecutor executor;
+    private final AsyncCache<TotalCountKey, Long> totalCounts;
+
+    public TotalCountService(TotalCountConfig config, QueryRegistry queryRegistry) {
+        this.config = config;
+        this.queryRegistry = queryRegistry;
+
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("total-count-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(
+                config.getThreads(),
+                config.getThreads(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(config.getQueueCapacity()),
+                threadFactory);
+
+        // failed computations are removed from the cache automatically
+        this.totalCounts = Caffeine.newBuilder()
+                .expireAfterWrite(config.getCacheTtl())
+                .maximumSize(config.getCacheMaxSize())
+                .buildAsync();
+    }
+
+    /**
+     * Get total count of rows of the query. If it is not cached, its computation is started in the background.
+     *
+     * @param query           select query without pagination
+     * @param database        database to query
+     * @param databaseService service that can handle the query
+     * @return future of the total count, completed exceptionally if the count cannot be computed
+     */
+    public CompletableFuture<Long> getTotalCountAsync(
+            String query,
+            Database database,
+            BaseDatabaseService databaseService) {
+
+        final TotalCountKey key = new TotalCountKey(database.getId(), trimAndRemoveTrailingSemicolon(query));
+        try {
+            return totalCounts.get(key, (totalCountKey, ignored) -> computeTotalCount(query, database, databaseService));
+        } catch (RejectedExecutionException e) {
+            log.warn("Too many total count computations, skip count of database id={}.", database.getId());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Get total count of rows of the query without waiting for its computation.
+     *
+     * @param query           select query without pagination
+     * @param database        database to query
+     * @param databaseService service that can handle the query
+     * @return total count with the state of its computation
+     */
+    public TotalCountResponse getTotalCount(String query, Database database, BaseDatabaseService databaseService) {
+        final CompletableFuture<Long> totalCount = getTotalCountAsync(query, database, databaseService);
+
+        if (!totalCount.isDone()) {
+            return new TotalCountResponse(null, TotalCountResponse.Status.PENDING);
+        }
+        if (totalCount.isCompletedExceptionally()) {
+            return TotalCountResponse.unavailable();
+        }
+        return new TotalCountResponse(totalCount.join(), TotalCountResponse.Status.COMPUTED);
+    }
+
+    /**
+     * Drop computed total counts of the database, so that pages don't report counts of the old data. Computations in
+     * progress are not cancelled, they finish (or time out) without being cached for the next requests.
+     *
+     * @param databaseId database identifier
+     */
+    public void evict(UUID databaseId) {
+        // the synchronous view skips computations in progress, they would be cached after the eviction
+        totalCounts.asMap().keySet().removeIf(key -> key.databaseId().equals(databaseId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<Long> computeTotalCount(
+            String query,
+            Database database,
+            BaseDatabaseService databaseService) {
+
+        // the count query is registered in its own scope, so it can be cancelled when the timeout elapses
+        final UUID scope = UUID.randomUUID();
+        final CompletableFuture<Long> totalCount = new CompletableFuture<>();
+
+        executor.execute(() -> {
+            if (totalCount.isDone()) {
+                return; // timed out in the queue
+            }
+            log.info("Compute total count of query={}, database id={}.", query, database.getId());
+            try (QueryRegistry.Scope ignored = queryRegistry.openScope(scope)) {
+                totalCount.complete(getTotalCount(query, database, databaseService));
+            } catch (DatabaseConnectionException | DatabaseExecutionException | BadRequestException e) {
+                log.warn("Cannot compute total count - message={}.", e.getMessage());
+                totalCount.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                totalCount.completeExceptionally(e);
+            }
+        });
+
+        return totalCount
+                .orTimeout(config.getTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((count, error) -> {
+                    if (error instanceof TimeoutException) {
+                        log.warn("Total count timed out, cancel it - database id={}.", database.getId());
+                        queryRegistry.cancelScope(scope);
+                    }
+                });
+    }
+
+    /**
+     * @param databaseId database identifier
+     * @param query      trimmed query without trailing semicolon
+     */
+    private record TotalCountKey(UUID databaseId, String query) {
+    }
+}
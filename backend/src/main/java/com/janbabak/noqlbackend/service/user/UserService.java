@@ -1,10 +1,15 @@
 package com.janbabak.noqlbackend.service.user;
 
+import com.janbabak.noqlbackend.authentication.AuthenticationCache;
+import com.janbabak.noqlbackend.dao.repository.ChatRepository;
+import com.janbabak.noqlbackend.dao.repository.DatabaseRepository;
 import com.janbabak.noqlbackend.dao.repository.UserRepository;
 import com.janbabak.noqlbackend.error.exception.EntityNotFoundException;
 import com.janbabak.noqlbackend.model.Role;
 import com.janbabak.noqlbackend.model.entity.User;
 import com.janbabak.noqlbackend.model.user.UpdateUserRequest;
+import com.janbabak.noqlbackend.service.PlotService;
+import com.janbabak.noqlbackend.service.database.DatabaseEntityService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -24,6 +29,11 @@ public class UserService {
     private final UserRepository userRepository;
     private final AuthenticationService authenticationService;
     private final PasswordEncoder passwordEncoder;
+    private final ChatRepository chatRepository;
+    private final DatabaseRepository databaseRepository;
+    private final DatabaseEntityService databaseEntityService;
+    private final PlotService plotService;
+    private final AuthenticationCache authenticationCache;
 
     /**
      * Find user by id.
@@ -70,6 +80,7 @@ public class UserService {
         authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(userId);
 
         final User userToUpdate = findById(userId);
+        final String previousEmail = userToUpdate.getEmail();
 
         if (data.firstName() != null) {
             userToUpdate.setFirstName(data.firstName());
@@ -80,6 +91,9 @@ public class UserService {
         if (data.queryLimit() != null) {
             userToUpdate.setQueryLimit(data.queryLimit());
         }
+        if (data.queryTimeoutSeconds() != null) {
+            userToUpdate.setQueryTimeoutSeconds(data.queryTimeoutSeconds());
+        }
         if (data.password() != null) {
             userToUpdate.setPassword(passwordEncoder.encode(data.password()));
         }
@@ -99,7 +113,9 @@ public class UserService {
             userToUpdate.setRole(data.role());
         }
 
-        return userRepository.save(userToUpdate);
+        final User updatedUser = userRepository.save(userToUpdate);
+        authenticationCache.invalidateUser(previousEmail);
+        return updatedUser;
     }
 
     /**
@@ -115,25 +131,43 @@ public class UserService {
 
         if (user.isPresent()) {
             authenticationService.ifNotAdminOrSelfRequestThrowAccessDenied(userId);
+            final List<UUID> chatIds = chatRepository.findAllIdsByUserId(userId);
+            final List<UUID> databaseIds = databaseRepository.findAllIdsByUserId(userId);
             userRepository.deleteById(userId);
+            authenticationCache.invalidateUser(user.get().getEmail());
+            plotService.deletePlotsOfChatsAsync(chatIds);
+            databaseIds.forEach(databaseEntityService::evict); // databases are deleted by cascade
         }
     }
 
 
     /**
-     * Decrement query limit for user.
+     * Decrement query limit for user by a single conditional update, so concurrent requests don't lose decrements.
      *
      * @param userId user identifier
-     * @return new query limit
+     * @return true if the limit was decremented, false if it is exhausted
      * @throws EntityNotFoundException user of specified id not found.
      */
-    public Integer decrementQueryLimit(UUID userId) throws EntityNotFoundException {
+    public boolean decrementQueryLimit(UUID userId) throws EntityNotFoundException {
         log.info("Decrement query limit for user with id={}.", userId);
 
-        final User user = findById(userId);
-        final int odlLimit = user.getQueryLimit();
-        user.setQueryLimit(Math.max(odlLimit - 1, 0));
-        userRepository.save(user);
-        return odlLimit;
+        if (userRepository.decrementQueryLimitIfPositive(userId) > 0) {
+            return true;
+        }
+        if (!userRepository.existsById(userId)) {
+            throw new EntityNotFoundException(USER, userId);
+        }
+        return false;
+    }
+
+    /**
+     * Return query to the user's query limit, e.g. when the request failed before the query was answered.
+     *
+     * @param userId user identifier
+     */
+    public void refundQueryLimit(UUID userId) {
+        log.info("Refund query limit for user with id={}.", userId);
+
+        userRepository.incrementQueryLimit(userId);
     }
 }
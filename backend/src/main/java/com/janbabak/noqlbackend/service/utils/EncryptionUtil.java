@@ -9,10 +9,13 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
- * Utility class for encryption and decryption of strings using AES/GCM/NoPadding.
+ * Utility class for encryption and decryption of strings using AES/GCM/NoPadding.<br />
+ * Ciphers are reused by each thread (they are initialized with a new IV before each use) and IVs are generated by a
+ * shared {@link SecureRandom}, which is thread-safe.
  */
 @Slf4j
 public class EncryptionUtil {
@@ -22,6 +25,9 @@ public class EncryptionUtil {
     private static final int GCM_TAG_LENGTH = 16; // 128 bits
     private static final int GCM_IV_LENGTH = 12; // 96 bits
 
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(EncryptionUtil::createCipher);
+
     /**
      * Encrypt a plaintext string.
      *
@@ -39,10 +45,26 @@ public class EncryptionUtil {
             NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
             IllegalBlockSizeException, BadPaddingException {
 
-        final SecretKey secretKey = getKeyFromBase64(base64Key);
+        return encrypt(plainText, getKeyFromBase64(base64Key));
+    }
+
+    /**
+     * Encrypt a plaintext string.
+     *
+     * @param plainText plaintext string to encrypt
+     * @param secretKey key returned by {@link #getKeyFromBase64(String)}
+     * @return base64 encoded encrypted data
+     * @throws InvalidAlgorithmParameterException if the algorithm parameters are invalid, should not happen
+     * @throws InvalidKeyException                if the key is invalid
+     * @throws IllegalBlockSizeException          if the block size is invalid, should not happen
+     * @throws BadPaddingException                should not happen
+     */
+    public static String encrypt(String plainText, SecretKey secretKey) throws InvalidAlgorithmParameterException,
+            InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+
         final byte[] iv = generateIV();
 
-        final Cipher cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
+        final Cipher cipher = CIPHERS.get();
         final GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
         cipher.init(Cipher.ENCRYPT_MODE, secretKey, spec);
 
@@ -71,21 +93,37 @@ public class EncryptionUtil {
             NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
             IllegalBlockSizeException, BadPaddingException {
 
-        final SecretKey secretKey = getKeyFromBase64(base64Key);
-        final byte[] decodedData = Base64.getDecoder().decode(cipherText);
+        final byte[] plainText = decryptToBytes(cipherText, getKeyFromBase64(base64Key));
+        try {
+            return new String(plainText);
+        } finally {
+            Arrays.fill(plainText, (byte) 0);
+        }
+    }
 
-        final byte[] iv = new byte[GCM_IV_LENGTH];
-        System.arraycopy(decodedData, 0, iv, 0, iv.length);
+    /**
+     * Decrypt a base64 encoded ciphertext to bytes, so that the caller can erase the plaintext when it is not needed.
+     *
+     * @param cipherText base64 encoded ciphertext
+     * @param secretKey  key returned by {@link #getKeyFromBase64(String)}
+     * @return decrypted plaintext
+     * @throws InvalidAlgorithmParameterException if the algorithm parameters are invalid
+     * @throws InvalidKeyException                if the key is invalid
+     * @throws IllegalBlockSizeException          if the block size is invalid, should not happen
+     * @throws BadPaddingException                if the ciphertext was not encrypted by the key or was modified
+     */
+    public static byte[] decryptToBytes(String cipherText, SecretKey secretKey)
+            throws InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException,
+            BadPaddingException {
 
-        final byte[] encryptedText = new byte[decodedData.length - GCM_IV_LENGTH];
-        System.arraycopy(decodedData, GCM_IV_LENGTH, encryptedText, 0, encryptedText.length);
+        final byte[] decodedData = Base64.getDecoder().decode(cipherText);
 
-        final Cipher cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
-        final GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
+        // iv is at the beginning of the data, it is read without copying
+        final Cipher cipher = CIPHERS.get();
+        final GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, decodedData, 0, GCM_IV_LENGTH);
         cipher.init(Cipher.DECRYPT_MODE, secretKey, spec);
 
-        final byte[] plainText = cipher.doFinal(encryptedText);
-        return new String(plainText);
+        return cipher.doFinal(decodedData, GCM_IV_LENGTH, decodedData.length - GCM_IV_LENGTH);
     }
 
     /**
@@ -94,7 +132,7 @@ public class EncryptionUtil {
      * @param base64Key base64 encoded key
      * @return SecretKey
      */
-    private static SecretKey getKeyFromBase64(String base64Key) {
+    public static SecretKey getKeyFromBase64(String base64Key) {
         final byte[] decodedKey = Base64.getDecoder().decode(base64Key);
         return new SecretKeySpec(decodedKey, AES);
     }
@@ -106,7 +144,15 @@ public class EncryptionUtil {
      */
     private static byte[] generateIV() {
         final byte[] iv = new byte[GCM_IV_LENGTH];
-        new SecureRandom().nextBytes(iv);
+        SECURE_RANDOM.nextBytes(iv);
         return iv;
     }
+
+    private static Cipher createCipher() {
+        try {
+            return Cipher.getInstance(AES_GCM_NO_PADDING);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(AES_GCM_NO_PADDING + " is not supported", e);
+        }
+    }
 }
@@ -1,8 +1,12 @@
 package com.janbabak.noqlbackend.service.utils;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 public class JsonUtils {
     public static final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -30,4 +34,15 @@ public class JsonUtils {
     public static String toJson(Object object) throws JsonProcessingException {
         return objectMapper.writeValueAsString(object);
     }
+
+    /**
+     * Create generator that writes JSON to the output stream.
+     *
+     * @param outputStream target stream, closed when the generator is closed
+     * @return JSON generator
+     * @throws IOException when the generator can't be created
+     */
+    public static JsonGenerator createGenerator(OutputStream outputStream) throws IOException {
+        return objectMapper.getFactory().createGenerator(outputStream);
+    }
 }
@@ -0,0 +1,175 @@
+package com.janbabak.noqlbackend.service.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs external processes. Standard output and error are drained concurrently, so the process can't block on a full
+ * pipe, and only the beginning of them is kept in memory. Process and its descendants are killed when the timeout
+ * elapses.
+ */
+@Slf4j
+public class ProcessRunner {
+
+    private static final ExecutorService drainers = createDrainers();
+
+    /**
+     * Run process and wait for its termination.
+     *
+     * @param command        command with arguments
+     * @param input          content written to the standard input of the process, may be null
+     * @param timeout        maximum duration of the process
+     * @param maxOutputBytes maximum number of kept bytes of standard output and of standard error
+     * @return result of the process
+     * @throws IOException          the process can't be started
+     * @throws InterruptedException the waiting thread was interrupted, the process is killed
+     */
+    public static ProcessResult run(List<String> command, byte[] input, Duration timeout, int maxOutputBytes)
+            throws IOException, InterruptedException {
+
+        final long startedAt = System.nanoTime();
+        final Process process = new ProcessBuilder(command).start();
+
+        final BoundedOutputStream output = new BoundedOutputStream(maxOutputBytes);
+        final BoundedOutputStream error = new BoundedOutputStream(maxOutputBytes);
+        final Future<?> inputWriter = drainers.submit(() -> writeInput(process.getOutputStream(), input));
+        final Future<?> outputDrainer = drainers.submit(() -> drain(process.getInputStream(), output));
+        final Future<?> errorDrainer = drainers.submit(() -> drain(process.getErrorStream(), error));
+
+        boolean timedOut = false;
+        try {
+            if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Process {} did not finish in {}, killing it.", command, timeout);
+                timedOut = true;
+                kill(process);
+            }
+            // streams are closed when the process terminates
+            awaitQuietly(outputDrainer);
+            awaitQuietly(errorDrainer);
+        } catch (InterruptedException e) {
+            kill(process);
+            throw e;
+        } finally {
+            inputWriter.cancel(true);
+        }
+
+        final long wallTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        return new ProcessResult(
+                timedOut ? null : process.exitValue(),
+                timedOut,
+                output.toString(),
+                error.toString(),
+                wallTimeMillis,
+                output.getTotalBytes(),
+                error.getTotalBytes());
+    }
+
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static void writeInput(OutputStream stream, byte[] input) {
+        try (stream) {
+            if (input != null) {
+                stream.write(input);
+            }
+        } catch (IOException e) {
+            log.debug("Cannot write input of the process: {}", e.getMessage());
+        }
+    }
+
+    private static void drain(InputStream stream, OutputStream target) {
+        try (stream) {
+            stream.transferTo(target);
+        } catch (IOException e) {
+            log.debug("Cannot read output of the process: {}", e.getMessage());
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) throws InterruptedException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // descendants of a killed process may still hold the pipe open
+            future.cancel(true);
+        }
+    }
+
+    private static ExecutorService createDrainers() {
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("process-drainer-");
+        threadFactory.setDaemon(true);
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Result of the process.
+     *
+     * @param exitCode       exit code or null if the process was killed because of the timeout
+     * @param timedOut       true if the process was killed because of the timeout
+     * @param output         beginning of the standard output
+     * @param error          beginning of the standard error
+     * @param wallTimeMillis duration of the process
+     * @param outputBytes    number of bytes written to the standard output
+     * @param errorBytes     number of bytes written to the standard error
+     */
+    public record ProcessResult(
+            Integer exitCode,
+            Boolean timedOut,
+            String output,
+            String error,
+            Long wallTimeMillis,
+            Long outputBytes,
+            Long errorBytes) {
+
+        public boolean isSuccess() {
+            return !timedOut && exitCode == 0;
+        }
+    }
+
+    /**
+     * Keeps only the first {@code limit} bytes and counts all written bytes.
+     */
+    private static class BoundedOutputStream extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final int limit;
+        private long totalBytes = 0;
+
+        private BoundedOutputStream(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (buffer.size() < limit) {
+                buffer.write(b);
+            }
+            totalBytes++;
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            buffer.write(bytes, offset, Math.min(length, Math.max(0, limit - buffer.size())));
+            totalBytes += length;
+        }
+
+        private synchronized long getTotalBytes() {
+            return totalBytes;
+        }
+
+        @Override
+        public synchronized String toString() {
+            final String content = buffer.toString(StandardCharsets.UTF_8);
+            return totalBytes > buffer.size() ? content + "... (truncated)" : content;
+        }
+    }
+}
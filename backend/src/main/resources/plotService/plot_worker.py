@@ -0,0 +1,141 @@
+"""
+Long-lived worker of the plot service, started by the backend by 'docker exec -i'.
+
+Libraries used by the generated scripts are imported once, when the worker starts, so plots don't pay for
+the interpreter startup and the import of matplotlib. Scripts are read from stdin and results are written to stdout,
+both framed as '<number of bytes>\\n<payload>'. The first frame is '{"pid": <pid>}', the pid is the process group
+of the worker and its jobs, the backend kills the group when the worker doesn't respond. Other frames are results,
+JSON objects with keys success, output, error and maxRssKb.
+
+Scripts contain credentials of the users' databases, so the worker never executes them itself. Each script is
+executed by a child forked from the worker, the child gets a copy of the imported modules and exits after the
+script, so a script can't modify modules (e.g. a database driver) used by the next scripts. The child is killed
+when the timeout elapses, even if it is blocked in a C extension.
+"""
+import contextlib
+import io
+import json
+import os
+import resource
+import select
+import signal
+import sys
+import time
+import traceback
+
+import matplotlib
+
+matplotlib.use("Agg")
+
+import matplotlib.pyplot  # noqa: E402,F401 - imported to warm up
+import numpy  # noqa: E402,F401 - imported to warm up
+import pandas  # noqa: E402,F401 - imported to warm up
+
+READ_CHUNK_SIZE = 65536
+
+
+def read_job(stream):
+    header = stream.readline()
+    if not header:
+        return None
+    return stream.read(int(header)).decode("utf-8")
+
+
+def write_frame(stream, message):
+    payload = json.dumps(message).encode("utf-8")
+    stream.write(b"%d\n" % len(payload))
+    stream.write(payload)
+    stream.flush()
+
+
+def execute_script(script):
+    """Executed in the forked child."""
+    output = io.StringIO()
+    error = io.StringIO()
+    success = True
+    try:
+        with contextlib.redirect_stdout(output), contextlib.redirect_stderr(error):
+            exec(compile(script, "plot.py", "exec"), {"__name__": "__main__"})
+    except SystemExit as e:
+        if e.code not in (None, 0):
+            success = False
+            error.write(str(e.code))
+    except BaseException:  # noqa: BLE001 - any error of the script is reported to the backend
+        success = False
+        error.write(traceback.format_exc())
+    return {"success": success, "output": output.getvalue(), "error": error.getvalue()}
+
+
+def run_child(script, result_fd):
+    """Body of the forked child, it never returns."""
+    try:
+        # the script must not read jobs of the worker or write to its protocol stream
+        devnull = os.open(os.devnull, os.O_RDWR)
+        for fd in (0, 1, 2):
+            os.dup2(devnull, fd)
+        sys.stdin = open(os.devnull)
+        signal.signal(signal.SIGTERM, signal.SIG_DFL)
+
+        result = json.dumps(execute_script(script)).encode("utf-8")
+        view = memoryview(result)
+        while view:
+            view = view[os.write(result_fd, view):]
+    finally:
+        os._exit(0)
+
+
+def run(script, timeout_seconds):
+    read_fd, write_fd = os.pipe()
+    pid = os.fork()
+    if pid == 0:
+        os.close(read_fd)
+        run_child(script, write_fd)
+    os.close(write_fd)
+
+    deadline = time.monotonic() + timeout_seconds
+    chunks = []
+    timed_out = False
+    try:
+        while True:
+            remaining = deadline - time.monotonic()
+            if remaining <= 0:
+                timed_out = True
+                break
+            readable, _, _ = select.select([read_fd], [], [], remaining)
+            if not readable:
+                continue
+            chunk = os.read(read_fd, READ_CHUNK_SIZE)
+            if not chunk:
+                break
+            chunks.append(chunk)
+    finally:
+        os.close(read_fd)
+        if timed_out:
+            os.kill(pid, signal.SIGKILL)
+        os.waitpid(pid, 0)
+
+    if timed_out:
+        return {"success": False, "output": "", "error": "Plot script execution timed out"}
+    try:
+        return json.loads(b"".join(chunks).decode("utf-8"))
+    except ValueError:
+        return {"success": False, "output": "", "error": "Plot script terminated unexpectedly"}
+
+
+def main():
+    timeout_seconds = int(sys.argv[1]) if len(sys.argv) > 1 else 10
+    with contextlib.suppress(OSError):
+        os.setpgrp()  # jobs are killed together with the worker
+    stdin = sys.stdin.buffer
+    stdout = sys.stdout.buffer
+    write_frame(stdout, {"pid": os.getpgrp()})  # ready
+
+    while (script := read_job(stdin)) is not None:
+        result = run(script, timeout_seconds)
+        # memory of the worker itself, jobs don't change it
+        result["maxRssKb"] = resource.getrusage(resource.RUSAGE_SELF).ru_maxrss
+        write_frame(stdout, result)
+
+
+if __name__ == "__main__":
+    main()
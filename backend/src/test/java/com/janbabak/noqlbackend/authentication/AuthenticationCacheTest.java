@@ -0,0 +1,74 @@
+package com.janbabak.noqlbackend.authentication;
+
+import com.janbabak.noqlbackend.authentication.AuthenticationCache.AuthenticatedUser;
+import com.janbabak.noqlbackend.config.AuthenticationCacheConfig;
+import com.janbabak.noqlbackend.model.entity.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthenticationCacheTest {
+
+    private final User user = User.builder()
+            .email("john.doe@email.com")
+            .build();
+
+    @Test
+    @DisplayName("Test authenticated user is cached until invalidated")
+    void testUserIsCachedAndInvalidated() {
+        // given
+        final AuthenticationCache cache = new AuthenticationCache(new AuthenticationCacheConfig());
+        final AtomicInteger loads = new AtomicInteger();
+        final Instant expiresAt = Instant.now().plus(1, ChronoUnit.HOURS);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            assertEquals(user, cache.get("token", token -> {
+                loads.incrementAndGet();
+                return new AuthenticatedUser(user, expiresAt);
+            }));
+        }
+
+        // then
+        assertEquals(1, loads.get());
+
+        // when
+        cache.invalidateUser("john.doe@email.com");
+        cache.get("token", token -> {
+            loads.incrementAndGet();
+            return new AuthenticatedUser(user, expiresAt);
+        });
+
+        // then
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("Test invalid and expired tokens are not cached")
+    void testInvalidAndExpiredTokensAreNotCached() {
+        // given
+        final AuthenticationCache cache = new AuthenticationCache(new AuthenticationCacheConfig());
+        final AtomicInteger loads = new AtomicInteger();
+        final Instant expiredAt = Instant.now().minusSeconds(1);
+
+        // when
+        for (int i = 0; i < 2; i++) {
+            assertNull(cache.get("invalidToken", token -> {
+                loads.incrementAndGet();
+                return null;
+            }));
+            cache.get("expiredToken", token -> {
+                loads.incrementAndGet();
+                return new AuthenticatedUser(user, expiredAt);
+            });
+        }
+
+        // then
+        assertEquals(4, loads.get());
+    }
+}
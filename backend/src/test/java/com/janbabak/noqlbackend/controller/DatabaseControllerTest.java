@@ -30,6 +30,8 @@ import org.springframework.security.test.context.support.WithAnonymousUser;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -38,11 +40,13 @@ import java.util.UUID;
 import static com.janbabak.noqlbackend.service.utils.JsonUtils.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -519,6 +523,39 @@ class DatabaseControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    @Test
+    @DisplayName("Cancel running query")
+    @WithMockUser(roles = "USER")
+    void testCancelQuery() throws Exception {
+        // given
+        final UUID databaseId = UUID.randomUUID();
+        final UUID queryId = UUID.randomUUID();
+
+        // then
+        mockMvc.perform(delete(ROOT_URL + "/{databaseId}/query/running/{queryId}", databaseId, queryId)
+                        .with(csrf()))
+                .andDo(print())
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    @DisplayName("Cancel query that is not running")
+    @WithMockUser(roles = "USER")
+    void testCancelQueryNotRunning() throws Exception {
+        // given
+        final UUID databaseId = UUID.randomUUID();
+        final UUID queryId = UUID.randomUUID();
+
+        doThrow(new EntityNotFoundException(EntityNotFoundException.Entity.QUERY, queryId))
+                .when(queryService).cancelQuery(databaseId, queryId);
+
+        // then
+        mockMvc.perform(delete(ROOT_URL + "/{databaseId}/query/running/{queryId}", databaseId, queryId)
+                        .with(csrf()))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     @DisplayName("Execute chat")
     @WithMockUser(roles = "USER")
@@ -561,6 +598,38 @@ class DatabaseControllerTest {
                 .andExpect(content().json(toJson(response), true));
     }
 
+    @Test
+    @DisplayName("Execute streamed chat")
+    @WithMockUser(roles = "USER")
+    void testQueryChatStream() throws Exception {
+        // given
+        final UUID databaseId = UUID.randomUUID();
+        final UUID chatId = UUID.randomUUID();
+        final QueryRequest request = new QueryRequest("find all users older than 25", "gpt-4o");
+        final SseEmitter emitter = new SseEmitter();
+        emitter.send(SseEmitter.event().name(ChatStreamEventType.QUERY.getEventName())
+                .data("SELECT * FROM users WHERE age > 25"));
+        emitter.complete();
+
+        when(queryService.queryChatStream(databaseId, chatId, request, null)).thenReturn(emitter);
+
+        // when
+        final MvcResult result = mockMvc.perform(post(ROOT_URL + "/{databaseId}/chat/{chatId}/query/stream",
+                        databaseId, chatId)
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(toJson(request))
+                        .with(csrf()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().string("event:query\ndata:SELECT * FROM users WHERE age > 25\n\n"));
+    }
+
     @Test
     @DisplayName("Execute chat bad request")
     @WithMockUser(roles = "USER")
@@ -731,6 +800,30 @@ class DatabaseControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Refresh database structure")
+    @WithMockUser(roles = "USER")
+    void testRefreshDatabaseStructure() throws Exception {
+        // given
+        final UUID databaseId = UUID.randomUUID();
+        final SqlDatabaseStructureDto databaseStructure = new SqlDatabaseStructureDto(List.of(
+                new SchemaDto("public",
+                        List.of(
+                                new TableDto("address", List.of(
+                                        new Column("city", "character varying", false),
+                                        new Column("id", "integer", true)
+                                ))))));
+
+        when(databaseServiceMock.refreshDatabaseStructureByDatabaseId(databaseId)).thenReturn(databaseStructure);
+
+        // then
+        mockMvc.perform(post(ROOT_URL + "/{databaseId}/structure/refresh", databaseId)
+                        .with(csrf()))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(databaseStructure), true));
+    }
+
     @Test
     @DisplayName("Get database structure by anonymous user")
     @WithAnonymousUser
@@ -1,5 +1,6 @@
 package com.janbabak.noqlbackend.controller;
 
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.model.query.*;
 import com.janbabak.noqlbackend.service.JwtService;
 import com.janbabak.noqlbackend.service.chat.ChatQueryWithResponseService;
@@ -15,7 +16,10 @@ import org.springframework.security.test.context.support.WithAnonymousUser;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 
@@ -24,6 +28,7 @@ import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -59,7 +64,7 @@ class MessageControllerTest {
                         List.of("Lenny", "lenny@gmail.com", "65")))
                 .build();
 
-        when(chatQueryWithResponseServiceMock.getDataByMessageId(messageId, page, pageSize)).thenReturn(response);
+        when(chatQueryWithResponseServiceMock.getDataByMessageId(messageId, page, pageSize, null)).thenReturn(response);
 
         // then
         mockMvc.perform(
@@ -73,6 +78,62 @@ class MessageControllerTest {
                 .andExpect(content().json(toJson(response), true));
     }
 
+    @Test
+    @DisplayName("Stream chat result")
+    @WithMockUser(roles = "USER")
+    void testStreamChatResult() throws Exception {
+        // given
+        final UUID messageId = UUID.randomUUID();
+        final Integer page = 0;
+        final Integer pageSize = 500;
+        // language=JSON
+        final String response = """
+                {
+                   "columnNames":["name","age"],
+                   "rows":[["John","26"]],
+                   "page":0,
+                   "pageSize":500,
+                   "totalCount":1
+                }""";
+        final StreamingResponseBody body =
+                outputStream -> outputStream.write(response.getBytes(StandardCharsets.UTF_8));
+
+        when(chatQueryWithResponseServiceMock.streamDataByMessageId(messageId, page, pageSize)).thenReturn(body);
+
+        // when
+        final MvcResult result = mockMvc.perform(
+                        get(ROOT_URL + "/{messageId}/data", messageId)
+                                .param("page", page.toString())
+                                .param("pageSize", pageSize.toString())
+                                .param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(response, true));
+    }
+
+    @Test
+    @DisplayName("Stream chat result when the query fails")
+    @WithMockUser(roles = "USER")
+    void testStreamChatResultFailure() throws Exception {
+        // given
+        final UUID messageId = UUID.randomUUID();
+
+        when(chatQueryWithResponseServiceMock.streamDataByMessageId(messageId, null, null))
+                .thenThrow(new DatabaseExecutionException("relation \"user\" does not exist"));
+
+        // then
+        mockMvc.perform(
+                        get(ROOT_URL + "/{messageId}/data", messageId)
+                                .param("stream", "true"))
+                .andDo(print())
+                .andExpect(status().isInternalServerError());
+    }
+
     @Test
     @DisplayName("Load chat result by anonymous user")
     @WithAnonymousUser
@@ -92,4 +153,20 @@ class MessageControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Load total count of chat result")
+    @WithMockUser(roles = "USER")
+    void testLoadChatResultTotalCount() throws Exception {
+        // given
+        final UUID messageId = UUID.randomUUID();
+        final TotalCountResponse response = new TotalCountResponse(1024L, TotalCountResponse.Status.COMPUTED);
+
+        when(chatQueryWithResponseServiceMock.getTotalCountByMessageId(messageId)).thenReturn(response);
+
+        // then
+        mockMvc.perform(get(ROOT_URL + "/{messageId}/data/totalCount", messageId))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(response), true));
+    }
+}
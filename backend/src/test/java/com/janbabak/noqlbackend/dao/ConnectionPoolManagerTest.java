@@ -0,0 +1,125 @@
+package com.janbabak.noqlbackend.dao;
+
+import com.janbabak.noqlbackend.config.ConnectionPoolConfig;
+import com.janbabak.noqlbackend.dao.ConnectionPoolManager.ConnectionPoolStatistics;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.service.database.DatabaseCredentialsEncryptionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests of the connection pools, they use in-memory H2 database, so no database server is needed.
+ */
+class ConnectionPoolManagerTest {
+
+    private final DatabaseCredentialsEncryptionService encryptionServiceMock =
+            mock(DatabaseCredentialsEncryptionService.class);
+    private final ConnectionPoolManager connectionPoolManager =
+            new ConnectionPoolManager(new ConnectionPoolConfig(), encryptionServiceMock);
+
+    private final Database database = Database.builder()
+            .id(UUID.randomUUID())
+            .userName("sa")
+            .password("encrypted-password")
+            .build();
+    private final String connectionUrl = "jdbc:h2:mem:" + database.getId() + ";DB_CLOSE_DELAY=-1";
+
+    @AfterEach
+    void tearDown() {
+        connectionPoolManager.closeAll();
+    }
+
+    @Test
+    @DisplayName("Test connections of the same database are borrowed from the same pool")
+    void testPoolReused() throws SQLException {
+        // given
+        when(encryptionServiceMock.decryptCredentials(any())).thenReturn("");
+
+        // when
+        borrowAndReturn(true);
+        borrowAndReturn(true);
+        borrowAndReturn(false);
+
+        // then
+        final List<ConnectionPoolStatistics> statistics = connectionPoolManager.getStatistics();
+        assertEquals(2, statistics.size()); // read-only and read-write pool
+        assertEquals(2, getStatistics(true).borrowCount());
+        assertEquals(1, getStatistics(false).borrowCount());
+        assertEquals(1, getStatistics(true).totalConnections()); // returned connection is reused
+        verify(encryptionServiceMock, times(1)).decryptCredentials("encrypted-password");
+    }
+
+    @Test
+    @DisplayName("Test evicted pools are closed together with their connections")
+    void testEvictClosesPool() throws Exception {
+        // given
+        when(encryptionServiceMock.decryptCredentials(any())).thenReturn("");
+        borrowAndReturn(true);
+        assertEquals(2, countSessions()); // idle pooled connection and the counting connection
+
+        // when
+        connectionPoolManager.evict(database.getId());
+
+        // then
+        assertTrue(connectionPoolManager.getStatistics().isEmpty());
+        for (int i = 0; i < 50 && countSessions() > 1; i++) {
+            Thread.sleep(100); // pools are closed by the removal listener asynchronously
+        }
+        assertEquals(1, countSessions());
+    }
+
+    @Test
+    @DisplayName("Test pools are created again when connection parameters change")
+    void testPoolRecreatedAfterParametersChange() throws SQLException {
+        // given
+        when(encryptionServiceMock.decryptCredentials(any())).thenReturn("");
+        borrowAndReturn(true);
+        borrowAndReturn(true);
+
+        // when
+        database.setPassword("new-encrypted-password");
+        borrowAndReturn(true);
+
+        // then
+        assertEquals(2, connectionPoolManager.getStatistics().size()); // outdated pools were removed
+        assertEquals(1, getStatistics(true).borrowCount());
+        verify(encryptionServiceMock, times(1)).decryptCredentials("new-encrypted-password");
+    }
+
+    private void borrowAndReturn(boolean readOnly) throws SQLException {
+        try (Connection connection = connectionPoolManager.getConnection(database, connectionUrl, readOnly)) {
+            assertEquals(readOnly, connection.isReadOnly());
+        }
+    }
+
+    private ConnectionPoolStatistics getStatistics(boolean readOnly) {
+        return connectionPoolManager.getStatistics()
+                .stream()
+                .filter(statistics -> statistics.readOnly() == readOnly)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * @return number of sessions of the database including the counting one
+     */
+    private int countSessions() throws SQLException {
+        try (Connection connection = connectionPoolManager.getUnpooledConnection(database, connectionUrl, false);
+             ResultSet resultSet = connection.createStatement()
+                     .executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.janbabak.noqlbackend.dao;
 
+import com.janbabak.noqlbackend.config.QueryExecutionConfig;
 import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
 import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.model.database.DatabaseEngine;
@@ -39,15 +40,16 @@ public class LocalDatabaseTest {
 
     private static final String COMMAND_SEPARATOR = "-- command separator";
 
-    @Autowired
     protected PostgresDAO postgresDAO;
 
-    @Autowired
     protected MySqlDAO mySqlDAO;
 
     @Autowired
     DatabaseCredentialsEncryptionService encryptionService;
 
+    @Autowired
+    ConnectionPoolManager connectionPoolManager;
+
     protected Database postgresDatabase;
     protected Database mySqlDatabase;
 
@@ -76,10 +78,12 @@ public class LocalDatabaseTest {
     @BeforeAll
     protected void setUp() throws Exception {
         postgresDatabase = createDatabase(postgresContainer, DatabaseEngine.POSTGRES);
-        postgresDAO.databaseMetadata(postgresDatabase);
+        postgresDAO = new PostgresDAO(
+                postgresDatabase, connectionPoolManager, new QueryExecutionConfig(), new QueryMetrics(), new QueryRegistry());
 
         mySqlDatabase = createDatabase(mySqlContainer, DatabaseEngine.MYSQL);
-        mySqlDAO.databaseMetadata(mySqlDatabase);
+        mySqlDAO = new MySqlDAO(
+                mySqlDatabase, connectionPoolManager, new QueryExecutionConfig(), new QueryMetrics(), new QueryRegistry());
 
         final Scripts initScripts = getInitializationScripts();
         if (initScripts == null) {
@@ -107,7 +111,7 @@ public class LocalDatabaseTest {
      * @throws DatabaseConnectionException cannot establish connection to the database
      * @throws DatabaseExecutionException  cannot execute the script - syntax error
      */
-    private void executeScripts(Scripts scripts) throws DatabaseConnectionException, DatabaseExecutionException {
+    protected void executeScripts(Scripts scripts) throws DatabaseConnectionException, DatabaseExecutionException {
         if (scripts.postgresScript != null) {
             postgresDAO.updateDatabase(scripts.postgresScript);
         }
@@ -0,0 +1,42 @@
+package com.janbabak.noqlbackend.dao;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MeteredResultSetTest {
+
+    @Test
+    @DisplayName("Test rows and bytes are recorded once")
+    void testRecordRowsAndBytes() throws SQLException {
+        // given
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString(1)).thenReturn("John", null);
+        when(resultSet.getLong(2)).thenReturn(1L, 2L);
+        final MeteredResultSet meteredResultSet = new MeteredResultSet(resultSet);
+        final QueryMetrics metrics = new QueryMetrics();
+
+        // when
+        final ResultSet proxy = meteredResultSet.getProxy();
+        while (proxy.next()) {
+            proxy.getString(1);
+            proxy.getLong(2);
+        }
+        meteredResultSet.recordTo(metrics);
+        meteredResultSet.recordTo(metrics);
+
+        // then
+        final QueryMetrics.QueryStatistics statistics = metrics.getStatistics();
+        assertEquals(1L, statistics.queries());
+        assertEquals(2L, statistics.rowsFetched());
+        assertEquals(4L + 8L + 8L, statistics.bytesRead());
+        assertEquals(2L, statistics.maxRowsPerQuery());
+    }
+}
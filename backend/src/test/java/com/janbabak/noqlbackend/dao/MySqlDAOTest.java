@@ -38,7 +38,7 @@ class MySqlDAOTest extends AbstractSqlDAOTest {
     @Test
     @DisplayName("Test create connection URL")
     void testCreateConnectionUrl() {
-        final String expected = "jdbc:mysql://localhost:" + getMySqlPort() + "/test-database";
+        final String expected = "jdbc:mysql://localhost:" + getMySqlPort() + "/test-database?useCursorFetch=true";
         assertEquals(expected, getDatabaseDao().createConnectionUrl());
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.janbabak.noqlbackend.dao;
+
+import com.janbabak.noqlbackend.model.entity.Database;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class QueryRegistryTest {
+
+    private final QueryRegistry queryRegistry = new QueryRegistry();
+
+    @Test
+    @DisplayName("Test cancel running query")
+    void testCancel() throws SQLException {
+        // given
+        final Database database = Database.builder().id(UUID.randomUUID()).build();
+        final Statement statement = mock(Statement.class);
+        final QueryRegistry.RunningQuery runningQuery = queryRegistry.register(statement, database, "SELECT 1");
+
+        // when
+        final boolean cancelledByAnotherDatabase = queryRegistry.cancel(UUID.randomUUID(), runningQuery.id());
+        final boolean cancelled = queryRegistry.cancel(database.getId(), runningQuery.id());
+
+        // then
+        assertFalse(cancelledByAnotherDatabase);
+        assertTrue(cancelled);
+        verify(statement, times(1)).cancel();
+        assertEquals(1, queryRegistry.getRunningQueries(database.getId()).size());
+        queryRegistry.unregister(runningQuery);
+        assertTrue(queryRegistry.getRunningQueries(database.getId()).isEmpty());
+        assertFalse(queryRegistry.cancel(database.getId(), runningQuery.id()));
+    }
+
+    @Test
+    @DisplayName("Test cancel queries of scope")
+    void testCancelScope() throws SQLException {
+        // given
+        final Database database = Database.builder().id(UUID.randomUUID()).build();
+        final UUID scope = UUID.randomUUID();
+        final Statement scopedStatement = mock(Statement.class);
+        final Statement otherStatement = mock(Statement.class);
+
+        try (QueryRegistry.Scope ignored = queryRegistry.openScope(scope)) {
+            queryRegistry.register(scopedStatement, database, "SELECT 1");
+        }
+        queryRegistry.register(otherStatement, database, "SELECT 2");
+
+        // when
+        final int cancelled = queryRegistry.cancelScope(scope);
+
+        // then
+        assertEquals(1, cancelled);
+        verify(scopedStatement, times(1)).cancel();
+        verify(otherStatement, never()).cancel();
+    }
+}
@@ -0,0 +1,87 @@
+package com.janbabak.noqlbackend.model.query;
+
+import com.janbabak.noqlbackend.service.utils.JsonUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ColumnarRowsTest {
+
+    @Test
+    @DisplayName("Test typed columns are rendered as strings")
+    void testTypedColumns() throws Exception {
+        // given
+        final ResultSet resultSet = mockResultSet();
+
+        // when
+        final RetrievedData data = new RetrievedData(resultSet, 0, 10, 3L);
+
+        // then
+        assertInstanceOf(ColumnarRows.class, data.rows());
+        assertEquals(List.of("id", "name", "price", "active"), data.columnNames());
+        assertEquals(List.of(
+                List.of("1", "John", "10", "t"),
+                List.of("2", "Lenny", "2.5", "f"),
+                Arrays.asList(null, "John", null, null)), data.rows());
+        assertEquals("{\"columnNames\":[\"id\",\"name\",\"price\",\"active\"],"
+                        + "\"rows\":[[\"1\",\"John\",\"10\",\"t\"],[\"2\",\"Lenny\",\"2.5\",\"f\"],"
+                        + "[null,\"John\",null,null]],\"page\":0,\"pageSize\":10,\"totalCount\":3}",
+                JsonUtils.toJson(data));
+    }
+
+    @Test
+    @DisplayName("Test floating point numbers are rendered by the driver")
+    void testDoubleColumn() throws Exception {
+        // given
+        final ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnName(1)).thenReturn("value");
+        when(metaData.getColumnType(1)).thenReturn(Types.DOUBLE);
+
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        // text of PostgreSQL, Double.toString would render 1.0E15 and 1.5E-5
+        when(resultSet.getString(1)).thenReturn("1e+15", "1.5e-05", "NaN");
+
+        // when
+        final RetrievedData data = new RetrievedData(resultSet, 0, 10, 3L);
+
+        // then
+        assertEquals(List.of(List.of("1e+15"), List.of("1.5e-05"), List.of("NaN")), data.rows());
+    }
+
+    private static ResultSet mockResultSet() throws SQLException {
+        final ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(4);
+        when(metaData.getColumnName(1)).thenReturn("id");
+        when(metaData.getColumnName(2)).thenReturn("name");
+        when(metaData.getColumnName(3)).thenReturn("price");
+        when(metaData.getColumnName(4)).thenReturn("active");
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+        when(metaData.getColumnType(3)).thenReturn(Types.DOUBLE);
+        when(metaData.getColumnType(4)).thenReturn(Types.BOOLEAN);
+
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getLong(1)).thenReturn(1L, 2L, 0L);
+        when(resultSet.getString(2)).thenReturn("John ", "Lenny", "John");
+        when(resultSet.getString(3)).thenReturn("10", "2.5", null);
+        when(resultSet.getBoolean(4)).thenReturn(true, false, false);
+        when(resultSet.getString(4)).thenReturn("t", "f");
+        // wasNull is called after getLong and getBoolean of each row
+        when(resultSet.wasNull()).thenReturn(false, false, false, false, true, true);
+        return resultSet;
+    }
+}
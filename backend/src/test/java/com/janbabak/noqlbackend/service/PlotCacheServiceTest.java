@@ -0,0 +1,72 @@
+package com.janbabak.noqlbackend.service;
+
+import com.janbabak.noqlbackend.config.PlotCacheConfig;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.service.PlotCacheService.PlotCacheKey;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlotCacheServiceTest {
+
+    @TempDir
+    private Path workingDirectory;
+
+    private final Database database = Database.builder()
+            .id(UUID.randomUUID())
+            .engine(DatabaseEngine.POSTGRES)
+            .build();
+
+    @Test
+    @DisplayName("Test cached plot is copied to the new file and evicted")
+    void testPlotIsCachedAndEvicted() throws Exception {
+        // given
+        final PlotCacheService plotCacheService =
+                new PlotCacheService(new PlotCacheConfig(), workingDirectory.toString());
+        final Path plot = Files.writeString(workingDirectory.resolve("chat1--message1.png"), "image");
+        final Path newPlot = workingDirectory.resolve("chat1--message2.png");
+        final PlotCacheKey key = plotCacheService.createKey("plt.plot(x, y)", database, "fingerprint1");
+
+        // when
+        plotCacheService.put(key, plot);
+        Files.delete(plot); // chat was deleted
+
+        // then
+        assertTrue(plotCacheService.copyTo(key, newPlot));
+        assertEquals("image", Files.readString(newPlot));
+        assertEquals(1, plotCacheService.getHitCount());
+
+        // when
+        plotCacheService.evict(database.getId());
+
+        // then
+        assertFalse(plotCacheService.copyTo(key, workingDirectory.resolve("chat1--message3.png")));
+    }
+
+    @Test
+    @DisplayName("Test key depends on script and data version")
+    void testCreateKey() {
+        // given
+        final PlotCacheService plotCacheService =
+                new PlotCacheService(new PlotCacheConfig(), workingDirectory.toString());
+
+        // then
+        assertEquals(
+                plotCacheService.createKey("plt.plot(x, y)", database, "fingerprint1"),
+                plotCacheService.createKey("plt.plot(x, y)", database, "fingerprint1"));
+        assertNotEquals(
+                plotCacheService.createKey("plt.plot(x, y)", database, "fingerprint1"),
+                plotCacheService.createKey("plt.plot(x, y)", database, "fingerprint2"));
+        assertNotEquals(
+                plotCacheService.createKey("plt.plot(x, y)", database, "fingerprint1"),
+                plotCacheService.createKey("plt.bar(x, y)", database, "fingerprint1"));
+        assertNull(plotCacheService.createKey("plt.plot(x, y)", Database.builder().build(), "fingerprint1"));
+    }
+}
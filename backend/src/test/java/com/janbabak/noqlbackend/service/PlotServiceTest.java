@@ -1,5 +1,6 @@
 package com.janbabak.noqlbackend.service;
 
+import com.janbabak.noqlbackend.error.exception.PlotScriptExecutionException;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.service.database.DatabaseCredentialsEncryptionService;
 import com.janbabak.noqlbackend.service.utils.FileUtils;
@@ -66,6 +67,28 @@ class PlotServiceTest {
         };
     }
 
+    @Test
+    @DisplayName("Failed plot is recorded in statistics")
+    void testFailedPlotStatistics() {
+        // given
+        final Database database = Database.builder()
+                .host("localhost")
+                .port(5432)
+                .database("myEshop")
+                .userName("jan")
+                .password(encryptionService.encryptCredentials("secret111"))
+                .build();
+        final long failedBefore = plotService.getStatistics().failed();
+
+        // when, plot service container is not running in tests
+        assertThrows(PlotScriptExecutionException.class,
+                () -> plotService.generatePlot("import sys; sys.exit(1)", database, "plot.png"));
+
+        // then
+        assertEquals(failedBefore + 1, plotService.getStatistics().failed());
+        assertEquals(0, plotService.getStatistics().queued());
+    }
+
     @Test
     @DisplayName("Create file name")
     void testCreateFileName() {
@@ -109,4 +132,20 @@ class PlotServiceTest {
         // then
         assertEquals(expectedUrl, actualFileUrl);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Create relative path")
+    void testCreateRelativePath() {
+        // given
+        final String fileName = "68712114-b7b4-451a-a6eb-1c6e822509ae--12345678-b7b4-451a-a6eb-1c6e822509ae.png";
+        final String expectedPath = "68712114-b7b4-451a-a6eb-1c6e822509ae/" + fileName;
+
+        // when
+        final String actualPath = PlotService.createRelativePath(fileName);
+
+        // then
+        assertEquals(expectedPath, actualPath);
+        assertEquals("plot.png", PlotService.createRelativePath("plot.png"));
+        assertEquals(expectedPath, PlotService.createRelativePath(expectedPath));
+    }
+}
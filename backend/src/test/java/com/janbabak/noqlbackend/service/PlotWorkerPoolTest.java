@@ -0,0 +1,196 @@
+package com.janbabak.noqlbackend.service;
+
+import com.janbabak.noqlbackend.config.PlotWorkerPoolConfig;
+import com.janbabak.noqlbackend.model.Settings;
+import com.janbabak.noqlbackend.service.PlotWorkerPool.PlotJobResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests of the plot worker pool. Tests of the worker protocol start the workers by a local Python instead of
+ * {@code docker exec}, they are skipped when Python with the plot libraries is not available.
+ */
+class PlotWorkerPoolTest {
+
+    private static final String PYTHON = "python";
+
+    @TempDir
+    private Path workingDirectory;
+
+    private PlotWorkerPool plotWorkerPool;
+
+    @AfterEach
+    void tearDown() {
+        if (plotWorkerPool != null) {
+            plotWorkerPool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Test disabled pool falls back to docker exec")
+    void testDisabledPool() {
+        // given
+        final PlotWorkerPoolConfig config = new PlotWorkerPoolConfig();
+        config.setEnabled(false);
+        plotWorkerPool = new PlotWorkerPool(config, new Settings(), workingDirectory.toString());
+
+        // when
+        plotWorkerPool.start();
+
+        // then
+        assertNull(plotWorkerPool.execute("print('hello')"));
+    }
+
+    @Test
+    @DisplayName("Test pool falls back to docker exec when worker cannot be started")
+    void testWorkerCannotBeStarted() throws Exception {
+        // given
+        Files.createDirectories(workingDirectory.resolve("plotService"));
+        final Settings settings = new Settings();
+        settings.plotServiceContainerName = "not-existing-container-" + UUID.randomUUID();
+        plotWorkerPool = new PlotWorkerPool(new PlotWorkerPoolConfig(), settings, workingDirectory.toString());
+
+        // when
+        plotWorkerPool.start();
+
+        // then
+        final Path workerScript = workingDirectory.resolve("plotService/plot_worker.py");
+        for (int i = 0; i < 50 && !Files.exists(workerScript); i++) {
+            Thread.sleep(100); // workers are started in the background
+        }
+        assertTrue(Files.exists(workerScript));
+        assertNull(plotWorkerPool.execute("print('hello')"));
+    }
+
+    @Test
+    @DisplayName("Test output and errors of scripts are framed by the worker")
+    void testFraming() throws Exception {
+        // given
+        plotWorkerPool = createLocalPool(new PlotWorkerPoolConfig());
+        final String line = "\u010d\u00e1rov\u00fd graf ".repeat(10_000); // multi-byte, longer than a pipe buffer
+
+        // when
+        final PlotJobResult result = executeWhenStarted("print('%s')".formatted(line));
+        final PlotJobResult failedResult = plotWorkerPool.execute("raise ValueError('invalid plot')");
+
+        // then
+        assertTrue(result.success());
+        assertEquals(line + "\n", result.output());
+        assertTrue(result.maxRssKb() > 0);
+        assertNotNull(failedResult);
+        assertFalse(failedResult.success());
+        assertTrue(failedResult.error().contains("ValueError: invalid plot"));
+    }
+
+    @Test
+    @DisplayName("Test script exceeding the job timeout is killed and the worker executes the next script")
+    void testJobTimeout() throws Exception {
+        // given
+        final PlotWorkerPoolConfig config = new PlotWorkerPoolConfig();
+        config.setSize(1);
+        config.setJobTimeout(Duration.ofSeconds(1));
+        plotWorkerPool = createLocalPool(config);
+        executeWhenStarted("print('warm up')");
+
+        // when
+        final long start = System.nanoTime();
+        final PlotJobResult result = plotWorkerPool.execute("import time\ntime.sleep(30)");
+        final PlotJobResult nextResult = plotWorkerPool.execute("print('next')");
+
+        // then
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertNotNull(result);
+        assertFalse(result.success());
+        assertEquals("Plot script execution timed out", result.error());
+        assertNotNull(nextResult); // the same worker, no docker exec fallback
+        assertEquals("next\n", nextResult.output());
+    }
+
+    @Test
+    @DisplayName("Test worker is replaced after the maximum number of jobs")
+    void testWorkerRecycled() throws Exception {
+        // given
+        final PlotWorkerPoolConfig config = new PlotWorkerPoolConfig();
+        config.setSize(1);
+        config.setMaxJobsPerWorker(2);
+        plotWorkerPool = createLocalPool(config);
+        final String script = "import os\nprint(os.getppid())"; // scripts are executed by children of the worker
+
+        // when
+        final PlotJobResult first = executeWhenStarted(script);
+        final PlotJobResult second = plotWorkerPool.execute(script);
+        final PlotJobResult third = executeWhenStarted(script); // replacement is started in the background
+
+        // then
+        assertNotNull(second);
+        assertEquals(first.output(), second.output());
+        assertNotEquals(first.output(), third.output());
+    }
+
+    /**
+     * Create pool of workers started by the local Python and start the workers.
+     *
+     * @param config pool configuration
+     * @return started pool
+     */
+    private PlotWorkerPool createLocalPool(PlotWorkerPoolConfig config) throws IOException, InterruptedException {
+        assumeTrue(isPythonAvailable(), "Python with matplotlib, numpy and pandas is not available.");
+        Files.createDirectories(workingDirectory.resolve("plotService"));
+
+        final PlotWorkerPool pool = new PlotWorkerPool(config, new Settings(), workingDirectory.toString()) {
+            @Override
+            List<String> createWorkerCommand() {
+                return List.of(PYTHON, getWorkerScriptPath().toString(),
+                        String.valueOf(config.getJobTimeout().toSeconds()));
+            }
+        };
+        pool.start();
+        return pool;
+    }
+
+    /**
+     * Execute the script once a worker is started.
+     *
+     * @param script plot script
+     * @return result of the script
+     */
+    private PlotJobResult executeWhenStarted(String script) throws InterruptedException {
+        for (int i = 0; i < 300; i++) {
+            final PlotJobResult result = plotWorkerPool.execute(script);
+            if (result != null) {
+                return result;
+            }
+            Thread.sleep(100);
+        }
+        return fail("Plot worker was not started.");
+    }
+
+    private static boolean isPythonAvailable() throws InterruptedException {
+        try {
+            final Process process = new ProcessBuilder(PYTHON, "-c", "import matplotlib, numpy, pandas")
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
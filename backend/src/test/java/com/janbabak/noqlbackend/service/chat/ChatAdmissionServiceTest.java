@@ -0,0 +1,117 @@
+package com.janbabak.noqlbackend.service.chat;
+
+import com.janbabak.noqlbackend.config.ChatAdmissionConfig;
+import com.janbabak.noqlbackend.error.exception.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatAdmissionServiceTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Test request over the user's limit is rejected when the user's queue is full")
+    void testRejectWhenUserQueueIsFull() throws Exception {
+        // given
+        final ChatAdmissionConfig config = new ChatAdmissionConfig();
+        config.setMaxConcurrentPerUser(1);
+        config.setMaxQueuedPerUser(0);
+        final ChatAdmissionService service = new ChatAdmissionService(config);
+        final UUID userId = UUID.randomUUID();
+
+        // when
+        final ChatAdmissionService.Permit permit = service.acquire(userId, UUID.randomUUID());
+        final TooManyRequestsException exception =
+                assertThrows(TooManyRequestsException.class, () -> service.acquire(userId, UUID.randomUUID()));
+
+        // then
+        assertEquals(config.getDefaultRetryAfter(), exception.getRetryAfter());
+        assertNotNull(service.acquire(UUID.randomUUID(), UUID.randomUUID())); // other users are not affected
+        permit.close();
+        assertEquals(1L, service.getStatistics().rejected());
+    }
+
+    @Test
+    @DisplayName("Test waiting requests of different users are admitted in round-robin order")
+    void testRoundRobin() throws Exception {
+        // given
+        final ChatAdmissionConfig config = new ChatAdmissionConfig();
+        config.setMaxConcurrent(1);
+        final ChatAdmissionService service = new ChatAdmissionService(config);
+        final UUID noisyUser = UUID.randomUUID();
+        final UUID otherUser = UUID.randomUUID();
+        final BlockingQueue<UUID> admitted = new LinkedBlockingQueue<>();
+
+        final ChatAdmissionService.Permit permit = service.acquire(noisyUser, UUID.randomUUID());
+        submit(service, noisyUser, admitted);
+        awaitQueued(service, 1);
+        submit(service, noisyUser, admitted);
+        awaitQueued(service, 2);
+        submit(service, otherUser, admitted);
+        awaitQueued(service, 3);
+
+        // when
+        permit.close();
+
+        // then
+        final List<UUID> order = List.of(
+                admitted.poll(5, TimeUnit.SECONDS),
+                admitted.poll(5, TimeUnit.SECONDS),
+                admitted.poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of(noisyUser, otherUser, noisyUser), order);
+    }
+
+    @Test
+    @DisplayName("Test request waiting too long is rejected")
+    void testMaxWait() throws Exception {
+        // given
+        final ChatAdmissionConfig config = new ChatAdmissionConfig();
+        config.setMaxConcurrentPerDatabase(1);
+        config.setMaxWait(Duration.ofMillis(50));
+        final ChatAdmissionService service = new ChatAdmissionService(config);
+        final UUID databaseId = UUID.randomUUID();
+
+        // when
+        try (ChatAdmissionService.Permit ignored = service.acquire(UUID.randomUUID(), databaseId)) {
+            assertThrows(TooManyRequestsException.class, () -> service.acquire(UUID.randomUUID(), databaseId));
+        }
+
+        // then
+        assertEquals(1L, service.getStatistics().timedOut());
+        assertEquals(0, service.getStatistics().queued());
+        assertEquals(0, service.getStatistics().running());
+    }
+
+    /**
+     * Acquire permit in another thread, record the user when admitted and release the permit immediately.
+     */
+    private void submit(ChatAdmissionService service, UUID userId, BlockingQueue<UUID> admitted) {
+        executor.submit(() -> {
+            try (ChatAdmissionService.Permit ignored = service.acquire(userId, UUID.randomUUID())) {
+                admitted.add(userId);
+            }
+            return null;
+        });
+    }
+
+    private static void awaitQueued(ChatAdmissionService service, int queued) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getStatistics().queued() < queued && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(queued, service.getStatistics().queued());
+    }
+}
@@ -9,7 +9,9 @@ import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.entity.User;
 import com.janbabak.noqlbackend.service.database.MessageDataDAO;
+import com.janbabak.noqlbackend.service.query.ExportService;
 import com.janbabak.noqlbackend.service.user.AuthenticationService;
+import org.apache.coyote.BadRequestException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -24,6 +26,7 @@ import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -43,9 +46,11 @@ class ChatQueryWithResponseServiceTest {
     AuthenticationService authenticationServiceMock;
 
     @Mock
-    @SuppressWarnings("unused") // used internally
     MessageDataDAO messageDataDAOMock;
 
+    @Mock
+    ExportService exportServiceMock;
+
     private final Database postgresDatabase;
 
     public ChatQueryWithResponseServiceTest() {
@@ -65,6 +70,9 @@ class ChatQueryWithResponseServiceTest {
                 "jan",
                 "4530958340??",
                 DatabaseEngine.POSTGRES,
+                null,
+                null,
+                null,
                 List.of(),
                 testUser);
     }
@@ -133,15 +141,17 @@ class ChatQueryWithResponseServiceTest {
 
         // then
         final Exception exception = assertThrows(EntityNotFoundException.class,
-                () -> chatQueryWithResponseService.getDataByMessageId(messageId, page, 10));
+                () -> chatQueryWithResponseService.getDataByMessageId(messageId, page, 10, null));
 
         assertEquals(expectedErrorMsg, exception.getMessage());
+        verifyNoInteractions(messageDataDAOMock, exportServiceMock);
     }
 
     @ParameterizedTest
     @MethodSource("testGetDataByMessageIdLlmResponseHasEmptyQueryTestDataProvider")
     @DisplayName("Test load message data - LLM response has empty query")
-    void testGetDataByMessageIdLlmResponseHasEmptyQueryTest(String query) throws EntityNotFoundException {
+    void testGetDataByMessageIdLlmResponseHasEmptyQueryTest(String query)
+            throws EntityNotFoundException, BadRequestException {
         // given
         final UUID messageId = UUID.randomUUID();
 
@@ -157,7 +167,7 @@ class ChatQueryWithResponseServiceTest {
         when(chatQueryWithResponseRepositoryMock.findById(messageId)).thenReturn(Optional.of(chatQueryWithResponse));
 
         // then
-        assertNull(chatQueryWithResponseService.getDataByMessageId(messageId, 0, 10));
+        assertNull(chatQueryWithResponseService.getDataByMessageId(messageId, 0, 10, null));
     }
 
     static Object[] testGetDataByMessageIdLlmResponseHasEmptyQueryTestDataProvider() {
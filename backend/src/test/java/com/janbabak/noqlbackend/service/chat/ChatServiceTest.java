@@ -10,6 +10,7 @@ import com.janbabak.noqlbackend.model.entity.Chat;
 import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.entity.User;
+import com.janbabak.noqlbackend.service.database.MessageDataDAO;
 import com.janbabak.noqlbackend.service.user.AuthenticationService;
 import com.janbabak.noqlbackend.service.PlotService;
 import org.junit.jupiter.api.DisplayName;
@@ -51,6 +52,9 @@ class ChatServiceTest {
     @Mock
     private AuthenticationService authenticationServiceMock;
 
+    @Mock
+    private MessageDataDAO messageDataDAOMock;
+
     private final User testUser = User.builder()
             .id(UUID.randomUUID())
             .build();
@@ -85,6 +89,7 @@ class ChatServiceTest {
         verify(chatRepositoryMock).findById(idCaptor.capture());
         assertEquals(chatId, idCaptor.getValue());
         assertEquals(expected, actual);
+        verify(messageDataDAOMock).retrieveDataFromMessages(chat.getMessages(), chat.getDatabase(), 0, null);
     }
 
     @Test
@@ -447,11 +452,11 @@ class ChatServiceTest {
 
         // then
         final ArgumentCaptor<UUID> repositoryIdCaptor = ArgumentCaptor.forClass(UUID.class);
-        final ArgumentCaptor<String> plotIdCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<UUID> plotIdCaptor = ArgumentCaptor.forClass(UUID.class);
         verify(chatRepositoryMock).deleteById(repositoryIdCaptor.capture());
-        verify(plotServiceMock).deletePlots(plotIdCaptor.capture());
+        verify(plotServiceMock).deletePlotsOfChat(plotIdCaptor.capture());
         assertEquals(chatId, repositoryIdCaptor.getValue());
-        assertEquals(chatId.toString(), plotIdCaptor.getValue());
+        assertEquals(chatId, plotIdCaptor.getValue());
     }
 
     @Test
@@ -1,6 +1,7 @@
 package com.janbabak.noqlbackend.service.database;
 
 import com.janbabak.noqlbackend.dao.LocalDatabaseTest;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Table;
 import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Column;
@@ -13,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public abstract class AbstractSqlServiceTest extends LocalDatabaseTest {
@@ -79,10 +81,38 @@ public abstract class AbstractSqlServiceTest extends LocalDatabaseTest {
     protected void setUp() throws Exception {
         super.setUp();
         final SqlDatabaseService databaseService = getSqlService(getDatabase());
-        databaseService.setDatabaseDaoMetadata(getDatabase());
         databaseStructure = databaseService.retrieveSchema();
     }
 
+    @Test
+    @DisplayName("Test schema fingerprint changes when a column is added")
+    void testSchemaFingerprintAfterAlterTable() throws Exception {
+        // given
+        final SqlDatabaseService databaseService = getSqlService(getDatabase());
+        executeScripts(createScripts("CREATE TABLE fingerprint_test (id INTEGER PRIMARY KEY);"));
+
+        try {
+            final String fingerprint = databaseService.retrieveSchemaFingerprint();
+            assertEquals(fingerprint, databaseService.retrieveSchemaFingerprint()); // stable without changes
+
+            // when
+            executeScripts(createScripts("ALTER TABLE fingerprint_test ADD COLUMN name VARCHAR(32);"));
+
+            // then
+            assertNotEquals(fingerprint, databaseService.retrieveSchemaFingerprint());
+        } finally {
+            executeScripts(createScripts("DROP TABLE fingerprint_test;"));
+        }
+    }
+
+    /**
+     * @param script script for the engine of the tested database
+     * @return scripts executed only in the tested database
+     */
+    private Scripts createScripts(String script) {
+        return getDatabase().getEngine() == DatabaseEngine.MYSQL ? Scripts.mySql(script) : Scripts.postgres(script);
+    }
+
     @Test
     @DisplayName("Test user table")
     void testUserTable() {
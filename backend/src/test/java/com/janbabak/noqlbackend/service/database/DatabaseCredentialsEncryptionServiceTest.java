@@ -0,0 +1,53 @@
+package com.janbabak.noqlbackend.service.database;
+
+import com.janbabak.noqlbackend.config.CredentialsCacheConfig;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseCredentialsEncryptionServiceTest {
+
+    private static final String ENCRYPTION_KEY = "YWhvamFob2phaG9qYWhvamFob2phaG9qYWhvamFob2o=";
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Test encrypted credentials are decrypted")
+    void testEncryptAndDecrypt(boolean cacheEnabled) {
+        // given
+        final CredentialsCacheConfig config = new CredentialsCacheConfig();
+        config.setEnabled(cacheEnabled);
+        final DatabaseCredentialsEncryptionService encryptionService =
+                new DatabaseCredentialsEncryptionService(config, ENCRYPTION_KEY);
+
+        // when
+        final String encrypted1 = encryptionService.encryptCredentials("secret111");
+        final String encrypted2 = encryptionService.encryptCredentials("secret111");
+
+        // then
+        assertNotEquals(encrypted1, encrypted2); // random IV
+        for (int i = 0; i < 2; i++) { // the second time from the cache
+            assertEquals("secret111", encryptionService.decryptCredentials(encrypted1));
+            assertEquals("secret111", encryptionService.decryptCredentials(encrypted2));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Test credentials encrypted by another key are not decrypted")
+    void testDecryptByAnotherKey(boolean cacheEnabled) {
+        // given
+        final CredentialsCacheConfig config = new CredentialsCacheConfig();
+        config.setEnabled(cacheEnabled);
+        final String encrypted = new DatabaseCredentialsEncryptionService(
+                config, "MTIzNDU2Nzg5MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTI=").encryptCredentials("secret111");
+
+        // when
+        final String decrypted = new DatabaseCredentialsEncryptionService(config, ENCRYPTION_KEY)
+                .decryptCredentials(encrypted);
+
+        // then
+        assertNull(decrypted);
+    }
+}
@@ -1,5 +1,6 @@
 package com.janbabak.noqlbackend.service.database;
 
+import com.janbabak.noqlbackend.config.SchemaCacheConfig;
 import com.janbabak.noqlbackend.dao.DatabaseDAO;
 import com.janbabak.noqlbackend.dao.PostgresDAO;
 import com.janbabak.noqlbackend.dao.repository.ChatRepository;
@@ -11,7 +12,12 @@ import com.janbabak.noqlbackend.error.exception.EntityNotFoundException;
 import com.janbabak.noqlbackend.model.database.*;
 import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.model.entity.User;
+import com.janbabak.noqlbackend.service.PlotCacheService;
+import com.janbabak.noqlbackend.service.PlotService;
+import com.janbabak.noqlbackend.service.query.ResultCacheService;
+import com.janbabak.noqlbackend.service.query.TotalCountService;
 import com.janbabak.noqlbackend.service.user.AuthenticationService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -31,7 +37,6 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class DatabaseEntityServiceTest {
 
-    @InjectMocks
     private DatabaseEntityService databaseEntityService;
 
     @Mock
@@ -41,22 +46,34 @@ class DatabaseEntityServiceTest {
     private UserRepository userRepositoryMock;
 
     @Mock
-    @SuppressWarnings("unused") // used in the databaseEntityService
     private ChatRepository chatRepositoryMock;
 
     @Mock
-    @SuppressWarnings("unused") // used in the databaseEntityService
     private AuthenticationService authenticationServiceMock;
 
     @Mock
-    @SuppressWarnings("unused") // used in the databaseEntityService
     private DatabaseCredentialsEncryptionService encryptionServiceMock;
 
+    @Mock
+    private TotalCountService totalCountServiceMock;
+
+    @Mock
+    private ResultCacheService resultCacheServiceMock;
+
+    @Mock
+    private PlotCacheService plotCacheServiceMock;
+
+    @Mock
+    private PlotService plotServiceMock;
+
     @Mock
     private DatabaseDAO databaseDaoMock;
 
     private final DatabaseServiceFactory databaseServiceFactoryMock = mock(DatabaseServiceFactory.class);
 
+    private final SchemaCacheService schemaCacheService =
+            new SchemaCacheService(databaseServiceFactoryMock, new SchemaCacheConfig());
+
     private static final User testUser = User.builder()
             .id(UUID.randomUUID())
             .build();
@@ -104,6 +121,22 @@ class DatabaseEntityServiceTest {
             )))
     );
 
+    @BeforeEach
+    void setUp() {
+        databaseEntityService = new DatabaseEntityService(
+                databaseRepositoryMock,
+                userRepositoryMock,
+                chatRepositoryMock,
+                authenticationServiceMock,
+                encryptionServiceMock,
+                databaseServiceFactoryMock,
+                totalCountServiceMock,
+                resultCacheServiceMock,
+                schemaCacheService,
+                plotCacheServiceMock,
+                plotServiceMock);
+    }
+
     @Test
     @DisplayName("Test find database by id")
     void testFindDatabaseBy() throws EntityNotFoundException {
@@ -306,6 +339,7 @@ class DatabaseEntityServiceTest {
         verify(databaseRepositoryMock).save(databaseCaptor.capture());
         assertEquals(updatedDatabase, databaseCaptor.getValue());
         assertEquals(database, actual);
+        verifyEvicted(databaseId);
     }
 
     @Test
@@ -377,6 +411,9 @@ class DatabaseEntityServiceTest {
         final ArgumentCaptor<UUID> idCaptor = ArgumentCaptor.forClass(UUID.class);
         verify(databaseRepositoryMock).deleteById(idCaptor.capture());
         assertEquals(databaseId, idCaptor.getValue());
+        verify(chatRepositoryMock).findAllIdsByDatabaseId(databaseId);
+        verify(plotServiceMock).deletePlotsOfChatsAsync(List.of());
+        verifyEvicted(databaseId);
     }
 
     @Test
@@ -482,4 +519,14 @@ class DatabaseEntityServiceTest {
         // then
         assertEquals("Database of id: \"" + databaseId + "\" not found.", exception.getMessage());
     }
-}
\ No newline at end of file
+
+    /**
+     * Verify that connection pools and everything cached for the database were released.
+     */
+    private void verifyEvicted(UUID databaseId) {
+        verify(databaseServiceFactoryMock).evict(databaseId);
+        verify(totalCountServiceMock).evict(databaseId);
+        verify(resultCacheServiceMock).evict(databaseId);
+        verify(plotCacheServiceMock).evict(databaseId);
+    }
+}
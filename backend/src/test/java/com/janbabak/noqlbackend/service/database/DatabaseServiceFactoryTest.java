@@ -5,6 +5,7 @@ import com.janbabak.noqlbackend.dao.MySqlDAO;
 import com.janbabak.noqlbackend.dao.PostgresDAO;
 import com.janbabak.noqlbackend.model.database.DatabaseEngine;
 import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.entity.User;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -13,6 +14,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.util.List;
+import java.util.UUID;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -87,4 +91,60 @@ class DatabaseServiceFactoryTest {
                 }
         };
     }
+
+    @Test
+    @DisplayName("Test the same database gets the same DAO and service until its connection parameters change.")
+    void testGetDatabaseDaoIsCached() {
+        final Database database = Database.builder()
+                .id(UUID.randomUUID())
+                .host("localhost")
+                .port(5432)
+                .database("database")
+                .userName("user")
+                .password("password")
+                .engine(DatabaseEngine.POSTGRES)
+                .build();
+
+        final DatabaseDAO databaseDAO = databaseServiceFactory.getDatabaseDAO(database);
+
+        assertSame(databaseDAO, databaseServiceFactory.getDatabaseDAO(database));
+        assertSame(databaseServiceFactory.getDatabaseService(database),
+                databaseServiceFactory.getDatabaseService(database));
+
+        database.setPort(5433);
+        final DatabaseDAO updatedDatabaseDAO = databaseServiceFactory.getDatabaseDAO(database);
+
+        assertNotSame(databaseDAO, updatedDatabaseDAO);
+        assertEquals(5432, databaseDAO.databaseMetadata().getPort()); // original handle is not modified
+        assertEquals(5433, updatedDatabaseDAO.databaseMetadata().getPort());
+
+        databaseServiceFactory.evict(database.getId());
+        assertNotSame(updatedDatabaseDAO, databaseServiceFactory.getDatabaseDAO(database));
+    }
+
+    @Test
+    @DisplayName("Test cached DAO keeps only the query timeout of the user, not the user entity.")
+    void testGetDatabaseDaoDoesNotKeepUser() {
+        final User user = User.builder()
+                .id(UUID.randomUUID())
+                .email("john.doe@email.com")
+                .queryTimeoutSeconds(5)
+                .databases(List.of())
+                .build();
+        final Database database = Database.builder()
+                .id(UUID.randomUUID())
+                .engine(DatabaseEngine.MYSQL)
+                .user(user)
+                .build();
+
+        final User cachedUser = databaseServiceFactory.getDatabaseDAO(database).databaseMetadata().getUser();
+
+        assertNotSame(user, cachedUser);
+        assertEquals(user.getId(), cachedUser.getId());
+        assertEquals(5, cachedUser.getQueryTimeoutSeconds());
+        assertNull(cachedUser.getEmail());
+        assertNull(cachedUser.getDatabases());
+
+        databaseServiceFactory.evict(database.getId());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,150 @@
+package com.janbabak.noqlbackend.service.database;
+
+import com.janbabak.noqlbackend.config.MessageDataConfig;
+import com.janbabak.noqlbackend.dao.QueryRegistry;
+import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.service.query.QueryExecutionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests of loading data of multiple messages, data must be in the order of the messages however the loads complete.
+ */
+class MessageDataDAOTest {
+
+    private final Database database = Database.builder().id(UUID.randomUUID()).build();
+    private final QueryExecutionService queryExecutionServiceMock = mock(QueryExecutionService.class);
+    private final QueryRegistry queryRegistryMock = mock(QueryRegistry.class);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private MessageDataDAO messageDataDAO;
+
+    @BeforeEach
+    void setUp() {
+        final MessageDataConfig config = new MessageDataConfig();
+        config.setLoadTimeout(Duration.ofMillis(500));
+        messageDataDAO = spy(new MessageDataDAO(queryExecutionServiceMock, config, queryRegistryMock));
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageDataDAO.shutdown();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Test data of messages completed out of order are returned in the order of the messages")
+    void testRetrieveDataFromMessagesOrder() {
+        // given
+        final List<ChatQueryWithResponse> messages = List.of(
+                createMessage("SELECT 1;"),
+                createMessage(null),
+                createMessage("SELECT 2;"),
+                createMessage("SELECT 3;"));
+        final RetrievedData firstData = createData("1");
+        final RetrievedData secondData = createData("2");
+        final RetrievedData thirdData = createData("3");
+
+        // the last message is loaded first, the first message last
+        doReturn(completeAfter(firstData, 150))
+                .when(messageDataDAO).loadAsync(eq(messages.get(0)), eq(database), eq(0), eq(10), any(), anyLong());
+        doReturn(completeAfter(secondData, 100))
+                .when(messageDataDAO).loadAsync(eq(messages.get(2)), eq(database), eq(0), eq(10), any(), anyLong());
+        doReturn(completeAfter(thirdData, 10))
+                .when(messageDataDAO).loadAsync(eq(messages.get(3)), eq(database), eq(0), eq(10), any(), anyLong());
+
+        // when
+        final List<RetrievedData> actual = messageDataDAO.retrieveDataFromMessages(messages, database, 0, 10);
+
+        // then
+        assertEquals(Arrays.asList(firstData, null, secondData, thirdData), actual);
+    }
+
+    @Test
+    @DisplayName("Test data of message not loaded before the timeout is null, other messages are returned")
+    void testRetrieveDataFromMessagesTimeout() {
+        // given
+        final List<ChatQueryWithResponse> messages = List.of(createMessage("SELECT 1;"), createMessage("SELECT 2;"));
+        final RetrievedData secondData = createData("2");
+
+        doReturn(new CompletableFuture<RetrievedData>()) // never completes
+                .when(messageDataDAO).loadAsync(eq(messages.get(0)), eq(database), eq(0), eq(10), any(), anyLong());
+        doReturn(completeAfter(secondData, 10))
+                .when(messageDataDAO).loadAsync(eq(messages.get(1)), eq(database), eq(0), eq(10), any(), anyLong());
+
+        // when
+        final long start = System.nanoTime();
+        final List<RetrievedData> actual = messageDataDAO.retrieveDataFromMessages(messages, database, 0, 10);
+
+        // then
+        assertEquals(Arrays.asList(null, secondData), actual);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        verify(queryRegistryMock, atLeastOnce()).cancelScope(any()); // query of the first message is cancelled
+    }
+
+    @Test
+    @DisplayName("Test data of message is loaded in the scope and the load is not started after the deadline")
+    void testLoadAsyncScopeAndDeadline() throws Exception {
+        // given
+        final UUID scope = UUID.randomUUID();
+        final ChatQueryWithResponse message = createMessage("SELECT 1;");
+        final RetrievedData data = createData("1");
+        when(queryExecutionServiceMock.executeQuery("SELECT 1;", database, 0, 10, true)).thenReturn(data);
+
+        // when
+        final RetrievedData loaded = messageDataDAO
+                .loadAsync(message, database, 0, 10, scope, System.nanoTime() + TimeUnit.SECONDS.toNanos(5))
+                .get(5, TimeUnit.SECONDS);
+        final RetrievedData expired = messageDataDAO
+                .loadAsync(message, database, 0, 10, scope, System.nanoTime() - 1)
+                .get(5, TimeUnit.SECONDS);
+
+        // then
+        assertSame(data, loaded);
+        assertNull(expired);
+        verify(queryRegistryMock, times(1)).openScope(scope);
+        verify(queryExecutionServiceMock, times(1)).executeQuery("SELECT 1;", database, 0, 10, true);
+    }
+
+    private CompletableFuture<RetrievedData> completeAfter(RetrievedData data, long delayMillis) {
+        final CompletableFuture<RetrievedData> future = new CompletableFuture<>();
+        scheduler.schedule(() -> future.complete(data), delayMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private static ChatQueryWithResponse createMessage(String dbQuery) {
+        return ChatQueryWithResponse.builder()
+                .id(UUID.randomUUID())
+                .dbQuery(dbQuery)
+                .dbQueryExecutionSuccess(dbQuery != null)
+                .build();
+    }
+
+    private static RetrievedData createData(String value) {
+        return RetrievedData.builder()
+                .columnNames(List.of("value"))
+                .rows(List.of(List.of(value)))
+                .page(0)
+                .pageSize(10)
+                .build();
+    }
+}
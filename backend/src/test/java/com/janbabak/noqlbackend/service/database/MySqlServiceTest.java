@@ -6,7 +6,6 @@ import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.service.utils.FileUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
@@ -18,9 +17,6 @@ import static org.junit.jupiter.api.Assertions.*;
 @SpringBootTest
 class MySqlServiceTest extends AbstractSqlServiceTest {
 
-    @Autowired
-    private MySqlService mySqlService;
-
     MySqlServiceTest() {
         super();
 
@@ -41,7 +37,7 @@ class MySqlServiceTest extends AbstractSqlServiceTest {
 
     @Override
     protected SqlDatabaseService getSqlService(Database database) {
-        return mySqlService;
+        return new MySqlService(mySqlDAO);
     }
 
     @Override
@@ -146,4 +142,10 @@ class MySqlServiceTest extends AbstractSqlServiceTest {
                 List.of("id", "user_id", "order_date", "total_amount", "payment_method", "shipping_address_id",
                         "is_shipped", "tracking_number", "status", "notes"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test MySQL doesn't provide data version")
+    void testDataVersion() throws Exception {
+        assertNull(getSqlService(getDatabase()).retrieveDataVersion());
+    }
+}
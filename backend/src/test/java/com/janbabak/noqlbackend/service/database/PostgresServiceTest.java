@@ -6,22 +6,19 @@ import com.janbabak.noqlbackend.model.entity.Database;
 import com.janbabak.noqlbackend.service.utils.FileUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ActiveProfiles("test")
 @SpringBootTest
 class PostgresServiceTest extends AbstractSqlServiceTest {
 
-    @Autowired
-    private PostgresService postgresService;
-
     PostgresServiceTest() {
         super();
 
@@ -42,7 +39,7 @@ class PostgresServiceTest extends AbstractSqlServiceTest {
 
     @Override
     protected SqlDatabaseService getSqlService(Database database) {
-        return postgresService;
+        return new PostgresService(postgresDAO);
     }
 
     @Override
@@ -181,4 +178,10 @@ class PostgresServiceTest extends AbstractSqlServiceTest {
         verifyTable(schema.tables().get("exam"), "exam", List.of("student", "course"),
                 List.of("student", "course"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test data version is retrieved from the table statistics")
+    void testDataVersion() throws Exception {
+        assertNotNull(getSqlService(getDatabase()).retrieveDataVersion());
+    }
+}
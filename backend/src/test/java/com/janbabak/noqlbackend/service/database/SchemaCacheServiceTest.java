@@ -0,0 +1,102 @@
+package com.janbabak.noqlbackend.service.database;
+
+import com.janbabak.noqlbackend.config.SchemaCacheConfig;
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.model.database.DatabaseStructure;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService.CachedSchema;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SchemaCacheServiceTest {
+
+    private final DatabaseServiceFactory databaseServiceFactoryMock = mock(DatabaseServiceFactory.class);
+    private final BaseDatabaseService databaseServiceMock = mock(BaseDatabaseService.class);
+    private final DatabaseStructure structureMock = mock(DatabaseStructure.class);
+    private final SchemaCacheConfig config = new SchemaCacheConfig();
+    private final Database database = Database.builder().id(UUID.randomUUID()).build();
+
+    private SchemaCacheService schemaCacheService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(databaseServiceFactoryMock.getDatabaseService(database)).thenReturn(databaseServiceMock);
+        when(databaseServiceMock.retrieveSchemaFingerprint()).thenReturn("fingerprint");
+        when(structureMock.generateCreateScript()).thenReturn("CREATE TABLE eshop_user (id INTEGER);");
+        schemaCacheService = new SchemaCacheService(databaseServiceFactoryMock, config);
+    }
+
+    @Test
+    @DisplayName("Test concurrent requests of not cached schema retrieve it once")
+    void testGetSchemaSingleFlight() throws Exception {
+        // given
+        final CountDownLatch retrieving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(databaseServiceMock.retrieveSchema()).thenAnswer(invocation -> {
+            retrieving.countDown();
+            release.await();
+            return structureMock;
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            // when
+            final List<Future<CachedSchema>> schemas = new ArrayList<>();
+            schemas.add(executor.submit(() -> schemaCacheService.getSchema(database)));
+            assertTrue(retrieving.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                schemas.add(executor.submit(() -> schemaCacheService.getSchema(database)));
+            }
+            Thread.sleep(100); // let the other requests wait for the first one
+            release.countDown();
+
+            // then
+            for (final Future<CachedSchema> schema : schemas) {
+                assertSame(structureMock, schema.get(5, TimeUnit.SECONDS).structure());
+            }
+            verify(databaseServiceMock, times(1)).retrieveSchema();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Test stale schema with the same fingerprint is not retrieved again")
+    void testGetSchemaVerifiedByFingerprint() throws Exception {
+        // given
+        config.setFingerprintCheckInterval(Duration.ZERO);
+        when(databaseServiceMock.retrieveSchema()).thenReturn(structureMock);
+
+        // when
+        final CachedSchema schema = schemaCacheService.getSchema(database);
+        final CachedSchema verifiedSchema = schemaCacheService.getSchema(database);
+
+        // then
+        assertSame(schema.structure(), verifiedSchema.structure());
+        verify(databaseServiceMock, times(1)).retrieveSchema();
+        verify(databaseServiceMock, times(2)).retrieveSchemaFingerprint();
+    }
+
+    @Test
+    @DisplayName("Test failed retrieval of the schema is not cached")
+    void testGetSchemaFailure() throws Exception {
+        // given
+        when(databaseServiceMock.retrieveSchema())
+                .thenThrow(new DatabaseConnectionException("Connection refused"))
+                .thenReturn(structureMock);
+
+        // then
+        assertThrows(DatabaseConnectionException.class, () -> schemaCacheService.getSchema(database));
+        assertSame(structureMock, schemaCacheService.getSchema(database).structure());
+    }
+}
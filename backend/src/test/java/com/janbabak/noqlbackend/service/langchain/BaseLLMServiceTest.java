@@ -45,6 +45,13 @@ class BaseLLMServiceTest {
         assertInstanceOf(clazz, model);
     }
 
+    @Test
+    @DisplayName("Test get model returns cached instance")
+    void testGetModelReturnsCachedInstance() throws BadRequestException {
+        final ChatModel model = llmService.getModel("gpt-4o");
+        assertSame(model, llmService.getModel("gpt-4o"));
+    }
+
     static Object[][] provideValidModelIds() {
         return new Object[][]{
                 {
@@ -0,0 +1,136 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.config.ExportConfig;
+import com.janbabak.noqlbackend.dao.ResultSetWrapper;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.ExportFormat;
+import com.janbabak.noqlbackend.service.database.BaseDatabaseService;
+import com.janbabak.noqlbackend.service.database.DatabaseServiceFactory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExportServiceTest {
+
+    private final Database database = Database.builder()
+            .id(UUID.randomUUID())
+            .engine(DatabaseEngine.POSTGRES)
+            .build();
+
+    @Test
+    @DisplayName("Test export executes the query by a cursor and closes the result")
+    void testExport() throws Exception {
+        // given
+        final ResultSet resultSet = mockResultSet();
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        final ExportService exportService = createExportService(
+                new ResultSetWrapper(resultSet, () -> closed.set(true)));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // when
+        final StreamingResponseBody body =
+                exportService.export("SELECT * FROM eshop_user;", database, ExportFormat.CSV, false);
+        body.writeTo(output);
+
+        // then
+        assertEquals("name,note\r\nJohn,\"Hello, \"\"world\"\"\"\r\nLenny,\r\n",
+                output.toString(StandardCharsets.UTF_8));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    @DisplayName("Test query is cancelled when the client disconnects")
+    void testExportCancelledWhenClientDisconnects() throws Exception {
+        // given
+        final ResultSet resultSet = mockResultSet();
+        final Statement statement = mock(Statement.class);
+        when(resultSet.getStatement()).thenReturn(statement);
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        final ExportService exportService = createExportService(
+                new ResultSetWrapper(resultSet, () -> closed.set(true)));
+        final OutputStream disconnectedClient = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        // when
+        final StreamingResponseBody body =
+                exportService.export("SELECT * FROM eshop_user;", database, ExportFormat.NDJSON, false);
+
+        // then
+        assertThrows(IOException.class, () -> body.writeTo(disconnectedClient));
+        verify(statement).cancel();
+        assertTrue(closed.get());
+    }
+
+    @Test
+    @DisplayName("Test export to CSV")
+    void testExportCsv() throws Exception {
+        // given
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // when
+        ExportService.write(mockResultSet(), ExportFormat.CSV, output);
+
+        // then
+        assertEquals("name,note\r\nJohn,\"Hello, \"\"world\"\"\"\r\nLenny,\r\n",
+                output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Test export to NDJSON")
+    void testExportNdjson() throws Exception {
+        // given
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // when
+        ExportService.write(mockResultSet(), ExportFormat.NDJSON, output);
+
+        // then
+        assertEquals("""
+                {"name":"John","note":"Hello, \\"world\\""}
+                {"name":"Lenny","note":null}
+                """, output.toString(StandardCharsets.UTF_8));
+    }
+
+    private ExportService createExportService(ResultSetWrapper result) throws Exception {
+        final ExportConfig config = new ExportConfig();
+        final BaseDatabaseService databaseService = mock(BaseDatabaseService.class);
+        when(databaseService.executeStreamingQuery("SELECT * FROM eshop_user", config.getFetchSize(),
+                config.getMaxRows())).thenReturn(result);
+        final DatabaseServiceFactory databaseServiceFactory = mock(DatabaseServiceFactory.class);
+        when(databaseServiceFactory.getDatabaseService(database)).thenReturn(databaseService);
+        return new ExportService(databaseServiceFactory, config);
+    }
+
+    private static ResultSet mockResultSet() throws SQLException {
+        final ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnName(1)).thenReturn("name");
+        when(metaData.getColumnName(2)).thenReturn("note");
+
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString(1)).thenReturn("John", "Lenny");
+        when(resultSet.getString(2)).thenReturn("Hello, \"world\" ", null);
+        return resultSet;
+    }
+}
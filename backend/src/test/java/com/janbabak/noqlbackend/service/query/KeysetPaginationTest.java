@@ -0,0 +1,250 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.model.Settings;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.service.query.KeysetPagination.KeysetCursor;
+import com.janbabak.noqlbackend.service.query.KeysetPagination.KeysetPaginatedQuery;
+import com.janbabak.noqlbackend.service.query.KeysetPagination.KeysetQuery;
+import org.apache.coyote.BadRequestException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.MockedStatic;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.List;
+
+import static com.janbabak.noqlbackend.service.query.KeysetPagination.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mockStatic;
+
+class KeysetPaginationTest {
+
+    private final Database postgresDatabase = Database.builder().engine(DatabaseEngine.POSTGRES).build();
+
+    @ParameterizedTest
+    @MethodSource("parseKeysetQueryDataProvider")
+    @DisplayName("Test parse keyset query")
+    void testParseKeysetQuery(String query, DatabaseEngine engine, KeysetQuery expectedQuery) {
+        // given
+        final Database database = Database.builder().engine(engine).build();
+
+        // when
+        final KeysetQuery actualQuery = parseKeysetQuery(query, database);
+
+        // then
+        assertEquals(expectedQuery, actualQuery);
+    }
+
+    @SuppressWarnings("all") // sql warnings
+    static Object[][] parseKeysetQueryDataProvider() {
+        return new Object[][]{
+                {
+                        // language=SQL
+                        "SELECT * FROM eshop_user WHERE age > 18 ORDER BY id;",
+                        DatabaseEngine.POSTGRES,
+                        new KeysetQuery(
+                                "SELECT * FROM eshop_user WHERE age > 18",
+                                null,
+                                "eshop_user",
+                                List.of("id"),
+                                false)
+                },
+                {
+                        // language=SQL
+                        "SELECT name, id FROM public.\"Order\" o ORDER BY o.ID DESC",
+                        DatabaseEngine.POSTGRES,
+                        new KeysetQuery(
+                                "SELECT name, id FROM public.\"Order\" o",
+                                "public",
+                                "Order",
+                                List.of("id"),
+                                true)
+                },
+                {
+                        // language=SQL
+                        "SELECT * FROM order_item ORDER BY order_id ASC, product_id ASC",
+                        DatabaseEngine.MYSQL,
+                        new KeysetQuery(
+                                "SELECT * FROM order_item",
+                                null,
+                                "order_item",
+                                List.of("order_id", "product_id"),
+                                false)
+                },
+                // not ordered
+                {
+                        // language=SQL
+                        "SELECT * FROM eshop_user WHERE age > 18",
+                        DatabaseEngine.POSTGRES,
+                        null
+                },
+                // join
+                {
+                        // language=SQL
+                        "SELECT * FROM eshop_user u JOIN address a ON u.address_id = a.id ORDER BY u.id",
+                        DatabaseEngine.POSTGRES,
+                        null
+                },
+                // aggregation
+                {
+                        // language=SQL
+                        "SELECT age, COUNT(*) FROM eshop_user GROUP BY age ORDER BY age",
+                        DatabaseEngine.POSTGRES,
+                        null
+                },
+                // mixed order
+                {
+                        // language=SQL
+                        "SELECT * FROM order_item ORDER BY order_id ASC, product_id DESC",
+                        DatabaseEngine.POSTGRES,
+                        null
+                },
+                // expression in order by
+                {
+                        // language=SQL
+                        "SELECT * FROM eshop_user ORDER BY LOWER(name)",
+                        DatabaseEngine.POSTGRES,
+                        null
+                },
+                // sub-query
+                {
+                        // language=SQL
+                        "SELECT * FROM eshop_user WHERE id IN (SELECT user_id FROM orders) ORDER BY id",
+                        DatabaseEngine.POSTGRES,
+                        null
+                }
+        };
+    }
+
+    @Test
+    @DisplayName("Test construct keyset query")
+    void testConstructKeysetSqlQuery() throws BadRequestException {
+        try (MockedStatic<Settings> settingsMockedStatic = mockStatic(Settings.class)) {
+            // given
+            settingsMockedStatic.when(Settings::getMaxPageSizeStatic).thenReturn(50);
+            final KeysetQuery keysetQuery = new KeysetQuery(
+                    "SELECT * FROM order_item", null, "order_item", List.of("order_id", "product_id"), true);
+            final KeysetCursor cursor = new KeysetCursor(keysetQuery.hash(), 3, 100L, List.of("12", "7"), null);
+
+            final KeysetPaginatedQuery expectedQuery = new KeysetPaginatedQuery(
+                    // language=SQL
+                    "SELECT * FROM (SELECT * FROM order_item) AS query " +
+                            "WHERE (\"order_id\", \"product_id\") < (?, ?) " +
+                            "ORDER BY \"order_id\" DESC, \"product_id\" DESC LIMIT 20;",
+                    List.<Object>of("12", "7"),
+                    3,
+                    20);
+
+            // when
+            final KeysetPaginatedQuery actualQuery =
+                    constructKeysetSqlQuery(keysetQuery, cursor, 20, postgresDatabase);
+
+            // then
+            assertEquals(expectedQuery, actualQuery);
+        }
+    }
+
+    @Test
+    @DisplayName("Test construct keyset query binds numeric keys as numbers")
+    void testConstructKeysetSqlQueryTypedKeys() throws BadRequestException {
+        try (MockedStatic<Settings> settingsMockedStatic = mockStatic(Settings.class)) {
+            // given
+            settingsMockedStatic.when(Settings::getMaxPageSizeStatic).thenReturn(50);
+            final KeysetQuery keysetQuery = new KeysetQuery(
+                    "SELECT * FROM payment", null, "payment", List.of("amount", "id", "note"), false);
+            final KeysetCursor cursor = new KeysetCursor(
+                    keysetQuery.hash(),
+                    1,
+                    null,
+                    List.of("12345678901234567890.10", "9007199254740993", "a"),
+                    List.of(Types.DECIMAL, Types.BIGINT, Types.VARCHAR));
+
+            // when
+            final KeysetPaginatedQuery actualQuery =
+                    constructKeysetSqlQuery(keysetQuery, cursor, 20, postgresDatabase);
+
+            // then
+            assertEquals(
+                    List.of(new BigDecimal("12345678901234567890.10"), 9007199254740993L, "a"),
+                    actualQuery.parameters());
+        }
+    }
+
+    @Test
+    @DisplayName("Test construct keyset query with invalid numeric key")
+    void testConstructKeysetSqlQueryInvalidNumber() {
+        try (MockedStatic<Settings> settingsMockedStatic = mockStatic(Settings.class)) {
+            // given
+            settingsMockedStatic.when(Settings::getMaxPageSizeStatic).thenReturn(50);
+            final KeysetQuery keysetQuery = new KeysetQuery(
+                    "SELECT * FROM payment", null, "payment", List.of("id"), false);
+            final KeysetCursor cursor =
+                    new KeysetCursor(keysetQuery.hash(), 1, null, List.of("1; DROP"), List.of(Types.BIGINT));
+
+            // then
+            assertThrows(BadRequestException.class,
+                    () -> constructKeysetSqlQuery(keysetQuery, cursor, 20, postgresDatabase));
+        }
+    }
+
+    @Test
+    @DisplayName("Test create and decode cursor")
+    void testCreateAndDecodeCursor() throws BadRequestException {
+        // given
+        final KeysetQuery keysetQuery = parseKeysetQuery("SELECT * FROM eshop_user ORDER BY id", postgresDatabase);
+        final RetrievedData data = RetrievedData.builder()
+                .columnNames(List.of("id", "name"))
+                .rows(List.of(List.of("1", "John"), List.of("2", "Lenny")))
+                .page(0)
+                .pageSize(2)
+                .totalCount(10L)
+                .build();
+
+        // when
+        final String cursor = createCursor(keysetQuery, data);
+        final KeysetCursor decodedCursor = decodeCursor(cursor, keysetQuery);
+
+        // then
+        assertEquals(new KeysetCursor(keysetQuery.hash(), 1, 10L, List.of("2"), null), decodedCursor);
+    }
+
+    @Test
+    @DisplayName("Test create cursor of the last page")
+    void testCreateCursorLastPage() {
+        // given
+        final KeysetQuery keysetQuery = parseKeysetQuery("SELECT * FROM eshop_user ORDER BY id", postgresDatabase);
+        final RetrievedData data = RetrievedData.builder()
+                .columnNames(List.of("id", "name"))
+                .rows(List.of(List.of("1", "John")))
+                .page(0)
+                .pageSize(2)
+                .build();
+
+        // then
+        assertNull(createCursor(keysetQuery, data));
+    }
+
+    @Test
+    @DisplayName("Test decode cursor of another query")
+    void testDecodeCursorOfAnotherQuery() {
+        // given
+        final KeysetQuery keysetQuery = parseKeysetQuery("SELECT * FROM eshop_user ORDER BY id", postgresDatabase);
+        final KeysetQuery anotherQuery = parseKeysetQuery("SELECT * FROM address ORDER BY id", postgresDatabase);
+        final RetrievedData data = RetrievedData.builder()
+                .columnNames(List.of("id"))
+                .rows(List.of(List.of("1")))
+                .page(0)
+                .pageSize(1)
+                .build();
+        final String cursor = createCursor(anotherQuery, data);
+
+        // then
+        assertThrows(BadRequestException.class, () -> decodeCursor(cursor, keysetQuery));
+        assertThrows(BadRequestException.class, () -> decodeCursor("not a cursor", keysetQuery));
+    }
+}
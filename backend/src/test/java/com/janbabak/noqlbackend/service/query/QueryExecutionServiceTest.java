@@ -0,0 +1,101 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.error.exception.DatabaseConnectionException;
+import com.janbabak.noqlbackend.model.Settings;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import com.janbabak.noqlbackend.model.query.TotalCountMode;
+import com.janbabak.noqlbackend.service.database.BaseDatabaseService;
+import com.janbabak.noqlbackend.service.database.DatabaseServiceFactory;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryExecutionServiceTest {
+
+    @InjectMocks
+    private QueryExecutionService queryExecutionService;
+
+    @Mock
+    private DatabaseServiceFactory databaseServiceFactoryMock;
+
+    @Mock
+    private TotalCountService totalCountServiceMock;
+
+    @Mock
+    private ResultCacheService resultCacheServiceMock;
+
+    @Mock
+    private SchemaCacheService schemaCacheServiceMock;
+
+    private final Database database = Database.builder()
+            .id(UUID.randomUUID())
+            .engine(DatabaseEngine.POSTGRES)
+            .build();
+
+    private MockedStatic<Settings> settingsMockedStatic;
+
+    @BeforeEach
+    void setUp() {
+        // not all settings are used by every test
+        settingsMockedStatic = mockStatic(Settings.class, withSettings().strictness(Strictness.LENIENT));
+        settingsMockedStatic.when(Settings::getMaxPageSizeStatic).thenReturn(50);
+        settingsMockedStatic.when(Settings::getDefaultPageSizeStatic).thenReturn(10);
+        settingsMockedStatic.when(() -> Settings.getTotalCountModeStatic(DatabaseEngine.POSTGRES))
+                .thenReturn(TotalCountMode.WINDOW_FUNCTION);
+    }
+
+    @AfterEach
+    void tearDown() {
+        settingsMockedStatic.close();
+    }
+
+    @Test
+    @DisplayName("Test cached page is returned without querying the database")
+    void testCachedPage() throws Exception {
+        // given
+        final String query = "SELECT * FROM eshop_user;";
+        final RetrievedData cachedData = new RetrievedData(List.of("id"), List.of(List.of("1")), 0, 10, 1L);
+        when(resultCacheServiceMock.get(database, query, 0, 10)).thenReturn(cachedData);
+
+        // when
+        final RetrievedData data = queryExecutionService.executeQuery(query, database, 0, 10, true);
+
+        // then
+        assertSame(cachedData, data);
+        verifyNoInteractions(databaseServiceFactoryMock, totalCountServiceMock, schemaCacheServiceMock);
+    }
+
+    @Test
+    @DisplayName("Test query bypassing the cache always queries the database")
+    void testQueryBypassingCache() throws Exception {
+        // given
+        final String query = "SELECT * FROM eshop_user;";
+        final BaseDatabaseService databaseServiceMock = mock(BaseDatabaseService.class);
+        when(databaseServiceFactoryMock.getDatabaseService(database)).thenReturn(databaseServiceMock);
+        when(databaseServiceMock.executeQuery(anyString()))
+                .thenThrow(new DatabaseConnectionException("Connection refused"));
+
+        // then
+        assertThrows(DatabaseConnectionException.class,
+                () -> queryExecutionService.executeQuery(query, database, 0, 10, false));
+        verifyNoInteractions(resultCacheServiceMock);
+    }
+}
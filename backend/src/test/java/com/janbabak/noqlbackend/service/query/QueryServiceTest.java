@@ -0,0 +1,208 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.config.ChatAdmissionConfig;
+import com.janbabak.noqlbackend.dao.QueryRegistry;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.entity.ChatQueryWithResponse;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.entity.User;
+import com.janbabak.noqlbackend.model.query.ChatStreamEventType;
+import com.janbabak.noqlbackend.model.query.QueryRequest;
+import com.janbabak.noqlbackend.service.chat.ChatAdmissionService;
+import com.janbabak.noqlbackend.service.chat.ChatQueryWithResponseService;
+import com.janbabak.noqlbackend.service.chat.ChatService;
+import com.janbabak.noqlbackend.service.database.DatabaseEntityService;
+import com.janbabak.noqlbackend.service.database.MessageDataDAO;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService.CachedSchema;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseAssistantTools.QueryDatabaseToolResult;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService.LLMServiceResult;
+import com.janbabak.noqlbackend.service.langchain.QueryDatabaseLLMService.LLMStreamingHandler;
+import com.janbabak.noqlbackend.service.user.AuthenticationService;
+import com.janbabak.noqlbackend.service.user.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests of the streaming chat query, the permit of the chat admission is held until the LLM finishes the turn and the
+ * query limit is refunded only if the turn failed.
+ */
+class QueryServiceTest {
+
+    private final ChatService chatServiceMock = mock(ChatService.class);
+    private final UserService userServiceMock = mock(UserService.class);
+    private final DatabaseEntityService databaseEntityServiceMock = mock(DatabaseEntityService.class);
+    private final ChatQueryWithResponseService messageServiceMock = mock(ChatQueryWithResponseService.class);
+    private final QueryDatabaseLLMService llmServiceMock = mock(QueryDatabaseLLMService.class);
+    private final SchemaCacheService schemaCacheServiceMock = mock(SchemaCacheService.class);
+    private final SchemaSelectionService schemaSelectionServiceMock = mock(SchemaSelectionService.class);
+    private final QueryRegistry queryRegistryMock = mock(QueryRegistry.class);
+    private final SseEmitter emitterMock = mock(SseEmitter.class);
+    private final ChatAdmissionService chatAdmissionService = new ChatAdmissionService(new ChatAdmissionConfig());
+
+    private final Database database = Database.builder()
+            .id(UUID.randomUUID())
+            .engine(DatabaseEngine.POSTGRES)
+            .user(User.builder().id(UUID.randomUUID()).build())
+            .build();
+
+    private final UUID chatId = UUID.randomUUID();
+    private final UUID messageId = UUID.randomUUID();
+    private final QueryRequest queryRequest = new QueryRequest("Find all users", "gpt-4o");
+
+    private QueryService queryService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queryService = spy(new QueryService(
+                chatServiceMock,
+                userServiceMock,
+                databaseEntityServiceMock,
+                messageServiceMock,
+                mock(QueryExecutionService.class),
+                mock(AuthenticationService.class),
+                llmServiceMock,
+                schemaCacheServiceMock,
+                schemaSelectionServiceMock,
+                mock(MessageDataDAO.class),
+                mock(ExportService.class),
+                queryRegistryMock,
+                chatAdmissionService));
+        doReturn(emitterMock).when(queryService).createEmitter();
+
+        when(databaseEntityServiceMock.findById(database.getId())).thenReturn(database);
+        when(chatServiceMock.addEmptyMessageToChat(chatId))
+                .thenReturn(ChatQueryWithResponse.builder().id(messageId).build());
+        when(messageServiceMock.getMessagesFromChat(chatId)).thenReturn(List.of());
+        when(schemaCacheServiceMock.getSchema(database))
+                .thenReturn(new CachedSchema(null, "", null, Instant.now()));
+        when(schemaSelectionServiceMock.selectRelevantSchema(any(), any(), any())).thenReturn("");
+    }
+
+    @Test
+    @DisplayName("Test exhausted query limit ends the stream by error event")
+    void testQueryLimitExhausted() throws Exception {
+        // given
+        when(userServiceMock.decrementQueryLimit(database.getUserId())).thenReturn(false);
+
+        // when
+        queryService.queryChatStream(database.getId(), chatId, queryRequest, 10);
+
+        // then
+        assertEventSent(ChatStreamEventType.ERROR);
+        verify(emitterMock).complete();
+        verify(llmServiceMock, never()).executeUserRequestStreaming(any(), any());
+        verify(userServiceMock, never()).refundQueryLimit(any());
+        assertEquals(0, chatAdmissionService.getStatistics().running());
+    }
+
+    @Test
+    @DisplayName("Test failure of the LLM refunds the query limit and ends the stream by error event")
+    void testLLMError() throws Exception {
+        // given
+        when(userServiceMock.decrementQueryLimit(database.getUserId())).thenReturn(true);
+
+        // when
+        queryService.queryChatStream(database.getId(), chatId, queryRequest, 10);
+        assertEquals(1, chatAdmissionService.getStatistics().running());
+        captureHandler().onError(new RuntimeException("LLM is not available"));
+        captureCompletionCallback().run(); // the emitter is completed by the handler
+
+        // then
+        assertEventSent(ChatStreamEventType.ERROR);
+        verify(emitterMock).complete();
+        verify(userServiceMock, times(1)).refundQueryLimit(database.getUserId());
+        assertEquals(0, chatAdmissionService.getStatistics().running());
+    }
+
+    @Test
+    @DisplayName("Test timeout of the stream cancels the queries, the permit is released when the LLM fails")
+    void testStreamTimeout() throws Exception {
+        // given
+        when(userServiceMock.decrementQueryLimit(database.getUserId())).thenReturn(true);
+
+        // when
+        queryService.queryChatStream(database.getId(), chatId, queryRequest, 10);
+        assertEquals(1, chatAdmissionService.getStatistics().running());
+
+        final ArgumentCaptor<Runnable> timeoutCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(emitterMock).onTimeout(timeoutCaptor.capture());
+        timeoutCaptor.getValue().run();
+        captureCompletionCallback().run(); // the emitter is completed after the timeout
+        assertEquals(1, chatAdmissionService.getStatistics().running()); // the LLM is still running
+        captureHandler().onError(new RuntimeException("Query cancelled")); // the LLM finishes later
+
+        // then
+        verify(queryRegistryMock, atLeastOnce()).cancelScope(messageId);
+        verify(userServiceMock, times(1)).refundQueryLimit(database.getUserId());
+        assertEquals(0, chatAdmissionService.getStatistics().running());
+    }
+
+    @Test
+    @DisplayName("Test answer of the disconnected client is persisted and the query limit is not refunded")
+    void testClientDisconnectedBeforeComplete() throws Exception {
+        // given
+        when(userServiceMock.decrementQueryLimit(database.getUserId())).thenReturn(true);
+        final LLMServiceResult result = new LLMServiceResult("Found 2 users", new QueryDatabaseToolResult());
+        when(messageServiceMock.updateEmptyMessage(any(), any(), any()))
+                .thenReturn(ChatQueryWithResponse.builder().id(messageId).build());
+
+        // when
+        queryService.queryChatStream(database.getId(), chatId, queryRequest, 10);
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Consumer<Throwable>> errorCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(emitterMock).onError(errorCaptor.capture());
+        errorCaptor.getValue().accept(new IOException("Broken pipe"));
+        captureCompletionCallback().run();
+
+        // the permit is held until the LLM finishes the turn
+        verify(queryRegistryMock, times(1)).cancelScope(messageId);
+        assertEquals(1, chatAdmissionService.getStatistics().running());
+
+        captureHandler().onComplete(result);
+
+        // then
+        verify(messageServiceMock).updateEmptyMessage(any(), eq(queryRequest.getQuery()), eq(result));
+        verify(userServiceMock, never()).refundQueryLimit(any());
+        assertEquals(0, chatAdmissionService.getStatistics().running());
+        verify(emitterMock, never()).send(any(SseEmitter.SseEventBuilder.class));
+        verify(emitterMock, never()).complete();
+    }
+
+    private LLMStreamingHandler captureHandler() throws Exception {
+        final ArgumentCaptor<LLMStreamingHandler> handlerCaptor = ArgumentCaptor.forClass(LLMStreamingHandler.class);
+        verify(llmServiceMock).executeUserRequestStreaming(any(), handlerCaptor.capture());
+        return handlerCaptor.getValue();
+    }
+
+    private Runnable captureCompletionCallback() {
+        final ArgumentCaptor<Runnable> completionCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(emitterMock).onCompletion(completionCaptor.capture());
+        return completionCaptor.getValue();
+    }
+
+    private void assertEventSent(ChatStreamEventType type) throws Exception {
+        final ArgumentCaptor<SseEmitter.SseEventBuilder> eventCaptor =
+                ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitterMock, atLeastOnce()).send(eventCaptor.capture());
+        assertTrue(eventCaptor.getAllValues().stream()
+                .flatMap(event -> event.build().stream())
+                .anyMatch(data -> data.getData().toString().contains("event:" + type.getEventName() + "\n")));
+    }
+}
@@ -1,5 +1,6 @@
 package com.janbabak.noqlbackend.service.query;
 
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
 import com.janbabak.noqlbackend.model.Settings;
 import com.janbabak.noqlbackend.model.database.DatabaseEngine;
 import com.janbabak.noqlbackend.model.entity.Database;
@@ -9,7 +10,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.MockedStatic;
 
+import java.sql.SQLException;
+
 import static com.janbabak.noqlbackend.service.query.QueryUtils.constructPaginatedSqlQuery;
+import static com.janbabak.noqlbackend.service.query.QueryUtils.constructPaginatedSqlQueryWithTotalCount;
+import static com.janbabak.noqlbackend.service.query.QueryUtils.isWindowFunctionUnsupported;
 import static com.janbabak.noqlbackend.service.query.QueryUtils.trimAndRemoveTrailingSemicolon;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mockStatic;
@@ -93,6 +98,64 @@ class QueryUtilsTest {
         };
     }
 
+    @ParameterizedTest
+    @MethodSource("constructPaginatedQueryWithTotalCountDataProvider")
+    @DisplayName("Test construct paginated query with total count")
+    void testConstructPaginatedQueryWithTotalCount(
+            String query,
+            Integer page,
+            Integer pageSize,
+            DatabaseEngine engine,
+            QueryUtils.PaginatedQuery expectedQuery) throws BadRequestException {
+
+        try (MockedStatic<Settings> settingsMockedStatic = mockStatic(Settings.class)) {
+            // given
+            settingsMockedStatic.when(Settings::getMaxPageSizeStatic).thenReturn(50);
+            final Database database = Database.builder().engine(engine).build();
+
+            // when
+            final QueryUtils.PaginatedQuery actualValue =
+                    constructPaginatedSqlQueryWithTotalCount(query, page, pageSize, database);
+
+            // then
+            assertEquals(expectedQuery, actualValue);
+        }
+    }
+
+    @SuppressWarnings("all") // sql warnings
+    static Object[][] constructPaginatedQueryWithTotalCountDataProvider() {
+        return new Object[][]{
+                {
+                        // language=SQL
+                        "SELECT name FROM cvut.student WHERE grade < 3;",
+                        8,
+                        15,
+                        DatabaseEngine.POSTGRES,
+                        new QueryUtils.PaginatedQuery(
+                                // language=SQL
+                                "SELECT query.*, COUNT(*) OVER () AS noql_total_count " +
+                                        "FROM (SELECT name FROM cvut.student WHERE grade < 3) AS query " +
+                                        "LIMIT 15 OFFSET 120;",
+                                8,
+                                15)
+                },
+                {
+                        // language=SQL
+                        "SELECT name FROM cvut.student WHERE grade < 3",
+                        null,
+                        20,
+                        DatabaseEngine.MYSQL,
+                        new QueryUtils.PaginatedQuery(
+                                // language=SQL
+                                "SELECT query.*, COUNT(*) OVER () AS noql_total_count " +
+                                        "FROM (SELECT name FROM cvut.student WHERE grade < 3) AS query " +
+                                        "LIMIT 20 OFFSET 0;",
+                                0,
+                                20)
+                }
+        };
+    }
+
     @ParameterizedTest
     @MethodSource("constructPaginatedQueryBadRequestDataProvider")
     @DisplayName("Test construct paginated query with bad request")
@@ -198,4 +261,30 @@ class QueryUtilsTest {
                 }
         };
     }
+
+    @ParameterizedTest
+    @MethodSource("windowFunctionUnsupportedDataProvider")
+    @DisplayName("Test only failures caused by the window function fall back to separate count")
+    void testIsWindowFunctionUnsupported(SQLException cause, boolean expected) {
+        assertEquals(expected, isWindowFunctionUnsupported(new DatabaseExecutionException(cause.getMessage(), cause)));
+    }
+
+    static Object[][] windowFunctionUnsupportedDataProvider() {
+        return new Object[][]{
+                {new SQLException("window functions are not allowed in GROUP BY", "42P20"), true},
+                {new SQLException("OVER is not supported", "0A000"), true},
+                {new SQLException("You have an error in your SQL syntax; check the manual that corresponds to your "
+                        + "MySQL server version for the right syntax to use near '() AS noql_total_count FROM "
+                        + "(SELECT * FROM user) AS query LIMIT 10 OFFSET 0' at line 1", "42000", 1064), true},
+                {new SQLException("You have an error in your SQL syntax; check the manual that corresponds to your "
+                        + "MariaDB server version for the right syntax to use near 'OVER () AS noql_total_count "
+                        + "FROM (SELECT * FROM user) AS query LIMIT...' at line 1", "42000", 1064), true},
+                {new SQLException("You have an error in your SQL syntax; check the manual that corresponds to your "
+                        + "MySQL server version for the right syntax to use near 'FORM user) AS query LIMIT 10 "
+                        + "OFFSET 0' at line 1", "42000", 1064), false},
+                {new SQLException("canceling statement due to statement timeout", "57014"), false},
+                {new SQLException("Query execution was interrupted", "70100", 1317), false},
+                {new SQLException("division by zero", "22012"), false},
+        };
+    }
 }
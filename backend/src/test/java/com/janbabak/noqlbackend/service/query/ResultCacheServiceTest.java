@@ -0,0 +1,67 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.config.ResultCacheConfig;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.RetrievedData;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheServiceTest {
+
+    private final Database database = Database.builder()
+            .id(UUID.randomUUID())
+            .engine(DatabaseEngine.POSTGRES)
+            .build();
+
+    private final RetrievedData data = RetrievedData.builder()
+            .columnNames(List.of("name", "age"))
+            .rows(List.of(List.of("John", "26"), List.of("Lenny", "65")))
+            .page(0)
+            .pageSize(2)
+            .totalCount(2L)
+            .build();
+
+    @Test
+    @DisplayName("Test page is cached and evicted")
+    void testPageIsCachedAndEvicted() {
+        // given
+        final ResultCacheService resultCacheService = new ResultCacheService(new ResultCacheConfig());
+
+        // when
+        resultCacheService.put(database, "SELECT name, age FROM eshop_user;", 0, 2, data);
+
+        // then
+        assertEquals(data, resultCacheService.get(database, " SELECT name, age FROM eshop_user", 0, 2));
+        assertNull(resultCacheService.get(database, "SELECT name, age FROM eshop_user", 1, 2));
+        assertEquals(1L, resultCacheService.getStatistics().hitCount());
+        assertEquals(1L, resultCacheService.getStatistics().missCount());
+
+        // when
+        resultCacheService.evict(database.getId());
+
+        // then
+        assertNull(resultCacheService.get(database, "SELECT name, age FROM eshop_user", 0, 2));
+    }
+
+    @Test
+    @DisplayName("Test large page is not cached")
+    void testLargePageIsNotCached() {
+        // given
+        final ResultCacheConfig config = new ResultCacheConfig();
+        config.setMaxEntrySize(DataSize.ofBytes(100));
+        final ResultCacheService resultCacheService = new ResultCacheService(config);
+
+        // when
+        resultCacheService.put(database, "SELECT name, age FROM eshop_user", 0, 2, data);
+
+        // then
+        assertNull(resultCacheService.get(database, "SELECT name, age FROM eshop_user", 0, 2));
+    }
+}
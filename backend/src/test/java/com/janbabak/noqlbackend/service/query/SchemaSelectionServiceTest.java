@@ -0,0 +1,109 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.config.SchemaSelectionConfig;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Column;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.ForeignKey;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Schema;
+import com.janbabak.noqlbackend.model.database.SqlDatabaseStructure.Table;
+import com.janbabak.noqlbackend.service.database.SchemaCacheService.CachedSchema;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaSelectionServiceTest {
+
+    private final SqlDatabaseStructure databaseStructure = createDatabaseStructure();
+
+    private final CachedSchema schema = new CachedSchema(
+            databaseStructure, databaseStructure.generateCreateScript(), null, Instant.now());
+
+    @Test
+    @DisplayName("Test small schema is not pruned")
+    void testSmallSchemaIsNotPruned() {
+        // given
+        final SchemaSelectionService schemaSelectionService = new SchemaSelectionService(new SchemaSelectionConfig());
+
+        // when
+        final String actual = schemaSelectionService.selectRelevantSchema(schema, "How many orders?", List.of());
+
+        // then
+        assertEquals(schema.createScript(), actual);
+    }
+
+    @Test
+    @DisplayName("Test large schema is pruned to relevant tables")
+    void testLargeSchemaIsPruned() {
+        // given
+        final SchemaSelectionConfig config = new SchemaSelectionConfig();
+        config.setTokenBudget(100);
+        final SchemaSelectionService schemaSelectionService = new SchemaSelectionService(config);
+
+        // when
+        final String actual = schemaSelectionService
+                .selectRelevantSchema(schema, "Which customers placed orders in Prague?", List.of());
+
+        // then
+        assertTrue(actual.contains("CREATE TABLE IF NOT EXISTS public.orders"));
+        assertTrue(actual.contains("CREATE TABLE IF NOT EXISTS public.customer"));
+        assertFalse(actual.contains("CREATE TABLE IF NOT EXISTS public.warehouse_inventory"));
+        assertTrue(actual.contains("public.warehouse_inventory"));
+        assertTrue(actual.contains("describeTables"));
+    }
+
+    @Test
+    @DisplayName("Test describe tables")
+    void testDescribeTables() {
+        // given
+        final SchemaSelectionService schemaSelectionService = new SchemaSelectionService(new SchemaSelectionConfig());
+
+        // when
+        final String actual = schemaSelectionService
+                .describeTables(databaseStructure, List.of("public.warehouse_inventory", " product", "unknown"));
+
+        // then
+        assertTrue(actual.contains("CREATE TABLE IF NOT EXISTS public.warehouse_inventory"));
+        assertTrue(actual.contains("CREATE TABLE IF NOT EXISTS public.product"));
+        assertFalse(actual.contains("CREATE TABLE IF NOT EXISTS public.orders"));
+        assertTrue(actual.endsWith("-- Tables not found: unknown"));
+    }
+
+    @Test
+    @DisplayName("Test extract words")
+    void testExtractWords() {
+        assertEquals(Set.of("customer", "address", "city"),
+                SchemaSelectionService.extractWords("Show me the customers' addresses by CustomerCity"));
+    }
+
+    private static SqlDatabaseStructure createDatabaseStructure() {
+        final SqlDatabaseStructure structure = new SqlDatabaseStructure();
+        final Schema schema = structure.schemas().computeIfAbsent("public", Schema::new);
+
+        final Table customer = schema.tables().computeIfAbsent("customer", Table::new);
+        customer.columns().put("id", new Column("id", "integer", true));
+        customer.columns().put("name", new Column("name", "character varying", false));
+        customer.columns().put("city", new Column("city", "character varying", false));
+
+        final Table orders = schema.tables().computeIfAbsent("orders", Table::new);
+        orders.columns().put("id", new Column("id", "integer", true));
+        orders.columns().put("customer_id", new Column("customer_id", "integer", false,
+                new ForeignKey("public", "customer", "id")));
+
+        final Table product = schema.tables().computeIfAbsent("product", Table::new);
+        product.columns().put("id", new Column("id", "integer", true));
+        product.columns().put("title", new Column("title", "character varying", false));
+
+        final Table inventory = schema.tables().computeIfAbsent("warehouse_inventory", Table::new);
+        inventory.columns().put("id", new Column("id", "integer", true));
+        inventory.columns().put("product_id", new Column("product_id", "integer", false,
+                new ForeignKey("public", "product", "id")));
+        inventory.columns().put("quantity", new Column("quantity", "integer", false));
+
+        return structure;
+    }
+}
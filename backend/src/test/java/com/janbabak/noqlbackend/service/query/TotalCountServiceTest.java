@@ -0,0 +1,132 @@
+package com.janbabak.noqlbackend.service.query;
+
+import com.janbabak.noqlbackend.config.TotalCountConfig;
+import com.janbabak.noqlbackend.dao.QueryRegistry;
+import com.janbabak.noqlbackend.dao.ResultSetWrapper;
+import com.janbabak.noqlbackend.error.exception.DatabaseExecutionException;
+import com.janbabak.noqlbackend.model.database.DatabaseEngine;
+import com.janbabak.noqlbackend.model.entity.Database;
+import com.janbabak.noqlbackend.model.query.TotalCountResponse;
+import com.janbabak.noqlbackend.service.database.BaseDatabaseService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TotalCountServiceTest {
+
+    private final TotalCountConfig config = new TotalCountConfig();
+
+    private final QueryRegistry queryRegistry = new QueryRegistry();
+
+    private final TotalCountService totalCountService = new TotalCountService(config, queryRegistry);
+
+    private final BaseDatabaseService databaseServiceMock = mock(BaseDatabaseService.class);
+
+    private final Database database = Database.builder()
+            .id(UUID.randomUUID())
+            .engine(DatabaseEngine.POSTGRES)
+            .build();
+
+    @AfterEach
+    void tearDown() {
+        totalCountService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test total count is computed once and cached")
+    void testTotalCountIsCached() throws Exception {
+        // given
+        final ResultSet resultSetMock = mock(ResultSet.class);
+        when(resultSetMock.next()).thenReturn(true);
+        when(resultSetMock.getLong(1)).thenReturn(42L);
+        when(databaseServiceMock.executeQuery(anyString())).thenReturn(new ResultSetWrapper(resultSetMock, () -> {}));
+
+        // when
+        final Long totalCount = totalCountService
+                .getTotalCountAsync("SELECT * FROM eshop_user;", database, databaseServiceMock)
+                .join();
+        final TotalCountResponse cachedTotalCount = totalCountService
+                .getTotalCount("SELECT * FROM eshop_user", database, databaseServiceMock);
+
+        // then
+        assertEquals(42L, totalCount);
+        assertEquals(new TotalCountResponse(42L, TotalCountResponse.Status.COMPUTED), cachedTotalCount);
+        verify(databaseServiceMock, times(1)).executeQuery(anyString());
+    }
+
+    @Test
+    @DisplayName("Test total count in progress is not cached after eviction of the database")
+    void testEvictTotalCountInProgress() throws Exception {
+        // given
+        final CountDownLatch release = new CountDownLatch(1);
+        final ResultSet resultSetMock = mock(ResultSet.class);
+        when(resultSetMock.next()).thenReturn(true);
+        when(resultSetMock.getLong(1)).thenReturn(42L);
+        when(databaseServiceMock.executeQuery(anyString())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new ResultSetWrapper(resultSetMock, () -> {});
+        });
+        final CompletableFuture<Long> totalCount =
+                totalCountService.getTotalCountAsync("SELECT * FROM eshop_user", database, databaseServiceMock);
+
+        // when
+        totalCountService.evict(database.getId());
+        release.countDown();
+
+        // then
+        assertEquals(42L, totalCount.join());
+        assertEquals(42L, totalCountService
+                .getTotalCountAsync("SELECT * FROM eshop_user", database, databaseServiceMock)
+                .join());
+        verify(databaseServiceMock, times(2)).executeQuery(anyString());
+    }
+
+    @Test
+    @DisplayName("Test total count query is cancelled when the timeout elapses")
+    void testTotalCountCancelledOnTimeout() throws Exception {
+        // given
+        config.setTimeout(Duration.ofMillis(100));
+        final TotalCountService totalCountService = new TotalCountService(config, queryRegistry);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final Statement statementMock = mock(Statement.class);
+        doAnswer(invocation -> {
+            cancelled.countDown();
+            return null;
+        }).when(statementMock).cancel();
+        when(databaseServiceMock.executeQuery(anyString())).thenAnswer(invocation -> {
+            // the count runs until it is cancelled like a long query in the database
+            final QueryRegistry.RunningQuery runningQuery =
+                    queryRegistry.register(statementMock, database, invocation.getArgument(0));
+            cancelled.await(10, TimeUnit.SECONDS);
+            queryRegistry.unregister(runningQuery);
+            throw new DatabaseExecutionException("canceling statement due to user request");
+        });
+
+        try {
+            // when
+            final CompletableFuture<Long> totalCount = totalCountService
+                    .getTotalCountAsync("SELECT * FROM eshop_user;", database, databaseServiceMock);
+
+            // then
+            final CompletionException exception = assertThrows(CompletionException.class, totalCount::join);
+            assertInstanceOf(TimeoutException.class, exception.getCause());
+            assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+            verify(statementMock).cancel();
+        } finally {
+            totalCountService.shutdown();
+        }
+    }
+}
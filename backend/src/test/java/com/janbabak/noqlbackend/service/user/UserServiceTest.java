@@ -1,10 +1,15 @@
 package com.janbabak.noqlbackend.service.user;
 
+import com.janbabak.noqlbackend.authentication.AuthenticationCache;
+import com.janbabak.noqlbackend.dao.repository.ChatRepository;
+import com.janbabak.noqlbackend.dao.repository.DatabaseRepository;
 import com.janbabak.noqlbackend.dao.repository.UserRepository;
 import com.janbabak.noqlbackend.error.exception.EntityNotFoundException;
 import com.janbabak.noqlbackend.model.Role;
 import com.janbabak.noqlbackend.model.entity.User;
 import com.janbabak.noqlbackend.model.user.UpdateUserRequest;
+import com.janbabak.noqlbackend.service.PlotService;
+import com.janbabak.noqlbackend.service.database.DatabaseEntityService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -34,9 +39,24 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoderMock;
 
+    @Mock
+    private ChatRepository chatRepositoryMock;
+
+    @Mock
+    private DatabaseRepository databaseRepositoryMock;
+
+    @Mock
+    private DatabaseEntityService databaseEntityServiceMock;
+
+    @Mock
+    private PlotService plotServiceMock;
+
     @Mock
     private AuthenticationService authenticationService;
 
+    @Mock
+    private AuthenticationCache authenticationCacheMock;
+
     @Test
     @DisplayName("Find user by id")
     void testFindUserById() throws EntityNotFoundException {
@@ -148,6 +168,7 @@ class UserServiceTest {
         verify(userRepositoryMock).save(userCaptor.capture());
         assertEquals(updatedUser, userCaptor.getValue());
         assertEquals(updatedUser, actual);
+        verify(authenticationCacheMock).invalidateUser("john.doe@email.com"); // previous email
     }
 
     @Test
@@ -222,9 +243,14 @@ class UserServiceTest {
     void testDeleteUser() {
         // given
         final UUID userId = UUID.randomUUID();
-        final User user = User.builder().id(userId).build();
+        final User user = User.builder().id(userId).email("john.doe@email.com").build();
+
+        final List<UUID> chatIds = List.of(UUID.randomUUID(), UUID.randomUUID());
+        final List<UUID> databaseIds = List.of(UUID.randomUUID(), UUID.randomUUID());
 
         when(userRepositoryMock.findById(userId)).thenReturn(Optional.of(user));
+        when(chatRepositoryMock.findAllIdsByUserId(userId)).thenReturn(chatIds);
+        when(databaseRepositoryMock.findAllIdsByUserId(userId)).thenReturn(databaseIds);
 
         // when
         userService.deleteUser(userId);
@@ -233,6 +259,10 @@ class UserServiceTest {
         final ArgumentCaptor<UUID> idCaptor = ArgumentCaptor.forClass(UUID.class);
         verify(userRepositoryMock).deleteById(idCaptor.capture());
         assertEquals(userId, idCaptor.getValue());
+        verify(plotServiceMock).deletePlotsOfChatsAsync(chatIds);
+        verify(authenticationCacheMock).invalidateUser("john.doe@email.com");
+        verify(databaseEntityServiceMock).evict(databaseIds.get(0));
+        verify(databaseEntityServiceMock).evict(databaseIds.get(1));
     }
 
     @Test
@@ -240,18 +270,15 @@ class UserServiceTest {
     void testDecrementQueryLimit() throws EntityNotFoundException {
         // given
         final UUID userId = UUID.randomUUID();
-        final User user = User.builder().id(userId).queryLimit(10).build();
 
-        when(userRepositoryMock.findById(userId)).thenReturn(Optional.of(user));
+        when(userRepositoryMock.decrementQueryLimitIfPositive(userId)).thenReturn(1);
 
         // when
-        final int actual = userService.decrementQueryLimit(userId);
+        final boolean actual = userService.decrementQueryLimit(userId);
 
         // then
-        final ArgumentCaptor<User> userCaptor = ArgumentCaptor.forClass(User.class);
-        verify(userRepositoryMock).save(userCaptor.capture());
-        assertEquals(9, userCaptor.getValue().getQueryLimit());
-        assertEquals(10, actual);
+        assertTrue(actual);
+        verify(userRepositoryMock, never()).save(any());
     }
 
     @Test
@@ -259,18 +286,16 @@ class UserServiceTest {
     void testDecrementQueryLimitExceeded() throws EntityNotFoundException {
         // given
         final UUID userId = UUID.randomUUID();
-        final User user = User.builder().id(userId).queryLimit(0).build();
 
-        when(userRepositoryMock.findById(userId)).thenReturn(Optional.of(user));
+        when(userRepositoryMock.decrementQueryLimitIfPositive(userId)).thenReturn(0);
+        when(userRepositoryMock.existsById(userId)).thenReturn(true);
 
         // when
-        final int actual = userService.decrementQueryLimit(userId);
+        final boolean actual = userService.decrementQueryLimit(userId);
 
         // then
-        final ArgumentCaptor<User> userCaptor = ArgumentCaptor.forClass(User.class);
-        verify(userRepositoryMock).save(userCaptor.capture());
-        assertEquals(0, userCaptor.getValue().getQueryLimit());
-        assertEquals(0, actual);
+        assertFalse(actual);
+        verify(userRepositoryMock, never()).save(any());
     }
 
     @Test
@@ -278,7 +303,8 @@ class UserServiceTest {
     void testDecrementQueryLimitUserNotFound() {
         // given
         final UUID userId = UUID.randomUUID();
-        when(userRepositoryMock.findById(userId)).thenReturn(Optional.empty());
+        when(userRepositoryMock.decrementQueryLimitIfPositive(userId)).thenReturn(0);
+        when(userRepositoryMock.existsById(userId)).thenReturn(false);
 
         // when
         final EntityNotFoundException exception = assertThrows(EntityNotFoundException.class,
@@ -287,4 +313,17 @@ class UserServiceTest {
         // then
         assertEquals("User of id: \"" + userId + "\" not found.", exception.getMessage());
     }
+
+    @Test
+    @DisplayName("Refund query limit")
+    void testRefundQueryLimit() {
+        // given
+        final UUID userId = UUID.randomUUID();
+
+        // when
+        userService.refundQueryLimit(userId);
+
+        // then
+        verify(userRepositoryMock).incrementQueryLimit(userId);
+    }
 }
\ No newline at end of file
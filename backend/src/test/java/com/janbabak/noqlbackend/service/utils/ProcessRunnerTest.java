@@ -0,0 +1,63 @@
+package com.janbabak.noqlbackend.service.utils;
+
+import com.janbabak.noqlbackend.service.utils.ProcessRunner.ProcessResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProcessRunnerTest {
+
+    @Test
+    @DisplayName("Test output and error are captured")
+    void testOutputAndErrorAreCaptured() throws Exception {
+        // when
+        final ProcessResult result = ProcessRunner.run(
+                List.of("sh", "-c", "cat; echo failure >&2; exit 3"),
+                "hello".getBytes(StandardCharsets.UTF_8),
+                Duration.ofSeconds(10),
+                1024);
+
+        // then
+        assertFalse(result.timedOut());
+        assertFalse(result.isSuccess());
+        assertEquals(3, result.exitCode());
+        assertEquals("hello", result.output());
+        assertEquals("failure\n", result.error());
+    }
+
+    @Test
+    @DisplayName("Test large error output doesn't block the process and is truncated")
+    void testLargeErrorOutputIsTruncated() throws Exception {
+        // when, 1 MB of stderr would fill the pipe if it wasn't drained
+        final ProcessResult result = ProcessRunner.run(
+                List.of("sh", "-c", "head -c 1048576 /dev/zero >&2; echo done"),
+                null,
+                Duration.ofSeconds(10),
+                1024);
+
+        // then
+        assertTrue(result.isSuccess());
+        assertEquals("done\n", result.output());
+        assertEquals(1048576L, result.errorBytes());
+        assertTrue(result.error().endsWith("... (truncated)"));
+    }
+
+    @Test
+    @DisplayName("Test process is killed when timeout elapses")
+    void testTimeout() throws Exception {
+        // when
+        final ProcessResult result = ProcessRunner.run(
+                List.of("sh", "-c", "sleep 30"), null, Duration.ofMillis(500), 1024);
+
+        // then
+        assertTrue(result.timedOut());
+        assertNull(result.exitCode());
+        assertFalse(result.isSuccess());
+        assertTrue(result.wallTimeMillis() < 10_000);
+    }
+}